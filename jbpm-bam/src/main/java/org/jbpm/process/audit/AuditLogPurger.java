@@ -0,0 +1,204 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.UserTransaction;
+
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the audit history of process instances that completed before a cutoff date.
+ * </p>
+ * Process instances are handled in batches, every batch in its own short transaction: the ids of the
+ * next completed process instances are selected and their node, variable and process instance logs
+ * are removed with bulk delete statements, so no log entity is loaded (unless an {@link Archiver}
+ * is given) and locks are only held for one batch. Purging can therefore run while the engine keeps
+ * logging, and can be stopped and restarted at any time.
+ * </p>
+ * Batches are limited to {@link #MAX_BATCH_SIZE} process instances as their ids are passed to
+ * <code>IN</code> lists.
+ */
+public class AuditLogPurger {
+
+    private static Logger logger = LoggerFactory.getLogger(AuditLogPurger.class);
+
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Receives the history of every batch before it is deleted, e.g. to copy it to an archive store.
+     * The batch is deleted only when the archiver returns normally, within the same transaction.
+     */
+    public interface Archiver {
+
+        void archive(List<ProcessInstanceLog> processInstances, List<NodeInstanceLog> nodeInstances, List<VariableInstanceLog> variableInstances);
+    }
+
+    /**
+     * Notified after each committed batch.
+     */
+    public interface ProgressListener {
+
+        void batchCompleted(PurgeResult total);
+    }
+
+    /**
+     * Number of log entries removed so far.
+     */
+    public static class PurgeResult {
+
+        private int batches;
+        private long processInstanceLogs;
+        private long nodeInstanceLogs;
+        private long variableInstanceLogs;
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public long getProcessInstanceLogs() {
+            return processInstanceLogs;
+        }
+
+        public long getNodeInstanceLogs() {
+            return nodeInstanceLogs;
+        }
+
+        public long getVariableInstanceLogs() {
+            return variableInstanceLogs;
+        }
+
+        public String toString() {
+            return batches + " batches: " + processInstanceLogs + " process instance logs, "
+                + nodeInstanceLogs + " node instance logs, " + variableInstanceLogs + " variable instance logs";
+        }
+    }
+
+    private final EntityManagerFactory emf;
+    private final boolean isJTA;
+
+    public AuditLogPurger(Environment env) {
+        Boolean bool = (Boolean) env.get("IS_JTA_TRANSACTION");
+        this.isJTA = bool == null || bool.booleanValue();
+        this.emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        if (emf == null) {
+            throw new IllegalArgumentException("No EntityManagerFactory found in the environment");
+        }
+    }
+
+    public AuditLogPurger(EntityManagerFactory emf, boolean isJTA) {
+        this.emf = emf;
+        this.isJTA = isJTA;
+    }
+
+    public PurgeResult purge(Date completedBefore, int batchSize) {
+        return purge(completedBefore, batchSize, null, null);
+    }
+
+    /**
+     * Removes the history of all process instances that completed before the given date.
+     * @param archiver receives the history before it is removed, may be <code>null</code>
+     * @param listener notified of the progress after every batch, may be <code>null</code>
+     */
+    public PurgeResult purge(Date completedBefore, int batchSize, Archiver archiver, ProgressListener listener) {
+        if (batchSize <= 0 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        PurgeResult result = new PurgeResult();
+        while (purgeBatch(completedBefore, batchSize, archiver, result)) {
+            if (listener != null) {
+                listener.batchCompleted(result);
+            }
+            logger.debug("Purged audit history: {}", result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean purgeBatch(Date completedBefore, int batchSize, Archiver archiver, PurgeResult result) {
+        EntityManager em = emf.createEntityManager();
+        UserTransaction ut = null;
+        try {
+            if (isJTA) {
+                ut = JPAWorkingMemoryDbLogger.findUserTransaction();
+                if (ut == null) {
+                    throw new IllegalStateException("No user transaction found to purge audit logs");
+                }
+                ut.begin();
+                em.joinTransaction();
+            } else {
+                em.getTransaction().begin();
+            }
+            List<Object[]> rows = em.createQuery(
+                    "SELECT p.id, p.processInstanceId FROM ProcessInstanceLog p WHERE p.end < :completedBefore ORDER BY p.id")
+                .setParameter("completedBefore", completedBefore)
+                .setMaxResults(batchSize).getResultList();
+            boolean found = !rows.isEmpty();
+            if (found) {
+                List<Long> ids = new ArrayList<Long>(rows.size());
+                List<Long> processInstanceIds = new ArrayList<Long>(rows.size());
+                for (Object[] row : rows) {
+                    ids.add((Long) row[0]);
+                    processInstanceIds.add((Long) row[1]);
+                }
+                if (archiver != null) {
+                    archiver.archive(
+                        em.createQuery("FROM ProcessInstanceLog p WHERE p.id IN (:ids) ORDER BY p.id")
+                            .setParameter("ids", ids).getResultList(),
+                        em.createQuery("FROM NodeInstanceLog n WHERE n.processInstanceId IN (:processInstanceIds) ORDER BY n.id")
+                            .setParameter("processInstanceIds", processInstanceIds).getResultList(),
+                        em.createQuery("FROM VariableInstanceLog v WHERE v.processInstanceId IN (:processInstanceIds) ORDER BY v.id")
+                            .setParameter("processInstanceIds", processInstanceIds).getResultList());
+                }
+                result.nodeInstanceLogs += em.createQuery("DELETE FROM NodeInstanceLog n WHERE n.processInstanceId IN (:processInstanceIds)")
+                    .setParameter("processInstanceIds", processInstanceIds).executeUpdate();
+                result.variableInstanceLogs += em.createQuery("DELETE FROM VariableInstanceLog v WHERE v.processInstanceId IN (:processInstanceIds)")
+                    .setParameter("processInstanceIds", processInstanceIds).executeUpdate();
+                result.processInstanceLogs += em.createQuery("DELETE FROM ProcessInstanceLog p WHERE p.id IN (:ids)")
+                    .setParameter("ids", ids).executeUpdate();
+                result.batches++;
+            }
+            if (ut != null) {
+                ut.commit();
+            } else {
+                em.getTransaction().commit();
+            }
+            return found;
+        } catch (Exception e) {
+            try {
+                if (ut != null) {
+                    ut.rollback();
+                } else if (!isJTA && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } catch (Exception re) {
+                logger.warn("Unable to roll back audit log purge transaction", re);
+            }
+            throw new RuntimeException("Unable to purge audit logs", e);
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -12,21 +12,28 @@ import org.jbpm.process.audit.jms.AsyncAuditLogProducer;
 import org.kie.api.runtime.KieSession;
 
 /**
- * Factory for producing support audit loggers. Currently two types are available:
+ * Factory for producing support audit loggers. Currently three types are available:
  * <ul>
  *  <li>JPA - synchronous logger that is bound to the engine transaction and 
  *  persists audit events as part of runtime engine transaction</li>
  *  <li>JMS - asynchronous logger that can be configured to place messages on the queue
  *  either with respect to active transaction (only after transaction is committed) or 
  *  place them directly as they are generated</li>
+ *  <li>JPA_BATCH - asynchronous logger that buffers audit events once the engine transaction
+ *  is committed and persists them in batches from a background thread</li>
  * </ul>
  */
 public class AuditLoggerFactory {
 
     public enum Type {
         JPA,
-        JMS
+        JMS,
+        JPA_BATCH
     }
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_BUFFER_SIZE = 10000;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
     
     /**
      * Creates new instance of audit logger based on given type and parameters and 
@@ -43,7 +50,15 @@ public class AuditLoggerFactory {
      * <li>jbpm.audit.jms.connection.factory.jndi - JNDI name of the connection factory to look up - type String</li>
      * <li>jbpm.audit.jms.queue.jndi - JNDI name of the queue to look up - type String</li>
      * </ul>
-     * @param type - type of the AuditLoger to create (JPA or JMS)
+     * 
+     * <bold>JPA_BATCH</bold>
+     * <ul>
+     * <li>jbpm.audit.batch.size - number of events written in one batch - default 100 - type Integer</li>
+     * <li>jbpm.audit.batch.buffer.size - number of events buffered before the session blocks - default 10000 - type Integer</li>
+     * <li>jbpm.audit.batch.flush.interval - maximum time in milliseconds events are buffered - default 1000 - type Long</li>
+     * <li>jbpm.audit.batch.max.attempts - number of times a batch is written before its events are given up on - default 0, retry until written - type Integer</li>
+     * </ul>
+     * @param type - type of the AuditLoger to create (JPA, JMS or JPA_BATCH)
      * @param ksession - ksession that the logger will be attached to
      * @param properties - optional properties for the type of logger to initialize it
      * @return new instance of AbstractAuditLogger
@@ -85,6 +100,14 @@ public class AuditLoggerFactory {
                     throw new RuntimeException("Error when looking up ConnectionFactory/Queue", e);
                 }
                 break;
+            case JPA_BATCH:
+                logger = new BatchingJPAAuditLogger(ksession, 
+                        getInt(properties, "jbpm.audit.batch.size", DEFAULT_BATCH_SIZE), 
+                        getInt(properties, "jbpm.audit.batch.buffer.size", DEFAULT_BUFFER_SIZE), 
+                        getLong(properties, "jbpm.audit.batch.flush.interval", DEFAULT_FLUSH_INTERVAL));
+                ((BatchingJPAAuditLogger) logger).setMaxAttempts(getInt(properties, "jbpm.audit.batch.max.attempts", 
+                        BatchingJPAAuditLogger.UNLIMITED_ATTEMPTS));
+                break;
             default:
                 break;
         }
@@ -103,6 +126,31 @@ public class AuditLoggerFactory {
         return new JPAWorkingMemoryDbLogger(emf);
     }
     
+    /**
+     * Creates new instance of batching JPA audit logger with given EntityManagerFactory.
+     * Supported parameters are as follows:
+     * <ul>
+     * <li>jbpm.audit.batch.size - number of events written in one batch - default 100 - type Integer</li>
+     * <li>jbpm.audit.batch.buffer.size - number of events buffered before the session blocks - default 10000 - type Integer</li>
+     * <li>jbpm.audit.batch.flush.interval - maximum time in milliseconds events are buffered - default 1000 - type Long</li>
+     * <li>jbpm.audit.batch.max.attempts - number of times a batch is written before its events are given up on - default 0, retry until written - type Integer</li>
+     * </ul>
+     * NOTE: this will build the logger but it is not registered directly on a session son once received needs to be 
+     * registered as event listener. As it is not bound to a session, events are written as they are generated 
+     * instead of after the engine transaction is committed
+     * @param emf EntityManagerFactory used to provide JPA entity manager instances for every batch.
+     * @param properties - optional properties for the logger
+     * @return new instance of batching JPA audit logger
+     */
+    public static AbstractAuditLogger newJPABatchInstance(EntityManagerFactory emf, Map<String, Object> properties) {
+        BatchingJPAAuditLogger logger = new BatchingJPAAuditLogger(emf, 
+                getInt(properties, "jbpm.audit.batch.size", DEFAULT_BATCH_SIZE), 
+                getInt(properties, "jbpm.audit.batch.buffer.size", DEFAULT_BUFFER_SIZE), 
+                getLong(properties, "jbpm.audit.batch.flush.interval", DEFAULT_FLUSH_INTERVAL));
+        logger.setMaxAttempts(getInt(properties, "jbpm.audit.batch.max.attempts", BatchingJPAAuditLogger.UNLIMITED_ATTEMPTS));
+        return logger;
+    }
+    
     /**
      * Creates new instance of JMS audit logger based on given parameters.
      * Supported parameters are as follows:
@@ -172,4 +220,18 @@ public class AuditLoggerFactory {
         return logger;
     }
     
+    private static int getInt(Map<String, Object> properties, String name, int defaultValue) {
+        if (properties == null || properties.get(name) == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(properties.get(name).toString());
+    }
+    
+    private static long getLong(Map<String, Object> properties, String name, long defaultValue) {
+        if (properties == null || properties.get(name) == null) {
+            return defaultValue;
+        }
+        return Long.parseLong(properties.get(name).toString());
+    }
+    
 }
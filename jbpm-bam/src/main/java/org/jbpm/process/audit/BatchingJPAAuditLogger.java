@@ -0,0 +1,539 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.UserTransaction;
+
+import org.drools.persistence.TransactionManager;
+import org.drools.persistence.TransactionSynchronization;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.event.process.ProcessVariableChangedEvent;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous audit logger that buffers audit events in memory and writes them to the
+ * database in batches from a background writer thread, instead of persisting every event
+ * on its own as {@link JPAWorkingMemoryDbLogger} does.
+ * </p>
+ * Events generated inside an engine transaction are kept until that transaction completes:
+ * they are handed to the writer (and a flush is requested) once it is committed and dropped
+ * when it is rolled back. Events generated outside of a transaction are handed over directly.
+ * </p>
+ * A logger writes a batch as soon as <code>batchSize</code> events are buffered, when
+ * <code>flushInterval</code> milliseconds have passed since the oldest buffered event or
+ * when a transaction completes. Every batch is written in a single transaction with one
+ * entity manager, so the inserts are sent as JDBC batches when <code>hibernate.jdbc.batch_size</code>
+ * is set on the persistence unit. The buffer is bounded by <code>bufferSize</code>: when it is full
+ * the engine thread blocks until the writer caught up. Events are written in the order they
+ * were handed over. A batch that failed is retried with new ids, waiting longer after every attempt.
+ * By default it is retried until it is written, so while the database is unavailable the buffer
+ * fills up and the engine threads block instead of losing events. When <code>maxAttempts</code> is set,
+ * a batch that failed that many times is given to the {@link DeadLetterHandler} instead, which by
+ * default logs the events.
+ * </p>
+ * All loggers share one writer thread, which only runs while some logger has buffered events,
+ * so a logger that is not disposed when its session is does not hold on to a thread.
+ * {@link #dispose()} writes the remaining events.
+ */
+public class BatchingJPAAuditLogger extends AbstractAuditLogger {
+
+    private static Logger logger = LoggerFactory.getLogger(BatchingJPAAuditLogger.class);
+
+    /**
+     * Value of <code>maxAttempts</code> to retry a batch until it is written.
+     */
+    public static final int UNLIMITED_ATTEMPTS = 0;
+
+    private static final long RETRY_INTERVAL = 1000;
+    private static final long MAX_RETRY_INTERVAL = 30000;
+
+    private static final SharedWriter sharedWriter = new SharedWriter();
+
+    private EntityManagerFactory emf;
+    private boolean isJTA = true;
+
+    private final int batchSize;
+    private final long flushInterval;
+    private final BlockingQueue<AuditEvent> buffer;
+    private int maxAttempts = UNLIMITED_ATTEMPTS;
+    private DeadLetterHandler deadLetterHandler = new LoggingDeadLetterHandler();
+
+    private final Object lock = new Object();
+    private long enqueued;
+    private long written;
+    private boolean flushRequested;
+    private volatile boolean disposed;
+
+    // only accessed by the writer thread
+    private final List<AuditEvent> batch = new ArrayList<AuditEvent>();
+    private int attempts;
+    private long nextAttempt;
+    private long oldest;
+
+    private List<AuditEvent> pending;
+
+    public BatchingJPAAuditLogger(KieSession session, int batchSize, int bufferSize, long flushInterval) {
+        super(session);
+        Boolean bool = (Boolean) env.get("IS_JTA_TRANSACTION");
+        if (bool != null) {
+            isJTA = bool.booleanValue();
+        }
+        this.emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        if (emf == null) {
+            throw new IllegalArgumentException("No EntityManagerFactory found in the environment of the session");
+        }
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.buffer = new ArrayBlockingQueue<AuditEvent>(bufferSize);
+        session.addEventListener(this);
+    }
+
+    public BatchingJPAAuditLogger(EntityManagerFactory emf, int batchSize, int bufferSize, long flushInterval) {
+        this.emf = emf;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.buffer = new ArrayBlockingQueue<AuditEvent>(bufferSize);
+    }
+
+    /**
+     * Receives the events of batches that could not be written after all attempts.
+     */
+    public interface DeadLetterHandler {
+
+        void deadLetter(List<Object> logs, Exception cause);
+
+    }
+
+    /**
+     * @param maxAttempts number of attempts after which a batch is given to the {@link DeadLetterHandler},
+     * or {@link #UNLIMITED_ATTEMPTS} to retry it until it is written
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 0) {
+            throw new IllegalArgumentException("Invalid number of attempts: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setDeadLetterHandler(DeadLetterHandler deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    @Override
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event);
+        add(BEFORE_NODE_ENTER_EVENT_TYPE, log);
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event, null);
+        add(AFTER_NODE_LEFT_EVENT_TYPE, log);
+    }
+
+    @Override
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+        VariableInstanceLog log = (VariableInstanceLog) builder.buildEvent(event);
+        add(AFTER_VAR_CHANGE_EVENT_TYPE, log);
+    }
+
+    @Override
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event);
+        add(BEFORE_START_EVENT_TYPE, log);
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event, null);
+        add(AFTER_COMPLETE_EVENT_TYPE, log);
+    }
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+    }
+
+    @Override
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+    }
+
+    @Override
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+    }
+
+    @Override
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+    }
+
+    /**
+     * Blocks until all events handed over to the writer so far have been written
+     * or given to the {@link DeadLetterHandler}. With unlimited attempts this waits
+     * as long as the database is unavailable.
+     */
+    public void flush() {
+        synchronized (lock) {
+            long target = enqueued;
+            flushRequested = true;
+            sharedWriter.wakeUp();
+            while (written < target) {
+                try {
+                    lock.wait(flushInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining events, events handed over afterwards are written without delay.
+     */
+    public void dispose() {
+        disposed = true;
+        flush();
+    }
+
+    protected void add(int type, Object log) {
+        AuditEvent event = new AuditEvent(type, log);
+        TransactionManager tm = getTransactionManager();
+        if (tm != null && tm.getStatus() == TransactionManager.STATUS_ACTIVE) {
+            synchronized (this) {
+                if (pending == null) {
+                    pending = new ArrayList<AuditEvent>();
+                    tm.registerTransactionSynchronization(new FlushOnCompletion());
+                }
+                pending.add(event);
+            }
+        } else {
+            enqueue(event);
+        }
+    }
+
+    private TransactionManager getTransactionManager() {
+        if (env == null) {
+            return null;
+        }
+        Object tm = env.get(EnvironmentName.TRANSACTION_MANAGER);
+        return tm instanceof TransactionManager ? (TransactionManager) tm : null;
+    }
+
+    private void enqueue(AuditEvent event) {
+        try {
+            // blocks while the buffer is full
+            buffer.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for space in the audit log buffer", e);
+        }
+        synchronized (lock) {
+            enqueued++;
+        }
+        // registered after the event is buffered, so the writer cannot miss it
+        sharedWriter.register(this);
+        if (buffer.size() >= batchSize) {
+            sharedWriter.wakeUp();
+        }
+    }
+
+    private void requestFlush() {
+        synchronized (lock) {
+            flushRequested = true;
+        }
+        sharedWriter.wakeUp();
+    }
+
+    /**
+     * Called by the writer thread: writes or retries a batch if one is due.
+     * @return the time in milliseconds until this logger has to be looked at again
+     */
+    private long writeIfDue(long now) {
+        if (batch.isEmpty()) {
+            if (buffer.isEmpty()) {
+                oldest = 0;
+                return Long.MAX_VALUE;
+            }
+            if (oldest == 0) {
+                oldest = now;
+            }
+            boolean requested;
+            synchronized (lock) {
+                requested = flushRequested;
+                flushRequested = false;
+            }
+            long due = oldest + flushInterval;
+            if (!requested && !disposed && buffer.size() < batchSize && now < due) {
+                return due - now;
+            }
+            buffer.drainTo(batch, batchSize);
+            oldest = buffer.isEmpty() ? 0 : now;
+            attempts = 0;
+        } else if (now < nextAttempt) {
+            return nextAttempt - now;
+        }
+        try {
+            attempts++;
+            write(batch);
+        } catch (RuntimeException e) {
+            if (maxAttempts == UNLIMITED_ATTEMPTS || attempts < maxAttempts) {
+                long retryInterval = Math.min(RETRY_INTERVAL << Math.min(attempts - 1, 5), MAX_RETRY_INTERVAL);
+                logger.warn("Unable to write {} audit events (attempt {}), retrying in {} ms: {}",
+                        new Object[] { batch.size(), attempts, retryInterval, e.getMessage() });
+                // the rolled back transaction assigned ids that were not stored
+                for (AuditEvent event: batch) {
+                    resetId(event.log);
+                }
+                nextAttempt = now + retryInterval;
+                return retryInterval;
+            }
+            List<Object> logs = new ArrayList<Object>(batch.size());
+            for (AuditEvent event: batch) {
+                logs.add(event.log);
+            }
+            try {
+                deadLetterHandler.deadLetter(logs, e);
+            } catch (RuntimeException de) {
+                logger.error("Unable to hand over " + logs.size() + " audit events that could not be written", de);
+            }
+        }
+        synchronized (lock) {
+            written += batch.size();
+            lock.notifyAll();
+        }
+        batch.clear();
+        return buffer.isEmpty() ? Long.MAX_VALUE : 0;
+    }
+
+    private boolean isIdle() {
+        return batch.isEmpty() && buffer.isEmpty();
+    }
+
+    private static void resetId(Object log) {
+        if (log instanceof ProcessInstanceLog) {
+            ((ProcessInstanceLog) log).setId(0);
+        } else if (log instanceof NodeInstanceLog) {
+            ((NodeInstanceLog) log).setId(0);
+        } else if (log instanceof VariableInstanceLog) {
+            ((VariableInstanceLog) log).setId(0);
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        EntityManager em = emf.createEntityManager();
+        UserTransaction ut = null;
+        try {
+            if (isJTA) {
+                ut = JPAWorkingMemoryDbLogger.findUserTransaction();
+                if (ut == null) {
+                    throw new IllegalStateException("No user transaction found to write audit logs");
+                }
+                ut.begin();
+                em.joinTransaction();
+            } else {
+                em.getTransaction().begin();
+            }
+            // process instance logs started in this batch, so completion does not need a query
+            Map<Long, ProcessInstanceLog> started = new HashMap<Long, ProcessInstanceLog>();
+            for (AuditEvent event: batch) {
+                switch (event.type) {
+                case AFTER_COMPLETE_EVENT_TYPE:
+                    complete(em, started, (ProcessInstanceLog) event.log);
+                    break;
+                case BEFORE_START_EVENT_TYPE:
+                    ProcessInstanceLog processInstanceLog = (ProcessInstanceLog) event.log;
+                    started.put(processInstanceLog.getProcessInstanceId(), processInstanceLog);
+                    em.persist(processInstanceLog);
+                    break;
+                default:
+                    em.persist(event.log);
+                    break;
+                }
+            }
+            em.flush();
+            if (ut != null) {
+                ut.commit();
+            } else {
+                em.getTransaction().commit();
+            }
+        } catch (Exception e) {
+            try {
+                if (ut != null) {
+                    ut.rollback();
+                } else if (!isJTA && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } catch (Exception re) {
+                logger.warn("Unable to roll back audit log transaction", re);
+            }
+            throw new RuntimeException("Unable to write audit log batch", e);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void complete(EntityManager em, Map<Long, ProcessInstanceLog> started, ProcessInstanceLog completed) {
+        ProcessInstanceLog log = started.get(completed.getProcessInstanceId());
+        if (log == null) {
+            List<ProcessInstanceLog> result = em.createQuery(
+                "from ProcessInstanceLog as log where log.processInstanceId = ? and log.end is null")
+                    .setParameter(1, completed.getProcessInstanceId()).getResultList();
+            if (result == null || result.isEmpty()) {
+                return;
+            }
+            log = result.get(result.size() - 1);
+        }
+        log.setOutcome(completed.getOutcome());
+        log.setStatus(completed.getStatus());
+        log.setEnd(completed.getEnd());
+        log.setDuration(completed.getDuration());
+    }
+
+    /**
+     * Single writer thread for all loggers. It keeps a logger registered while the logger has
+     * buffered events and stops once no logger has any, so a new one is started on demand.
+     */
+    private static class SharedWriter implements Runnable {
+
+        private static final long IDLE_WAIT = 1000;
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+        private final Set<BatchingJPAAuditLogger> loggers = new LinkedHashSet<BatchingJPAAuditLogger>();
+        private Thread thread;
+        private boolean wokenUp;
+
+        synchronized void register(BatchingJPAAuditLogger auditLogger) {
+            loggers.add(auditLogger);
+            if (thread == null) {
+                thread = new Thread(this, "jbpm-audit-writer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        synchronized void wakeUp() {
+            wokenUp = true;
+            notifyAll();
+        }
+
+        public void run() {
+            while (true) {
+                List<BatchingJPAAuditLogger> current;
+                synchronized (this) {
+                    if (loggers.isEmpty()) {
+                        thread = null;
+                        return;
+                    }
+                    current = new ArrayList<BatchingJPAAuditLogger>(loggers);
+                }
+                long timeout = IDLE_WAIT;
+                for (BatchingJPAAuditLogger auditLogger: current) {
+                    try {
+                        timeout = Math.min(timeout, auditLogger.writeIfDue(System.currentTimeMillis()));
+                    } catch (Throwable t) {
+                        logger.error("Unexpected error while writing audit events", t);
+                    }
+                }
+                synchronized (this) {
+                    for (Iterator<BatchingJPAAuditLogger> iterator = loggers.iterator(); iterator.hasNext(); ) {
+                        // loggers register again once they buffer a new event
+                        if (iterator.next().isIdle()) {
+                            iterator.remove();
+                        }
+                    }
+                    if (timeout > 0 && !wokenUp && !loggers.isEmpty()) {
+                        try {
+                            wait(timeout);
+                        } catch (InterruptedException e) {
+                            // look at the loggers again
+                        }
+                    }
+                    wokenUp = false;
+                }
+            }
+        }
+
+    }
+
+    private static class LoggingDeadLetterHandler implements DeadLetterHandler {
+
+        public void deadLetter(List<Object> logs, Exception cause) {
+            logger.error("Dropping " + logs.size() + " audit events that could not be written", cause);
+            for (Object log: logs) {
+                logger.error("Dropped audit event: {}", log);
+            }
+        }
+
+    }
+
+    private class FlushOnCompletion implements TransactionSynchronization {
+
+        public void beforeCompletion() {
+        }
+
+        public void afterCompletion(int status) {
+            List<AuditEvent> events;
+            synchronized (BatchingJPAAuditLogger.this) {
+                events = pending;
+                pending = null;
+            }
+            if (status != TransactionManager.STATUS_COMMITTED || events == null) {
+                return;
+            }
+            for (AuditEvent event: events) {
+                enqueue(event);
+            }
+            requestFlush();
+        }
+
+    }
+
+    private static class AuditEvent {
+
+        private final int type;
+        private final Object log;
+
+        AuditEvent(int type, Object log) {
+            this.type = type;
+            this.log = log;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable histogram of durations in milliseconds, used to approximate percentiles.
+ * </p>
+ * Durations below 16 ms have their own bucket, larger ones are counted in 8 buckets per power of two,
+ * so a percentile is off by at most 12.5% of its value whatever the range of durations. Only
+ * non empty buckets are kept, histograms of the same values can be merged by adding their
+ * buckets and are stored as text by {@link #encode()}.
+ */
+public class DurationHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private final TreeMap<Integer, Long> buckets = new TreeMap<Integer, Long>();
+    private long count;
+
+    public void record(long duration) {
+        add(bucketOf(Math.max(duration, 0)), 1);
+    }
+
+    public void merge(DurationHistogram other) {
+        for (Map.Entry<Integer, Long> bucket : other.buckets.entrySet()) {
+            add(bucket.getKey(), bucket.getValue());
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the given percentile, or 0 when empty
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            seen += bucket.getValue();
+            if (seen >= Math.max(rank, 1)) {
+                return upperBoundOf(bucket.getKey());
+            }
+        }
+        return upperBoundOf(buckets.lastKey());
+    }
+
+    /**
+     * @return the non empty buckets as <code>index:count</code> pairs separated by commas
+     */
+    public String encode() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(bucket.getKey()).append(':').append(bucket.getValue());
+        }
+        return result.toString();
+    }
+
+    public static DurationHistogram decode(String encoded) {
+        DurationHistogram histogram = new DurationHistogram();
+        if (encoded != null && encoded.length() > 0) {
+            for (String bucket : encoded.split(",")) {
+                int separator = bucket.indexOf(':');
+                histogram.add(Integer.parseInt(bucket.substring(0, separator)),
+                        Long.parseLong(bucket.substring(separator + 1)));
+            }
+        }
+        return histogram;
+    }
+
+    private void add(int index, long bucketCount) {
+        Long current = buckets.get(index);
+        buckets.put(index, current == null ? bucketCount : current + bucketCount);
+        count += bucketCount;
+    }
+
+    static int bucketOf(long duration) {
+        if (duration < LINEAR_BUCKETS) {
+            return (int) duration;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(duration);
+        int subBucket = (int) (duration >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return LINEAR_BUCKETS + ((exponent - 4) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = ((index - LINEAR_BUCKETS) >> SUB_BUCKET_BITS) + 4;
+        long subBucket = (index - LINEAR_BUCKETS) & ((1 << SUB_BUCKET_BITS) - 1);
+        long lowerBound = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
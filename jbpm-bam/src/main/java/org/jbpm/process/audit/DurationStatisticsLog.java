@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Duration statistics of the process instances (when <code>nodeId</code> is <code>null</code>) or the
+ * node instances of a process that completed within one time bucket, maintained by
+ * {@link DurationStatisticsLogger}.
+ */
+@Entity
+@org.hibernate.annotations.Table(appliesTo="DurationStatisticsLog", indexes={
+    @Index(name="IDX_DurStatLog_ProcId_Bucket", columnNames={"processId", "nodeId", "bucket_start"})})
+@SequenceGenerator(name="durationStatisticsLogIdSeq", sequenceName="DURATION_STAT_LOG_ID_SEQ", allocationSize=1)
+public class DurationStatisticsLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator="durationStatisticsLogIdSeq")
+    private long id;
+
+    private String processId;
+    @Column(nullable=true)
+    private String nodeId;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "bucket_start")
+    private Date bucketStart;
+
+    private long count;
+    private long totalDuration;
+    private long minDuration;
+    private long maxDuration;
+    @Lob
+    private String histogram;
+
+    @Transient
+    private DurationHistogram durations;
+
+    DurationStatisticsLog() {
+    }
+
+    public DurationStatisticsLog(String processId, String nodeId, Date bucketStart) {
+        this.processId = processId;
+        this.nodeId = nodeId;
+        this.bucketStart = bucketStart;
+        this.minDuration = Long.MAX_VALUE;
+    }
+
+    public void record(long duration) {
+        count++;
+        totalDuration += duration;
+        minDuration = Math.min(minDuration, duration);
+        maxDuration = Math.max(maxDuration, duration);
+        getDurations().record(duration);
+        histogram = null;
+    }
+
+    public void merge(DurationStatisticsLog other) {
+        count += other.count;
+        totalDuration += other.totalDuration;
+        minDuration = Math.min(minDuration, other.minDuration);
+        maxDuration = Math.max(maxDuration, other.maxDuration);
+        getDurations().merge(other.getDurations());
+        histogram = null;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getProcessId() {
+        return processId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    public long getMinDuration() {
+        return count == 0 ? 0 : minDuration;
+    }
+
+    public long getMaxDuration() {
+        return maxDuration;
+    }
+
+    public double getAverageDuration() {
+        return count == 0 ? 0 : (double) totalDuration / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the approximate duration below which the given percentage of durations are
+     */
+    public long getPercentile(double percentile) {
+        return Math.min(getDurations().getPercentile(percentile), maxDuration);
+    }
+
+    public DurationHistogram getDurations() {
+        if (durations == null) {
+            durations = DurationHistogram.decode(histogram);
+        }
+        return durations;
+    }
+
+    public String getHistogram() {
+        if (histogram == null && durations != null) {
+            histogram = durations.encode();
+        }
+        return histogram;
+    }
+
+    void encodeHistogram() {
+        getHistogram();
+    }
+
+    public String toString() {
+        return "DurationStatisticsLog[processId=" + processId + ";nodeId=" + nodeId + ";bucketStart=" + bucketStart
+            + ";count=" + count + ";average=" + getAverageDuration() + ";min=" + getMinDuration() + ";max=" + maxDuration + "]";
+    }
+}
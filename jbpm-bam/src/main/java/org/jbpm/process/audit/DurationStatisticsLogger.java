@@ -0,0 +1,299 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.transaction.UserTransaction;
+
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.event.process.ProcessVariableChangedEvent;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit logger that maintains duration statistics per process and per node instead of
+ * logging every event: count, total, minimum, maximum and a {@link DurationHistogram} for
+ * percentiles are aggregated in memory per process id, node id and time bucket and flushed to
+ * {@link DurationStatisticsLog} rows every <code>flushInterval</code> milliseconds. Reports
+ * then read one row per bucket instead of scanning the process and node instance logs.
+ * </p>
+ * Durations are measured between the start and completion events seen by this logger, so process
+ * and node instances started before it was registered (e.g. by another session or before a
+ * restart) are not counted. Events are aggregated when they are generated, whether the engine
+ * transaction commits or not, which makes the statistics approximate. Rows of a bucket are merged
+ * with the aggregates of later flushes; several loggers writing the same bucket concurrently may
+ * each create a row, which readers merge with {@link DurationStatisticsLog#merge(DurationStatisticsLog)}.
+ * </p>
+ * {@link #dispose()} must be called to write the remaining aggregates and stop the flushing thread.
+ */
+public class DurationStatisticsLogger extends AbstractAuditLogger {
+
+    private static Logger logger = LoggerFactory.getLogger(DurationStatisticsLogger.class);
+
+    private static final AtomicInteger flusherCount = new AtomicInteger();
+
+    private EntityManagerFactory emf;
+    private boolean isJTA = true;
+
+    private final long bucketSize;
+    private final ScheduledExecutorService flusher;
+
+    private final ConcurrentMap<Long, Long> processStarts = new ConcurrentHashMap<Long, Long>();
+    // node start times per process instance, dropped with the process instance so aborted nodes do not leak
+    private final ConcurrentMap<Long, ConcurrentMap<String, Long>> nodeStarts = new ConcurrentHashMap<Long, ConcurrentMap<String, Long>>();
+    private Map<String, DurationStatisticsLog> aggregates = new HashMap<String, DurationStatisticsLog>();
+    private final Object flushLock = new Object();
+
+    public DurationStatisticsLogger(KieSession session, long bucketSize, long flushInterval) {
+        super(session);
+        Boolean bool = (Boolean) env.get("IS_JTA_TRANSACTION");
+        if (bool != null) {
+            isJTA = bool.booleanValue();
+        }
+        this.emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        if (emf == null) {
+            throw new IllegalArgumentException("No EntityManagerFactory found in the environment of the session");
+        }
+        this.bucketSize = bucketSize;
+        this.flusher = startFlusher(flushInterval);
+        session.addEventListener(this);
+    }
+
+    public DurationStatisticsLogger(EntityManagerFactory emf, long bucketSize, long flushInterval) {
+        this.emf = emf;
+        this.bucketSize = bucketSize;
+        this.flusher = startFlusher(flushInterval);
+    }
+
+    @Override
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event);
+        processStarts.put(log.getProcessInstanceId(), log.getStart().getTime());
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        ProcessInstanceLog log = (ProcessInstanceLog) builder.buildEvent(event, null);
+        Long start = processStarts.remove(log.getProcessInstanceId());
+        nodeStarts.remove(log.getProcessInstanceId());
+        if (start != null) {
+            record(log.getProcessId(), null, log.getEnd().getTime(), log.getEnd().getTime() - start);
+        }
+    }
+
+    @Override
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event);
+        ConcurrentMap<String, Long> starts = nodeStarts.get(log.getProcessInstanceId());
+        if (starts == null) {
+            starts = new ConcurrentHashMap<String, Long>();
+            ConcurrentMap<String, Long> existing = nodeStarts.putIfAbsent(log.getProcessInstanceId(), starts);
+            if (existing != null) {
+                starts = existing;
+            }
+        }
+        starts.put(log.getNodeInstanceId(), log.getDate().getTime());
+    }
+
+    @Override
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+        // after events of nodes are only fired once the rest of the process has run synchronously
+        NodeInstanceLog log = (NodeInstanceLog) builder.buildEvent(event, null);
+        ConcurrentMap<String, Long> starts = nodeStarts.get(log.getProcessInstanceId());
+        Long start = starts == null ? null : starts.remove(log.getNodeInstanceId());
+        if (start != null) {
+            record(log.getProcessId(), log.getNodeId(), log.getDate().getTime(), log.getDate().getTime() - start);
+        }
+    }
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+    }
+
+    @Override
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+    @Override
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+    }
+
+    @Override
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+    }
+
+    /**
+     * Writes the aggregates collected so far; aggregates that could not be written are kept for the next flush.
+     */
+    public void flush() {
+        // one write at a time, so a bucket gets a single row per logger
+        synchronized (flushLock) {
+            Map<String, DurationStatisticsLog> batch;
+            synchronized (this) {
+                if (aggregates.isEmpty()) {
+                    return;
+                }
+                batch = aggregates;
+                aggregates = new HashMap<String, DurationStatisticsLog>();
+            }
+            try {
+                write(batch.values());
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    for (Map.Entry<String, DurationStatisticsLog> aggregate : batch.entrySet()) {
+                        DurationStatisticsLog current = aggregates.get(aggregate.getKey());
+                        if (current != null) {
+                            aggregate.getValue().merge(current);
+                        }
+                        aggregates.put(aggregate.getKey(), aggregate.getValue());
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining aggregates and stops the flushing thread.
+     */
+    public void dispose() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    protected synchronized void record(String processId, String nodeId, long end, long duration) {
+        Date bucketStart = new Date(end - end % bucketSize);
+        String key = processId + "#" + nodeId + "#" + bucketStart.getTime();
+        DurationStatisticsLog aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            aggregate = new DurationStatisticsLog(processId, nodeId, bucketStart);
+            aggregates.put(key, aggregate);
+        }
+        aggregate.record(duration);
+    }
+
+    private ScheduledExecutorService startFlusher(long flushInterval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jbpm-statistics-flusher-" + flusherCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.warn("Unable to write duration statistics, retrying on next flush", e);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(Iterable<DurationStatisticsLog> batch) {
+        EntityManager em = emf.createEntityManager();
+        UserTransaction ut = null;
+        try {
+            if (isJTA) {
+                ut = JPAWorkingMemoryDbLogger.findUserTransaction();
+                if (ut == null) {
+                    throw new IllegalStateException("No user transaction found to write duration statistics");
+                }
+                ut.begin();
+                em.joinTransaction();
+            } else {
+                em.getTransaction().begin();
+            }
+            for (DurationStatisticsLog aggregate : batch) {
+                Query query = em.createQuery(
+                    "FROM DurationStatisticsLog s WHERE s.processId = :processId AND s.bucketStart = :bucketStart AND "
+                        + (aggregate.getNodeId() == null ? "s.nodeId is null" : "s.nodeId = :nodeId"))
+                    .setParameter("processId", aggregate.getProcessId())
+                    .setParameter("bucketStart", aggregate.getBucketStart())
+                    .setMaxResults(1);
+                if (aggregate.getNodeId() != null) {
+                    query.setParameter("nodeId", aggregate.getNodeId());
+                }
+                List<DurationStatisticsLog> existing = query.getResultList();
+                DurationStatisticsLog log;
+                if (existing.isEmpty()) {
+                    // the aggregate itself stays transient, so it can be merged again when this write fails
+                    log = new DurationStatisticsLog(aggregate.getProcessId(), aggregate.getNodeId(), aggregate.getBucketStart());
+                    em.persist(log);
+                } else {
+                    log = existing.get(0);
+                }
+                log.merge(aggregate);
+                log.encodeHistogram();
+            }
+            em.flush();
+            if (ut != null) {
+                ut.commit();
+            } else {
+                em.getTransaction().commit();
+            }
+        } catch (Exception e) {
+            try {
+                if (ut != null) {
+                    ut.rollback();
+                } else if (!isJTA && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } catch (Exception re) {
+                logger.warn("Unable to roll back duration statistics transaction", re);
+            }
+            throw new RuntimeException("Unable to write duration statistics", e);
+        } finally {
+            em.close();
+        }
+    }
+}
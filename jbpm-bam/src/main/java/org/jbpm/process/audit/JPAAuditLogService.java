@@ -0,0 +1,350 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+
+/**
+ * Instance based query service for the audit log entities, meant for large log tables:
+ * instead of loading whole tables like the finders of {@link JPAProcessInstanceDbLog}, results
+ * are returned in pages or iterated in batches.
+ * </p>
+ * Pages use keyset pagination: results are ordered by id and the next page starts after the
+ * last id of the previous one, so deep pages cost the same as the first one (unlike offsets).
+ * Every query uses its own entity manager, which is closed before returning; the iterables
+ * returned by the <code>iterate</code> methods load one batch at a time, so memory stays bounded
+ * by the batch size whatever the number of results.
+ */
+public class JPAAuditLogService {
+
+    private final EntityManagerFactory emf;
+
+    public JPAAuditLogService(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public JPAAuditLogService(Environment env) {
+        this((EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY));
+    }
+
+    /**
+     * Filter on process instance logs, criteria that are not set are ignored.
+     */
+    public static class ProcessInstanceFilter {
+
+        private String processId;
+        private Integer status;
+        private Date startFrom;
+        private Date startTo;
+        private Date endFrom;
+        private Date endTo;
+        private boolean activeOnly;
+
+        public ProcessInstanceFilter processId(String processId) {
+            this.processId = processId;
+            return this;
+        }
+
+        public ProcessInstanceFilter status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        /**
+         * Only process instances started in [from, to), either bound may be <code>null</code>.
+         */
+        public ProcessInstanceFilter startedBetween(Date from, Date to) {
+            this.startFrom = from;
+            this.startTo = to;
+            return this;
+        }
+
+        /**
+         * Only process instances ended in [from, to), either bound may be <code>null</code>.
+         */
+        public ProcessInstanceFilter endedBetween(Date from, Date to) {
+            this.endFrom = from;
+            this.endTo = to;
+            return this;
+        }
+
+        /**
+         * Only process instances that have not ended yet.
+         */
+        public ProcessInstanceFilter active() {
+            this.activeOnly = true;
+            return this;
+        }
+    }
+
+    /**
+     * @return at most <code>maxResults</code> process instance logs matching the filter with an id greater
+     * than <code>afterId</code>, ordered by id; use 0 for the first page and the id of the last result for the next ones
+     */
+    @SuppressWarnings("unchecked")
+    public List<ProcessInstanceLog> findProcessInstances(ProcessInstanceFilter filter, long afterId, int maxResults) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        String conditions = buildConditions(filter, parameters);
+        EntityManager em = emf.createEntityManager();
+        try {
+            Query query = em.createQuery("FROM ProcessInstanceLog p WHERE p.id > :afterId"
+                    + (conditions.length() == 0 ? "" : " AND " + conditions) + " ORDER BY p.id")
+                .setParameter("afterId", afterId)
+                .setMaxResults(maxResults);
+            setParameters(query, parameters);
+            return query.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public long countProcessInstances(ProcessInstanceFilter filter) {
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        String conditions = buildConditions(filter, parameters);
+        EntityManager em = emf.createEntityManager();
+        try {
+            Query query = em.createQuery("SELECT count(p) FROM ProcessInstanceLog p"
+                    + (conditions.length() == 0 ? "" : " WHERE " + conditions));
+            setParameters(query, parameters);
+            return ((Number) query.getSingleResult()).longValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Iterable<ProcessInstanceLog> iterateProcessInstances(final ProcessInstanceFilter filter, final int batchSize) {
+        return new Iterable<ProcessInstanceLog>() {
+            public Iterator<ProcessInstanceLog> iterator() {
+                return new KeysetIterator<ProcessInstanceLog>(batchSize) {
+                    protected List<ProcessInstanceLog> fetch(long afterId, int maxResults) {
+                        return findProcessInstances(filter, afterId, maxResults);
+                    }
+
+                    protected long getId(ProcessInstanceLog log) {
+                        return log.getId();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return at most <code>maxResults</code> node instance logs of the process instance with an id greater
+     * than <code>afterId</code>, ordered by id (which follows the order they were logged in)
+     */
+    @SuppressWarnings("unchecked")
+    public List<NodeInstanceLog> findNodeInstances(long processInstanceId, long afterId, int maxResults) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("FROM NodeInstanceLog n WHERE n.processInstanceId = :processInstanceId AND n.id > :afterId ORDER BY n.id")
+                .setParameter("processInstanceId", processInstanceId)
+                .setParameter("afterId", afterId)
+                .setMaxResults(maxResults).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Iterable<NodeInstanceLog> iterateNodeInstances(final long processInstanceId, final int batchSize) {
+        return new Iterable<NodeInstanceLog>() {
+            public Iterator<NodeInstanceLog> iterator() {
+                return new KeysetIterator<NodeInstanceLog>(batchSize) {
+                    protected List<NodeInstanceLog> fetch(long afterId, int maxResults) {
+                        return findNodeInstances(processInstanceId, afterId, maxResults);
+                    }
+
+                    protected long getId(NodeInstanceLog log) {
+                        return log.getId();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return at most <code>maxResults</code> variable instance logs of the process instance, of all its
+     * variables when <code>variableId</code> is <code>null</code>, with an id greater than <code>afterId</code>
+     * and ordered by id
+     */
+    @SuppressWarnings("unchecked")
+    public List<VariableInstanceLog> findVariableInstances(long processInstanceId, String variableId, long afterId, int maxResults) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Query query = em.createQuery("FROM VariableInstanceLog v WHERE v.processInstanceId = :processInstanceId AND v.id > :afterId"
+                    + (variableId == null ? "" : " AND v.variableId = :variableId") + " ORDER BY v.id")
+                .setParameter("processInstanceId", processInstanceId)
+                .setParameter("afterId", afterId)
+                .setMaxResults(maxResults);
+            if (variableId != null) {
+                query.setParameter("variableId", variableId);
+            }
+            return query.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public Iterable<VariableInstanceLog> iterateVariableInstances(final long processInstanceId, final String variableId, final int batchSize) {
+        return new Iterable<VariableInstanceLog>() {
+            public Iterator<VariableInstanceLog> iterator() {
+                return new KeysetIterator<VariableInstanceLog>(batchSize) {
+                    protected List<VariableInstanceLog> fetch(long afterId, int maxResults) {
+                        return findVariableInstances(processInstanceId, variableId, afterId, maxResults);
+                    }
+
+                    protected long getId(VariableInstanceLog log) {
+                        return log.getId();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the duration statistics of the process (when <code>nodeId</code> is <code>null</code>) or of one of its
+     * nodes for the buckets starting in [from, to), ordered by bucket; rows written for the same bucket by several
+     * {@link DurationStatisticsLogger}s are merged
+     */
+    @SuppressWarnings("unchecked")
+    public List<DurationStatisticsLog> findDurationStatistics(String processId, String nodeId, Date from, Date to) {
+        EntityManager em = emf.createEntityManager();
+        List<DurationStatisticsLog> rows;
+        try {
+            Query query = em.createQuery("FROM DurationStatisticsLog s WHERE s.processId = :processId"
+                    + (nodeId == null ? " AND s.nodeId is null" : " AND s.nodeId = :nodeId")
+                    + " AND s.bucketStart >= :from AND s.bucketStart < :to ORDER BY s.bucketStart, s.id")
+                .setParameter("processId", processId)
+                .setParameter("from", from)
+                .setParameter("to", to);
+            if (nodeId != null) {
+                query.setParameter("nodeId", nodeId);
+            }
+            rows = query.getResultList();
+        } finally {
+            em.close();
+        }
+        List<DurationStatisticsLog> result = new ArrayList<DurationStatisticsLog>(rows.size());
+        DurationStatisticsLog last = null;
+        for (DurationStatisticsLog row : rows) {
+            if (last != null && last.getBucketStart().equals(row.getBucketStart())) {
+                last.merge(row);
+            } else {
+                last = row;
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private String buildConditions(ProcessInstanceFilter filter, Map<String, Object> parameters) {
+        List<String> conditions = new ArrayList<String>();
+        if (filter != null) {
+            addCondition(conditions, parameters, "p.processId = :processId", "processId", filter.processId);
+            addCondition(conditions, parameters, "p.status = :status", "status", filter.status);
+            addCondition(conditions, parameters, "p.start >= :startFrom", "startFrom", filter.startFrom);
+            addCondition(conditions, parameters, "p.start < :startTo", "startTo", filter.startTo);
+            addCondition(conditions, parameters, "p.end >= :endFrom", "endFrom", filter.endFrom);
+            addCondition(conditions, parameters, "p.end < :endTo", "endTo", filter.endTo);
+            if (filter.activeOnly) {
+                conditions.add("p.end is null");
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (String condition : conditions) {
+            if (result.length() > 0) {
+                result.append(" AND ");
+            }
+            result.append(condition);
+        }
+        return result.toString();
+    }
+
+    private void addCondition(List<String> conditions, Map<String, Object> parameters, String condition, String name, Object value) {
+        if (value != null) {
+            conditions.add(condition);
+            parameters.put(name, value);
+        }
+    }
+
+    private void setParameters(Query query, Map<String, Object> parameters) {
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        }
+    }
+
+    /**
+     * Iterates over all results by fetching one page after the other.
+     */
+    private abstract static class KeysetIterator<T> implements Iterator<T> {
+
+        private final int batchSize;
+        private List<T> batch;
+        private int position;
+        private long lastId = 0;
+        private boolean exhausted;
+
+        KeysetIterator(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size must be greater than 0");
+            }
+            this.batchSize = batchSize;
+        }
+
+        protected abstract List<T> fetch(long afterId, int maxResults);
+
+        protected abstract long getId(T result);
+
+        public boolean hasNext() {
+            if (batch != null && position < batch.size()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            batch = fetch(lastId, batchSize);
+            position = 0;
+            exhausted = batch.size() < batchSize;
+            return !batch.isEmpty();
+        }
+
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = batch.get(position++);
+            lastId = getId(result);
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -183,23 +183,14 @@ public class JPAProcessInstanceDbLog {
         return result;
     }
 
-    @SuppressWarnings("unchecked")
     public static void clear() {
         EntityManager em = getEntityManager();
         boolean newTx = joinTransaction(em);
         
-        List<ProcessInstanceLog> processInstances = em.createQuery("FROM ProcessInstanceLog").getResultList();
-        for (ProcessInstanceLog processInstance: processInstances) {
-            em.remove(processInstance);
-        }
-        List<NodeInstanceLog> nodeInstances = em.createQuery("FROM NodeInstanceLog").getResultList();
-        for (NodeInstanceLog nodeInstance: nodeInstances) {
-            em.remove(nodeInstance);
-        }
-        List<VariableInstanceLog> variableInstances = em.createQuery("FROM VariableInstanceLog").getResultList();
-        for (VariableInstanceLog variableInstance: variableInstances) {
-            em.remove(variableInstance);
-        }           
+        // bulk deletes, log entries are not loaded into the persistence context
+        em.createQuery("DELETE FROM NodeInstanceLog").executeUpdate();
+        em.createQuery("DELETE FROM VariableInstanceLog").executeUpdate();
+        em.createQuery("DELETE FROM ProcessInstanceLog").executeUpdate();
         closeEntityManager(em, newTx);
     }
 
@@ -28,9 +28,13 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
 import org.jbpm.process.audit.event.AuditEvent;
 
 @Entity
+@org.hibernate.annotations.Table(appliesTo="NodeInstanceLog", indexes={
+    @Index(name="IDX_NInstLog_PInstId_Date", columnNames={"processInstanceId", "log_date", "id"}),
+    @Index(name="IDX_NInstLog_PInstId_NodeId", columnNames={"processInstanceId", "nodeId"})})
 @SequenceGenerator(name="nodeInstanceLogIdSeq", sequenceName="NODE_INST_LOG_ID_SEQ", allocationSize=1)
 public class NodeInstanceLog implements Serializable, AuditEvent {
     
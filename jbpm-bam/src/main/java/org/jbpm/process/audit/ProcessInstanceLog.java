@@ -28,9 +28,16 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
 import org.jbpm.process.audit.event.AuditEvent;
 
 @Entity
+@org.hibernate.annotations.Table(appliesTo="ProcessInstanceLog", indexes={
+    @Index(name="IDX_PInstLog_PInstId", columnNames={"processInstanceId"}),
+    @Index(name="IDX_PInstLog_ProcId_Status", columnNames={"processId", "status"}),
+    @Index(name="IDX_PInstLog_Start", columnNames={"start_date"}),
+    @Index(name="IDX_PInstLog_End", columnNames={"end_date"}),
+    @Index(name="IDX_PInstLog_Parent", columnNames={"parentProcessInstanceId"})})
 @SequenceGenerator(name="processInstanceLogIdSeq", sequenceName="PROC_INST_LOG_ID_SEQ", allocationSize=1)
 public class ProcessInstanceLog implements Serializable, AuditEvent {
     
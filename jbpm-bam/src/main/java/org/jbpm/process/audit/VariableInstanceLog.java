@@ -28,9 +28,13 @@ import javax.persistence.SequenceGenerator;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
 import org.jbpm.process.audit.event.AuditEvent;
 
 @Entity
+@org.hibernate.annotations.Table(appliesTo="VariableInstanceLog", indexes={
+    @Index(name="IDX_VInstLog_PInstId_Date", columnNames={"processInstanceId", "log_date"}),
+    @Index(name="IDX_VInstLog_PInstId_VarId", columnNames={"processInstanceId", "variableId", "log_date"})})
 @SequenceGenerator(name="variableInstanceLogIdSeq", sequenceName="VAR_INST_LOG_ID_SEQ", allocationSize=1)
 public class VariableInstanceLog implements Serializable, AuditEvent {
     
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.drools.core.io.impl.ClassPathResource;
+import org.jbpm.process.audit.AuditLoggerFactory.Type;
+import org.jbpm.process.audit.AuditLogPurger.Archiver;
+import org.jbpm.process.audit.AuditLogPurger.ProgressListener;
+import org.jbpm.process.audit.AuditLogPurger.PurgeResult;
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class AuditLogPurgerTest {
+
+    private HashMap<String, Object> context;
+    private Environment env;
+    private StatefulKnowledgeSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KieSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+        session.addEventListener(AuditLoggerFactory.newInstance(Type.JPA, session, null));
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.dispose();
+        cleanUp(context);
+    }
+
+    @Test
+    public void testPurgeInBatches() {
+        for (int i = 0; i < 5; i++) {
+            session.startProcess("com.sample.ruleflow");
+        }
+        final List<Integer> progress = new ArrayList<Integer>();
+        PurgeResult result = new AuditLogPurger(env).purge(new Date(System.currentTimeMillis() + 1000), 2, null,
+            new ProgressListener() {
+                public void batchCompleted(PurgeResult total) {
+                    progress.add((int) total.getProcessInstanceLogs());
+                }
+            });
+        assertEquals(3, result.getBatches());
+        assertEquals(5, result.getProcessInstanceLogs());
+        assertTrue(result.getNodeInstanceLogs() > 0);
+        assertEquals(Arrays.asList(2, 4, 5), progress);
+        assertEquals(0, JPAProcessInstanceDbLog.findProcessInstances().size());
+    }
+
+    @Test
+    public void testOnlyOlderHistoryPurgedAndArchived() {
+        long oldId = session.startProcess("com.sample.ruleflow").getId();
+        Date cutoff = new Date(JPAProcessInstanceDbLog.findProcessInstance(oldId).getEnd().getTime() + 1);
+        long newId = oldId;
+        while (!JPAProcessInstanceDbLog.findProcessInstance(newId).getEnd().after(cutoff)) {
+            newId = session.startProcess("com.sample.ruleflow").getId();
+        }
+        final List<ProcessInstanceLog> archived = new ArrayList<ProcessInstanceLog>();
+        final List<NodeInstanceLog> archivedNodes = new ArrayList<NodeInstanceLog>();
+        int nodeInstances = JPAProcessInstanceDbLog.findNodeInstances(oldId).size();
+        new AuditLogPurger(env).purge(cutoff, 10, new Archiver() {
+            public void archive(List<ProcessInstanceLog> processInstances, List<NodeInstanceLog> nodeInstances,
+                    List<VariableInstanceLog> variableInstances) {
+                archived.addAll(processInstances);
+                archivedNodes.addAll(nodeInstances);
+            }
+        }, null);
+        assertTrue(archived.size() >= 1);
+        assertEquals(oldId, archived.get(0).getProcessInstanceId());
+        assertTrue(archivedNodes.size() >= nodeInstances);
+        assertNull(JPAProcessInstanceDbLog.findProcessInstance(oldId));
+        assertEquals(0, JPAProcessInstanceDbLog.findNodeInstances(oldId).size());
+        assertNotNull(JPAProcessInstanceDbLog.findProcessInstance(newId));
+        assertTrue(JPAProcessInstanceDbLog.findNodeInstances(newId).size() > 0);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.core.io.impl.ClassPathResource;
+import org.jbpm.process.audit.AuditLoggerFactory.Type;
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class BatchingJPAAuditLoggerTest {
+
+    private HashMap<String, Object> context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cleanUp(context);
+    }
+
+    @Test
+    public void testBatchedLogs() throws Exception {
+        KnowledgeBase kbase = createKnowledgeBase();
+        Environment env = createEnvironment(context);
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KieSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        StatefulKnowledgeSession session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+
+        Map<String, Object> loggerProperties = new HashMap<String, Object>();
+        // smaller than the number of events of one process instance
+        loggerProperties.put("jbpm.audit.batch.size", 4);
+        loggerProperties.put("jbpm.audit.batch.flush.interval", 60000L);
+        AbstractAuditLogger dblogger = AuditLoggerFactory.newInstance(Type.JPA_BATCH, session, loggerProperties);
+        assertNotNull(dblogger);
+        assertTrue(dblogger instanceof BatchingJPAAuditLogger);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+
+        long processInstanceId = session.startProcess("com.sample.ruleflow").getId();
+        long processInstanceId2 = session.startProcess("com.sample.ruleflow").getId();
+        ((BatchingJPAAuditLogger) dblogger).flush();
+
+        List<ProcessInstanceLog> processInstances = JPAProcessInstanceDbLog.findProcessInstances("com.sample.ruleflow");
+        assertEquals(2, processInstances.size());
+        for (ProcessInstanceLog processInstance: processInstances) {
+            assertNotNull(processInstance.getStart());
+            assertNotNull("ProcessInstanceLog does not contain end date.", processInstance.getEnd());
+        }
+        assertEquals(6, JPAProcessInstanceDbLog.findNodeInstances(processInstanceId).size());
+        assertEquals(6, JPAProcessInstanceDbLog.findNodeInstances(processInstanceId2).size());
+
+        ((BatchingJPAAuditLogger) dblogger).dispose();
+        JPAProcessInstanceDbLog.clear();
+        session.dispose();
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedWithNewIds() throws Exception {
+        Environment env = createEnvironment(context);
+        EntityManagerFactory emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        AtomicInteger entityManagers = new AtomicInteger();
+        BatchingJPAAuditLogger dblogger = new BatchingJPAAuditLogger(failingFlushes(emf, entityManagers, 1), 10, 100, 60000);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+
+        for (int i = 0; i < 3; i++) {
+            dblogger.add(AbstractAuditLogger.AFTER_VAR_CHANGE_EVENT_TYPE,
+                    new VariableInstanceLog(1, "com.sample.ruleflow", "var" + i, "var" + i, "value", null));
+        }
+        dblogger.flush();
+
+        assertEquals(2, entityManagers.get());
+        assertEquals(3, JPAProcessInstanceDbLog.findVariableInstances(1).size());
+        dblogger.dispose();
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedUntilWrittenByDefault() throws Exception {
+        Environment env = createEnvironment(context);
+        EntityManagerFactory emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        AtomicInteger entityManagers = new AtomicInteger();
+        BatchingJPAAuditLogger dblogger = new BatchingJPAAuditLogger(failingFlushes(emf, entityManagers, 3), 10, 100, 60000);
+        final List<Object> deadLetters = new ArrayList<Object>();
+        dblogger.setDeadLetterHandler(new BatchingJPAAuditLogger.DeadLetterHandler() {
+            public void deadLetter(List<Object> logs, Exception cause) {
+                deadLetters.addAll(logs);
+            }
+        });
+        JPAProcessInstanceDbLog.setEnvironment(env);
+
+        for (int i = 0; i < 3; i++) {
+            dblogger.add(AbstractAuditLogger.AFTER_VAR_CHANGE_EVENT_TYPE,
+                    new VariableInstanceLog(1, "com.sample.ruleflow", "var" + i, "var" + i, "value", null));
+        }
+        // blocks while the database fails
+        dblogger.flush();
+
+        assertEquals(4, entityManagers.get());
+        assertTrue(deadLetters.isEmpty());
+        assertEquals(3, JPAProcessInstanceDbLog.findVariableInstances(1).size());
+        dblogger.dispose();
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    @Test
+    public void testBatchFailingEveryAttemptIsDeadLettered() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        EntityManagerFactory emf = (EntityManagerFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { EntityManagerFactory.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("database unavailable");
+            }
+        });
+        BatchingJPAAuditLogger dblogger = new BatchingJPAAuditLogger(emf, 10, 100, 60000);
+        dblogger.setMaxAttempts(2);
+        final List<Object> deadLetters = new ArrayList<Object>();
+        dblogger.setDeadLetterHandler(new BatchingJPAAuditLogger.DeadLetterHandler() {
+            public void deadLetter(List<Object> logs, Exception cause) {
+                deadLetters.addAll(logs);
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            dblogger.add(AbstractAuditLogger.AFTER_VAR_CHANGE_EVENT_TYPE,
+                    new VariableInstanceLog(1, "com.sample.ruleflow", "var" + i, "var" + i, "value", null));
+        }
+        // returns once the batch was given up on instead of blocking forever
+        dblogger.flush();
+
+        assertEquals(2, attempts.get());
+        assertEquals(3, deadLetters.size());
+
+        // later events are still written
+        dblogger.add(AbstractAuditLogger.AFTER_VAR_CHANGE_EVENT_TYPE,
+                new VariableInstanceLog(1, "com.sample.ruleflow", "var", "var", "value", null));
+        dblogger.flush();
+        assertEquals(4, attempts.get());
+        assertEquals(4, deadLetters.size());
+        dblogger.dispose();
+    }
+
+    /**
+     * @return entity manager factory whose first <code>failures</code> entity managers fail when flushed, after ids were assigned
+     */
+    private EntityManagerFactory failingFlushes(final EntityManagerFactory emf, final AtomicInteger entityManagers, final int failures) {
+        return (EntityManagerFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { EntityManagerFactory.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = delegate(emf, method, args);
+                if (!"createEntityManager".equals(method.getName())) {
+                    return result;
+                }
+                final EntityManager em = (EntityManager) result;
+                final boolean fail = entityManagers.incrementAndGet() <= failures;
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { EntityManager.class },
+                        new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (fail && "flush".equals(method.getName())) {
+                            throw new IllegalStateException("flush failed");
+                        }
+                        return delegate(em, method, args);
+                    }
+                });
+            }
+        });
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private KnowledgeBase createKnowledgeBase() {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        return kbase;
+    }
+
+}
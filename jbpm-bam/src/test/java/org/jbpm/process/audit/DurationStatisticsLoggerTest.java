@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.drools.core.io.impl.ClassPathResource;
+import org.jbpm.process.audit.AuditLoggerFactory.Type;
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class DurationStatisticsLoggerTest {
+
+    private HashMap<String, Object> context;
+    private Environment env;
+    private StatefulKnowledgeSession session;
+    private DurationStatisticsLogger statisticsLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KieSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+        session.addEventListener(AuditLoggerFactory.newInstance(Type.JPA, session, null));
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        JPAProcessInstanceDbLog.clear();
+        statisticsLogger = new DurationStatisticsLogger(session, 60000, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        statisticsLogger.dispose();
+        session.dispose();
+        cleanUp(context);
+    }
+
+    @Test
+    public void testAggregatesFlushedAndMerged() {
+        JPAAuditLogService auditLogService = new JPAAuditLogService(env);
+        long initialCount = countProcessInstances(auditLogService, null);
+        for (int i = 0; i < 3; i++) {
+            session.startProcess("com.sample.ruleflow");
+        }
+        statisticsLogger.flush();
+        for (int i = 0; i < 2; i++) {
+            session.startProcess("com.sample.ruleflow");
+        }
+        statisticsLogger.flush();
+        assertEquals(initialCount + 5, countProcessInstances(auditLogService, null));
+
+        NodeInstanceLog node = JPAProcessInstanceDbLog.findNodeInstances(
+            JPAProcessInstanceDbLog.findProcessInstances().get(0).getProcessInstanceId()).get(0);
+        assertTrue(countProcessInstances(auditLogService, node.getNodeId()) >= 5);
+    }
+
+    @Test
+    public void testHistogram() {
+        DurationHistogram histogram = new DurationHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertTrue(Math.abs(histogram.getPercentile(50) - 500) <= 500 / 8);
+        assertTrue(Math.abs(histogram.getPercentile(99) - 990) <= 990 / 8);
+
+        DurationHistogram other = DurationHistogram.decode(histogram.encode());
+        other.merge(histogram);
+        assertEquals(2000, other.getCount());
+        assertEquals(histogram.getPercentile(90), other.getPercentile(90));
+        assertEquals(histogram.encode(), DurationHistogram.decode(histogram.encode()).encode());
+    }
+
+    private long countProcessInstances(JPAAuditLogService auditLogService, String nodeId) {
+        long count = 0;
+        for (DurationStatisticsLog statistics : auditLogService.findDurationStatistics("com.sample.ruleflow", nodeId,
+                new Date(0), new Date(System.currentTimeMillis() + 60000))) {
+            count += statistics.getCount();
+            assertTrue(statistics.getMinDuration() <= statistics.getMaxDuration());
+            assertTrue(statistics.getPercentile(50) <= statistics.getMaxDuration());
+            assertEquals(statistics.getCount(), statistics.getDurations().getCount());
+        }
+        return count;
+    }
+}
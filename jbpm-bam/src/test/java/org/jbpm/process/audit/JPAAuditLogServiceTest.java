@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.drools.core.io.impl.ClassPathResource;
+import org.jbpm.process.audit.AuditLoggerFactory.Type;
+import org.jbpm.process.audit.JPAAuditLogService.ProcessInstanceFilter;
+import org.jbpm.process.instance.impl.demo.SystemOutWorkItemHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class JPAAuditLogServiceTest {
+
+    private HashMap<String, Object> context;
+    private Environment env;
+    private StatefulKnowledgeSession session;
+    private JPAAuditLogService auditLogService;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        Properties properties = new Properties();
+        properties.put("drools.processInstanceManagerFactory", "org.jbpm.persistence.processinstance.JPAProcessInstanceManagerFactory");
+        properties.put("drools.processSignalManagerFactory", "org.jbpm.persistence.processinstance.JPASignalManagerFactory");
+        KieSessionConfiguration config = KnowledgeBaseFactory.newKnowledgeSessionConfiguration(properties);
+        session = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
+        session.addEventListener(AuditLoggerFactory.newInstance(Type.JPA, session, null));
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new SystemOutWorkItemHandler());
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        JPAProcessInstanceDbLog.clear();
+        auditLogService = new JPAAuditLogService(env);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.dispose();
+        cleanUp(context);
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            processInstanceIds.add(session.startProcess("com.sample.ruleflow").getId());
+        }
+        ProcessInstanceFilter filter = new ProcessInstanceFilter().processId("com.sample.ruleflow");
+        assertEquals(5, auditLogService.countProcessInstances(filter));
+
+        List<Long> pagedIds = new ArrayList<Long>();
+        long lastId = 0;
+        List<ProcessInstanceLog> page;
+        do {
+            page = auditLogService.findProcessInstances(filter, lastId, 2);
+            assertTrue(page.size() <= 2);
+            for (ProcessInstanceLog log : page) {
+                assertTrue(log.getId() > lastId);
+                lastId = log.getId();
+                pagedIds.add(log.getProcessInstanceId());
+            }
+        } while (!page.isEmpty());
+        assertEquals(processInstanceIds, pagedIds);
+
+        List<Long> iteratedIds = new ArrayList<Long>();
+        for (ProcessInstanceLog log : auditLogService.iterateProcessInstances(filter, 2)) {
+            iteratedIds.add(log.getProcessInstanceId());
+        }
+        assertEquals(processInstanceIds, iteratedIds);
+    }
+
+    @Test
+    public void testFilters() {
+        Date before = new Date(System.currentTimeMillis() - 1000);
+        for (int i = 0; i < 3; i++) {
+            session.startProcess("com.sample.ruleflow");
+        }
+        assertEquals(3, auditLogService.countProcessInstances(new ProcessInstanceFilter().startedBetween(before, null)));
+        assertEquals(0, auditLogService.countProcessInstances(new ProcessInstanceFilter().startedBetween(null, before)));
+        assertEquals(3, auditLogService.countProcessInstances(new ProcessInstanceFilter().status(ProcessInstance.STATE_COMPLETED)));
+        assertEquals(0, auditLogService.countProcessInstances(new ProcessInstanceFilter().active()));
+        assertEquals(0, auditLogService.countProcessInstances(new ProcessInstanceFilter().processId("unknown")));
+    }
+
+    @Test
+    public void testNodeInstances() {
+        long processInstanceId = session.startProcess("com.sample.ruleflow").getId();
+        List<NodeInstanceLog> nodeInstances = new ArrayList<NodeInstanceLog>();
+        for (NodeInstanceLog log : auditLogService.iterateNodeInstances(processInstanceId, 4)) {
+            nodeInstances.add(log);
+        }
+        assertEquals(JPAProcessInstanceDbLog.findNodeInstances(processInstanceId).size(), nodeInstances.size());
+        assertEquals(4, auditLogService.findNodeInstances(processInstanceId, 0, 4).size());
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.bpmn2.handler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches what service task handlers need to call a java service: the service class, its
+ * operation method and, depending on the {@link InstanceMode}, the service instances.
+ * Classes and methods are looked up once per interface, operation and parameter type instead
+ * of on every work item.
+ * </p>
+ * Following system properties configure the handlers:
+ * <ul>
+ *  <li>jbpm.service.task.instance - <code>new</code> (default) creates a service instance per call,
+ *  <code>singleton</code> shares one instance, <code>pooled</code> reuses a bounded number of instances</li>
+ *  <li>jbpm.service.task.pool.size - number of idle instances kept per service in pooled mode, default 10</li>
+ *  <li>jbpm.service.task.async.threads - when greater than 0, services are called on a bounded pool of that
+ *  many threads, shared by all handlers, and work items are completed when the call returns, default 0
+ *  (calls on the engine thread)</li>
+ *  <li>jbpm.service.task.async.queue - number of calls waiting for a thread, default 1000; once full calls
+ *  run on the engine thread</li>
+ * </ul>
+ */
+public class ServiceInvocationCache {
+
+    public static final String INSTANCE_MODE_PROPERTY = "jbpm.service.task.instance";
+    public static final String POOL_SIZE_PROPERTY = "jbpm.service.task.pool.size";
+    public static final String ASYNC_THREADS_PROPERTY = "jbpm.service.task.async.threads";
+    public static final String ASYNC_QUEUE_PROPERTY = "jbpm.service.task.async.queue";
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private static ThreadPoolExecutor sharedExecutor;
+
+    public enum InstanceMode {
+        NEW,
+        SINGLETON,
+        POOLED
+    }
+
+    private final ConcurrentMap<String, ServiceInvocation> invocations = new ConcurrentHashMap<String, ServiceInvocation>();
+    private final InstanceMode instanceMode;
+    private final int poolSize;
+
+    public ServiceInvocationCache() {
+        this(InstanceMode.valueOf(System.getProperty(INSTANCE_MODE_PROPERTY, "new").toUpperCase()),
+             Integer.parseInt(System.getProperty(POOL_SIZE_PROPERTY, "10")));
+    }
+
+    public ServiceInvocationCache(InstanceMode instanceMode, int poolSize) {
+        this.instanceMode = instanceMode;
+        this.poolSize = Math.max(poolSize, 1);
+    }
+
+    /**
+     * Returns the executor shared by all handlers, created on first use as configured by
+     * {@link #ASYNC_THREADS_PROPERTY} and {@link #ASYNC_QUEUE_PROPERTY}, or <code>null</code>
+     * when services should be called synchronously. Its threads stop when they are idle.
+     */
+    public static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null || sharedExecutor.isShutdown()) {
+            sharedExecutor = newConfiguredExecutor();
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Stops the shared executor, calls that are already queued still run.
+     */
+    public static synchronized void shutdownSharedExecutor() {
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdown();
+            sharedExecutor = null;
+        }
+    }
+
+    /**
+     * Creates the executor configured by {@link #ASYNC_THREADS_PROPERTY} and {@link #ASYNC_QUEUE_PROPERTY},
+     * or returns <code>null</code> when services should be called synchronously.
+     */
+    public static ThreadPoolExecutor newConfiguredExecutor() {
+        int threads = Integer.parseInt(System.getProperty(ASYNC_THREADS_PROPERTY, "0"));
+        if (threads <= 0) {
+            return null;
+        }
+        int queueSize = Integer.parseInt(System.getProperty(ASYNC_QUEUE_PROPERTY, "1000"));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "jbpm-service-task-" + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Calls the operation of the service loaded by the given class loader, with the parameter
+     * when a parameter type is given.
+     */
+    public Object invoke(ClassLoader classLoader, String service, String operation, String parameterType, Object parameter)
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        ServiceInvocation invocation = getInvocation(classLoader, service, operation, parameterType);
+        Object instance = invocation.acquire();
+        try {
+            if (parameterType == null) {
+                return invocation.method.invoke(instance);
+            }
+            return invocation.method.invoke(instance, parameter);
+        } finally {
+            invocation.release(instance);
+        }
+    }
+
+    public InstanceMode getInstanceMode() {
+        return instanceMode;
+    }
+
+    public void clear() {
+        invocations.clear();
+    }
+
+    private ServiceInvocation getInvocation(ClassLoader classLoader, String service, String operation, String parameterType)
+            throws ClassNotFoundException, NoSuchMethodException {
+        String key = service + "#" + operation + "(" + parameterType + ")";
+        ServiceInvocation invocation = invocations.get(key);
+        if (invocation == null) {
+            Class<?> c = Class.forName(service, true, classLoader);
+            Class<?>[] classes = null;
+            if (parameterType != null) {
+                classes = new Class<?>[] {
+                    Class.forName(parameterType, true, classLoader)
+                };
+            }
+            Method method = c.getMethod(operation, classes);
+            try {
+                // skips the access checks on every call
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // checked on every call then
+            }
+            invocation = new ServiceInvocation(c, method);
+            ServiceInvocation existing = invocations.putIfAbsent(key, invocation);
+            if (existing != null) {
+                invocation = existing;
+            }
+        }
+        return invocation;
+    }
+
+    private class ServiceInvocation {
+
+        private final Class<?> serviceClass;
+        private final Method method;
+        private volatile Object singleton;
+        private final BlockingQueue<Object> idle;
+
+        ServiceInvocation(Class<?> serviceClass, Method method) {
+            this.serviceClass = serviceClass;
+            this.method = method;
+            this.idle = instanceMode == InstanceMode.POOLED ? new ArrayBlockingQueue<Object>(poolSize) : null;
+        }
+
+        Object acquire() throws InstantiationException, IllegalAccessException {
+            switch (instanceMode) {
+                case SINGLETON:
+                    if (singleton == null) {
+                        synchronized (this) {
+                            if (singleton == null) {
+                                singleton = serviceClass.newInstance();
+                            }
+                        }
+                    }
+                    return singleton;
+                case POOLED:
+                    Object instance = idle.poll();
+                    return instance != null ? instance : serviceClass.newInstance();
+                default:
+                    return serviceClass.newInstance();
+            }
+        }
+
+        void release(Object instance) {
+            if (instanceMode == InstanceMode.POOLED) {
+                // dropped when the pool is full
+                idle.offer(instance);
+            }
+        }
+    }
+}
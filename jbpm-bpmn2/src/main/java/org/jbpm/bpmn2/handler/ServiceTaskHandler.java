@@ -17,56 +17,93 @@
 package org.jbpm.bpmn2.handler;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import org.kie.api.runtime.KieSession;
 import org.kie.api.runtime.process.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Calls the operation of a java service for service tasks, see {@link ServiceInvocationCache} for
+ * how service instances are reused and how to call services asynchronously.
+ * </p>
+ * Asynchronous mode needs the session given to the constructor: the work item is completed from the
+ * executor thread through the work item manager of that session, so it runs as a command of the session.
+ * Without a session services are always called on the engine thread. A failed asynchronous call is
+ * logged and aborts the work item, so the process instance continues.
+ */
 public class ServiceTaskHandler implements WorkItemHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(ServiceTaskHandler.class);
+
     private boolean logThrownException = true;
+    private ServiceInvocationCache invocationCache = new ServiceInvocationCache();
+    private ExecutorService executor = ServiceInvocationCache.getSharedExecutor();
+    private KieSession ksession;
+
+    public ServiceTaskHandler() {
+    }
+
+    public ServiceTaskHandler(KieSession ksession) {
+        this.ksession = ksession;
+    }
     
-    public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+    public void executeWorkItem(final WorkItem workItem, final WorkItemManager manager) {
+        if (executor == null || ksession == null) {
+            invoke(workItem, manager, true);
+        } else {
+            executor.execute(new Runnable() {
+                public void run() {
+                    WorkItemManager sessionManager = ksession.getWorkItemManager();
+                    if (!invoke(workItem, sessionManager, false)) {
+                        try {
+                            sessionManager.abortWorkItem(workItem.getId());
+                        } catch (RuntimeException e) {
+                            logger.error("Unable to abort work item " + workItem.getId(), e);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return whether the work item was completed, failures either throw or return <code>false</code>
+     */
+    private boolean invoke(WorkItem workItem, WorkItemManager manager, boolean throwException) {
         String service = (String) workItem.getParameter("Interface");
         String operation = (String) workItem.getParameter("Operation");
         String parameterType = (String) workItem.getParameter("ParameterType");
         Object parameter = workItem.getParameter("Parameter");
         try {
-            Class<?> c = Class.forName(service);
-            Object instance = c.newInstance();
-            Class<?>[] classes = null;
-            Object[] params = null;
-            if (parameterType != null) {
-                classes = new Class<?>[] {
-                    Class.forName(parameterType)
-                };
-                params = new Object[] {
-                    parameter
-                };
-            }
-            Method method = c.getMethod(operation, classes);
-            Object result = method.invoke(instance, params);
+            Object result = invocationCache.invoke(ServiceTaskHandler.class.getClassLoader(), service, operation, parameterType, parameter);
             Map<String, Object> results = new HashMap<String, Object>();
             results.put("Result", result);
             manager.completeWorkItem(workItem.getId(), results);
+            return true;
         } catch (ClassNotFoundException cnfe) {
-            handleException(cnfe, service, operation, parameterType, parameter);
+            handleException(cnfe, service, operation, parameterType, parameter, throwException);
         } catch (InstantiationException ie) {
-            handleException(ie, service, operation, parameterType, parameter);
+            handleException(ie, service, operation, parameterType, parameter, throwException);
         } catch (IllegalAccessException iae) {
-            handleException(iae, service, operation, parameterType, parameter);
+            handleException(iae, service, operation, parameterType, parameter, throwException);
         } catch (NoSuchMethodException nsme) {
-            handleException(nsme, service, operation, parameterType, parameter);
+            handleException(nsme, service, operation, parameterType, parameter, throwException);
         } catch (InvocationTargetException ite) {
-            handleException(ite, service, operation, parameterType, parameter);
+            handleException(ite, service, operation, parameterType, parameter, throwException);
         } catch( Throwable cause ) { 
-            handleException(cause, service, operation, parameterType, parameter);
+            handleException(cause, service, operation, parameterType, parameter, throwException);
         }
+        return false;
     }
 
-    private void handleException(Throwable cause, String service, String operation, String paramType, Object param) { 
-        if( this.logThrownException ) {
+    private void handleException(Throwable cause, String service, String operation, String paramType, Object param, boolean throwException) { 
+        if( !throwException ) {
+            logger.error(this.getClass().getSimpleName() + " failed when calling " + service + "." + operation, cause);
+        } else if( this.logThrownException ) {
             String message = this.getClass().getSimpleName() + " failed when calling " + service + "." + operation;
             System.err.println(message);
             cause.printStackTrace(System.err);
@@ -96,4 +133,16 @@ public class ServiceTaskHandler implements WorkItemHandler {
     public void setLogThrownException(boolean logException) { 
         this.logThrownException = logException;
     }
+
+    public void setInvocationCache(ServiceInvocationCache invocationCache) {
+        this.invocationCache = invocationCache;
+    }
+
+    /**
+     * Sets the executor services are called on when the handler has a session, <code>null</code>
+     * calls them on the engine thread. The executor is not shut down by the handler.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
 }
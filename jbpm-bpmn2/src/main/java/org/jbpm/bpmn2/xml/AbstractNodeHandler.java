@@ -36,6 +36,7 @@ import org.jbpm.workflow.core.Node;
 import org.jbpm.workflow.core.NodeContainer;
 import org.jbpm.workflow.core.impl.DroolsConsequenceAction;
 import org.jbpm.workflow.core.impl.ExtendedNodeImpl;
+import org.jbpm.workflow.core.node.ForEachNode;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.Attributes;
@@ -290,4 +291,15 @@ public abstract class AbstractNodeHandler extends BaseAbstractHandler implements
         }
     }
     
+    protected void readLoopBehavior(Element element, ForEachNode forEachNode) {
+        String sequential = element.getAttribute("isSequential");
+        if (sequential != null && sequential.trim().length() > 0) {
+            forEachNode.setSequential(Boolean.parseBoolean(sequential));
+        }
+        String maxConcurrentInstances = element.getAttribute("maxConcurrentInstances");
+        if (maxConcurrentInstances != null && maxConcurrentInstances.trim().length() > 0) {
+            forEachNode.setMaxConcurrentInstances(Integer.parseInt(maxConcurrentInstances.trim()));
+        }
+    }
+    
 }
@@ -62,8 +62,14 @@ public class ForEachNodeHandler extends AbstractNodeHandler {
                 "      </dataInputAssociation>" + EOL);
         }
         // multiInstanceLoopCharacteristics
-        xmlDump.append(
-    		"      <multiInstanceLoopCharacteristics>" + EOL +
+        xmlDump.append("      <multiInstanceLoopCharacteristics");
+        if (forEachNode.isSequential()) {
+            xmlDump.append(" isSequential=\"true\"");
+        }
+        if (forEachNode.getMaxConcurrentInstances() > 0) {
+            xmlDump.append(" tns:maxConcurrentInstances=\"" + forEachNode.getMaxConcurrentInstances() + "\"");
+        }
+        xmlDump.append(">" + EOL +
             "        <loopDataInputRef>" + XmlBPMNProcessDumper.getUniqueNodeId(forEachNode) + "_input</loopDataInputRef>" + EOL);
         if (parameterName != null) {
         	xmlDump.append("        <inputDataItem id=\"" + XmlBPMNProcessDumper.replaceIllegalCharsAttribute(parameterName) + "\" itemSubjectRef=\"" + XmlBPMNProcessDumper.getUniqueNodeId(forEachNode) + "_multiInstanceItemType\"/>" + EOL);
@@ -144,6 +144,7 @@ public class SubProcessHandler extends AbstractNodeHandler {
     
     @SuppressWarnings("unchecked")
 	protected void readMultiInstanceLoopCharacteristics(org.w3c.dom.Node xmlNode, ForEachNode forEachNode, ExtensibleXmlParser parser) {
+        readLoopBehavior((Element) xmlNode, forEachNode);
         // sourceRef
         org.w3c.dom.Node subNode = xmlNode.getFirstChild();
         while (subNode != null) {
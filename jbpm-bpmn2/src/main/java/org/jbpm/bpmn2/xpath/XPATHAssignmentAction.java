@@ -1,14 +1,10 @@
 package org.jbpm.bpmn2.xpath;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 
 import org.drools.core.process.instance.WorkItem;
 import org.jbpm.process.instance.impl.AssignmentAction;
+import org.jbpm.process.instance.impl.XPATHEvaluator;
 import org.jbpm.workflow.core.node.Assignment;
 import org.kie.api.runtime.process.ProcessContext;
 import org.w3c.dom.Attr;
@@ -35,14 +31,7 @@ public class XPATHAssignmentAction implements AssignmentAction {
         String from = assignment.getFrom();
         String to = assignment.getTo();
         
-        XPathFactory factory = XPathFactory.newInstance();
-        XPath xpathFrom = factory.newXPath();
-
-        XPathExpression exprFrom = xpathFrom.compile(from);
-
-        XPath xpathTo = factory.newXPath();
-
-        XPathExpression exprTo = xpathTo.compile(to);
+        XPATHEvaluator evaluator = XPATHEvaluator.get();
 
         Object target = null;
         Object source = null;
@@ -67,7 +56,7 @@ public class XPATHAssignmentAction implements AssignmentAction {
                 parent = ((org.w3c.dom.Node) target).getParentNode();
                 
                 
-            targetElem = exprTo.evaluate(parent, XPathConstants.NODE);
+            targetElem = evaluator.evaluate(to, parent, XPathConstants.NODE, context);
             
             if (targetElem == null) {
                 throw new RuntimeException("Nothing was selected by the to expression " + to + " on " + targetExpr);
@@ -75,10 +64,9 @@ public class XPATHAssignmentAction implements AssignmentAction {
         }
         NodeList nl = null;
         if (source instanceof org.w3c.dom.Node) {
-             nl = (NodeList) exprFrom.evaluate(source, XPathConstants.NODESET);
+             nl = (NodeList) evaluator.evaluate(from, source, XPathConstants.NODESET, context);
         } else if (source instanceof String) {
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document doc = builder.newDocument();
+            Document doc = evaluator.newDocument();
             //quirky: create a temporary element, use its nodelist
             Element temp = doc.createElementNS(null, "temp");
             temp.appendChild(doc.createTextNode((String) source));
@@ -99,8 +87,7 @@ public class XPATHAssignmentAction implements AssignmentAction {
                 } else if (nl.item(i) instanceof Text) {
                     targetElem = ((Text) nl.item(i)).getWholeText();
                 } else {
-                    DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                    Document doc = builder.newDocument();
+                    Document doc = evaluator.newDocument();
                     targetElem  = doc.importNode(nl.item(i), true);
                 }
                 target = targetElem;
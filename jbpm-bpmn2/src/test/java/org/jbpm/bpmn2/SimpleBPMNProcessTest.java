@@ -1456,6 +1456,36 @@ public class SimpleBPMNProcessTest extends JbpmBpmn2TestCase {
 		ksession.dispose();
 	}
 
+	public void testMultiInstanceLoopCharacteristicsTaskSequential() throws Exception {
+		KnowledgeBase kbase = createKnowledgeBaseWithoutDumper("BPMN2-MultiInstanceLoopCharacteristicsTaskSequential.bpmn2");
+		StatefulKnowledgeSession ksession = createKnowledgeSession(kbase);
+		TestWorkItemHandler workItemHandler = new TestWorkItemHandler();
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		Map<String, Object> params = new HashMap<String, Object>();
+		List<String> myList = new ArrayList<String>();
+		myList.add("First Item");
+		myList.add("Second Item");
+		params.put("list", myList);
+		ProcessInstance processInstance = ksession.startProcess(
+				"MultiInstanceLoopCharacteristicsTaskSequential", params);
+		assertProcessInstanceActive(processInstance.getId(), ksession);
+		// only one iteration is active at a time
+		WorkItem workItem = workItemHandler.getWorkItem();
+		assertNotNull(workItem);
+		assertEquals("First Item", workItem.getParameter("Item"));
+		ksession = restoreSession(ksession, true);
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+		workItem = workItemHandler.getWorkItem();
+		assertNotNull(workItem);
+		assertEquals("Second Item", workItem.getParameter("Item"));
+		ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+		assertProcessInstanceCompleted(processInstance.getId(), ksession);
+		ksession.dispose();
+	}
+
 	public void testEscalationBoundaryEvent() throws Exception {
 		KnowledgeBase kbase = createKnowledgeBase("BPMN2-EscalationBoundaryEvent.bpmn2");
 		StatefulKnowledgeSession ksession = createKnowledgeSession(kbase);
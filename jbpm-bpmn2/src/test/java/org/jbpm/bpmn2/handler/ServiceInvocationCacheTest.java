@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.bpmn2.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.core.process.instance.impl.WorkItemImpl;
+import org.jbpm.bpmn2.handler.ServiceInvocationCache.InstanceMode;
+import org.junit.Test;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.WorkItemHandler;
+import org.kie.api.runtime.process.WorkItemManager;
+
+public class ServiceInvocationCacheTest {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    public static class CountingService {
+
+        public CountingService() {
+            instances.incrementAndGet();
+        }
+
+        public String hello(String name) {
+            return "Hello " + name + "!";
+        }
+
+        public String threadName() {
+            return Thread.currentThread().getName();
+        }
+    }
+
+    @Test
+    public void testInstanceModes() throws Exception {
+        assertEquals(5, countInstances(InstanceMode.NEW, 5));
+        assertEquals(1, countInstances(InstanceMode.SINGLETON, 5));
+        assertEquals(1, countInstances(InstanceMode.POOLED, 5));
+    }
+
+    @Test
+    public void testNoParameterOperation() throws Exception {
+        ServiceInvocationCache cache = new ServiceInvocationCache(InstanceMode.NEW, 1);
+        assertEquals(Thread.currentThread().getName(),
+                cache.invoke(getClass().getClassLoader(), CountingService.class.getName(), "threadName", null, null));
+    }
+
+    @Test
+    public void testAsyncCompletion() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CompletingWorkItemManager manager = new CompletingWorkItemManager(3);
+        ServiceTaskHandler handler = new ServiceTaskHandler(newSession(manager));
+        handler.setExecutor(executor);
+        for (long i = 1; i <= 3; i++) {
+            handler.executeWorkItem(newWorkItem(i, "threadName"), new CompletingWorkItemManager(0));
+        }
+        assertTrue(manager.completed.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        for (Object threadName : manager.results.values()) {
+            assertFalse(Thread.currentThread().getName().equals(threadName));
+        }
+        // completed through the work item manager of the session only
+        assertEquals(3, manager.results.size());
+    }
+
+    @Test
+    public void testAsyncFailureAbortsWorkItem() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CompletingWorkItemManager manager = new CompletingWorkItemManager(1);
+        ServiceTaskHandler handler = new ServiceTaskHandler(newSession(manager));
+        handler.setExecutor(executor);
+        handler.executeWorkItem(newWorkItem(1, "unknownOperation"), manager);
+        assertTrue(manager.completed.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(0, manager.results.size());
+        assertEquals(1, manager.aborted.size());
+    }
+
+    @Test
+    public void testNoSessionCallsOnEngineThread() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ServiceTaskHandler handler = new ServiceTaskHandler();
+        handler.setExecutor(executor);
+        CompletingWorkItemManager manager = new CompletingWorkItemManager(1);
+        handler.executeWorkItem(newWorkItem(1, "threadName"), manager);
+        executor.shutdown();
+        assertEquals(Thread.currentThread().getName(), manager.results.get(1L));
+    }
+
+    @Test
+    public void testSharedExecutor() throws Exception {
+        System.setProperty(ServiceInvocationCache.ASYNC_THREADS_PROPERTY, "2");
+        try {
+            ExecutorService executor = ServiceInvocationCache.getSharedExecutor();
+            assertTrue(executor == ServiceInvocationCache.getSharedExecutor());
+            ServiceInvocationCache.shutdownSharedExecutor();
+            assertTrue(executor.isShutdown());
+        } finally {
+            System.clearProperty(ServiceInvocationCache.ASYNC_THREADS_PROPERTY);
+        }
+    }
+
+    private static WorkItemImpl newWorkItem(long id, String operation) {
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId(id);
+        workItem.setParameter("Interface", CountingService.class.getName());
+        workItem.setParameter("Operation", operation);
+        return workItem;
+    }
+
+    private static KieSession newSession(final WorkItemManager manager) {
+        return (KieSession) Proxy.newProxyInstance(ServiceInvocationCacheTest.class.getClassLoader(),
+                new Class[] { KieSession.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getWorkItemManager".equals(method.getName())) {
+                    return manager;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private int countInstances(InstanceMode mode, int calls) throws Exception {
+        ServiceInvocationCache cache = new ServiceInvocationCache(mode, 2);
+        int before = instances.get();
+        for (int i = 0; i < calls; i++) {
+            assertEquals("Hello john!", cache.invoke(getClass().getClassLoader(), CountingService.class.getName(),
+                    "hello", String.class.getName(), "john"));
+        }
+        return instances.get() - before;
+    }
+
+    private static class CompletingWorkItemManager implements WorkItemManager {
+
+        private final CountDownLatch completed;
+        private final Map<Long, Object> results = new ConcurrentHashMap<Long, Object>();
+        private final Map<Long, Boolean> aborted = new ConcurrentHashMap<Long, Boolean>();
+
+        CompletingWorkItemManager(int count) {
+            this.completed = new CountDownLatch(count);
+        }
+
+        public void completeWorkItem(long id, Map<String, Object> results) {
+            this.results.put(id, results.get("Result"));
+            completed.countDown();
+        }
+
+        public void abortWorkItem(long id) {
+            aborted.put(id, Boolean.TRUE);
+            completed.countDown();
+        }
+
+        public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+        }
+    }
+}
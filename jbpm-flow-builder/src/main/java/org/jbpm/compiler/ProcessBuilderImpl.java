@@ -50,6 +50,7 @@ import org.jbpm.process.core.context.exception.ActionExceptionHandler;
 import org.jbpm.process.core.context.exception.ExceptionHandler;
 import org.jbpm.process.core.context.exception.ExceptionScope;
 import org.jbpm.process.core.impl.ProcessImpl;
+import org.jbpm.process.core.timer.Timer;
 import org.jbpm.process.core.validation.ProcessValidationError;
 import org.jbpm.process.core.validation.ProcessValidator;
 import org.jbpm.ruleflow.core.RuleFlowProcess;
@@ -61,13 +62,22 @@ import org.jbpm.workflow.core.impl.NodeImpl;
 import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 import org.jbpm.workflow.core.node.CompositeNode;
 import org.jbpm.workflow.core.node.ConstraintTrigger;
+import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.EventNode;
 import org.jbpm.workflow.core.node.EventSubProcessNode;
+import org.jbpm.workflow.core.node.ForEachNode;
+import org.jbpm.workflow.core.node.Join;
 import org.jbpm.workflow.core.node.MilestoneNode;
+import org.jbpm.workflow.core.node.RuleSetNode;
 import org.jbpm.workflow.core.node.Split;
 import org.jbpm.workflow.core.node.StartNode;
+import org.jbpm.workflow.core.node.StateBasedNode;
 import org.jbpm.workflow.core.node.StateNode;
+import org.jbpm.workflow.core.node.SubProcessNode;
+import org.jbpm.workflow.core.node.TimerNode;
 import org.jbpm.workflow.core.node.Trigger;
+import org.jbpm.workflow.core.node.WorkItemNode;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.kie.api.definition.process.Connection;
 import org.kie.api.definition.process.Node;
 import org.kie.api.definition.process.NodeContainer;
@@ -197,6 +207,7 @@ public class ProcessBuilderImpl implements org.drools.compiler.compiler.ProcessB
     
     @SuppressWarnings("unchecked")
 	public void buildNodes(WorkflowProcess process, ProcessBuildContext context) {
+        ExpressionCache.forProcess( process ).setClassLoader( packageBuilder.getRootClassLoader() );
         processNodes(process.getNodes(), process, context.getProcessDescr(), context);
         if ( !context.getErrors().isEmpty() ) {
             this.errors.addAll( context.getErrors() );
@@ -226,6 +237,11 @@ public class ProcessBuilderImpl implements org.drools.compiler.compiler.ProcessB
                 buildContexts( (ContextContainer) node,
                                context );
             }
+            precompileExpressions( node, ExpressionCache.forProcess( process ) );
+            if ( node instanceof Join && ((Join) node).getType() == Join.TYPE_OR ) {
+                // compute the nodes that can reach the OR join up front
+                ((Join) node).getUpstreamNodeIds();
+            }
             
             if (System.getProperty("jbpm.enable.multi.con") != null) {
             	builder = ProcessNodeBuilderRegistry.INSTANCE.getNodeBuilder( NodeImpl.class );
@@ -236,16 +252,95 @@ public class ProcessBuilderImpl implements org.drools.compiler.compiler.ProcessB
         }
     }
 
+    /**
+     * Compiles the data association and #{} expressions used by the node, so
+     * its node instances can use the compiled form from the {@link ExpressionCache} of the process.
+     */
+    private void precompileExpressions(Node node, ExpressionCache cache) {
+        if ( node instanceof StateBasedNode && ((StateBasedNode) node).getTimers() != null ) {
+            for ( Timer timer : ((StateBasedNode) node).getTimers().keySet() ) {
+                precompileTimer( timer, cache );
+            }
+        }
+        if ( node instanceof WorkItemNode ) {
+            WorkItemNode workItemNode = (WorkItemNode) node;
+            precompileAssociations( workItemNode.getInAssociations(), cache );
+            precompileAssociations( workItemNode.getOutAssociations(), cache );
+            if ( workItemNode.getWork() != null ) {
+                for ( Object value : workItemNode.getWork().getParameters().values() ) {
+                    if ( value instanceof String ) {
+                        cache.precompileTemplate( (String) value );
+                    }
+                }
+            }
+        } else if ( node instanceof SubProcessNode ) {
+            SubProcessNode subProcessNode = (SubProcessNode) node;
+            precompileAssociations( subProcessNode.getInAssociations(), cache );
+            precompileAssociations( subProcessNode.getOutAssociations(), cache );
+            cache.precompileTemplate( subProcessNode.getProcessId() );
+        } else if ( node instanceof RuleSetNode ) {
+            RuleSetNode ruleSetNode = (RuleSetNode) node;
+            precompileAssociations( ruleSetNode.getOutAssociations(), cache );
+            for ( Object value : ruleSetNode.getParameters().values() ) {
+                if ( value instanceof String ) {
+                    cache.precompileTemplate( (String) value );
+                }
+            }
+        } else if ( node instanceof TimerNode ) {
+            precompileTimer( ((TimerNode) node).getTimer(), cache );
+        } else if ( node instanceof ForEachNode ) {
+            cache.precompile( ((ForEachNode) node).getCollectionExpression() );
+        }
+    }
+
+    private void precompileAssociations(List<DataAssociation> associations, ExpressionCache cache) {
+        if ( associations == null ) {
+            return;
+        }
+        for ( DataAssociation association : associations ) {
+            if ( association.getAssignments() == null || association.getAssignments().isEmpty() ) {
+                for ( String source : association.getSources() ) {
+                    cache.precompile( source );
+                }
+            }
+        }
+    }
+
+    private void precompileTimer(Timer timer, ExpressionCache cache) {
+        if ( timer != null ) {
+            cache.precompileTemplate( timer.getDelay() );
+            cache.precompileTemplate( timer.getPeriod() );
+            cache.precompileTemplate( timer.getDate() );
+        }
+    }
+
     public List<DroolsError> addProcessFromXml(final Resource resource) throws IOException {
     	Reader reader = resource.getReader();
         PackageBuilderConfiguration configuration = packageBuilder.getPackageBuilderConfiguration();
         XmlProcessReader xmlReader = new XmlProcessReader( configuration.getSemanticModules(), packageBuilder.getRootClassLoader() );
+        ProcessDefinitionCache cache = ProcessDefinitionCache.getConfiguredCache();
         
         final ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
         final ClassLoader newLoader = this.getClass().getClassLoader();
         try {
             Thread.currentThread().setContextClassLoader( newLoader );
             String portRuleFlow = System.getProperty( "drools.ruleflow.port", "false" );
+            String cacheKey = null;
+            if ( cache != null ) {
+                String xml = RuleFlowMigrator.convertReaderToString( reader );
+                reader.close();
+                reader = new StringReader( xml );
+                cacheKey = cache.getKey( xml, ProcessDefinitionCache.getBuildContext( configuration.getSemanticModules() )
+                                              + ";drools.ruleflow.port=" + portRuleFlow );
+                List<Process> cached = cache.get( cacheKey, packageBuilder.getRootClassLoader() );
+                if ( cached != null ) {
+                    // restored processes are validated like parsed ones
+                    for (Process process : cached) {
+                        buildProcess(process, resource);
+                    }
+                    return this.errors;
+                }
+            }
             Reader portedReader = null;
             if ( portRuleFlow.equalsIgnoreCase( "true" ) ) {
                 portedReader = portToCurrentVersion( reader );
@@ -254,11 +349,17 @@ public class ProcessBuilderImpl implements org.drools.compiler.compiler.ProcessB
             }
             List<Process> processes = xmlReader.read(portedReader);
             if (processes != null) {
+                // serialized before building, so the snapshot holds no compiled classes
+                byte[] snapshot = cache == null ? null : cache.serialize( processes );
+                int errorCount = this.errors.size();
                 // it is possible an xml file could not be parsed, so we need to
                 // stop null pointers
                 for (Process process : processes) {
                     buildProcess(process, resource);
                 }
+                if ( snapshot != null && this.errors.size() == errorCount ) {
+                    cache.put( cacheKey, snapshot );
+                }
             } else {
                 // @TODO could we maybe add something a bit more informative about what is wrong with the XML ?
                 this.errors.add( new ProcessLoadError( resource, "unable to parse xml", null ) );
@@ -270,8 +371,8 @@ public class ProcessBuilderImpl implements org.drools.compiler.compiler.ProcessB
             this.errors.add( new ProcessLoadError( resource, "unable to parse xml", e2 ) );
         } finally {
             Thread.currentThread().setContextClassLoader( oldLoader );
+            reader.close();
         }
-        reader.close();
         return this.errors;
     }
                                    
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.drools.core.xml.SemanticModule;
+import org.drools.core.xml.SemanticModules;
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
+import org.kie.api.definition.process.Process;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk cache of parsed process definitions, keyed by a hash of the process XML. This is a parse-only cache.
+ * </p>
+ * When the <code>jbpm.process.cache.dir</code> system property names a directory, the processes
+ * read from a resource are serialized there once they have been built without errors, and later builds
+ * of the same content (e.g. after a restart) deserialize them instead of parsing the XML with the
+ * semantic modules. Only the XML parsing is skipped: restored processes are validated again, and their
+ * actions and constraints are compiled again when they are added to a package, as the generated classes
+ * belong to the package being built.
+ * </p>
+ * Snapshots are read back with Java serialization limited to the classes of the engine and of the JDK
+ * collections (see {@link #isAllowed(String)}), as the files of the cache directory are not trusted. A
+ * snapshot referring to any other class is ignored and replaced.
+ * </p>
+ * Keys also cover the engine classes and the semantic modules in use (see {@link #getBuildContext(SemanticModules)}),
+ * so a snapshot is never restored by another engine version or with other modules, which could otherwise
+ * silently leave changed fields at their defaults.
+ * </p>
+ * Snapshots are written to a temporary file and renamed, so concurrent builds never read a partial one,
+ * and a snapshot that cannot be read (e.g. written by another version) is ignored and replaced.
+ * Processes holding objects that cannot be serialized are simply not cached.
+ */
+public class ProcessDefinitionCache {
+
+    public static final String CACHE_DIR_PROPERTY = "jbpm.process.cache.dir";
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessDefinitionCache.class);
+
+    // part of every key, change it when the serialized form of processes changes incompatibly
+    private static final String SNAPSHOT_VERSION = "1";
+
+    // packages whose classes may be read from a snapshot, besides java.lang and the JDK collections
+    private static final String[] ALLOWED_PACKAGES = { "org.jbpm.", "org.drools.", "org.kie." };
+
+    private static volatile String engineVersion;
+
+    private final File directory;
+
+    public ProcessDefinitionCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache configured by {@link #CACHE_DIR_PROPERTY}, or <code>null</code> when not configured
+     */
+    public static ProcessDefinitionCache getConfiguredCache() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.length() == 0) {
+            return null;
+        }
+        return new ProcessDefinitionCache(new File(dir));
+    }
+
+    /**
+     * Describes what parsing depends on besides the XML, to be given as context of {@link #getKey(String, String)}:
+     * the versions of the engine classes and of the classes implementing the given semantic modules.
+     */
+    public static String getBuildContext(SemanticModules modules) {
+        StringBuilder context = new StringBuilder("engine=").append(getEngineVersion());
+        for (Map.Entry<String, SemanticModule> module : new TreeMap<String, SemanticModule>(modules.modules).entrySet()) {
+            context.append(";module=").append(module.getKey()).append('=').append(getVersion(module.getValue().getClass()));
+        }
+        return context.toString();
+    }
+
+    private static String getEngineVersion() {
+        String version = engineVersion;
+        if (version == null) {
+            version = getVersion(ProcessDefinitionCache.class) + "," + getVersion(WorkflowProcessImpl.class)
+                      + "," + getVersion(SemanticModules.class);
+            engineVersion = version;
+        }
+        return version;
+    }
+
+    /**
+     * @return the class name with the version of the jar it comes from, and the size and time stamp of that
+     * jar or class file, so snapshot builds of the same version are told apart as well
+     */
+    private static String getVersion(Class<?> type) {
+        StringBuilder version = new StringBuilder(type.getName());
+        Package pkg = type.getPackage();
+        if (pkg != null && pkg.getImplementationVersion() != null) {
+            version.append('@').append(pkg.getImplementationVersion());
+        }
+        try {
+            CodeSource source = type.getProtectionDomain().getCodeSource();
+            if (source != null && source.getLocation() != null && "file".equals(source.getLocation().getProtocol())) {
+                File file = new File(source.getLocation().toURI());
+                if (file.isDirectory()) {
+                    file = new File(file, type.getName().replace('.', File.separatorChar) + ".class");
+                }
+                version.append('@').append(file.length()).append(':').append(file.lastModified());
+            }
+        } catch (Exception e) {
+            // version only
+        }
+        return version.toString();
+    }
+
+    /**
+     * @param content the process XML
+     * @param context anything else the parsed result depends on, like the semantic modules in use
+     */
+    public String getKey(String content, String context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(SNAPSHOT_VERSION.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(context.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            byte[] hash = digest.digest(content.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * @return the processes cached under the given key, or <code>null</code> when there are none
+     */
+    @SuppressWarnings("unchecked")
+    public List<Process> get(String key, final ClassLoader classLoader) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    if (!isAllowed(desc.getName())) {
+                        throw new InvalidClassException(desc.getName(), "Class not allowed in process snapshots");
+                    }
+                    try {
+                        return Class.forName(desc.getName(), false, classLoader);
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(desc);
+                    }
+                }
+                protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+                    throw new InvalidClassException("Proxy classes are not allowed in process snapshots");
+                }
+            };
+            return (List<Process>) in.readObject();
+        } catch (Exception e) {
+            logger.debug("Ignoring unreadable process snapshot {}: {}", file, e.toString());
+            file.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * @param className the name of a class referenced by a snapshot, as given by {@link ObjectStreamClass#getName()}
+     * @return whether the class belongs to the engine, to <code>java.lang</code> or to the JDK collections
+     */
+    static boolean isAllowed(String className) {
+        String name = className;
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+        if (name.length() == 1) {
+            // array of primitives
+            return true;
+        }
+        if (name.startsWith("L") && name.endsWith(";")) {
+            name = name.substring(1, name.length() - 1);
+        }
+        for (String allowed : ALLOWED_PACKAGES) {
+            if (name.startsWith(allowed)) {
+                return true;
+            }
+        }
+        int index = name.lastIndexOf('.');
+        String pkg = index < 0 ? "" : name.substring(0, index);
+        return "java.lang".equals(pkg) || "java.util".equals(pkg) || "java.util.concurrent".equals(pkg);
+    }
+
+    /**
+     * @return the serialized processes, to be given to {@link #put(String, byte[])} once they have
+     * been built successfully, or <code>null</code> when they cannot be serialized
+     */
+    public byte[] serialize(List<Process> processes) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(processes);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            logger.debug("Processes cannot be cached: {}", e.toString());
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] snapshot) {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            logger.warn("Unable to create process cache directory {}", directory);
+            return;
+        }
+        File file = getFile(key);
+        File tmp = null;
+        OutputStream out = null;
+        try {
+            tmp = File.createTempFile(key, ".tmp", directory);
+            out = new FileOutputStream(tmp);
+            out.write(snapshot);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                // another build stored the same snapshot first
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write process snapshot " + file, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        } finally {
+            close(out);
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + ".process");
+    }
+
+    private static void close(Object stream) {
+        try {
+            if (stream instanceof InputStream) {
+                ((InputStream) stream).close();
+            } else if (stream instanceof OutputStream) {
+                ((OutputStream) stream).close();
+            }
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.jbpm.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.drools.core.io.impl.ReaderResource;
+import org.drools.core.xml.DefaultSemanticModule;
+import org.drools.core.xml.SemanticModules;
+import org.jbpm.compiler.xml.ProcessSemanticModule;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class ProcessDefinitionCacheTest extends TestCase {
+
+    private static final String PROCESS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<process xmlns=\"http://drools.org/drools-5.0/process\"\n" +
+        "         xmlns:xs=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+        "         xs:schemaLocation=\"http://drools.org/drools-5.0/process drools-processes-5.0.xsd\"\n" +
+        "         type=\"RuleFlow\" name=\"flow\" id=\"org.drools.cached\" package-name=\"org.drools\" version=\"1\" >\n" +
+        "\n" +
+        "  <header>\n" +
+        "    <globals>\n" +
+        "      <global identifier=\"list\" type=\"java.util.List\" />\n" +
+        "    </globals>\n" +
+        "  </header>\n" +
+        "\n" +
+        "  <nodes>\n" +
+        "    <start id=\"1\" name=\"Start\" />\n" +
+        "    <actionNode id=\"2\" name=\"Action\" >\n" +
+        "      <action type=\"expression\" dialect=\"java\" >list.add(\"Executed\");</action>\n" +
+        "    </actionNode>\n" +
+        "    <end id=\"3\" name=\"End\" />\n" +
+        "  </nodes>\n" +
+        "\n" +
+        "  <connections>\n" +
+        "    <connection from=\"1\" to=\"2\" />\n" +
+        "    <connection from=\"2\" to=\"3\" />\n" +
+        "  </connections>\n" +
+        "\n" +
+        "</process>";
+
+    private File directory;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("process-cache", "");
+        directory.delete();
+        System.setProperty(ProcessDefinitionCache.CACHE_DIR_PROPERTY, directory.getAbsolutePath());
+    }
+
+    protected void tearDown() throws Exception {
+        System.clearProperty(ProcessDefinitionCache.CACHE_DIR_PROPERTY);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testSnapshotIsReused() {
+        assertProcessRuns(build());
+        File[] snapshots = directory.listFiles();
+        assertEquals(1, snapshots.length);
+        long modified = snapshots[0].lastModified();
+
+        assertProcessRuns(build());
+        snapshots = directory.listFiles();
+        assertEquals(1, snapshots.length);
+        assertEquals(modified, snapshots[0].lastModified());
+    }
+
+    public void testUnreadableSnapshotIsReplaced() throws Exception {
+        build();
+        File snapshot = directory.listFiles()[0];
+        long length = snapshot.length();
+        FileOutputStream out = new FileOutputStream(snapshot);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        assertProcessRuns(build());
+        // the unreadable snapshot is deleted and rewritten after the process is parsed again
+        assertTrue(snapshot.isFile());
+        assertEquals(length, snapshot.length());
+    }
+
+    public void testInvalidProcessIsNotCached() {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ReaderResource(new StringReader(PROCESS.replace("<connection from=\"2\" to=\"3\" />\n", ""))),
+                     ResourceType.DRF);
+        assertTrue(kbuilder.hasErrors());
+        File[] files = directory.listFiles();
+        assertTrue(files == null || files.length == 0);
+    }
+
+    public void testKeyCoversSemanticModules() {
+        ProcessDefinitionCache cache = ProcessDefinitionCache.getConfiguredCache();
+        SemanticModules modules = new SemanticModules();
+        modules.addSemanticModule(new ProcessSemanticModule());
+        String key = cache.getKey(PROCESS, ProcessDefinitionCache.getBuildContext(modules));
+        assertEquals(key, cache.getKey(PROCESS, ProcessDefinitionCache.getBuildContext(modules)));
+
+        modules.addSemanticModule(new DefaultSemanticModule("http://www.jboss.org/custom"));
+        assertFalse(key.equals(cache.getKey(PROCESS, ProcessDefinitionCache.getBuildContext(modules))));
+    }
+
+    public void testSnapshotWithForeignClassIsRejected() {
+        ProcessDefinitionCache cache = ProcessDefinitionCache.getConfiguredCache();
+        List<Object> snapshot = new ArrayList<Object>();
+        snapshot.add(new File("process"));
+        ObjectOutputStream out = null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            out = new ObjectOutputStream(bytes);
+            out.writeObject(snapshot);
+            out.close();
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+        cache.put("foreign", bytes.toByteArray());
+
+        assertNull(cache.get("foreign", getClass().getClassLoader()));
+        assertFalse(new File(directory, "foreign.process").exists());
+    }
+
+    public void testAllowedClasses() {
+        assertTrue(ProcessDefinitionCache.isAllowed("org.jbpm.ruleflow.core.RuleFlowProcess"));
+        assertTrue(ProcessDefinitionCache.isAllowed("java.util.ArrayList"));
+        assertTrue(ProcessDefinitionCache.isAllowed("[Ljava.lang.String;"));
+        assertTrue(ProcessDefinitionCache.isAllowed("[B"));
+        assertFalse(ProcessDefinitionCache.isAllowed("java.io.File"));
+        assertFalse(ProcessDefinitionCache.isAllowed("[Ljava.net.URL;"));
+        assertFalse(ProcessDefinitionCache.isAllowed("java.lang.reflect.Proxy"));
+        assertFalse(ProcessDefinitionCache.isAllowed("org.apache.commons.collections.functors.InvokerTransformer"));
+    }
+
+    private KnowledgeBase build() {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ReaderResource(new StringReader(PROCESS)), ResourceType.DRF);
+        assertFalse(kbuilder.getErrors().toString(), kbuilder.hasErrors());
+        return kbuilder.newKnowledgeBase();
+    }
+
+    private void assertProcessRuns(KnowledgeBase kbase) {
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        List<String> list = new ArrayList<String>();
+        ksession.setGlobal("list", list);
+        ProcessInstance processInstance = ksession.startProcess("org.drools.cached");
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        assertEquals(1, list.size());
+        ksession.dispose();
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.jbpm.process.instance.context.variable;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,6 +28,7 @@ import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.instance.ContextInstanceContainer;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.context.AbstractContextInstance;
+import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.workflow.core.Node;
 import org.jbpm.workflow.instance.node.CompositeContextNodeInstance;
 
@@ -46,13 +49,40 @@ public class VariableScopeInstance extends AbstractContextInstance {
     }
 
     public Object getVariable(String name) {
-        return variables.get(name);
+        Object value = variables.get(name);
+        if (value != null && !isImmutable(value)) {
+            markModified();
+        }
+        return value;
     }
 
     public Map<String, Object> getVariables() {
+        for (Object value : variables.values()) {
+            if (value != null && !isImmutable(value)) {
+                markModified();
+                break;
+            }
+        }
         return Collections.unmodifiableMap(variables);
     }
 
+    /**
+     * Values that are not immutable may be changed in place by the caller, which cannot be detected,
+     * so handing them out counts as a modification of the process instance.
+     */
+    private static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Boolean || value instanceof Character
+            || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+            || value instanceof Double || value instanceof Float || value instanceof BigDecimal
+            || value instanceof BigInteger || value instanceof Enum;
+    }
+
+    private void markModified() {
+        if (getProcessInstance() != null) {
+            ((ProcessInstanceImpl) getProcessInstance()).markModified();
+        }
+    }
+
     public void setVariable(String name, Object value) {
         if (name == null) {
             throw new IllegalArgumentException(
@@ -85,6 +115,7 @@ public class VariableScopeInstance extends AbstractContextInstance {
     
     public void internalSetVariable(String name, Object value) {
     	variables.put(name, value);
+    	markModified();
     }
     
     public VariableScope getVariableScope() {
@@ -74,15 +74,23 @@ public class DefaultSignalManager implements SignalManager {
 	}
 	
 	public void internalSignalEvent(String type, Object event) {
-		if (processEventListeners != null) {
-			List<EventListener> eventListeners = processEventListeners.get(type);
-			if (eventListeners != null) {
-				for (EventListener eventListener: eventListeners) {
-					eventListener.signalEvent(type, event);
-				}
+		List<EventListener> eventListeners = getEventListeners(type);
+		if (eventListeners != null) {
+			for (EventListener eventListener: eventListeners) {
+				eventListener.signalEvent(type, event);
 			}
 		}
 	}
+	
+	/**
+	 * @return the listeners registered for the given type or <code>null</code> if there are none
+	 */
+	protected List<EventListener> getEventListeners(String type) {
+		if (processEventListeners == null) {
+			return null;
+		}
+		return processEventListeners.get(type);
+	}
 	public void signalEvent(long processInstanceId, String type, Object event) {
 		ProcessInstance processInstance = kruntime.getProcessInstance(processInstanceId);
 		if (processInstance != null) {
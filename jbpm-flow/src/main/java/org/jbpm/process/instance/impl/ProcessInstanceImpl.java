@@ -52,6 +52,8 @@ public abstract class ProcessInstanceImpl implements ProcessInstance, Serializab
     private transient InternalKnowledgeRuntime kruntime;
     private Map<String, Object> metaData = new HashMap<String, Object>();
     private String outcome;
+    private transient boolean modified;
+    private transient ModificationListener modificationListener;
 
     public void setId(final long id) {
         this.id = id;
@@ -70,6 +72,7 @@ public abstract class ProcessInstanceImpl implements ProcessInstance, Serializab
     	setProcess(process);
     	XmlProcessDumper dumper = XmlProcessDumperFactory.newXmlProcessDumperFactory();
     	this.processXml = dumper.dumpProcess(process);
+    	markModified();
     }
     
     public String getProcessXml() {
@@ -118,6 +121,7 @@ public abstract class ProcessInstanceImpl implements ProcessInstance, Serializab
     
     public void internalSetState(final int state) {
     	this.state = state;
+    	markModified();
     }
 
     public int getState() {
@@ -253,10 +257,51 @@ public abstract class ProcessInstanceImpl implements ProcessInstance, Serializab
 
     public void setMetaData(String name, Object data) {
         this.metaData.put(name, data);
+        markModified();
     }
 
     public void setOutcome(String outcome) {
         this.outcome = outcome;
+        markModified();
+    }
+
+    /**
+     * Records that the state of this process instance (its node instances,
+     * variables, timers or status) changed since it was last stored or loaded.
+     * Persistence implementations can use this to skip re-marshalling
+     * process instances that were only read.
+     */
+    public void markModified() {
+        if (!modified) {
+            this.modified = true;
+            if (modificationListener != null) {
+                modificationListener.processInstanceModified(this);
+            }
+        }
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public void clearModified() {
+        this.modified = false;
+    }
+
+    /**
+     * @param modificationListener notified whenever this process instance becomes modified after
+     * having been loaded or stored, or <code>null</code>
+     */
+    public void setModificationListener(ModificationListener modificationListener) {
+        this.modificationListener = modificationListener;
+    }
+
+    /**
+     * Lets persistence implementations find out when a process instance they loaded has to be stored again.
+     */
+    public interface ModificationListener {
+
+        void processInstanceModified(ProcessInstanceImpl processInstance);
     }
 
     public String getOutcome() {
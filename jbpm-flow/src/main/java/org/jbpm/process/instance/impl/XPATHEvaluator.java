@@ -0,0 +1,150 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.kie.api.runtime.process.ProcessContext;
+import org.w3c.dom.Document;
+
+/**
+ * Evaluates the XPath expressions of the XPath dialect without creating a new <code>XPathFactory</code>,
+ * <code>XPath</code> and <code>DocumentBuilder</code> on every call.
+ * </p>
+ * Neither of them nor compiled expressions are thread safe, so every thread gets its own evaluator
+ * (see {@link #get()}) which compiles each expression once and keeps it for later evaluations.
+ * Variables and the <code>getVariable</code> function are resolved against the {@link ProcessContext}
+ * given to {@link #evaluate(String, Object, QName, ProcessContext)}. The compiled expressions of each
+ * thread are bounded by {@link #CACHE_SIZE_PROPERTY}: once full, expressions are still evaluated
+ * but no longer cached.
+ */
+public final class XPATHEvaluator {
+
+    public static final String CACHE_SIZE_PROPERTY = "jbpm.xpath.cache.size";
+
+    private static final int MAX_SIZE = Integer.parseInt(System.getProperty(CACHE_SIZE_PROPERTY, "1000"));
+
+    private static final ThreadLocal<XPATHEvaluator> evaluators = new ThreadLocal<XPATHEvaluator>() {
+        protected XPATHEvaluator initialValue() {
+            return new XPATHEvaluator();
+        }
+    };
+
+    private final XPath xpath;
+    private final Map<String, XPathExpression> expressions = new HashMap<String, XPathExpression>();
+    private DocumentBuilder documentBuilder;
+    private Document emptyDocument;
+    private ProcessContext context;
+
+    private XPATHEvaluator() {
+        xpath = XPathFactory.newInstance().newXPath();
+        xpath.setXPathFunctionResolver(new XPathFunctionResolver() {
+            public XPathFunction resolveFunction(QName functionName, int arity) {
+                String localName = functionName.getLocalPart();
+                if ("getVariable".equals(localName)) {
+                    return new GetVariableData();
+                } else {
+                    throw new RuntimeException("Unknown BPMN function: " + functionName);
+                }
+            }
+        });
+        xpath.setXPathVariableResolver(new XPathVariableResolver() {
+            public Object resolveVariable(QName variableName) {
+                return getContext().getVariable(variableName.getLocalPart());
+            }
+        });
+    }
+
+    /**
+     * @return the evaluator of the current thread, it must not be handed to other threads
+     */
+    public static XPATHEvaluator get() {
+        return evaluators.get();
+    }
+
+    /**
+     * Evaluates the given expression on the item using the cached compiled expression.
+     */
+    public Object evaluate(String expression, Object item, QName returnType, ProcessContext context) throws XPathExpressionException {
+        XPathExpression compiled = compile(expression);
+        ProcessContext previous = this.context;
+        this.context = context;
+        try {
+            return compiled.evaluate(item, returnType);
+        } finally {
+            this.context = previous;
+        }
+    }
+
+    public XPathExpression compile(String expression) throws XPathExpressionException {
+        XPathExpression compiled = expressions.get(expression);
+        if (compiled == null) {
+            compiled = xpath.compile(expression);
+            if (expressions.size() < MAX_SIZE) {
+                expressions.put(expression, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return an empty document shared by the evaluations of this thread, it must not be modified
+     */
+    public Document getEmptyDocument() throws ParserConfigurationException {
+        if (emptyDocument == null) {
+            emptyDocument = newDocument();
+        }
+        return emptyDocument;
+    }
+
+    public Document newDocument() throws ParserConfigurationException {
+        if (documentBuilder == null) {
+            documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        }
+        return documentBuilder.newDocument();
+    }
+
+    private ProcessContext getContext() {
+        if (context == null) {
+            throw new IllegalStateException("XPath expression is not evaluated within a process context");
+        }
+        return context;
+    }
+
+    private class GetVariableData implements XPathFunction {
+        @SuppressWarnings("rawtypes")
+        public Object evaluate(List args) throws XPathFunctionException {
+            String varname = (String) args.get(0);
+            return getContext().getVariable(varname);
+        }
+    }
+}
@@ -20,18 +20,8 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.List;
 
-import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathFunction;
-import javax.xml.xpath.XPathFunctionException;
-import javax.xml.xpath.XPathFunctionResolver;
-import javax.xml.xpath.XPathVariableResolver;
 
 import org.kie.api.runtime.process.ProcessContext;
 
@@ -69,38 +59,8 @@ public class XPATHReturnValueEvaluator
     }
 
     public Object evaluate(final ProcessContext context) throws Exception {        
-    	XPathFactory factory = XPathFactory.newInstance();
-    	XPath xpathEvaluator = factory.newXPath();
-    	xpathEvaluator.setXPathFunctionResolver( 
-    			new  XPathFunctionResolver() {
-    				public XPathFunction resolveFunction(QName functionName, int arity)
-    				{
-    					String localName = functionName.getLocalPart();
-    					if ("getVariable".equals(localName)) {
-    						return new GetVariableData();
-    					}
-    					else {
-    						throw new RuntimeException("Unknown BPMN function: " + functionName);
-    					}
-    				}
-
-    				class GetVariableData implements XPathFunction {
-    					public Object evaluate(List args) throws XPathFunctionException {
-    						String varname = (String) args.get(0);
-    						return context.getVariable(varname);
-    					}
-    				}
-    			}
-    	);
-    	xpathEvaluator.setXPathVariableResolver(new XPathVariableResolver() {
-            
-            public Object resolveVariable(QName variableName) {
-                return context.getVariable(variableName.getLocalPart());
-            }
-        });
-
-		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        return xpathEvaluator.evaluate(this.expression, builder.newDocument(), XPathConstants.BOOLEAN);
+        XPATHEvaluator evaluator = XPATHEvaluator.get();
+        return evaluator.evaluate(this.expression, evaluator.getEmptyDocument(), XPathConstants.BOOLEAN, context);
     }
 
     public String toString() {
@@ -16,10 +16,26 @@
 
 package org.jbpm.workflow.core.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.kie.api.definition.process.Node;
 import org.kie.api.definition.process.NodeContainer;
+import org.jbpm.process.core.event.EventFilter;
+import org.jbpm.process.core.event.EventTypeFilter;
 import org.jbpm.process.core.impl.ProcessImpl;
 import org.jbpm.workflow.core.WorkflowProcess;
+import org.jbpm.workflow.core.node.CompositeNode;
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.core.node.EventNodeInterface;
+import org.jbpm.workflow.core.node.EventSubProcessNode;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 
 /**
  * Default implementation of a RuleFlow process.
@@ -33,6 +49,8 @@ public class WorkflowProcessImpl extends ProcessImpl implements WorkflowProcess,
     private boolean autoComplete = false;
     private boolean dynamic = false;
     private org.jbpm.workflow.core.NodeContainer nodeContainer;
+    private transient volatile EventNodeIndex eventNodeIndex;
+    private transient volatile ExpressionCache expressionCache;
     
     public WorkflowProcessImpl() {
         nodeContainer = (org.jbpm.workflow.core.NodeContainer) createNodeContainer();
@@ -65,11 +83,55 @@ public class WorkflowProcessImpl extends ProcessImpl implements WorkflowProcess,
     public void removeNode(final Node node) {
         nodeContainer.removeNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(null);
+        resetEventNodeIndex();
     }
 
     public void addNode(final Node node) {
         nodeContainer.addNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(this);
+        resetEventNodeIndex();
+    }
+    
+    /**
+     * Drops the event node index, so it is rebuilt the next time it is used. Called when the nodes
+     * of the process change, including the nodes inside its composite nodes.
+     */
+    public void resetEventNodeIndex() {
+        eventNodeIndex = null;
+    }
+    
+    /**
+     * Returns the top-level {@link EventNodeInterface} nodes that might accept events of
+     * the given type, in the same order as {@link #getNodes()}. Callers must still check
+     * {@link EventNodeInterface#acceptsEvent(String, Object)} on the returned nodes.
+     * </p>
+     * The index is built the first time it is used and rebuilt when nodes are added or removed,
+     * at the top level or inside composite nodes.
+     */
+    public List<Node> getEventNodes(String type) {
+        EventNodeIndex index = eventNodeIndex;
+        if (index == null) {
+            index = new EventNodeIndex(getNodes());
+            eventNodeIndex = index;
+        }
+        return index.getNodes(type);
+    }
+    
+    /**
+     * @return the compiled expressions used by the nodes of this process, see {@link ExpressionCache}
+     */
+    public ExpressionCache getExpressionCache() {
+        ExpressionCache cache = expressionCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = expressionCache;
+                if (cache == null) {
+                    cache = new ExpressionCache();
+                    expressionCache = cache;
+                }
+            }
+        }
+        return cache;
     }
     
     public boolean isAutoComplete() {
@@ -88,4 +150,92 @@ public class WorkflowProcessImpl extends ProcessImpl implements WorkflowProcess,
 		this.dynamic = dynamic;
 	}
 
+    private static class EventNodeIndex {
+
+        private final Map<String, List<Node>> nodesByType = new HashMap<String, List<Node>>();
+        private final List<Node> nodesAcceptingAnyType = new ArrayList<Node>();
+
+        private EventNodeIndex(Node[] nodes) {
+            Map<Node, Set<String>> eventTypes = new HashMap<Node, Set<String>>();
+            Set<String> allTypes = new HashSet<String>();
+            for (Node node: nodes) {
+                if (node instanceof EventNodeInterface) {
+                    Set<String> types = getEventTypes(node);
+                    if (types == null) {
+                        nodesAcceptingAnyType.add(node);
+                    } else {
+                        allTypes.addAll(types);
+                    }
+                    eventTypes.put(node, types);
+                }
+            }
+            for (String type: allTypes) {
+                List<Node> candidates = new ArrayList<Node>();
+                for (Node node: nodes) {
+                    if (eventTypes.containsKey(node)) {
+                        Set<String> types = eventTypes.get(node);
+                        if (types == null || types.contains(type)) {
+                            candidates.add(node);
+                        }
+                    }
+                }
+                nodesByType.put(type, Collections.unmodifiableList(candidates));
+            }
+        }
+
+        private List<Node> getNodes(String type) {
+            List<Node> nodes = nodesByType.get(type);
+            return nodes == null ? nodesAcceptingAnyType : nodes;
+        }
+
+        /**
+         * @return the event types the node can accept or <code>null</code> if these cannot
+         * be determined up front
+         */
+        private static Set<String> getEventTypes(Node node) {
+            if (!isDefaultAcceptsEvent(node)) {
+                return null;
+            }
+            Set<String> types = new LinkedHashSet<String>();
+            if (node instanceof EventSubProcessNode) {
+                types.addAll(((EventSubProcessNode) node).getEvents());
+            } else if (node instanceof EventNode) {
+                // all filters must accept the event, so any type filter restricts the type
+                for (EventFilter filter: ((EventNode) node).getEventFilters()) {
+                    if (filter instanceof EventTypeFilter) {
+                        String type = ((EventTypeFilter) filter).getType();
+                        if (type != null) {
+                            types.add(type);
+                        }
+                        return types;
+                    }
+                }
+                return null;
+            } else if (node instanceof CompositeNode) {
+                for (Node child: ((CompositeNode) node).internalGetNodes()) {
+                    if (child instanceof EventNodeInterface) {
+                        Set<String> childTypes = getEventTypes(child);
+                        if (childTypes == null) {
+                            return null;
+                        }
+                        types.addAll(childTypes);
+                    }
+                }
+            } else {
+                return null;
+            }
+            return types;
+        }
+
+        private static boolean isDefaultAcceptsEvent(Node node) {
+            try {
+                Class<?> declaringClass = node.getClass().getMethod("acceptsEvent", String.class, Object.class).getDeclaringClass();
+                return declaringClass == EventNode.class || declaringClass == EventSubProcessNode.class
+                    || declaringClass == CompositeNode.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ import org.jbpm.workflow.core.NodeContainer;
 import org.jbpm.workflow.core.impl.ConnectionImpl;
 import org.jbpm.workflow.core.impl.NodeContainerImpl;
 import org.jbpm.workflow.core.impl.NodeImpl;
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 
 /**
  * 
@@ -85,6 +86,7 @@ public class CompositeNode extends StateBasedNode implements NodeContainer, Even
     	}
     	nodeContainer.addNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(this);
+        resetEventNodeIndex();
     }
     
     protected void internalAddNode(Node node) {
@@ -94,6 +96,20 @@ public class CompositeNode extends StateBasedNode implements NodeContainer, Even
     public void removeNode(Node node) {
         nodeContainer.removeNode(node);
         ((org.jbpm.workflow.core.Node) node).setNodeContainer(null);
+        resetEventNodeIndex();
+    }
+
+    /**
+     * The event node index of the process covers the nodes of its composite nodes.
+     */
+    private void resetEventNodeIndex() {
+        org.kie.api.definition.process.NodeContainer container = getNodeContainer();
+        while (container instanceof CompositeNode) {
+            container = ((CompositeNode) container).getNodeContainer();
+        }
+        if (container instanceof WorkflowProcessImpl) {
+            ((WorkflowProcessImpl) container).resetEventNodeIndex();
+        }
     }
     
     protected void internalRemoveNode(Node node) {
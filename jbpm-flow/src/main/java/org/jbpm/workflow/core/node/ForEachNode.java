@@ -44,6 +44,8 @@ public class ForEachNode extends CompositeNode {
     private String collectionExpression;
     private String outputCollectionExpression;
     private boolean waitForCompletion = true;
+    private boolean sequential = false;
+    private int maxConcurrentInstances = 0;
 
     public ForEachNode() {
         // Split
@@ -232,6 +234,36 @@ public class ForEachNode extends CompositeNode {
         this.waitForCompletion = waitForCompletion;
     }
 
+    public boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * When sequential, the next iteration is only started once the previous one completed.
+     */
+    public void setSequential(boolean sequential) {
+        this.sequential = sequential;
+    }
+
+    public int getMaxConcurrentInstances() {
+        return maxConcurrentInstances;
+    }
+
+    /**
+     * Limits the number of iterations that are active at the same time, the remaining iterations
+     * are started as active ones complete. 0 (the default) starts all iterations at once.
+     */
+    public void setMaxConcurrentInstances(int maxConcurrentInstances) {
+        this.maxConcurrentInstances = maxConcurrentInstances;
+    }
+
+    /**
+     * @return the maximum number of active iterations, 0 if unbounded
+     */
+    public int getConcurrencyLimit() {
+        return sequential ? 1 : maxConcurrentInstances;
+    }
+
    public class ForEachSplitNode extends ExtendedNodeImpl {
         private static final long serialVersionUID = 510l;
     }
@@ -16,7 +16,13 @@
 
 package org.jbpm.workflow.core.node;
 
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
 import org.kie.api.definition.process.Connection;
+import org.kie.api.definition.process.Node;
 import org.jbpm.workflow.core.impl.NodeImpl;
 
 /**
@@ -53,9 +59,13 @@ public class Join extends NodeImpl {
     public static final int TYPE_OR = 5;
     
     private static final long serialVersionUID = 510l;
+    
+    private static final int MAX_UPSTREAM_NODE_ID = 0xFFFF;
 
     private int type;
     private String n;
+    private transient volatile BitSet upstreamNodeIds;
+    private transient volatile boolean upstreamNodeIdsResolved;
 
     public Join() {
         this.type = TYPE_UNDEFINED;
@@ -77,6 +87,52 @@ public class Join extends NodeImpl {
     	return n;
     }
 
+    /**
+     * Returns the ids of the nodes (in the same node container as this join) from which
+     * this join can be reached by following default connections, so an OR join only has to
+     * check whether one of these nodes is active. The join itself is not included.
+     * The result is computed once, the first time it is needed.
+     * 
+     * @return the upstream node ids or <code>null</code> if the node ids are too large to be
+     * kept in a bit set
+     */
+    public BitSet getUpstreamNodeIds() {
+        if (!upstreamNodeIdsResolved) {
+            upstreamNodeIds = computeUpstreamNodeIds();
+            upstreamNodeIdsResolved = true;
+        }
+        return upstreamNodeIds;
+    }
+    
+    private BitSet computeUpstreamNodeIds() {
+        BitSet result = new BitSet();
+        Deque<Node> toVisit = new ArrayDeque<Node>();
+        toVisit.push(this);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            for (List<Connection> connections: node.getIncomingConnections().values()) {
+                for (Connection connection: connections) {
+                    Node from = connection.getFrom();
+                    if (from == null || !org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE.equals(connection.getFromType())) {
+                        continue;
+                    }
+                    long id = from.getId();
+                    if (id < 0 || id > MAX_UPSTREAM_NODE_ID) {
+                        return null;
+                    }
+                    if (!result.get((int) id)) {
+                        result.set((int) id);
+                        toVisit.push(from);
+                    }
+                }
+            }
+        }
+        if (getId() >= 0 && getId() <= MAX_UPSTREAM_NODE_ID) {
+            result.clear((int) getId());
+        }
+        return result;
+    }
+
     public void validateAddIncomingConnection(final String type, final Connection connection) {
         super.validateAddIncomingConnection(type, connection);
         if (!org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE.equals(type)) {
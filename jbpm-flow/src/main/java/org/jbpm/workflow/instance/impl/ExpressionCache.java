@@ -0,0 +1,173 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
+import org.kie.api.definition.process.Process;
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+import org.mvel2.integration.VariableResolverFactory;
+
+/**
+ * Caches the compiled form of the MVEL expressions used in data associations of a process and
+ * the parameter names of <code>#{expression}</code> strings, so node instances do not
+ * have to parse them again every time they are triggered.
+ * </p>
+ * Compiled expressions resolve classes when they are compiled, so every process has its own cache
+ * (see {@link #forProcess(Process)}) and processes of different knowledge bases never share them.
+ * The expressions of a process are compiled with the class loader of its knowledge base when the process
+ * is built, anything else is compiled the first time it is used. Parameter names only depend on the
+ * string they are parsed from and are shared by all processes. Both caches are bounded by
+ * {@link #CACHE_SIZE_PROPERTY}: once full, expressions are still evaluated but no longer
+ * cached, as strings containing <code>#{}</code> may also come from process variables.
+ */
+public final class ExpressionCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "jbpm.expression.cache.size";
+
+    private static final Pattern PARAMETER_MATCHER = Pattern.compile("#\\{([\\S&&[^\\}]]+)\\}", Pattern.DOTALL);
+    private static final String[] NO_PARAMETERS = new String[0];
+
+    private static final int MAX_SIZE = Integer.parseInt(System.getProperty(CACHE_SIZE_PROPERTY, "5000"));
+
+    private static final ConcurrentMap<String, String[]> templates = new ConcurrentHashMap<String, String[]>();
+
+    private final ConcurrentMap<String, Serializable> expressions = new ConcurrentHashMap<String, Serializable>();
+    private volatile ClassLoader classLoader;
+
+    public ExpressionCache() {
+    }
+
+    /**
+     * @return the cache of the given process, or a cache that is not shared when the process
+     * cannot hold one
+     */
+    public static ExpressionCache forProcess(Process process) {
+        if (process instanceof WorkflowProcessImpl) {
+            return ((WorkflowProcessImpl) process).getExpressionCache();
+        }
+        return new ExpressionCache();
+    }
+
+    /**
+     * @param classLoader the class loader expressions are compiled with, the thread's context class
+     * loader is used when <code>null</code>
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Evaluates the given MVEL expression, using its cached compiled form.
+     */
+    public Object eval(String expression, VariableResolverFactory factory) {
+        return MVEL.executeExpression(getCompiledExpression(expression), factory);
+    }
+
+    /**
+     * @return the distinct names used in the <code>#{name}</code> parameters of the given string,
+     * in order of appearance
+     */
+    public static String[] getParameterNames(String s) {
+        if (s.indexOf("#{") < 0) {
+            return NO_PARAMETERS;
+        }
+        String[] names = templates.get(s);
+        if (names == null) {
+            names = parseParameterNames(s);
+            if (templates.size() < MAX_SIZE) {
+                templates.putIfAbsent(s, names);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Compiles the given expression ahead of time, errors are ignored as they will be
+     * reported when the expression is evaluated.
+     */
+    public void precompile(String expression) {
+        if (expression == null) {
+            return;
+        }
+        try {
+            getCompiledExpression(expression);
+        } catch (Throwable t) {
+            // reported at runtime
+        }
+    }
+
+    /**
+     * Parses the given <code>#{}</code> string and compiles its parameters ahead of time.
+     */
+    public void precompileTemplate(String s) {
+        if (s == null) {
+            return;
+        }
+        for (String name: getParameterNames(s)) {
+            precompile(name);
+        }
+    }
+
+    public void clear() {
+        expressions.clear();
+    }
+
+    public static void clearTemplates() {
+        templates.clear();
+    }
+
+    private Serializable getCompiledExpression(String expression) {
+        Serializable compiled = expressions.get(expression);
+        if (compiled == null) {
+            ClassLoader loader = classLoader;
+            if (loader == null) {
+                compiled = MVEL.compileExpression(expression);
+            } else {
+                ParserConfiguration configuration = new ParserConfiguration();
+                configuration.setClassLoader(loader);
+                compiled = MVEL.compileExpression(expression, new ParserContext(configuration));
+            }
+            if (expressions.size() < MAX_SIZE) {
+                expressions.putIfAbsent(expression, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    private static String[] parseParameterNames(String s) {
+        List<String> names = new ArrayList<String>();
+        Matcher matcher = PARAMETER_MATCHER.matcher(s);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+}
@@ -73,7 +73,11 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
 
     public void setNodeId(final long nodeId) {
+        long oldNodeId = this.nodeId;
         this.nodeId = nodeId;
+        if (oldNodeId != nodeId && nodeInstanceContainer instanceof WorkflowProcessInstanceImpl) {
+            ((WorkflowProcessInstanceImpl) nodeInstanceContainer).nodeIdChanged(this, oldNodeId);
+        }
     }
 
     public long getNodeId() {
@@ -93,6 +97,13 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
         return this.processInstance;
     }
 
+    /**
+     * @return the compiled expressions of the process this node instance belongs to
+     */
+    protected ExpressionCache getExpressionCache() {
+        return ExpressionCache.forProcess(this.processInstance.getProcess());
+    }
+
     public NodeInstanceContainer getNodeInstanceContainer() {
         return this.nodeInstanceContainer;
     }
@@ -117,7 +128,16 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
         nodeInstanceContainer.removeNodeInstance(this);
     }
     
-    public final void trigger(NodeInstance from, String type) {
+    public final void trigger(final NodeInstance from, final String type) {
+    	NodeInstanceTriggerQueue triggerQueue = getTriggerQueue();
+    	if (triggerQueue != null && !triggerQueue.isDraining()) {
+    		triggerQueue.drain(new Runnable() {
+    			public void run() {
+    				trigger(from, type);
+    			}
+    		});
+    		return;
+    	}
     	boolean hidden = false;
     	if (getNode().getMetaData().get("hidden") != null) {
     		hidden = true;
@@ -125,7 +145,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     	
     	Collection<Connection> incoming = getNode().getIncomingConnections(type);
     	for (Connection conn : incoming) {
-    	    if (conn.getFrom().getId() == from.getNodeId()) {
+    	    if (from != null && conn.getFrom().getId() == from.getNodeId()) {
     	        this.metaData.put("IncomingConnection", conn.getMetaData().get("UniqueId"));
     	        break;
     	    }
@@ -135,6 +155,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     		((InternalProcessRuntime) kruntime.getProcessRuntime())
     			.getProcessEventSupport().fireBeforeNodeTriggered(this, kruntime);
     	}
+    	int mark = triggerQueue == null ? 0 : triggerQueue.mark();
         try {
             internalTrigger(from, type);
         }
@@ -145,11 +166,34 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             throw new WorkflowRuntimeException(this, e);
         }
         if (!hidden) {
-        	((InternalProcessRuntime) kruntime.getProcessRuntime())
-        		.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+        	if (triggerQueue != null) {
+        		// only after the nodes triggered by this node have been executed
+        		triggerQueue.executeAfter(mark, new Runnable() {
+        			public void run() {
+        				InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
+        				((InternalProcessRuntime) kruntime.getProcessRuntime())
+        					.getProcessEventSupport().fireAfterNodeTriggered(NodeInstanceImpl.this, kruntime);
+        			}
+        		});
+        	} else {
+        		((InternalProcessRuntime) kruntime.getProcessRuntime())
+        			.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
+        	}
         }
     }
     
+    /**
+     * @return the queue used to trigger node instances iteratively or <code>null</code>
+     * if node instances are triggered recursively
+     */
+    protected NodeInstanceTriggerQueue getTriggerQueue() {
+    	WorkflowProcessInstance processInstance = getProcessInstance();
+    	if (processInstance instanceof WorkflowProcessInstanceImpl) {
+    		return ((WorkflowProcessInstanceImpl) processInstance).getTriggerQueue();
+    	}
+    	return null;
+    }
+    
     public abstract void internalTrigger(NodeInstance from, String type);
    
     /**
@@ -222,7 +266,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
                 	if (((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer()).getState() != ProcessInstance.STATE_ACTIVE) {
     	        		return;
     	        	}
-    	    		triggerNodeInstance(nodeInstance.getNodeInstance(), nodeInstance.getToType());
+    	    		triggerNodeInstance(nodeInstance.getNodeInstance(), nodeInstance.getToType(), true);
     	        }
                 if ( !found ) {
                 	for ( final Iterator<Connection> iterator = connections.iterator(); iterator.hasNext(); ) {
@@ -260,6 +304,13 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             	((InternalProcessRuntime) kruntime.getProcessRuntime())
             		.getProcessEventSupport().fireAfterNodeLeft(this, kruntime);
             }
+        } else if (connections.size() == 1) {
+        	// stop if this process instance has been aborted / completed
+        	if (((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer()).getState() != ProcessInstance.STATE_ACTIVE) {
+        		return;
+        	}
+        	Connection connection = connections.get(0);
+        	triggerNodeInstance(followConnection(connection), connection.getToType(), true);
         } else {
         	Map<org.jbpm.workflow.instance.NodeInstance, String> nodeInstances = 
         		new HashMap<org.jbpm.workflow.instance.NodeInstance, String>();
@@ -271,7 +322,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
 	        	if (((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer()).getState() != ProcessInstance.STATE_ACTIVE) {
 	        		return;
 	        	}
-	    		triggerNodeInstance(nodeInstance.getKey(), nodeInstance.getValue());
+	    		triggerNodeInstance(nodeInstance.getKey(), nodeInstance.getValue(), true);
 	        }
         }
     }
@@ -302,6 +353,33 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     }
     
     protected void triggerNodeInstance(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type) {
+    	triggerNodeInstance(nodeInstance, type, false);
+    }
+    
+    /**
+     * Triggers the given node instance, when triggering iteratively and the maximum depth is
+     * reached this is done after the currently executing node has finished.
+     * 
+     * @param onlyWhenActive whether the node instance should no longer be triggered if the
+     * container of this node instance has been aborted or completed in the mean time
+     */
+    protected void triggerNodeInstance(final org.jbpm.workflow.instance.NodeInstance nodeInstance, final String type, final boolean onlyWhenActive) {
+    	NodeInstanceTriggerQueue triggerQueue = getTriggerQueue();
+    	if (triggerQueue == null) {
+    		internalTriggerNodeInstance(nodeInstance, type);
+    		return;
+    	}
+    	triggerQueue.execute(new Runnable() {
+    		public void run() {
+    			if (onlyWhenActive && ((org.jbpm.workflow.instance.NodeInstanceContainer) getNodeInstanceContainer()).getState() != ProcessInstance.STATE_ACTIVE) {
+    				return;
+    			}
+    			internalTriggerNodeInstance(nodeInstance, type);
+    		}
+    	});
+    }
+    
+    private void internalTriggerNodeInstance(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type) {
     	boolean hidden = false;
     	if (getNode().getMetaData().get("hidden") != null) {
     		hidden = true;
@@ -311,8 +389,26 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     		((InternalProcessRuntime) kruntime.getProcessRuntime())
     			.getProcessEventSupport().fireBeforeNodeLeft(this, kruntime);
     	}
+    	NodeInstanceTriggerQueue triggerQueue = getTriggerQueue();
+    	int mark = triggerQueue == null ? 0 : triggerQueue.mark();
     	// trigger next node
         nodeInstance.trigger(this, type);
+        if (triggerQueue != null) {
+        	// only after the nodes triggered by the next node have been executed
+        	final org.jbpm.workflow.instance.NodeInstance next = nodeInstance;
+        	final String nextType = type;
+        	final boolean nextHidden = hidden;
+        	triggerQueue.executeAfter(mark, new Runnable() {
+        		public void run() {
+        			nodeInstanceLeft(next, nextType, nextHidden);
+        		}
+        	});
+        } else {
+        	nodeInstanceLeft(nodeInstance, type, hidden);
+        }
+    }
+    
+    private void nodeInstanceLeft(org.jbpm.workflow.instance.NodeInstance nodeInstance, String type, boolean hidden) {
         Collection<Connection> outgoing = getNode().getOutgoingConnections(type);
         for (Connection conn : outgoing) {
             if (conn.getTo().getId() == nodeInstance.getNodeId()) {
@@ -321,6 +417,7 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
             }
         }
         if (!hidden) {
+        	InternalKnowledgeRuntime kruntime = getProcessInstance().getKnowledgeRuntime();
         	((InternalProcessRuntime) kruntime.getProcessRuntime())
         		.getProcessEventSupport().fireAfterNodeLeft(this, kruntime);
         }
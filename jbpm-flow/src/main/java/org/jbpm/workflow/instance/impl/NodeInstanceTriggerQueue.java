@@ -0,0 +1,134 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Explicit work stack used to trigger node instances of a single process instance
+ * iteratively instead of recursively (see {@link #ITERATIVE_TRIGGER_PROPERTY}).
+ * </p>
+ * The first continuation is executed by the caller that finds the queue idle. Continuations
+ * are executed right away, just like the recursive implementation does, as long as fewer than
+ * {@link #MAX_DEPTH_PROPERTY} of them are nested on the Java stack. Deeper continuations are
+ * scheduled and executed afterwards by that first caller, so the Java stack no longer grows
+ * with every node that is passed.
+ * </p>
+ * Scheduled continuations are executed depth first and in the order they were scheduled.
+ * Continuations that must follow a scheduled one, like the after triggered and after left
+ * events, are scheduled as well (see {@link #executeAfter(int, Runnable)}), so process event
+ * listeners see the same sequence of events as with the recursive implementation. Only code
+ * that runs after a node at the maximum depth called <code>triggerCompleted()</code> is
+ * executed before the next node is triggered.
+ */
+public class NodeInstanceTriggerQueue {
+
+    /**
+     * Set to <code>true</code> to trigger node instances iteratively.
+     */
+    public static final String ITERATIVE_TRIGGER_PROPERTY = "jbpm.enable.iterative.trigger";
+
+    /**
+     * Number of continuations that may be nested on the Java stack before they are scheduled,
+     * <code>256</code> by default.
+     */
+    public static final String MAX_DEPTH_PROPERTY = "jbpm.iterative.trigger.depth";
+
+    private final Deque<Runnable> stack = new ArrayDeque<Runnable>();
+    private final List<Runnable> scheduled = new ArrayList<Runnable>();
+    private final int maxDepth = Integer.parseInt(System.getProperty(MAX_DEPTH_PROPERTY, "256"));
+    private int depth;
+    private boolean draining;
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Executes the given continuation: immediately (followed by everything it schedules)
+     * when the queue is idle, immediately as well when the maximum depth is not reached yet,
+     * after the currently executing continuation otherwise.
+     */
+    public void execute(Runnable continuation) {
+        if (!draining) {
+            drain(continuation);
+        } else if (depth < maxDepth) {
+            depth++;
+            try {
+                continuation.run();
+            } finally {
+                depth--;
+            }
+        } else {
+            scheduled.add(continuation);
+        }
+    }
+
+    /**
+     * @return a mark to pass to {@link #executeAfter(int, Runnable)}
+     */
+    public int mark() {
+        return scheduled.size();
+    }
+
+    /**
+     * Executes the given continuation immediately if no continuation was scheduled since the
+     * given mark was taken, after the scheduled continuations otherwise.
+     */
+    public void executeAfter(int mark, Runnable continuation) {
+        if (draining && scheduled.size() > mark) {
+            scheduled.add(continuation);
+        } else {
+            continuation.run();
+        }
+    }
+
+    /**
+     * Executes the given continuation followed by all continuations it schedules, until
+     * the queue is empty.
+     */
+    public void drain(Runnable continuation) {
+        if (draining) {
+            throw new IllegalStateException("Node instance trigger queue is already being drained");
+        }
+        draining = true;
+        try {
+            run(continuation);
+            while (!stack.isEmpty()) {
+                run(stack.pop());
+            }
+        } finally {
+            stack.clear();
+            scheduled.clear();
+            depth = 0;
+            draining = false;
+        }
+    }
+
+    private void run(Runnable continuation) {
+        continuation.run();
+        // push in reverse so the first scheduled continuation is executed first
+        for (int i = scheduled.size() - 1; i >= 0; i--) {
+            stack.push(scheduled.get(i));
+        }
+        scheduled.clear();
+    }
+
+}
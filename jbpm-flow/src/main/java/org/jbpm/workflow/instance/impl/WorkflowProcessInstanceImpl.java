@@ -18,6 +18,7 @@ package org.jbpm.workflow.instance.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -36,6 +37,7 @@ import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.workflow.core.DroolsAction;
 import org.jbpm.workflow.core.impl.NodeImpl;
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 import org.jbpm.workflow.core.node.EventNode;
 import org.jbpm.workflow.core.node.EventNodeInterface;
 import org.jbpm.workflow.core.node.EventSubProcessNode;
@@ -68,14 +70,35 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	private long nodeInstanceCounter = 0;
 	private Map<String, List<EventListener>> eventListeners = new HashMap<String, List<EventListener>>();
 	private Map<String, List<EventListener>> externalEventListeners = new HashMap<String, List<EventListener>>();
+	private transient Map<Long, List<NodeInstance>> nodeInstancesByNodeId;
+	private transient NodeInstanceTriggerQueue triggerQueue;
+	private transient boolean triggerQueueResolved;
 
 	public NodeContainer getNodeContainer() {
 		return getWorkflowProcess();
 	}
 
+	/**
+	 * @return the queue used to trigger the node instances of this process instance iteratively,
+	 * or <code>null</code> if {@link NodeInstanceTriggerQueue#ITERATIVE_TRIGGER_PROPERTY} is not enabled
+	 */
+	public NodeInstanceTriggerQueue getTriggerQueue() {
+		if (!triggerQueueResolved) {
+			if (Boolean.parseBoolean(System.getProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY))) {
+				triggerQueue = new NodeInstanceTriggerQueue();
+			}
+			triggerQueueResolved = true;
+		}
+		return triggerQueue;
+	}
+
 	public void addNodeInstance(final NodeInstance nodeInstance) {
 		((NodeInstanceImpl) nodeInstance).setId(nodeInstanceCounter++);
 		this.nodeInstances.add(nodeInstance);
+		if (nodeInstancesByNodeId != null) {
+			indexNodeInstance(nodeInstancesByNodeId, nodeInstance);
+		}
+		markModified();
 	}
 
 	public void removeNodeInstance(final NodeInstance nodeInstance) {
@@ -83,7 +106,61 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 			getKnowledgeRuntime().retract(
 					getKnowledgeRuntime().getFactHandle(nodeInstance));
 		}
-		this.nodeInstances.remove(nodeInstance);
+		if (this.nodeInstances.remove(nodeInstance) && nodeInstancesByNodeId != null) {
+			List<NodeInstance> list = nodeInstancesByNodeId.get(nodeInstance.getNodeId());
+			if (list != null && list.remove(nodeInstance)) {
+				if (list.isEmpty()) {
+					nodeInstancesByNodeId.remove(nodeInstance.getNodeId());
+				}
+			} else {
+				// node id changed after the node instance was added
+				nodeInstancesByNodeId = null;
+			}
+		}
+		markModified();
+	}
+
+	/**
+	 * Moves an active node instance of this container to its new node id in the node id index.
+	 * Called by {@link NodeInstanceImpl#setNodeId(long)}, e.g. when the process instance is upgraded.
+	 */
+	public void nodeIdChanged(NodeInstance nodeInstance, long oldNodeId) {
+		if (nodeInstancesByNodeId == null) {
+			return;
+		}
+		List<NodeInstance> list = nodeInstancesByNodeId.get(oldNodeId);
+		if (list == null || !list.remove(nodeInstance)) {
+			// not indexed under its old node id, rebuild the index when next used
+			nodeInstancesByNodeId = null;
+			return;
+		}
+		if (list.isEmpty()) {
+			nodeInstancesByNodeId.remove(oldNodeId);
+		}
+		indexNodeInstance(nodeInstancesByNodeId, nodeInstance);
+	}
+
+	private static void indexNodeInstance(Map<Long, List<NodeInstance>> index, NodeInstance nodeInstance) {
+		List<NodeInstance> list = index.get(nodeInstance.getNodeId());
+		if (list == null) {
+			list = new ArrayList<NodeInstance>(1);
+			index.put(nodeInstance.getNodeId(), list);
+		}
+		list.add(nodeInstance);
+	}
+	
+	/**
+	 * @return the active node instances of this container, indexed by node id
+	 */
+	private Map<Long, List<NodeInstance>> getNodeInstancesByNodeId() {
+		if (nodeInstancesByNodeId == null) {
+			Map<Long, List<NodeInstance>> index = new HashMap<Long, List<NodeInstance>>();
+			for (NodeInstance nodeInstance: nodeInstances) {
+				indexNodeInstance(index, nodeInstance);
+			}
+			nodeInstancesByNodeId = index;
+		}
+		return nodeInstancesByNodeId;
 	}
 
 	public Collection<org.kie.api.runtime.process.NodeInstance> getNodeInstances() {
@@ -132,26 +209,13 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 	}
 
 	public NodeInstance getFirstNodeInstance(final long nodeId) {
-		for (final Iterator<NodeInstance> iterator = this.nodeInstances
-				.iterator(); iterator.hasNext();) {
-			final NodeInstance nodeInstance = iterator.next();
-			if (nodeInstance.getNodeId() == nodeId) {
-				return nodeInstance;
-			}
-		}
-		return null;
+		List<NodeInstance> list = getNodeInstancesByNodeId().get(nodeId);
+		return list == null ? null : list.get(0);
 	}
 
 	public List<NodeInstance> getNodeInstances(final long nodeId) {
-		List<NodeInstance> result = new ArrayList<NodeInstance>();
-		for (final Iterator<NodeInstance> iterator = this.nodeInstances
-				.iterator(); iterator.hasNext();) {
-			final NodeInstance nodeInstance = iterator.next();
-			if (nodeInstance.getNodeId() == nodeId) {
-				result.add(nodeInstance);
-			}
-		}
-		return result;
+		List<NodeInstance> list = getNodeInstancesByNodeId().get(nodeId);
+		return list == null ? new ArrayList<NodeInstance>() : new ArrayList<NodeInstance>(list);
 	}
 
 	public NodeInstance getNodeInstance(final Node node) {
@@ -358,6 +422,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 			}
 			List<EventListener> listeners = eventListeners.get(type);
 			if (listeners != null) {
+				markModified();
 				for (EventListener listener : listeners) {
 					listener.signalEvent(type, event);
 				}
@@ -368,7 +433,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 					listener.signalEvent(type, event);
 				}
 			}
-			for (Node node : getWorkflowProcess().getNodes()) {
+			for (Node node : getEventNodes(type)) {
 				if (node instanceof EventNodeInterface) {
 					if (((EventNodeInterface) node).acceptsEvent(type, event)) {
 						if (node instanceof EventNode && ((EventNode) node).getFrom() == null) {
@@ -381,6 +446,7 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 							List<NodeInstance> nodeInstances = getNodeInstances(node
 									.getId());
 							if (nodeInstances != null && !nodeInstances.isEmpty()) {
+								markModified();
 								for (NodeInstance nodeInstance : nodeInstances) {
 									((EventNodeInstanceInterface) nodeInstance)
 											.signalEvent(type, event);
@@ -402,6 +468,14 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 		}
 	}
 
+	private Collection<Node> getEventNodes(String type) {
+		WorkflowProcess process = getWorkflowProcess();
+		if (process instanceof WorkflowProcessImpl) {
+			return ((WorkflowProcessImpl) process).getEventNodes(type);
+		}
+		return Arrays.asList(process.getNodes());
+	}
+
 	public void addEventListener(String type, EventListener listener,
 			boolean external) {
 		Map<String, List<EventListener>> eventListeners = 
@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.workflow.core.node.CompositeNode;
 import org.jbpm.workflow.core.node.EventNode;
 import org.jbpm.workflow.core.node.EventNodeInterface;
@@ -145,10 +146,12 @@ public class CompositeNodeInstance extends StateBasedNodeInstance implements Nod
     public void addNodeInstance(final NodeInstance nodeInstance) {
         ((NodeInstanceImpl) nodeInstance).setId(nodeInstanceCounter++);
         this.nodeInstances.add(nodeInstance);
+        ((ProcessInstanceImpl) getProcessInstance()).markModified();
     }
 
     public void removeNodeInstance(final NodeInstance nodeInstance) {
         this.nodeInstances.remove(nodeInstance);
+        ((ProcessInstanceImpl) getProcessInstance()).markModified();
     }
 
     public Collection<org.kie.api.runtime.process.NodeInstance> getNodeInstances() {
@@ -19,11 +19,14 @@ package org.jbpm.workflow.instance.node;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.kie.api.definition.process.Connection;
 import org.kie.api.definition.process.Node;
 import org.jbpm.process.core.context.variable.VariableScope;
+import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.workflow.core.node.ForEachNode;
 import org.jbpm.workflow.core.node.ForEachNode.ForEachJoinNode;
@@ -32,7 +35,6 @@ import org.jbpm.workflow.instance.NodeInstance;
 import org.jbpm.workflow.instance.NodeInstanceContainer;
 import org.jbpm.workflow.instance.impl.NodeInstanceImpl;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
-import org.mvel2.MVEL;
 
 /**
  * Runtime counterpart of a for each node.
@@ -43,6 +45,11 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
 
     private static final long serialVersionUID = 510l;
     
+    /**
+     * Variable of an iteration holding the position of its output in the output collection.
+     */
+    private static final String ITERATION_INDEX_VARIABLE = "jbpm.forEach.iterationIndex";
+    
     public ForEachNode getForEachNode() {
         return (ForEachNode) getNode();
     }
@@ -78,7 +85,7 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
             collection = variableScopeInstance.getVariable(collectionExpression);
         } else {
             try {
-                collection = MVEL.eval(collectionExpression, new NodeInstanceResolverFactory(this));
+                collection = getExpressionCache().eval(collectionExpression, new NodeInstanceResolverFactory(this));
             } catch (Throwable t) {
                 throw new IllegalArgumentException(
                     "Could not find collection " + collectionExpression);
@@ -102,6 +109,42 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
             "Unexpected collection type: " + collection.getClass());
     }
     
+    /**
+     * Triggers iterations that were created but not started yet, as long as fewer than
+     * {@link ForEachNode#getConcurrencyLimit()} iterations are active. An iteration that was 
+     * not started yet does not contain any node instances, which also holds after the process 
+     * instance was persisted and reloaded.
+     * 
+     * @param split the split node instance that created the iterations, or <code>null</code> if it
+     * is gone already, in which case the iterations are triggered without a node instance they come from
+     */
+    private void triggerPendingIterations(ForEachSplitNodeInstance split) {
+        int limit = getForEachNode().getConcurrencyLimit();
+        long compositeNodeId = getForEachNode().getCompositeNode().getId();
+        String type = getForEachNode().getForEachSplitNode().getTo().getToType();
+        Set<NodeInstance> triggered = new HashSet<NodeInstance>();
+        while (getState() == ProcessInstance.STATE_ACTIVE) {
+            int active = 0;
+            NodeInstance pending = null;
+            for (NodeInstance nodeInstance: getNodeInstances(false)) {
+                if (nodeInstance.getNodeId() != compositeNodeId) {
+                    continue;
+                }
+                if (triggered.contains(nodeInstance)
+                        || !((CompositeNodeInstance) nodeInstance).getNodeInstances(false).isEmpty()) {
+                    active++;
+                } else if (pending == null) {
+                    pending = nodeInstance;
+                }
+            }
+            if (pending == null || active >= limit) {
+                return;
+            }
+            triggered.add(pending);
+            pending.trigger(split, type);
+        }
+    }
+    
     public class ForEachSplitNodeInstance extends NodeInstanceImpl {
 
         private static final long serialVersionUID = 510l;
@@ -118,6 +161,10 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
             	ForEachNodeInstance.this.triggerCompleted(org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE, true);
             } else {
             	List<NodeInstance> nodeInstances = new ArrayList<NodeInstance>();
+            	int index = 0;
+            	if (getForEachNode().getOutputVariableName() != null) {
+            	    index = evaluateCollectionExpression(getForEachNode().getOutputCollectionExpression()).size();
+            	}
             	for (Object o: collection) {
             		String variableName = getForEachNode().getVariableName();
             		NodeInstance nodeInstance = (NodeInstance)
@@ -125,10 +172,17 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
             		VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
             			nodeInstance.resolveContextInstance(VariableScope.VARIABLE_SCOPE, variableName);
             		variableScopeInstance.setVariable(variableName, o);
+            		// outputs are stored in the order of the collection, not in the order iterations complete
+            		((VariableScopeInstance) ((CompositeContextNodeInstance) nodeInstance)
+            		    .getContextInstance(VariableScope.VARIABLE_SCOPE)).internalSetVariable(ITERATION_INDEX_VARIABLE, index++);
             		nodeInstances.add(nodeInstance);
             	}
-            	for (NodeInstance nodeInstance: nodeInstances) {
-            		((org.jbpm.workflow.instance.NodeInstance) nodeInstance).trigger(this, getForEachSplitNode().getTo().getToType());
+            	if (getForEachNode().getConcurrencyLimit() > 0) {
+            	    triggerPendingIterations(this);
+            	} else {
+            	    for (NodeInstance nodeInstance: nodeInstances) {
+            	        ((org.jbpm.workflow.instance.NodeInstance) nodeInstance).trigger(this, getForEachSplitNode().getTo().getToType());
+            	    }
             	}
 	            if (!getForEachNode().isWaitForCompletion()) {
 	            	ForEachNodeInstance.this.triggerCompleted(org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE, false);
@@ -161,7 +215,24 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
                 if (variableScopeInstance != null) {
                     outputVariable = variableScopeInstance.getVariable(getForEachNode().getOutputVariableName());
                 }
-                outputCollection.add(outputVariable);
+                Integer index = null;
+                if (from instanceof CompositeContextNodeInstance) {
+                    VariableScopeInstance iterationScopeInstance = (VariableScopeInstance)
+                        ((CompositeContextNodeInstance) from).getContextInstance(VariableScope.VARIABLE_SCOPE);
+                    if (iterationScopeInstance != null) {
+                        index = (Integer) iterationScopeInstance.getVariable(ITERATION_INDEX_VARIABLE);
+                    }
+                }
+                if (index != null && outputCollection instanceof List) {
+                    List outputList = (List) outputCollection;
+                    while (outputList.size() <= index) {
+                        outputList.add(null);
+                    }
+                    outputList.set(index, outputVariable);
+                } else {
+                    // iterations started before their index was kept
+                    outputCollection.add(outputVariable);
+                }
                 VariableScopeInstance subprocessVariableScopeInstance = (VariableScopeInstance)
                 ((NodeInstanceImpl)from).resolveContextInstance(VariableScope.VARIABLE_SCOPE, getForEachNode().getOutputCollectionExpression());
                 subprocessVariableScopeInstance.setVariable(getForEachNode().getOutputCollectionExpression(), outputCollection);
@@ -181,6 +252,9 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
 	                	}
                 	}
                 }
+            } else if (getForEachNode().getConcurrencyLimit() > 0) {
+                // the split node instance is gone already
+                triggerPendingIterations(null);
             }
         }
         
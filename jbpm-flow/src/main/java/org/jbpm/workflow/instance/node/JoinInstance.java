@@ -151,14 +151,29 @@ public class JoinInstance extends NodeInstanceImpl {
         }
     }
     
-    private boolean existsActiveDirectFlow(NodeInstanceContainer nodeInstanceContainer, Node lookFor) {
+    private boolean existsActiveDirectFlow(NodeInstanceContainer nodeInstanceContainer, Join lookFor) {
+        BitSet upstreamNodeIds = lookFor.getUpstreamNodeIds();
+        if (upstreamNodeIds == null) {
+            return searchActiveDirectFlow(nodeInstanceContainer, lookFor);
+        }
+        for (NodeInstance nodeInstance : nodeInstanceContainer.getNodeInstances()) {
+            long nodeId = nodeInstance.getNodeId();
+            if (nodeId != lookFor.getId() && nodeId >= 0 && nodeId <= Integer.MAX_VALUE
+                    && upstreamNodeIds.get((int) nodeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean searchActiveDirectFlow(NodeInstanceContainer nodeInstanceContainer, Node lookFor) {
         boolean activeDirectPathExists = false;
         
         Collection<NodeInstance> activeNodeInstances = nodeInstanceContainer.getNodeInstances();
         Set<Long> vistedNodes = new HashSet<Long>();
         for (NodeInstance nodeInstance : activeNodeInstances) {
             if (nodeInstance instanceof NodeInstanceContainer) {
-                boolean nestedCheck = existsActiveDirectFlow((NodeInstanceContainer) nodeInstance, lookFor);
+                boolean nestedCheck = searchActiveDirectFlow((NodeInstanceContainer) nodeInstance, lookFor);
                 if (nestedCheck) {
                     return true;
                 }
@@ -20,7 +20,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
 import org.drools.core.process.core.datatype.DataType;
@@ -35,8 +34,8 @@ import org.jbpm.process.core.context.variable.VariableScope;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.RuleSetNode;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
-import org.mvel2.MVEL;
 import org.mvel2.integration.impl.MapVariableResolverFactory;
 
 /**
@@ -141,7 +140,7 @@ public class RuleSetNodeInstance extends StateBasedNodeInstance implements Event
                         Object value = objects.get(association.getSources().get(0));
                         if (value == null) {
                             try {
-                                value = MVEL.eval(association.getSources().get(0), new MapVariableResolverFactory(objects));
+                                value = getExpressionCache().eval(association.getSources().get(0), new MapVariableResolverFactory(objects));
                             } catch (Throwable t) {
                                 // do nothing
                             }
@@ -183,9 +182,7 @@ public class RuleSetNodeInstance extends StateBasedNodeInstance implements Event
 	private Object resolveVariable(Object s) {
         
 	    if (s instanceof String) {
-            Matcher matcher = PARAMETER_MATCHER.matcher((String) s);
-            while (matcher.find()) {
-                String paramName = matcher.group(1);
+            for (String paramName: ExpressionCache.getParameterNames((String) s)) {
                
                 VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
                     resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
@@ -196,7 +193,7 @@ public class RuleSetNodeInstance extends StateBasedNodeInstance implements Event
                     }
                 } else {
                     try {
-                        Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
+                        Object variableValue = getExpressionCache().eval(paramName, new NodeInstanceResolverFactory(this));
                         if (variableValue != null) {
                             return variableValue;
                         }
@@ -152,7 +152,7 @@ public class SplitInstance extends NodeInstanceImpl {
     	        	if (getProcessInstance().getState() != ProcessInstance.STATE_ACTIVE) {
     	        		return;
     	        	}
-    	    		triggerNodeInstance(nodeInstance.getNodeInstance(), nodeInstance.getToType());
+    	    		triggerNodeInstance(nodeInstance.getNodeInstance(), nodeInstance.getToType(), true);
     	        }
                 if ( !found ) {
                 	for ( final Iterator<Connection> iterator = outgoing.iterator(); iterator.hasNext(); ) {
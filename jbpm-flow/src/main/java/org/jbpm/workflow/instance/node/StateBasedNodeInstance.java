@@ -31,25 +31,25 @@ import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.Action;
+import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.process.instance.timer.TimerInstance;
 import org.jbpm.process.instance.timer.TimerManager;
 import org.jbpm.workflow.core.DroolsAction;
 import org.jbpm.workflow.core.node.StateBasedNode;
 import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.jbpm.workflow.instance.impl.ExtendedNodeInstanceImpl;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
 import org.kie.api.event.rule.MatchCreatedEvent;
 import org.kie.internal.runtime.KnowledgeRuntime;
 import org.kie.api.runtime.process.EventListener;
 import org.kie.api.runtime.process.NodeInstance;
-import org.mvel2.MVEL;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public abstract class StateBasedNodeInstance extends ExtendedNodeInstanceImpl implements EventBasedNodeInstanceInterface, EventListener {
@@ -77,6 +77,7 @@ public abstract class StateBasedNodeInstance extends ExtendedNodeInstanceImpl im
 				timerManager.registerTimer(timerInstance, (ProcessInstance) getProcessInstance());
 				timerInstances.add(timerInstance.getId());
 			}
+			((ProcessInstanceImpl) getProcessInstance()).markModified();
 		}
        
 		if (getEventBasedNode().getBoundaryEvents() != null) {
@@ -195,9 +196,7 @@ public abstract class StateBasedNodeInstance extends ExtendedNodeInstanceImpl im
     private String resolveVariable(String s) {
     	// cannot parse delay, trying to interpret it
 		Map<String, String> replacements = new HashMap<String, String>();
-		Matcher matcher = PARAMETER_MATCHER.matcher(s);
-        while (matcher.find()) {
-        	String paramName = matcher.group(1);
+		for (String paramName: ExpressionCache.getParameterNames(s)) {
         	if (replacements.get(paramName) == null) {
             	VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
                 	resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
@@ -207,7 +206,7 @@ public abstract class StateBasedNodeInstance extends ExtendedNodeInstanceImpl im
 	                replacements.put(paramName, variableValueString);
                 } else {
                 	try {
-                		Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
+                		Object variableValue = getExpressionCache().eval(paramName, new NodeInstanceResolverFactory(this));
 	                	String variableValueString = variableValue == null ? "" : variableValue.toString();
 	                	replacements.put(paramName, variableValueString);
                 	} catch (Throwable t) {
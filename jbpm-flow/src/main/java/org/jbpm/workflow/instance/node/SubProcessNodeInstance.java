@@ -24,6 +24,7 @@ import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.SubProcessNode;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
 import org.jbpm.workflow.instance.impl.VariableScopeResolverFactory;
 import org.kie.api.KieBase;
@@ -31,12 +32,10 @@ import org.kie.api.definition.process.Node;
 import org.kie.api.definition.process.Process;
 import org.kie.api.runtime.process.EventListener;
 import org.kie.api.runtime.process.NodeInstance;
-import org.mvel2.MVEL;
 
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 /**
  * Runtime counterpart of a SubFlow node.
@@ -69,7 +68,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
                 parameterValue = variableScopeInstance.getVariable(mapping.getSources().get(0));
             } else {
             	try {
-            		parameterValue = MVEL.eval(mapping.getSources().get(0), new NodeInstanceResolverFactory(this));
+            		parameterValue = getExpressionCache().eval(mapping.getSources().get(0), new NodeInstanceResolverFactory(this));
             	} catch (Throwable t) {
             		System.err.println("Could not find variable scope for variable " + mapping.getSources().get(0));
                     System.err.println("when trying to execute SubProcess node " + getSubProcessNode().getName());
@@ -87,9 +86,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
         }
         // resolve processId if necessary
         Map<String, String> replacements = new HashMap<String, String>();
-		Matcher matcher = PARAMETER_MATCHER.matcher(processId);
-        while (matcher.find()) {
-        	String paramName = matcher.group(1);
+		for (String paramName: ExpressionCache.getParameterNames(processId)) {
         	if (replacements.get(paramName) == null) {
             	VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
                 	resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
@@ -99,7 +96,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 	                replacements.put(paramName, variableValueString);
                 } else {
                 	try {
-                		Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
+                		Object variableValue = getExpressionCache().eval(paramName, new NodeInstanceResolverFactory(this));
 	                	String variableValueString = variableValue == null ? "" : variableValue.toString();
 	                	replacements.put(paramName, variableValueString);
                 	} catch (Throwable t) {
@@ -215,7 +212,7 @@ public class SubProcessNodeInstance extends StateBasedNodeInstance implements Ev
 		        	Object value = subProcessVariableScopeInstance.getVariable(mapping.getSources().get(0));
 		        	if (value == null) {
 		        		try {
-		            		value = MVEL.eval(mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
+		            		value = getExpressionCache().eval(mapping.getSources().get(0), new VariableScopeResolverFactory(subProcessVariableScopeInstance));
 		            	} catch (Throwable t) {
 		            		// do nothing
 		            	}
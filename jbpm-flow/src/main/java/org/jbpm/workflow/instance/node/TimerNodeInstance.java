@@ -18,7 +18,6 @@ package org.jbpm.workflow.instance.node;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
 import org.kie.api.runtime.process.EventListener;
@@ -32,8 +31,8 @@ import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.timer.TimerInstance;
 import org.jbpm.workflow.core.node.TimerNode;
 import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
-import org.mvel2.MVEL;
 
 public class TimerNodeInstance extends StateBasedNodeInstance implements EventListener {
 
@@ -94,9 +93,7 @@ public class TimerNodeInstance extends StateBasedNodeInstance implements EventLi
 
     private String resolveVariable(String s) {
         Map<String, String> replacements = new HashMap<String, String>();
-        Matcher matcher = PARAMETER_MATCHER.matcher(s);
-        while (matcher.find()) {
-            String paramName = matcher.group(1);
+        for (String paramName: ExpressionCache.getParameterNames(s)) {
             if (replacements.get(paramName) == null) {
                 VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
                     resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
@@ -106,7 +103,7 @@ public class TimerNodeInstance extends StateBasedNodeInstance implements EventLi
                     replacements.put(paramName, variableValueString);
                 } else {
                     try {
-                        Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
+                        Object variableValue = getExpressionCache().eval(paramName, new NodeInstanceResolverFactory(this));
                         String variableValueString = variableValue == null ? "" : variableValue.toString();
                         replacements.put(paramName, variableValueString);
                     } catch (Throwable t) {
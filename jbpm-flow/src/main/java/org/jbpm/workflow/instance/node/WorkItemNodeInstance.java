@@ -19,7 +19,6 @@ package org.jbpm.workflow.instance.node;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 import org.drools.core.WorkItemHandlerNotFoundException;
 import org.kie.api.definition.process.Node;
@@ -40,9 +39,9 @@ import org.jbpm.process.instance.impl.AssignmentAction;
 import org.jbpm.workflow.core.node.Assignment;
 import org.jbpm.workflow.core.node.DataAssociation;
 import org.jbpm.workflow.core.node.WorkItemNode;
+import org.jbpm.workflow.instance.impl.ExpressionCache;
 import org.jbpm.workflow.instance.impl.NodeInstanceResolverFactory;
 import org.jbpm.workflow.instance.impl.WorkItemResolverFactory;
-import org.mvel2.MVEL;
 
 /**
  * Runtime counterpart of a work item node.
@@ -132,7 +131,7 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
                     parameterValue = variableScopeInstance.getVariable(association.getSources().get(0));
                 } else {
                     try {
-                        parameterValue = MVEL.eval(association.getSources().get(0), new NodeInstanceResolverFactory(this));
+                        parameterValue = getExpressionCache().eval(association.getSources().get(0), new NodeInstanceResolverFactory(this));
                     } catch (Throwable t) {
                         System.err.println("Could not find variable scope for variable " + association.getSources().get(0));
                         System.err.println("when trying to execute Work Item " + work.getName());
@@ -153,9 +152,7 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
             if (entry.getValue() instanceof String) {
                 String s = (String) entry.getValue();
                 Map<String, String> replacements = new HashMap<String, String>();
-                Matcher matcher = PARAMETER_MATCHER.matcher(s);
-                while (matcher.find()) {
-                    String paramName = matcher.group(1);
+                for (String paramName: ExpressionCache.getParameterNames(s)) {
                     if (replacements.get(paramName) == null) {
                         VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
                             resolveContextInstance(VariableScope.VARIABLE_SCOPE, paramName);
@@ -165,7 +162,7 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
                             replacements.put(paramName, variableValueString);
                         } else {
                             try {
-                                Object variableValue = MVEL.eval(paramName, new NodeInstanceResolverFactory(this));
+                                Object variableValue = getExpressionCache().eval(paramName, new NodeInstanceResolverFactory(this));
                                 String variableValueString = variableValue == null ? "" : variableValue.toString();
                                 replacements.put(paramName, variableValueString);
                             } catch (Throwable t) {
@@ -209,7 +206,7 @@ public class WorkItemNodeInstance extends StateBasedNodeInstance implements Even
                         Object value = workItem.getResult(association.getSources().get(0));
                         if (value == null) {
                             try {
-                                value = MVEL.eval(association.getSources().get(0), new WorkItemResolverFactory(workItem));
+                                value = getExpressionCache().eval(association.getSources().get(0), new WorkItemResolverFactory(workItem));
                             } catch (Throwable t) {
                                 // do nothing
                             }
@@ -19,6 +19,8 @@ package org.jbpm.process;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +29,8 @@ import org.drools.core.common.AbstractRuleBase;
 import org.drools.core.impl.InternalKnowledgeBase;
 import org.drools.core.process.core.datatype.impl.type.ListDataType;
 import org.drools.core.process.core.datatype.impl.type.ObjectDataType;
+import org.drools.core.process.core.datatype.impl.type.StringDataType;
+import org.drools.core.process.core.impl.WorkImpl;
 import org.jbpm.Person;
 import org.jbpm.process.core.context.variable.Variable;
 import org.jbpm.process.instance.impl.Action;
@@ -39,11 +43,17 @@ import org.jbpm.workflow.core.node.ActionNode;
 import org.jbpm.workflow.core.node.EndNode;
 import org.jbpm.workflow.core.node.ForEachNode;
 import org.jbpm.workflow.core.node.StartNode;
+import org.jbpm.workflow.core.node.WorkItemNode;
 import org.junit.Test;
 import org.kie.internal.KnowledgeBase;
 import org.kie.internal.KnowledgeBaseFactory;
 import org.kie.internal.runtime.StatefulKnowledgeSession;
 import org.kie.api.runtime.process.ProcessContext;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemHandler;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.api.runtime.process.WorkflowProcessInstance;
 
 public class ForEachTest {
     
@@ -122,4 +132,102 @@ public class ForEachTest {
         assertEquals(3, myList.size());
     }
 
+    @Test
+    public void testForEachOutputInCollectionOrder() {
+        assertOutputInCollectionOrder(0);
+    }
+
+    @Test
+    public void testForEachOutputInCollectionOrderWithConcurrencyLimit() {
+        assertOutputInCollectionOrder(2);
+    }
+
+    /**
+     * Completes the iterations in reverse order of the items that are active, the output
+     * collection must still follow the order of the input collection.
+     */
+    private void assertOutputInCollectionOrder(int maxConcurrentInstances) {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.drools.core.process.foreach.output");
+        process.setName("ForEach Output Process");
+
+        List<Variable> variables = new ArrayList<Variable>();
+        Variable variable = new Variable();
+        variable.setName("items");
+        variable.setType(new ObjectDataType("java.util.List"));
+        variables.add(variable);
+        variable = new Variable();
+        variable.setName("results");
+        variable.setType(new ObjectDataType("java.util.List"));
+        variables.add(variable);
+        process.getVariableScope().setVariables(variables);
+
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(1);
+        process.addNode(startNode);
+        EndNode endNode = new EndNode();
+        endNode.setName("EndNode");
+        endNode.setId(2);
+        process.addNode(endNode);
+        ForEachNode forEachNode = new ForEachNode();
+        forEachNode.setName("ForEach");
+        forEachNode.setId(3);
+        forEachNode.setCollectionExpression("items");
+        forEachNode.setOutputCollectionExpression("results");
+        forEachNode.setMaxConcurrentInstances(maxConcurrentInstances);
+        process.addNode(forEachNode);
+        new ConnectionImpl(
+            startNode, Node.CONNECTION_DEFAULT_TYPE,
+            forEachNode, Node.CONNECTION_DEFAULT_TYPE
+        );
+        new ConnectionImpl(
+            forEachNode, Node.CONNECTION_DEFAULT_TYPE,
+            endNode, Node.CONNECTION_DEFAULT_TYPE
+        );
+
+        WorkItemNode workItemNode = new WorkItemNode();
+        workItemNode.setName("Wait");
+        WorkImpl work = new WorkImpl();
+        work.setName("Wait");
+        workItemNode.setWork(work);
+        workItemNode.addInMapping("Item", "item");
+        workItemNode.addOutMapping("Result", "result");
+        forEachNode.addNode(workItemNode);
+        forEachNode.linkIncomingConnections(
+            Node.CONNECTION_DEFAULT_TYPE,
+            workItemNode.getId(), Node.CONNECTION_DEFAULT_TYPE);
+        forEachNode.linkOutgoingConnections(
+            workItemNode.getId(), Node.CONNECTION_DEFAULT_TYPE,
+            Node.CONNECTION_DEFAULT_TYPE);
+        forEachNode.setVariable("item", new StringDataType());
+        forEachNode.setOutputVariable("result", new StringDataType());
+
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        final List<WorkItem> workItems = new ArrayList<WorkItem>();
+        ksession.getWorkItemManager().registerWorkItemHandler("Wait", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("items", Arrays.asList("a", "b", "c"));
+        parameters.put("results", new ArrayList<String>());
+        ProcessInstance processInstance = ksession.startProcess("org.drools.core.process.foreach.output", parameters);
+        while (!workItems.isEmpty()) {
+            WorkItem workItem = workItems.remove(workItems.size() - 1);
+            ksession.getWorkItemManager().completeWorkItem(workItem.getId(),
+                Collections.<String, Object>singletonMap("Result", "done " + workItem.getParameter("Item")));
+        }
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        assertEquals(Arrays.asList("done a", "done b", "done c"),
+            ((WorkflowProcessInstance) processInstance).getVariable("results"));
+        ksession.dispose();
+    }
+
 }
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.core.common.AbstractRuleBase;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.process.core.datatype.impl.type.ObjectDataType;
+import org.drools.core.process.core.datatype.impl.type.StringDataType;
+import org.jbpm.process.core.context.variable.Variable;
+import org.jbpm.process.instance.impl.Action;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.workflow.core.DroolsAction;
+import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.core.impl.ConnectionImpl;
+import org.jbpm.workflow.core.impl.DroolsConsequenceAction;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.jbpm.workflow.core.node.EndNode;
+import org.jbpm.workflow.core.node.ForEachNode;
+import org.jbpm.workflow.core.node.Join;
+import org.jbpm.workflow.core.node.Split;
+import org.jbpm.workflow.core.node.StartNode;
+import org.jbpm.workflow.instance.impl.NodeInstanceTriggerQueue;
+import org.junit.After;
+import org.junit.Test;
+import org.kie.api.event.process.DefaultProcessEventListener;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.runtime.process.ProcessContext;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class IterativeTriggerTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY);
+        System.clearProperty(NodeInstanceTriggerQueue.MAX_DEPTH_PROPERTY);
+    }
+
+    @Test
+    public void testSameEventOrder() {
+        List<String> recursiveEvents = new ArrayList<String>();
+        List<String> recursiveActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runChain(10, recursiveEvents, recursiveActions));
+
+        System.setProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY, "true");
+        List<String> iterativeEvents = new ArrayList<String>();
+        List<String> iterativeActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runChain(10, iterativeEvents, iterativeActions));
+
+        assertEquals(recursiveEvents, iterativeEvents);
+        assertEquals(recursiveActions, iterativeActions);
+    }
+
+    /**
+     * The for each node triggers its iterations one after the other and the split triggers
+     * both branches, each of them must be completed before the next one is triggered.
+     */
+    @Test
+    public void testSameEventOrderForEachAndSplit() {
+        List<String> recursiveEvents = new ArrayList<String>();
+        List<String> recursiveActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runForEachAndSplit(recursiveEvents, recursiveActions));
+        assertEquals(Arrays.asList("Iteration a", "Iteration b", "Iteration c", "Branch1", "Branch2", "After"), recursiveActions);
+
+        System.setProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY, "true");
+        List<String> iterativeEvents = new ArrayList<String>();
+        List<String> iterativeActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runForEachAndSplit(iterativeEvents, iterativeActions));
+
+        assertEquals(recursiveEvents, iterativeEvents);
+        assertEquals(recursiveActions, iterativeActions);
+    }
+
+    @Test
+    public void testLongChain() {
+        System.setProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY, "true");
+        List<String> actions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runChain(20000, null, actions));
+        assertEquals(20000, actions.size());
+    }
+
+    @Test
+    public void testSameEventOrderAtMaxDepth() {
+        List<String> recursiveEvents = new ArrayList<String>();
+        List<String> recursiveActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runChain(10, recursiveEvents, recursiveActions));
+
+        System.setProperty(NodeInstanceTriggerQueue.ITERATIVE_TRIGGER_PROPERTY, "true");
+        System.setProperty(NodeInstanceTriggerQueue.MAX_DEPTH_PROPERTY, "2");
+        List<String> iterativeEvents = new ArrayList<String>();
+        List<String> iterativeActions = new ArrayList<String>();
+        assertEquals(ProcessInstance.STATE_COMPLETED, runChain(10, iterativeEvents, iterativeActions));
+
+        assertEquals(recursiveEvents, iterativeEvents);
+        assertEquals(recursiveActions, iterativeActions);
+    }
+
+    private int runForEachAndSplit(List<String> events, final List<String> actions) {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.process.foreach");
+        process.setName("ForEach Process");
+        List<Variable> variables = new ArrayList<Variable>();
+        Variable variable = new Variable();
+        variable.setName("items");
+        variable.setType(new ObjectDataType("java.util.List"));
+        variables.add(variable);
+        process.getVariableScope().setVariables(variables);
+
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(1);
+        process.addNode(startNode);
+        ForEachNode forEachNode = new ForEachNode();
+        forEachNode.setName("ForEach");
+        forEachNode.setId(2);
+        forEachNode.setCollectionExpression("items");
+        forEachNode.setVariable("item", new StringDataType());
+        process.addNode(forEachNode);
+        ActionNode iteration = new ActionNode();
+        iteration.setName("Iteration");
+        DroolsAction action = new DroolsConsequenceAction("java", null);
+        action.setMetaData("Action", new Action() {
+            public void execute(ProcessContext context) throws Exception {
+                actions.add("Iteration " + context.getVariable("item"));
+            }
+        });
+        iteration.setAction(action);
+        forEachNode.addNode(iteration);
+        forEachNode.linkIncomingConnections(
+            Node.CONNECTION_DEFAULT_TYPE,
+            iteration.getId(), Node.CONNECTION_DEFAULT_TYPE);
+        forEachNode.linkOutgoingConnections(
+            iteration.getId(), Node.CONNECTION_DEFAULT_TYPE,
+            Node.CONNECTION_DEFAULT_TYPE);
+        Split split = new Split();
+        split.setName("Split");
+        split.setType(Split.TYPE_AND);
+        split.setId(3);
+        process.addNode(split);
+        ActionNode branch1 = newAction(process, 4, "Branch1", actions);
+        ActionNode branch2 = newAction(process, 5, "Branch2", actions);
+        Join join = new Join();
+        join.setName("Join");
+        join.setType(Join.TYPE_AND);
+        join.setId(6);
+        process.addNode(join);
+        ActionNode after = newAction(process, 7, "After", actions);
+        EndNode endNode = new EndNode();
+        endNode.setName("End");
+        endNode.setId(8);
+        process.addNode(endNode);
+
+        connect(startNode, forEachNode);
+        connect(forEachNode, split);
+        connect(split, branch1);
+        connect(split, branch2);
+        connect(branch1, join);
+        connect(branch2, join);
+        connect(join, after);
+        connect(after, endNode);
+
+        StatefulKnowledgeSession ksession = newSession(process, events);
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("items", Arrays.asList("a", "b", "c"));
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.foreach", parameters);
+        int state = processInstance.getState();
+        ksession.dispose();
+        return state;
+    }
+
+    private ActionNode newAction(RuleFlowProcess process, long id, final String name, final List<String> actions) {
+        ActionNode actionNode = new ActionNode();
+        actionNode.setName(name);
+        DroolsAction action = new DroolsConsequenceAction("java", null);
+        action.setMetaData("Action", new Action() {
+            public void execute(ProcessContext context) throws Exception {
+                actions.add(name);
+            }
+        });
+        actionNode.setAction(action);
+        actionNode.setId(id);
+        process.addNode(actionNode);
+        return actionNode;
+    }
+
+    private void connect(Node from, Node to) {
+        new ConnectionImpl(
+            from, Node.CONNECTION_DEFAULT_TYPE,
+            to, Node.CONNECTION_DEFAULT_TYPE
+        );
+    }
+
+    private int runChain(int length, final List<String> events, final List<String> actions) {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.process.chain");
+        process.setName("Chain Process");
+
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(1);
+        process.addNode(startNode);
+
+        Node previous = startNode;
+        for (int i = 0; i < length; i++) {
+            ActionNode actionNode = newAction(process, i + 2, "Action" + i, actions);
+            connect(previous, actionNode);
+            previous = actionNode;
+        }
+
+        EndNode endNode = new EndNode();
+        endNode.setName("End");
+        endNode.setId(length + 2);
+        process.addNode(endNode);
+        connect(previous, endNode);
+
+        StatefulKnowledgeSession ksession = newSession(process, events);
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.chain");
+        int state = processInstance.getState();
+        ksession.dispose();
+        return state;
+    }
+
+    private StatefulKnowledgeSession newSession(RuleFlowProcess process, final List<String> events) {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        if (events != null) {
+            ksession.addEventListener(new DefaultProcessEventListener() {
+                public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                    events.add("beforeTriggered " + event.getNodeInstance().getNodeName());
+                }
+                public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+                    events.add("afterTriggered " + event.getNodeInstance().getNodeName());
+                }
+                public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+                    events.add("beforeLeft " + event.getNodeInstance().getNodeName());
+                }
+                public void afterNodeLeft(ProcessNodeLeftEvent event) {
+                    events.add("afterLeft " + event.getNodeInstance().getNodeName());
+                }
+            });
+        }
+        return ksession;
+    }
+
+}
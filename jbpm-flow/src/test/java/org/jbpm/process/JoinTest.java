@@ -0,0 +1,218 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.drools.core.common.AbstractRuleBase;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.process.core.Work;
+import org.drools.core.process.core.impl.WorkImpl;
+import org.jbpm.process.instance.impl.Action;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.workflow.core.DroolsAction;
+import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.core.impl.ConnectionImpl;
+import org.jbpm.workflow.core.impl.DroolsConsequenceAction;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.jbpm.workflow.core.node.EndNode;
+import org.jbpm.workflow.core.node.Join;
+import org.jbpm.workflow.core.node.Split;
+import org.jbpm.workflow.core.node.StartNode;
+import org.jbpm.workflow.core.node.WorkItemNode;
+import org.junit.Test;
+import org.kie.api.runtime.process.ProcessContext;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemHandler;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+/**
+ * Checks the upstream node ids of an OR join and that the join waits for active upstream
+ * branches, both with the bit set and with the search used for node ids above
+ * the bit set limit of 0xFFFF.
+ */
+public class JoinTest {
+
+    private static final long LARGE_ID_BASE = 0xFFFF;
+
+    @Test
+    public void testUpstreamNodeIds() {
+        Join join = getJoin(newProcess(0, new ArrayList<String>()));
+        BitSet expected = new BitSet();
+        expected.set(1, 5);
+        assertEquals(expected, join.getUpstreamNodeIds());
+    }
+
+    @Test
+    public void testUpstreamNodeIdsInLoop() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        ActionNode before = newAction(process, 1, new ArrayList<String>());
+        Join join = newJoin(process, 2);
+        ActionNode after = newAction(process, 3, new ArrayList<String>());
+        connect(before, join);
+        connect(join, after);
+        connect(after, join);
+        BitSet expected = new BitSet();
+        expected.set(1);
+        expected.set(3);
+        assertEquals(expected, join.getUpstreamNodeIds());
+    }
+
+    @Test
+    public void testUpstreamNodeIdsNotKeptForLargeNodeIds() {
+        Join join = getJoin(newProcess(LARGE_ID_BASE, new ArrayList<String>()));
+        assertNull(join.getUpstreamNodeIds());
+    }
+
+    @Test
+    public void testOrJoinWaitsForActiveBranch() {
+        List<String> events = new ArrayList<String>();
+        RuleFlowProcess process = newProcess(0, events);
+        assertNotNull(getJoin(process).getUpstreamNodeIds());
+        assertOrJoinWaitsForActiveBranch(process, events);
+    }
+
+    @Test
+    public void testOrJoinWaitsForActiveBranchWithLargeNodeIds() {
+        List<String> events = new ArrayList<String>();
+        RuleFlowProcess process = newProcess(LARGE_ID_BASE, events);
+        assertNull(getJoin(process).getUpstreamNodeIds());
+        assertOrJoinWaitsForActiveBranch(process, events);
+    }
+
+    private void assertOrJoinWaitsForActiveBranch(RuleFlowProcess process, List<String> events) {
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        final List<WorkItem> workItems = new ArrayList<WorkItem>();
+        ksession.getWorkItemManager().registerWorkItemHandler("Wait", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.join");
+
+        // the work item branch is still active, so the join does not fire yet
+        assertEquals(Arrays.asList("Branch"), events);
+        assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+        assertEquals(1, workItems.size());
+
+        ksession.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+        assertEquals(Arrays.asList("Branch", "Joined"), events);
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        ksession.dispose();
+    }
+
+    /**
+     * Start, an AND split into a work item and an action, both joined by an OR join,
+     * followed by an action and an end node. Node ids are <code>base + 1</code> to
+     * <code>base + 7</code>, the join having <code>base + 5</code>.
+     */
+    private RuleFlowProcess newProcess(long base, List<String> events) {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.process.join");
+        process.setName("Join Process");
+
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(base + 1);
+        process.addNode(startNode);
+        Split split = new Split();
+        split.setName("Split");
+        split.setType(Split.TYPE_AND);
+        split.setId(base + 2);
+        process.addNode(split);
+        WorkItemNode workItemNode = new WorkItemNode();
+        workItemNode.setName("Wait");
+        Work work = new WorkImpl();
+        work.setName("Wait");
+        workItemNode.setWork(work);
+        workItemNode.setId(base + 3);
+        process.addNode(workItemNode);
+        ActionNode branch = newAction(process, base + 4, events);
+        branch.setName("Branch");
+        Join join = newJoin(process, base + 5);
+        ActionNode joined = newAction(process, base + 6, events);
+        joined.setName("Joined");
+        EndNode endNode = new EndNode();
+        endNode.setName("End");
+        endNode.setId(base + 7);
+        process.addNode(endNode);
+
+        connect(startNode, split);
+        // the work item is triggered first, so it is active when the action reaches the join
+        connect(split, workItemNode);
+        connect(split, branch);
+        connect(workItemNode, join);
+        connect(branch, join);
+        connect(join, joined);
+        connect(joined, endNode);
+        return process;
+    }
+
+    private Join getJoin(RuleFlowProcess process) {
+        for (org.kie.api.definition.process.Node node : process.getNodes()) {
+            if (node instanceof Join) {
+                return (Join) node;
+            }
+        }
+        throw new IllegalArgumentException("No join in process " + process.getId());
+    }
+
+    private Join newJoin(RuleFlowProcess process, long id) {
+        Join join = new Join();
+        join.setName("Join");
+        join.setType(Join.TYPE_OR);
+        join.setId(id);
+        process.addNode(join);
+        return join;
+    }
+
+    private ActionNode newAction(RuleFlowProcess process, long id, final List<String> events) {
+        final ActionNode actionNode = new ActionNode();
+        DroolsAction action = new DroolsConsequenceAction("java", null);
+        action.setMetaData("Action", new Action() {
+            public void execute(ProcessContext context) throws Exception {
+                events.add(actionNode.getName());
+            }
+        });
+        actionNode.setAction(action);
+        actionNode.setId(id);
+        process.addNode(actionNode);
+        return actionNode;
+    }
+
+    private void connect(org.kie.api.definition.process.Node from, org.kie.api.definition.process.Node to) {
+        new ConnectionImpl(
+            from, Node.CONNECTION_DEFAULT_TYPE,
+            to, Node.CONNECTION_DEFAULT_TYPE
+        );
+    }
+}
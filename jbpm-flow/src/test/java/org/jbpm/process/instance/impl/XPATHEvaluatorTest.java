@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.instance.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+
+import org.junit.Test;
+import org.kie.api.runtime.process.ProcessContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class XPATHEvaluatorTest {
+
+    @Test
+    public void testVariablesResolvedAgainstGivenContext() throws Exception {
+        XPATHEvaluator evaluator = XPATHEvaluator.get();
+        Document doc = evaluator.newDocument();
+        Element root = doc.createElement("root");
+        root.setAttribute("value", "a");
+        doc.appendChild(root);
+
+        Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put("x", doc);
+        variables.put("y", "a");
+        ProcessContext context = newContext(variables);
+        assertEquals(Boolean.TRUE, evaluator.evaluate("$x//@value = $y", evaluator.getEmptyDocument(), XPathConstants.BOOLEAN, context));
+
+        variables.put("y", "b");
+        assertEquals(Boolean.FALSE, evaluator.evaluate("$x//@value = $y", evaluator.getEmptyDocument(), XPathConstants.BOOLEAN, context));
+
+        Map<String, Object> otherVariables = new HashMap<String, Object>(variables);
+        otherVariables.put("y", "a");
+        assertEquals(Boolean.TRUE, evaluator.evaluate("$x//@value = $y", evaluator.getEmptyDocument(), XPathConstants.BOOLEAN, newContext(otherVariables)));
+    }
+
+    @Test
+    public void testExpressionsCompiledOncePerThread() throws Exception {
+        XPATHEvaluator evaluator = XPATHEvaluator.get();
+        XPathExpression compiled = evaluator.compile("count(/root) = 1");
+        assertSame(compiled, evaluator.compile("count(/root) = 1"));
+        assertSame(evaluator, XPATHEvaluator.get());
+
+        final Object[] other = new Object[2];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    other[0] = XPATHEvaluator.get();
+                    other[1] = XPATHEvaluator.get().compile("count(/root) = 1");
+                } catch (Exception e) {
+                    other[1] = e;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(evaluator, other[0]);
+        assertNotSame(compiled, other[1]);
+    }
+
+    private ProcessContext newContext(final Map<String, Object> variables) {
+        return (ProcessContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ProcessContext.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getVariable".equals(method.getName())) {
+                            return variables.get(args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.junit.After;
+import org.junit.Test;
+import org.mvel2.integration.impl.MapVariableResolverFactory;
+
+public class ExpressionCacheTest {
+
+    @After
+    public void tearDown() {
+        ExpressionCache.clearTemplates();
+    }
+
+    @Test
+    public void testParameterNames() {
+        assertEquals(0, ExpressionCache.getParameterNames("no parameters").length);
+        assertArrayEquals(new String[] { "person.name", "age" },
+            ExpressionCache.getParameterNames("#{person.name} is #{age}, really #{age}"));
+        // parsed only once
+        String template = "Hello #{name}";
+        assertSame(ExpressionCache.getParameterNames(template), ExpressionCache.getParameterNames(template));
+    }
+
+    @Test
+    public void testEval() {
+        ExpressionCache cache = new ExpressionCache();
+        Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put("a", 2);
+        variables.put("b", 3);
+        assertEquals(5, cache.eval("a + b", new MapVariableResolverFactory(variables)));
+        variables.put("a", 10);
+        assertEquals(13, cache.eval("a + b", new MapVariableResolverFactory(variables)));
+    }
+
+    @Test
+    public void testCachePerProcess() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        assertSame(ExpressionCache.forProcess(process), ExpressionCache.forProcess(process));
+        assertNotSame(ExpressionCache.forProcess(process), ExpressionCache.forProcess(new RuleFlowProcess()));
+    }
+
+}
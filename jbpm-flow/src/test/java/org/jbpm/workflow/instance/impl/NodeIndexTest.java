@@ -0,0 +1,284 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.workflow.instance.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.drools.core.common.AbstractRuleBase;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.jbpm.process.core.event.EventTypeFilter;
+import org.jbpm.process.instance.impl.Action;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.jbpm.workflow.core.DroolsAction;
+import org.jbpm.workflow.core.Node;
+import org.jbpm.workflow.core.impl.ConnectionImpl;
+import org.jbpm.workflow.core.impl.DroolsConsequenceAction;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.jbpm.workflow.core.node.CompositeNode;
+import org.jbpm.workflow.core.node.EventNode;
+import org.jbpm.workflow.core.node.MilestoneNode;
+import org.jbpm.workflow.core.node.StartNode;
+import org.jbpm.workflow.instance.WorkflowProcessInstanceUpgrader;
+import org.junit.Test;
+import org.kie.api.runtime.process.NodeInstance;
+import org.kie.api.runtime.process.ProcessContext;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+/**
+ * Checks that the event node index of the process and the node instance index of the
+ * process instance follow nodes and node instances that are added and removed.
+ */
+public class NodeIndexTest {
+
+    @Test
+    public void testNodeInstancesIndexedAfterAddAndRemove() {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        TestNodeInstance first = newNodeInstance(processInstance, 1);
+        // builds the index
+        assertSame(first, processInstance.getFirstNodeInstance(1));
+
+        TestNodeInstance second = newNodeInstance(processInstance, 1);
+        TestNodeInstance other = newNodeInstance(processInstance, 2);
+        assertEquals(Arrays.asList(first, second), processInstance.getNodeInstances(1));
+        assertSame(other, processInstance.getFirstNodeInstance(2));
+
+        processInstance.removeNodeInstance(first);
+        assertEquals(Arrays.asList(second), processInstance.getNodeInstances(1));
+        assertSame(second, processInstance.getFirstNodeInstance(1));
+
+        processInstance.removeNodeInstance(second);
+        assertTrue(processInstance.getNodeInstances(1).isEmpty());
+        assertNull(processInstance.getFirstNodeInstance(1));
+        assertSame(other, processInstance.getFirstNodeInstance(2));
+    }
+
+    @Test
+    public void testNodeInstanceWithChangedNodeIdRemoved() {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        TestNodeInstance other = newNodeInstance(processInstance, 2);
+        TestNodeInstance moved = newNodeInstance(processInstance, 3);
+        assertSame(moved, processInstance.getFirstNodeInstance(3));
+
+        moved.setNodeId(4);
+        processInstance.removeNodeInstance(moved);
+        assertNull(processInstance.getFirstNodeInstance(3));
+        assertNull(processInstance.getFirstNodeInstance(4));
+        assertSame(other, processInstance.getFirstNodeInstance(2));
+        assertEquals(1, processInstance.getNodeInstances().size());
+    }
+
+    @Test
+    public void testNodeInstanceMovedWhenNodeIdChanges() {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        TestNodeInstance moved = newNodeInstance(processInstance, 3);
+        TestNodeInstance other = newNodeInstance(processInstance, 4);
+        assertSame(moved, processInstance.getFirstNodeInstance(3));
+
+        moved.setNodeId(4);
+        assertNull(processInstance.getFirstNodeInstance(3));
+        assertEquals(Arrays.asList(other, moved), processInstance.getNodeInstances(4));
+
+        processInstance.removeNodeInstance(moved);
+        assertEquals(Arrays.asList(other), processInstance.getNodeInstances(4));
+    }
+
+    @Test
+    public void testUpgradedProcessInstanceFindsNodeInstancesByNewNodeId() {
+        RuleFlowProcess process = newWaitingProcess("org.jbpm.process.index", 2);
+        RuleFlowProcess upgraded = newWaitingProcess("org.jbpm.process.index.upgraded", 3);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(upgraded);
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        RuleFlowProcessInstance processInstance = (RuleFlowProcessInstance)
+            ksession.startProcess("org.jbpm.process.index");
+        // builds the index
+        NodeInstance waiting = processInstance.getFirstNodeInstance(2);
+        assertNotNull(waiting);
+
+        WorkflowProcessInstanceUpgrader.upgradeProcessInstance(ksession, processInstance.getId(),
+            "org.jbpm.process.index.upgraded", Collections.singletonMap("2", 3L));
+
+        assertNull(processInstance.getFirstNodeInstance(2));
+        assertSame(waiting, processInstance.getFirstNodeInstance(3));
+        assertEquals(Arrays.asList(waiting), processInstance.getNodeInstances(3));
+        ksession.dispose();
+    }
+
+    @Test
+    public void testEventNodesIndexedAfterAddAndRemove() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        EventNode a = newEventNode(process, 1, "a");
+        assertEquals(Arrays.asList(a), process.getEventNodes("a"));
+        assertTrue(process.getEventNodes("b").isEmpty());
+
+        EventNode b = newEventNode(process, 2, "b");
+        assertEquals(Arrays.asList(a), process.getEventNodes("a"));
+        assertEquals(Arrays.asList(b), process.getEventNodes("b"));
+
+        // no type filter, so a candidate for every type
+        EventNode any = newEventNode(process, 3, null);
+        assertEquals(Arrays.asList(a, any), process.getEventNodes("a"));
+        assertEquals(Arrays.asList(any), process.getEventNodes("c"));
+
+        process.removeNode(a);
+        assertEquals(Arrays.asList(any), process.getEventNodes("a"));
+        assertEquals(Arrays.asList(b, any), process.getEventNodes("b"));
+    }
+
+    @Test
+    public void testEventNodesIndexedAfterChangesInsideCompositeNode() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        CompositeNode compositeNode = new CompositeNode();
+        compositeNode.setId(1);
+        process.addNode(compositeNode);
+        assertTrue(process.getEventNodes("a").isEmpty());
+
+        EventNode a = new EventNode();
+        EventTypeFilter eventFilter = new EventTypeFilter();
+        eventFilter.setType("a");
+        a.addEventFilter(eventFilter);
+        a.setId(1);
+        compositeNode.addNode(a);
+        assertEquals(Arrays.asList(compositeNode), process.getEventNodes("a"));
+
+        compositeNode.removeNode(a);
+        assertTrue(process.getEventNodes("a").isEmpty());
+    }
+
+    @Test
+    public void testSignalReachesEventNodeAddedToRunningProcess() {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId("org.jbpm.process.index");
+        process.setName("Index Process");
+        // the actions have no outgoing connection, which only dynamic processes allow
+        process.setDynamic(true);
+
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(1);
+        process.addNode(startNode);
+        MilestoneNode milestoneNode = new MilestoneNode();
+        milestoneNode.setName("Wait");
+        milestoneNode.setConstraint("eval(false)");
+        milestoneNode.setId(2);
+        process.addNode(milestoneNode);
+        new ConnectionImpl(
+            startNode, Node.CONNECTION_DEFAULT_TYPE,
+            milestoneNode, Node.CONNECTION_DEFAULT_TYPE
+        );
+        List<String> events = new ArrayList<String>();
+        EventNode a = newEventNode(process, 3, "a");
+        newRecordingAction(process, 4, a, events);
+
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        StatefulKnowledgeSession ksession = kbase.newStatefulKnowledgeSession();
+        ProcessInstance processInstance = ksession.startProcess("org.jbpm.process.index");
+
+        processInstance.signalEvent("a", null);
+        processInstance.signalEvent("b", null);
+        assertEquals(Arrays.asList("Action 4"), events);
+
+        EventNode b = newEventNode(process, 5, "b");
+        newRecordingAction(process, 6, b, events);
+        process.removeNode(a);
+        processInstance.signalEvent("a", null);
+        processInstance.signalEvent("b", null);
+        assertEquals(Arrays.asList("Action 4", "Action 6"), events);
+        assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+        ksession.dispose();
+    }
+
+    private RuleFlowProcess newWaitingProcess(String id, long waitNodeId) {
+        RuleFlowProcess process = new RuleFlowProcess();
+        process.setId(id);
+        process.setName("Index Process");
+        StartNode startNode = new StartNode();
+        startNode.setName("Start");
+        startNode.setId(1);
+        process.addNode(startNode);
+        MilestoneNode milestoneNode = new MilestoneNode();
+        milestoneNode.setName("Wait");
+        milestoneNode.setConstraint("eval(false)");
+        milestoneNode.setId(waitNodeId);
+        process.addNode(milestoneNode);
+        new ConnectionImpl(
+            startNode, Node.CONNECTION_DEFAULT_TYPE,
+            milestoneNode, Node.CONNECTION_DEFAULT_TYPE
+        );
+        return process;
+    }
+
+    private TestNodeInstance newNodeInstance(RuleFlowProcessInstance processInstance, long nodeId) {
+        TestNodeInstance nodeInstance = new TestNodeInstance();
+        nodeInstance.setNodeId(nodeId);
+        nodeInstance.setNodeInstanceContainer(processInstance);
+        return nodeInstance;
+    }
+
+    private EventNode newEventNode(RuleFlowProcess process, long id, String type) {
+        EventNode eventNode = new EventNode();
+        if (type != null) {
+            EventTypeFilter eventFilter = new EventTypeFilter();
+            eventFilter.setType(type);
+            eventNode.addEventFilter(eventFilter);
+        }
+        eventNode.setId(id);
+        process.addNode(eventNode);
+        return eventNode;
+    }
+
+    private void newRecordingAction(RuleFlowProcess process, final long id, EventNode eventNode, final List<String> events) {
+        ActionNode actionNode = new ActionNode();
+        actionNode.setName("Action " + id);
+        DroolsAction action = new DroolsConsequenceAction("java", null);
+        action.setMetaData("Action", new Action() {
+            public void execute(ProcessContext context) throws Exception {
+                events.add("Action " + id);
+            }
+        });
+        actionNode.setAction(action);
+        actionNode.setId(id);
+        process.addNode(actionNode);
+        new ConnectionImpl(
+            eventNode, Node.CONNECTION_DEFAULT_TYPE,
+            actionNode, Node.CONNECTION_DEFAULT_TYPE
+        );
+    }
+
+    private static class TestNodeInstance extends NodeInstanceImpl {
+
+        private static final long serialVersionUID = 510l;
+
+        public void internalTrigger(NodeInstance from, String type) {
+        }
+    }
+}
@@ -16,8 +16,8 @@
 
 package org.jbpm.task.service;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kie.internal.task.service.ResponseHandler;
 
@@ -26,7 +26,7 @@ public class BaseClientHandler implements BaseHandler {
 	protected Map<Integer, ResponseHandler> responseHandlers;
 
 	public BaseClientHandler() {
-		responseHandlers = new HashMap<Integer, ResponseHandler>();
+		responseHandlers = new ConcurrentHashMap<Integer, ResponseHandler>();
 	}
 
 	public void addResponseHandler(int id, ResponseHandler responseHandler) {
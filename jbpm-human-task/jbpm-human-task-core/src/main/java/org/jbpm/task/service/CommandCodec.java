@@ -0,0 +1,333 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jbpm.task.Attachment;
+import org.jbpm.task.Comment;
+import org.jbpm.task.Content;
+import org.jbpm.task.Deadline;
+import org.jbpm.task.Deadlines;
+import org.jbpm.task.Delegation;
+import org.jbpm.task.Group;
+import org.jbpm.task.I18NText;
+import org.jbpm.task.PeopleAssignments;
+import org.jbpm.task.Task;
+import org.jbpm.task.TaskData;
+import org.jbpm.task.User;
+import org.jbpm.task.event.EventPayload;
+import org.jbpm.task.event.TaskEventKey;
+import org.jbpm.task.event.entity.TaskUserEvent;
+import org.jbpm.task.query.TaskSummary;
+
+/**
+ * Compact binary encoding of the messages exchanged between task clients and the task server,
+ * used instead of plain java serialization when the {@link #CODEC_PROPERTY} system property is set to
+ * <code>binary</code>.
+ * <br/>
+ * A message starts with a magic byte and the format version, followed by the tagged value. Commands
+ * are written as id, ordinal of their {@link CommandName} and arguments; the task model classes are
+ * written with their <code>writeExternal</code> method prefixed by a one byte type id instead of
+ * class descriptors. Anything else falls back to java serialization of that value.
+ * <br/>
+ * New command names and model classes must only be appended, the format version has to be
+ * increased for any other change.
+ * <br/>
+ * The codec is selected per process and every message is written with it, responses included, so
+ * clients and servers have to switch together: a server using the binary codec answers in binary
+ * even to a client that still sends java serialized messages, and the Mina binary frames are not
+ * compatible with the frames of Mina's object serialization codec. {@link #decode(byte[])} accepts
+ * java serialized messages only because the HornetQ transport uses it for both formats.
+ */
+public final class CommandCodec {
+
+    public static final String CODEC_PROPERTY = "jbpm.task.codec";
+
+    public static final byte MAGIC = 0x4A;
+    public static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DATE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+    private static final byte BYTES = 8;
+    private static final byte ENUM = 9;
+    private static final byte EXTERNALIZABLE = 10;
+    private static final byte COMMAND = 11;
+    private static final byte SERIALIZED = 12;
+
+    // position in this array is the type id on the wire, only append
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Externalizable>[] TYPES = new Class[] {
+        Task.class,
+        TaskSummary.class,
+        ContentData.class,
+        FaultData.class,
+        Content.class,
+        Attachment.class,
+        Comment.class,
+        User.class,
+        Group.class,
+        I18NText.class,
+        TaskData.class,
+        PeopleAssignments.class,
+        Deadlines.class,
+        Deadline.class,
+        Delegation.class,
+        TaskEventKey.class,
+        EventPayload.class,
+        TaskUserEvent.class,
+        TaskError.class
+    };
+
+    private static final Map<Class<?>, Integer> TYPE_IDS = new HashMap<Class<?>, Integer>();
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_IDS.put(TYPES[i], i);
+        }
+    }
+
+    private CommandCodec() {
+    }
+
+    public static boolean isBinaryEnabled() {
+        return "binary".equalsIgnoreCase(System.getProperty(CODEC_PROPERTY));
+    }
+
+    public static byte[] encode(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        BinaryOutput out = new BinaryOutput(bytes);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeObject(message);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static Object decode(byte[] message) throws IOException, ClassNotFoundException {
+        if (message.length > 1 && message[0] == (byte) 0xAC && message[1] == (byte) 0xED) {
+            // java serialization stream
+            return new ObjectInputStream(new ByteArrayInputStream(message)).readObject();
+        }
+        BinaryInput in = new BinaryInput(new ByteArrayInputStream(message));
+        if (in.readByte() != MAGIC) {
+            throw new IOException("Not a task command message");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported task command message version " + version);
+        }
+        return in.readObject();
+    }
+
+    /**
+     * Encodes the message with the codec selected by the {@link #CODEC_PROPERTY}.
+     */
+    public static byte[] encodeConfigured(Object message) throws IOException {
+        if (isBinaryEnabled()) {
+            return encode(message);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static class BinaryOutput extends DataOutputStream implements ObjectOutput {
+
+        BinaryOutput(OutputStream out) {
+            super(out);
+        }
+
+        @SuppressWarnings("rawtypes")
+        public void writeObject(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeByte(INTEGER);
+                writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeLong((Long) value);
+            } else if (value instanceof Boolean) {
+                writeByte(BOOLEAN);
+                writeBoolean((Boolean) value);
+            } else if (value.getClass() == Date.class) {
+                writeByte(DATE);
+                writeLong(((Date) value).getTime());
+            } else if (value instanceof Command) {
+                Command command = (Command) value;
+                writeByte(COMMAND);
+                writeInt(command.getId());
+                writeShort(command.getName().ordinal());
+                writeObject(command.getArguments());
+            } else if (value instanceof List) {
+                List list = (List) value;
+                writeByte(LIST);
+                writeInt(list.size());
+                for (Object element : list) {
+                    writeObject(element);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeObject(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            } else if (value instanceof byte[]) {
+                byte[] data = (byte[]) value;
+                writeByte(BYTES);
+                writeInt(data.length);
+                write(data);
+            } else if (value instanceof Enum) {
+                Enum constant = (Enum) value;
+                writeByte(ENUM);
+                writeString(constant.getDeclaringClass().getName());
+                writeString(constant.name());
+            } else if (TYPE_IDS.containsKey(value.getClass())) {
+                writeByte(EXTERNALIZABLE);
+                writeByte(TYPE_IDS.get(value.getClass()));
+                ((Externalizable) value).writeExternal(this);
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(value);
+                out.close();
+                byte[] data = bytes.toByteArray();
+                writeByte(SERIALIZED);
+                writeInt(data.length);
+                write(data);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            // not limited to 64k as writeUTF
+            byte[] data = value.getBytes("UTF-8");
+            writeInt(data.length);
+            write(data);
+        }
+    }
+
+    private static class BinaryInput extends DataInputStream implements ObjectInput {
+
+        BinaryInput(InputStream in) {
+            super(in);
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public Object readObject() throws ClassNotFoundException, IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case INTEGER:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case BOOLEAN:
+                    return readBoolean();
+                case DATE:
+                    return new Date(readLong());
+                case COMMAND: {
+                    int id = readInt();
+                    CommandName name = CommandName.values()[readShort()];
+                    return new Command(id, name, (List<Object>) readObject());
+                }
+                case LIST: {
+                    int size = readInt();
+                    List<Object> list = new ArrayList<Object>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readObject());
+                    }
+                    return list;
+                }
+                case MAP: {
+                    int size = readInt();
+                    Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+                    for (int i = 0; i < size; i++) {
+                        map.put(readObject(), readObject());
+                    }
+                    return map;
+                }
+                case BYTES: {
+                    byte[] data = new byte[readInt()];
+                    readFully(data);
+                    return data;
+                }
+                case ENUM: {
+                    Class type = Class.forName(readString(), true, CommandCodec.class.getClassLoader());
+                    return Enum.valueOf(type, readString());
+                }
+                case EXTERNALIZABLE: {
+                    Class<? extends Externalizable> type = TYPES[readByte()];
+                    Externalizable value;
+                    try {
+                        value = type.newInstance();
+                    } catch (Exception e) {
+                        throw new IOException("Unable to create " + type.getName() + ": " + e.getMessage());
+                    }
+                    value.readExternal(this);
+                    return value;
+                }
+                case SERIALIZED: {
+                    byte[] data = new byte[readInt()];
+                    readFully(data);
+                    return new ObjectInputStream(new ByteArrayInputStream(data)).readObject();
+                }
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] data = new byte[readInt()];
+            readFully(data);
+            return new String(data, "UTF-8");
+        }
+    }
+}
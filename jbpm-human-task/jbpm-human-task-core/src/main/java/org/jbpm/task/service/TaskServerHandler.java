@@ -20,9 +20,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jbpm.eventmessaging.EventKey;
 import org.jbpm.task.Attachment;
@@ -51,7 +51,7 @@ public class TaskServerHandler {
 
     public TaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
         this.service = service;
-        this.clients = new HashMap<String, SessionWriter>();
+        this.clients = new ConcurrentHashMap<String, SessionWriter>();
         this.systemEventListener = systemEventListener;
     }
 
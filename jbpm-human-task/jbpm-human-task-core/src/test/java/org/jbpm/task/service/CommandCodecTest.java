@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.jbpm.task.AccessType;
+import org.jbpm.task.Status;
+import org.jbpm.task.User;
+import org.jbpm.task.query.TaskSummary;
+import org.junit.Test;
+
+public class CommandCodecTest {
+
+    @Test
+    public void testTaskSummaryListRoundTrip() throws Exception {
+        List<Object> summaries = new ArrayList<Object>();
+        for (int i = 0; i < 50; i++) {
+            summaries.add(new TaskSummary(i, 100 + i, "task " + i, "subject", "description", Status.Reserved, 3, true,
+                    new User("john"), new User("mary"), new Date(), new Date(), null, "org.jbpm.process", 1));
+        }
+        List<Object> args = new ArrayList<Object>();
+        args.add(summaries);
+        Command command = new Command(42, CommandName.QueryTaskSummaryResponse, args);
+
+        byte[] binary = CommandCodec.encode(command);
+        Command decoded = (Command) CommandCodec.decode(binary);
+        assertEquals(42, decoded.getId());
+        assertEquals(CommandName.QueryTaskSummaryResponse, decoded.getName());
+        List<?> decodedSummaries = (List<?>) decoded.getArguments().get(0);
+        assertEquals(50, decodedSummaries.size());
+        TaskSummary summary = (TaskSummary) decodedSummaries.get(7);
+        assertEquals(7, summary.getId());
+        assertEquals("task 7", summary.getName());
+        assertEquals(Status.Reserved, summary.getStatus());
+        assertEquals("john", summary.getActualOwner().getId());
+
+        byte[] serialized = serialize(command);
+        assertTrue(binary.length < serialized.length);
+    }
+
+    @Test
+    public void testOperationRequestRoundTrip() throws Exception {
+        ContentData data = new ContentData();
+        data.setAccessType(AccessType.Inline);
+        data.setType("java.lang.String");
+        data.setContent(new byte[] {1, 2, 3});
+        List<Object> args = new ArrayList<Object>();
+        args.add(Operation.Complete);
+        args.add(5L);
+        args.add("john");
+        args.add(null);
+        args.add(data);
+        List<String> groups = new ArrayList<String>();
+        groups.add("HR");
+        args.add(groups);
+        Command command = new Command(1, CommandName.OperationRequest, args);
+
+        Command decoded = (Command) CommandCodec.decode(CommandCodec.encode(command));
+        assertEquals(Operation.Complete, decoded.getArguments().get(0));
+        assertEquals(5L, decoded.getArguments().get(1));
+        assertEquals(null, decoded.getArguments().get(3));
+        ContentData decodedData = (ContentData) decoded.getArguments().get(4);
+        assertEquals(AccessType.Inline, decodedData.getAccessType());
+        assertArrayEquals(new byte[] {1, 2, 3}, decodedData.getContent());
+        assertEquals(groups, decoded.getArguments().get(5));
+    }
+
+    @Test
+    public void testDecodesSerializedMessages() throws Exception {
+        List<Object> args = new ArrayList<Object>();
+        args.add(new IllegalStateException("failure"));
+        Command command = new Command(3, CommandName.OperationResponse, args);
+
+        Command decoded = (Command) CommandCodec.decode(serialize(command));
+        assertEquals(3, decoded.getId());
+        // values without binary encoding fall back to serialization
+        decoded = (Command) CommandCodec.decode(CommandCodec.encode(command));
+        assertEquals("failure", ((IllegalStateException) decoded.getArguments().get(0)).getMessage());
+    }
+
+    private byte[] serialize(Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -15,9 +15,7 @@
  */
 package org.jbpm.task.service.hornetq;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -37,6 +35,7 @@ import org.hornetq.core.remoting.impl.netty.NettyConnectorFactory;
 import org.hornetq.core.remoting.impl.netty.TransportConstants;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.jbpm.task.service.CommandCodec;
 import org.jbpm.task.service.TaskServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -124,10 +123,8 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
         int bodySize = msgReceived.getBodySize();
         byte[] message = new byte[bodySize];
         msgReceived.getBodyBuffer().readBytes(message);
-        ByteArrayInputStream bais = new ByteArrayInputStream(message);
         try {
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            return ois.readObject();
+            return CommandCodec.decode(message);
         } catch (IOException e) {
             throw new IOException("Error reading message", e);
         } catch (ClassNotFoundException e) {
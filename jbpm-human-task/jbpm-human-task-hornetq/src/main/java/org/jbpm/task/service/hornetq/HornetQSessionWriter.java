@@ -16,14 +16,13 @@
 
 package org.jbpm.task.service.hornetq;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
+import org.jbpm.task.service.CommandCodec;
 import org.jbpm.task.service.SessionWriter;
 
 public class HornetQSessionWriter implements SessionWriter {
@@ -37,13 +36,10 @@ public class HornetQSessionWriter implements SessionWriter {
 	}
 
 	public void write(Object message) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ObjectOutputStream oout;
 		try {
-			oout = new ObjectOutputStream(baos);
-			oout.writeObject(message);
+			byte[] data = CommandCodec.encodeConfigured(message);
 			ClientMessage clientMessage = session.createMessage(true);
-			clientMessage.getBodyBuffer().writeBytes(baos.toByteArray());
+			clientMessage.getBodyBuffer().writeBytes(data);
 			producer.send(clientMessage);
 		} catch (IOException e) {
 			throw new IOException("Error creating message");
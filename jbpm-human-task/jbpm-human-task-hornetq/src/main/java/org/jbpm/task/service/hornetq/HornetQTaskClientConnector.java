@@ -16,11 +16,7 @@
 
 package org.jbpm.task.service.hornetq;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -38,6 +34,7 @@ import org.hornetq.core.remoting.impl.netty.NettyConnectorFactory;
 import org.hornetq.core.remoting.impl.netty.TransportConstants;
 import org.jbpm.task.service.BaseClientHandler;
 import org.jbpm.task.service.BaseHandler;
+import org.jbpm.task.service.CommandCodec;
 import org.jbpm.task.service.TaskClientConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -155,9 +152,7 @@ public class HornetQTaskClientConnector implements TaskClientConnector {
 		int bodySize = serverMessage.getBodySize();
 		byte[] message = new byte[bodySize];
 		serverMessage.getBodyBuffer().readBytes(message);
-		ByteArrayInputStream bais = new ByteArrayInputStream(message);
-		ObjectInputStream ois = new ObjectInputStream(bais);
-		return ois.readObject();
+		return CommandCodec.decode(message);
 	}
 	
 	private void createClientQueue() {
@@ -186,13 +181,10 @@ public class HornetQTaskClientConnector implements TaskClientConnector {
 	}
 
 	public void write(Object object) {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ObjectOutputStream oout;
 		try {
-			oout = new ObjectOutputStream(baos);
-			oout.writeObject(object);
+			byte[] data = CommandCodec.encodeConfigured(object);
 			ClientMessage message = session.createMessage(true);
-			message.getBodyBuffer().writeBytes(baos.toByteArray());
+			message.getBodyBuffer().writeBytes(data);
 			message.putStringProperty("producerId", name);
 			producer.send(message);
 		} catch (IOException e) {
@@ -16,8 +16,8 @@
 
 package org.jbpm.task.service.mina;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.mina.core.service.IoHandlerAdapter;
 import org.jbpm.task.service.BaseHandler;
@@ -28,7 +28,7 @@ public class BaseMinaHandler extends IoHandlerAdapter implements BaseHandler
     protected Map<Integer, ResponseHandler> responseHandlers;
     
     public BaseMinaHandler() {
-        responseHandlers = new HashMap<Integer, ResponseHandler>();
+        responseHandlers = new ConcurrentHashMap<Integer, ResponseHandler>();
     }
     
     public void addResponseHandler(int id, ResponseHandler responseHandler) {
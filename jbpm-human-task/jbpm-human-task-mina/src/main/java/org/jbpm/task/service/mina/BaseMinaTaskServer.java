@@ -18,24 +18,41 @@ package org.jbpm.task.service.mina;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
-import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
+import org.apache.mina.filter.executor.UnorderedThreadPoolExecutor;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.apache.mina.transport.socket.SocketSessionConfig;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.jbpm.task.service.TaskServer;
 
 public abstract class BaseMinaTaskServer extends TaskServer {
+    
+    /**
+     * Number of threads commands are executed on, by default they are executed on the I/O threads.
+     */
+    public static final String WORKERS_PROPERTY = "jbpm.task.server.workers";
+    /**
+     * When set to <code>false</code> commands received over the same connection may be executed
+     * concurrently (responses are matched to requests by command id), so a slow command does not
+     * hold back the ones pipelined after it.
+     */
+    public static final String ORDERED_PROPERTY = "jbpm.task.server.ordered";
+    
     private final int port;
 
     IoHandlerAdapter  handler;
 
     IoAcceptor        acceptor;
 
+    ThreadPoolExecutor executor;
+
     volatile boolean  running;
     
     //the local interface to be used. Default is loopback. To bind all
@@ -76,7 +93,17 @@ public abstract class BaseMinaTaskServer extends TaskServer {
         acceptor.getFilterChain().addLast( "logger",
                                            new LoggingFilter() );
         acceptor.getFilterChain().addLast( "codec",
-                                           new ProtocolCodecFilter( new ObjectSerializationCodecFactory() ) );
+                                           new ProtocolCodecFilter( MinaCommandCodecFactory.newConfiguredCodecFactory() ) );
+        int workers = Integer.parseInt( System.getProperty( WORKERS_PROPERTY, "0" ) );
+        if ( workers > 0 ) {
+            if ( Boolean.parseBoolean( System.getProperty( ORDERED_PROPERTY, "true" ) ) ) {
+                executor = new OrderedThreadPoolExecutor( workers );
+            } else {
+                executor = new UnorderedThreadPoolExecutor( workers );
+            }
+            acceptor.getFilterChain().addLast( "executor",
+                                               new ExecutorFilter( executor ) );
+        }
 
         acceptor.setHandler( handler );
         acceptor.getSessionConfig().setReadBufferSize( 2048 );
@@ -93,6 +120,10 @@ public abstract class BaseMinaTaskServer extends TaskServer {
     public void stop() {
     	running = false;
         acceptor.dispose();
+        if ( executor != null ) {
+            executor.shutdown();
+            executor = null;
+        }
     }
     
     public boolean isRunning() {
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service.mina;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
+import org.jbpm.task.service.CommandCodec;
+
+/**
+ * Mina codec writing messages encoded by {@link CommandCodec} as length prefixed frames.
+ */
+public class MinaCommandCodecFactory implements ProtocolCodecFactory {
+
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+    private final ProtocolEncoder encoder = new ProtocolEncoderAdapter() {
+        public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception {
+            byte[] data = CommandCodec.encode(message);
+            IoBuffer buffer = IoBuffer.allocate(data.length + 4);
+            buffer.putInt(data.length);
+            buffer.put(data);
+            buffer.flip();
+            out.write(buffer);
+        }
+    };
+
+    private final ProtocolDecoder decoder = new CumulativeProtocolDecoder() {
+        protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception {
+            if (!in.prefixedDataAvailable(4, MAX_MESSAGE_SIZE)) {
+                return false;
+            }
+            byte[] data = new byte[in.getInt()];
+            in.get(data);
+            out.write(CommandCodec.decode(data));
+            return true;
+        }
+    };
+
+    /**
+     * Returns the codec selected by the {@link CommandCodec#CODEC_PROPERTY}, client and server
+     * must use the same one as the frames of both codecs cannot be told apart.
+     */
+    public static ProtocolCodecFactory newConfiguredCodecFactory() {
+        if (CommandCodec.isBinaryEnabled()) {
+            return new MinaCommandCodecFactory();
+        }
+        return new ObjectSerializationCodecFactory();
+    }
+
+    public ProtocolEncoder getEncoder(IoSession session) {
+        return encoder;
+    }
+
+    public ProtocolDecoder getDecoder(IoSession session) {
+        return decoder;
+    }
+}
@@ -23,7 +23,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.mina.core.future.ConnectFuture;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
-import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
 import org.apache.mina.transport.socket.SocketConnector;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
 import org.jbpm.task.service.BaseHandler;
@@ -97,7 +96,7 @@ public class MinaTaskClientConnector implements TaskClientConnector {
             connector.getFilterChain().addLast(
                                                "codec",
                                                new ProtocolCodecFilter(
-                                                       new ObjectSerializationCodecFactory()));
+                                                       MinaCommandCodecFactory.newConfiguredCodecFactory()));
 
             ConnectFuture future1 = connector.connect( address );
             future1.awaitUninterruptibly();
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service.mina;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.jbpm.task.Status;
+import org.jbpm.task.User;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.Command;
+import org.jbpm.task.service.CommandName;
+import org.junit.Test;
+
+/**
+ * Sends pipelined task summary responses over a local connection that the server echoes back, with
+ * the binary codec and with the object serialization codec it replaces.
+ */
+public class MinaCommandCodecFactoryTest {
+
+    private int nbCommands = 200;
+    private int nbSummaries = 20;
+
+    @Test
+    public void testBinaryLoopback() throws Exception {
+        assertEchoed(run(new MinaCommandCodecFactory(), nbCommands));
+    }
+
+    @Test
+    public void testSerializationLoopback() throws Exception {
+        assertEchoed(run(new ObjectSerializationCodecFactory(), nbCommands));
+    }
+
+    private void assertEchoed(List<Command> responses) {
+        assertEquals(nbCommands, responses.size());
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Command response : responses) {
+            ids.add(response.getId());
+            assertEquals(CommandName.QueryTaskSummaryResponse, response.getName());
+            List<?> summaries = (List<?>) response.getArguments().get(0);
+            assertEquals(nbSummaries, summaries.size());
+            TaskSummary summary = (TaskSummary) summaries.get(nbSummaries - 1);
+            assertEquals(100 + nbSummaries - 1, summary.getProcessInstanceId());
+            assertEquals("Administrator", summary.getCreatedBy().getId());
+        }
+        assertEquals(nbCommands, ids.size());
+    }
+
+    private List<Command> run(ProtocolCodecFactory codecFactory, int count) throws Exception {
+        NioSocketAcceptor acceptor = new NioSocketAcceptor();
+        acceptor.getFilterChain().addLast("codec", new ProtocolCodecFilter(codecFactory));
+        acceptor.setHandler(new IoHandlerAdapter() {
+            public void messageReceived(IoSession session, Object message) throws Exception {
+                session.write(message);
+            }
+        });
+        acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        final List<Command> received = Collections.synchronizedList(new ArrayList<Command>());
+        final CountDownLatch responses = new CountDownLatch(count);
+        NioSocketConnector connector = new NioSocketConnector();
+        connector.getFilterChain().addLast("codec", new ProtocolCodecFilter(codecFactory));
+        connector.setHandler(new IoHandlerAdapter() {
+            public void messageReceived(IoSession session, Object message) throws Exception {
+                received.add((Command) message);
+                responses.countDown();
+            }
+        });
+        try {
+            ConnectFuture future = connector.connect(acceptor.getLocalAddress());
+            future.awaitUninterruptibly();
+            IoSession session = future.getSession();
+
+            for (int i = 0; i < count; i++) {
+                session.write(newCommand(i));
+            }
+            assertTrue(responses.await(60, TimeUnit.SECONDS));
+            session.close(true).awaitUninterruptibly();
+            return new ArrayList<Command>(received);
+        } finally {
+            connector.dispose();
+            acceptor.dispose();
+        }
+    }
+
+    private Command newCommand(int id) {
+        List<TaskSummary> summaries = new ArrayList<TaskSummary>();
+        for (int i = 0; i < nbSummaries; i++) {
+            summaries.add(new TaskSummary(i, 100 + i, "task " + i, "subject", "description", Status.Ready, 3, true,
+                    null, new User("Administrator"), new Date(), new Date(), null, "org.jbpm.process", 1));
+        }
+        List<Object> args = new ArrayList<Object>();
+        args.add(summaries);
+        return new Command(id, CommandName.QueryTaskSummaryResponse, args);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.perf.PerfSessions.DeferringWorkItemHandler;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Runs a process whose diverging gateway activates <code>width</code> waiting branches, then
+ * completes them one after the other so the converging gateway is triggered once per branch
+ * while the other branches are still active. This is the worst case of the inclusive (OR) join,
+ * which has to find out whether a remaining active branch can still reach it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GatewayBenchmark {
+
+    @Param({"2", "16", "64"})
+    public int width;
+
+    @Param({"true", "false"})
+    public boolean inclusive;
+
+    private StatefulKnowledgeSession ksession;
+    private DeferringWorkItemHandler handler;
+    private Map<String, Object> parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newFanOutProcess("fanOut", width, inclusive)));
+        handler = new DeferringWorkItemHandler();
+        ksession.getWorkItemManager().registerWorkItemHandler(ProcessGenerator.WORK_ITEM_NAME, handler);
+        parameters = ProcessGenerator.newParameters(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public int splitAndJoin() {
+        ProcessInstance processInstance = ksession.startProcess("fanOut", parameters);
+        handler.completeAll(ksession.getWorkItemManager());
+        if (processInstance.getState() != ProcessInstance.STATE_COMPLETED) {
+            throw new IllegalStateException("Process instance did not complete");
+        }
+        return processInstance.getState();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.task.wih.HTWorkItemHandlerFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.kie.internal.task.api.TaskService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Full human task life cycle through the local task service: a process creates a task for two
+ * potential owners, which is then claimed, started and completed, completing the process.
+ * Session and tasks are persisted on the embedded H2 database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HumanTaskBenchmark {
+
+    private StatefulKnowledgeSession ksession;
+    private TaskService taskService;
+    private Map<String, Object> parameters;
+
+    @Setup(Level.Trial)
+    public void setUp(PersistenceState persistence) {
+        ksession = PerfSessions.newPersistentSession(ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newUserTaskProcess("userTask", "john", "mary")), persistence.getEmf());
+        taskService = persistence.getTaskService();
+        ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+                HTWorkItemHandlerFactory.newHandler(ksession, taskService));
+        parameters = ProcessGenerator.newParameters(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public long claimAndComplete() {
+        long processInstanceId = ksession.startProcess("userTask", parameters).getId();
+        List<Long> taskIds = taskService.getTasksByProcessInstanceId(processInstanceId);
+        long taskId = taskIds.get(0);
+        taskService.claim(taskId, "john");
+        taskService.start(taskId, "john");
+        taskService.complete(taskId, "john", null);
+        return taskId;
+    }
+}
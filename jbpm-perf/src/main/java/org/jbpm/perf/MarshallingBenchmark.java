@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.api.marshalling.Marshaller;
+import org.kie.api.runtime.KieSession;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.marshalling.MarshallerFactory;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Marshals and unmarshals a session holding <code>processInstances</code> waiting process instances
+ * with a payload variable of <code>payloadSize</code> characters. Process instances are written
+ * by the protobuf process instance marshaller, as when they are persisted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MarshallingBenchmark {
+
+    @Param({"1", "100"})
+    public int processInstances;
+
+    @Param({"0", "10240"})
+    public int payloadSize;
+
+    private StatefulKnowledgeSession ksession;
+    private Marshaller marshaller;
+    private byte[] marshalled;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        KnowledgeBase kbase = ProcessGenerator.newKnowledgeBase(ProcessGenerator.newSignalLoopProcess("loop"));
+        ksession = PerfSessions.newSession(kbase);
+        for (int i = 0; i < processInstances; i++) {
+            ksession.startProcess("loop", ProcessGenerator.newParameters(payloadSize));
+        }
+        marshaller = MarshallerFactory.newMarshaller(kbase);
+        marshalled = marshall();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public byte[] marshall() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(marshalled == null ? 4096 : marshalled.length);
+        marshaller.marshall(out, ksession);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public int unmarshall() throws IOException, ClassNotFoundException {
+        KieSession unmarshalled = marshaller.unmarshall(new ByteArrayInputStream(marshalled));
+        int count = unmarshalled.getProcessInstances().size();
+        unmarshalled.dispose();
+        return count;
+    }
+}
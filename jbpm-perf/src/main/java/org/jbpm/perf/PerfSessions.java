@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.core.SessionConfiguration;
+import org.drools.core.impl.EnvironmentFactory;
+import org.jbpm.process.instance.event.DefaultSignalManagerFactory;
+import org.jbpm.process.instance.impl.DefaultProcessInstanceManagerFactory;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemHandler;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.KnowledgeBaseFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+import bitronix.tm.TransactionManagerServices;
+
+/**
+ * Creates the sessions used by the benchmarks, configured like the ones of <code>JbpmJUnitTestCase</code>.
+ */
+public class PerfSessions {
+
+    /**
+     * @return a session keeping process instances in memory
+     */
+    public static StatefulKnowledgeSession newSession(KnowledgeBase kbase) {
+        Properties properties = new Properties();
+        properties.setProperty("drools.processSignalManagerFactory", DefaultSignalManagerFactory.class.getName());
+        properties.setProperty("drools.processInstanceManagerFactory", DefaultProcessInstanceManagerFactory.class.getName());
+        return kbase.newStatefulKnowledgeSession(new SessionConfiguration(properties), EnvironmentFactory.newEnvironment());
+    }
+
+    /**
+     * @return a session persisting its state and process instances with the given entity manager factory
+     */
+    public static StatefulKnowledgeSession newPersistentSession(KnowledgeBase kbase, EntityManagerFactory emf) {
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set(EnvironmentName.ENTITY_MANAGER_FACTORY, emf);
+        env.set(EnvironmentName.TRANSACTION_MANAGER, TransactionManagerServices.getTransactionManager());
+        return JPAKnowledgeService.newStatefulKnowledgeSession(kbase, KnowledgeBaseFactory.newKnowledgeSessionConfiguration(), env);
+    }
+
+    /**
+     * Completes work items as soon as they are executed.
+     */
+    public static class CompletingWorkItemHandler implements WorkItemHandler {
+
+        public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+            manager.completeWorkItem(workItem.getId(), null);
+        }
+
+        public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+        }
+    }
+
+    /**
+     * Keeps work items active until {@link #completeAll(WorkItemManager)} is called.
+     */
+    public static class DeferringWorkItemHandler implements WorkItemHandler {
+
+        private final List<WorkItem> workItems = new ArrayList<WorkItem>();
+
+        public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+            workItems.add(workItem);
+        }
+
+        public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            workItems.remove(workItem);
+        }
+
+        public void completeAll(WorkItemManager manager) {
+            List<WorkItem> active = new ArrayList<WorkItem>(workItems);
+            workItems.clear();
+            for (WorkItem workItem : active) {
+                manager.completeWorkItem(workItem.getId(), null);
+            }
+        }
+    }
+}
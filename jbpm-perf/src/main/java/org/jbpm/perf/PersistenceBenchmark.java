@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.perf.ProcessGenerator.TaskType;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JPA round trips of a persistent session on the embedded H2 database: starting a process that
+ * completes in the same transaction, and signaling a waiting process instance, which loads,
+ * unmarshals, marshals and updates it in its own transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PersistenceBenchmark {
+
+    @Param({"1", "10"})
+    public int chainLength;
+
+    @Param({"0", "10240"})
+    public int payloadSize;
+
+    private StatefulKnowledgeSession ksession;
+    private Map<String, Object> parameters;
+    private long waitingProcessInstanceId;
+
+    @Setup(Level.Trial)
+    public void setUp(PersistenceState persistence) {
+        KnowledgeBase kbase = ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newChainProcess("chain", chainLength, TaskType.SCRIPT),
+                ProcessGenerator.newSignalLoopProcess("loop"));
+        ksession = PerfSessions.newPersistentSession(kbase, persistence.getEmf());
+        parameters = ProcessGenerator.newParameters(payloadSize);
+        waitingProcessInstanceId = ksession.startProcess("loop", parameters).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public long startProcess() {
+        return ksession.startProcess("chain", parameters).getId();
+    }
+
+    @Benchmark
+    public long signalProcessInstance() {
+        ksession.signalEvent(ProcessGenerator.SIGNAL, null, waitingProcessInstanceId);
+        return waitingProcessInstanceId;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.h2.tools.DeleteDbFiles;
+import org.h2.tools.Server;
+import org.jbpm.shared.services.impl.JbpmJTATransactionManager;
+import org.jbpm.task.HumanTaskServiceFactory;
+import org.jbpm.test.JBPMHelper;
+import org.kie.internal.task.api.TaskService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+
+/**
+ * Embedded H2 database, data source and entity manager factory of the <code>jbpm-test</code> persistence
+ * unit, shared by all threads of a persistence benchmark. The database is deleted after each trial.
+ */
+@State(Scope.Benchmark)
+public class PersistenceState {
+
+    private Server server;
+    private PoolingDataSource ds;
+    private EntityManagerFactory emf;
+    private TaskService taskService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("jbpm.user.group.mapping", "classpath:/usergroups.properties");
+        System.setProperty("jbpm.usergroup.callback", "org.jbpm.task.identity.DefaultUserGroupCallbackImpl");
+        DeleteDbFiles.execute("~", "jbpm-db", true);
+        server = JBPMHelper.startH2Server();
+        ds = JBPMHelper.setupDataSource();
+        emf = Persistence.createEntityManagerFactory("org.jbpm.persistence.jpa");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        emf.close();
+        ds.close();
+        server.stop();
+        DeleteDbFiles.execute("~", "jbpm-db", true);
+    }
+
+    public EntityManagerFactory getEmf() {
+        return emf;
+    }
+
+    public synchronized TaskService getTaskService() {
+        if (taskService == null) {
+            HumanTaskServiceFactory.setEntityManagerFactory(emf);
+            HumanTaskServiceFactory.setJbpmServicesTransactionManager(new JbpmJTATransactionManager());
+            taskService = HumanTaskServiceFactory.newTaskService();
+        }
+        return taskService;
+    }
+}
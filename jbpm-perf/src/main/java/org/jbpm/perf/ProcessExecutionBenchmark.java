@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.perf.PerfSessions.CompletingWorkItemHandler;
+import org.jbpm.perf.ProcessGenerator.TaskType;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Starts processes that run straight through a chain of tasks without waiting, in a session
+ * keeping process instances in memory. With work item tasks every node also evaluates a data
+ * input association and a <code>#{}</code> parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProcessExecutionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int chainLength;
+
+    @Param({"SCRIPT", "WORK_ITEM"})
+    public TaskType taskType;
+
+    @Param({"0", "10240"})
+    public int payloadSize;
+
+    private StatefulKnowledgeSession ksession;
+    private Map<String, Object> parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newChainProcess("chain", chainLength, taskType)));
+        ksession.getWorkItemManager().registerWorkItemHandler(ProcessGenerator.WORK_ITEM_NAME, new CompletingWorkItemHandler());
+        parameters = ProcessGenerator.newParameters(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public int startProcess() {
+        ProcessInstance processInstance = ksession.startProcess("chain", parameters);
+        if (processInstance.getState() != ProcessInstance.STATE_COMPLETED) {
+            throw new IllegalStateException("Process instance did not complete");
+        }
+        return processInstance.getState();
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kie.api.io.ResourceType;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderError;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.io.ResourceFactory;
+
+/**
+ * Generates synthetic BPMN2 processes of a given shape for the benchmarks.
+ * </p>
+ * All processes declare two string variables: <code>payload</code>, whose size is chosen by the
+ * benchmark (see {@link #newParameters(int)}), and <code>label</code>, used in <code>#{}</code>
+ * parameters. Tasks of type {@link TaskType#WORK_ITEM} are work items named {@link #WORK_ITEM_NAME}
+ * that get the payload through a data input association and a <code>#{label}</code> parameter.
+ */
+public class ProcessGenerator {
+
+    public static final String WORK_ITEM_NAME = "Perf";
+    public static final String SIGNAL = "go";
+
+    public enum TaskType {
+        SCRIPT,
+        WORK_ITEM
+    }
+
+    /**
+     * Start event, <code>length</code> tasks in sequence and end event.
+     */
+    public static String newChainProcess(String processId, int length, TaskType taskType) {
+        StringBuilder process = begin(processId);
+        process.append("    <startEvent id=\"_start\" name=\"Start\"/>\n");
+        String previous = "_start";
+        for (int i = 0; i < length; i++) {
+            String id = "_task" + i;
+            appendTask(process, id, taskType);
+            appendFlow(process, previous, id, null);
+            previous = id;
+        }
+        process.append("    <endEvent id=\"_end\" name=\"End\"/>\n");
+        appendFlow(process, previous, "_end", null);
+        return end(process);
+    }
+
+    /**
+     * Start event, a diverging gateway with <code>width</code> branches of one work item each,
+     * a converging gateway and end event. The gateways are inclusive or parallel ones; all branches
+     * of inclusive gateways are taken.
+     */
+    public static String newFanOutProcess(String processId, int width, boolean inclusive) {
+        String gateway = inclusive ? "inclusiveGateway" : "parallelGateway";
+        StringBuilder process = begin(processId);
+        process.append("    <startEvent id=\"_start\" name=\"Start\"/>\n");
+        process.append("    <" + gateway + " id=\"_split\" name=\"Split\" gatewayDirection=\"Diverging\"/>\n");
+        process.append("    <" + gateway + " id=\"_join\" name=\"Join\" gatewayDirection=\"Converging\"/>\n");
+        process.append("    <endEvent id=\"_end\" name=\"End\"/>\n");
+        appendFlow(process, "_start", "_split", null);
+        for (int i = 0; i < width; i++) {
+            String id = "_task" + i;
+            appendTask(process, id, TaskType.WORK_ITEM);
+            appendFlow(process, "_split", id, inclusive ? "return true;" : null);
+            appendFlow(process, id, "_join", null);
+        }
+        appendFlow(process, "_join", "_end", null);
+        return end(process);
+    }
+
+    /**
+     * Process that never completes: every {@link #SIGNAL} signal runs one script task and waits for the next one.
+     */
+    public static String newSignalLoopProcess(String processId) {
+        StringBuilder process = begin(processId);
+        process.append("    <startEvent id=\"_start\" name=\"Start\"/>\n");
+        process.append("    <exclusiveGateway id=\"_loop\" name=\"Loop\" gatewayDirection=\"Converging\"/>\n");
+        process.append("    <intermediateCatchEvent id=\"_wait\" name=\"Wait\">\n");
+        process.append("      <signalEventDefinition signalRef=\"" + SIGNAL + "\"/>\n");
+        process.append("    </intermediateCatchEvent>\n");
+        appendTask(process, "_task", TaskType.SCRIPT);
+        appendFlow(process, "_start", "_loop", null);
+        appendFlow(process, "_loop", "_wait", null);
+        appendFlow(process, "_wait", "_task", null);
+        appendFlow(process, "_task", "_loop", null);
+        return end(process);
+    }
+
+    /**
+     * Process with a single user task, potential owners are the given actors.
+     */
+    public static String newUserTaskProcess(String processId, String... actors) {
+        StringBuilder process = begin(processId);
+        process.append("    <startEvent id=\"_start\" name=\"Start\"/>\n");
+        process.append("    <userTask id=\"_task\" name=\"Task\">\n");
+        process.append("      <ioSpecification>\n");
+        process.append("        <inputSet/>\n");
+        process.append("        <outputSet/>\n");
+        process.append("      </ioSpecification>\n");
+        for (String actor : actors) {
+            process.append("      <potentialOwner>\n");
+            process.append("        <resourceAssignmentExpression>\n");
+            process.append("          <formalExpression>" + actor + "</formalExpression>\n");
+            process.append("        </resourceAssignmentExpression>\n");
+            process.append("      </potentialOwner>\n");
+        }
+        process.append("    </userTask>\n");
+        process.append("    <endEvent id=\"_end\" name=\"End\"/>\n");
+        appendFlow(process, "_start", "_task", null);
+        appendFlow(process, "_task", "_end", null);
+        return end(process);
+    }
+
+    /**
+     * @return process variables with a payload of <code>payloadSize</code> characters
+     */
+    public static Map<String, Object> newParameters(int payloadSize) {
+        StringBuilder payload = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("payload", payload.toString());
+        parameters.put("label", "perf");
+        return parameters;
+    }
+
+    public static KnowledgeBase newKnowledgeBase(String... processes) {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        for (String process : processes) {
+            kbuilder.add(ResourceFactory.newByteArrayResource(process.getBytes()), ResourceType.BPMN2);
+        }
+        if (kbuilder.hasErrors()) {
+            StringBuilder errors = new StringBuilder();
+            for (KnowledgeBuilderError error : kbuilder.getErrors()) {
+                errors.append(error.toString()).append('\n');
+            }
+            throw new IllegalArgumentException("Could not build generated processes:\n" + errors);
+        }
+        return kbuilder.newKnowledgeBase();
+    }
+
+    private static StringBuilder begin(String processId) {
+        StringBuilder process = new StringBuilder();
+        process.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        process.append("<definitions id=\"Definition\"\n");
+        process.append("             targetNamespace=\"http://www.jboss.org/jbpm/perf\"\n");
+        process.append("             typeLanguage=\"http://www.java.com/javaTypes\"\n");
+        process.append("             expressionLanguage=\"http://www.mvel.org/2.0\"\n");
+        process.append("             xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"\n");
+        process.append("             xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        process.append("             xsi:schemaLocation=\"http://www.omg.org/spec/BPMN/20100524/MODEL BPMN20.xsd\"\n");
+        process.append("             xmlns:tns=\"http://www.jboss.org/drools\">\n\n");
+        process.append("  <itemDefinition id=\"_stringItem\" structureRef=\"String\"/>\n\n");
+        process.append("  <process processType=\"Private\" isExecutable=\"true\" id=\"" + processId
+                + "\" name=\"" + processId + "\" tns:packageName=\"org.jbpm.perf\">\n");
+        process.append("    <property id=\"payload\" itemSubjectRef=\"_stringItem\"/>\n");
+        process.append("    <property id=\"label\" itemSubjectRef=\"_stringItem\"/>\n");
+        return process;
+    }
+
+    private static String end(StringBuilder process) {
+        process.append("  </process>\n");
+        process.append("</definitions>\n");
+        return process.toString();
+    }
+
+    private static void appendTask(StringBuilder process, String id, TaskType taskType) {
+        if (taskType == TaskType.SCRIPT) {
+            process.append("    <scriptTask id=\"" + id + "\" name=\"" + id + "\">\n");
+            process.append("      <script>kcontext.getVariable(\"payload\");</script>\n");
+            process.append("    </scriptTask>\n");
+            return;
+        }
+        process.append("    <task id=\"" + id + "\" name=\"" + id + "\" tns:taskName=\"" + WORK_ITEM_NAME + "\">\n");
+        process.append("      <ioSpecification>\n");
+        process.append("        <dataInput id=\"" + id + "_PayloadInput\" name=\"Payload\"/>\n");
+        process.append("        <dataInput id=\"" + id + "_LabelInput\" name=\"Label\"/>\n");
+        process.append("        <inputSet>\n");
+        process.append("          <dataInputRefs>" + id + "_PayloadInput</dataInputRefs>\n");
+        process.append("          <dataInputRefs>" + id + "_LabelInput</dataInputRefs>\n");
+        process.append("        </inputSet>\n");
+        process.append("        <outputSet/>\n");
+        process.append("      </ioSpecification>\n");
+        process.append("      <dataInputAssociation>\n");
+        process.append("        <sourceRef>payload</sourceRef>\n");
+        process.append("        <targetRef>" + id + "_PayloadInput</targetRef>\n");
+        process.append("      </dataInputAssociation>\n");
+        process.append("      <dataInputAssociation>\n");
+        process.append("        <targetRef>" + id + "_LabelInput</targetRef>\n");
+        process.append("        <assignment>\n");
+        process.append("          <from xsi:type=\"tFormalExpression\">" + id + " of #{label}</from>\n");
+        process.append("          <to xsi:type=\"tFormalExpression\">" + id + "_LabelInput</to>\n");
+        process.append("        </assignment>\n");
+        process.append("      </dataInputAssociation>\n");
+        process.append("    </task>\n");
+    }
+
+    private static void appendFlow(StringBuilder process, String source, String target, String condition) {
+        String id = source + "-" + target;
+        if (condition == null) {
+            process.append("    <sequenceFlow id=\"" + id + "\" sourceRef=\"" + source + "\" targetRef=\"" + target + "\"/>\n");
+        } else {
+            process.append("    <sequenceFlow id=\"" + id + "\" sourceRef=\"" + source + "\" targetRef=\"" + target + "\">\n");
+            process.append("      <conditionExpression xsi:type=\"tFormalExpression\" language=\"http://www.java.com/java\">"
+                    + condition + "</conditionExpression>\n");
+            process.append("    </sequenceFlow>\n");
+        }
+    }
+}
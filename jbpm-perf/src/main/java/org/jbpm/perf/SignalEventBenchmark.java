@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Signals a waiting process instance, which runs one loop iteration and waits again, either
+ * directly on the process instance or through the session, which also dispatches the signal
+ * to the other <code>waitingInstances</code> - 1 process instances waiting for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SignalEventBenchmark {
+
+    @Param({"1", "100"})
+    public int waitingInstances;
+
+    private StatefulKnowledgeSession ksession;
+    private ProcessInstance processInstance;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newSignalLoopProcess("loop")));
+        for (int i = 0; i < waitingInstances; i++) {
+            processInstance = ksession.startProcess("loop", ProcessGenerator.newParameters(0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public int signalProcessInstance() {
+        processInstance.signalEvent(ProcessGenerator.SIGNAL, null);
+        return processInstance.getState();
+    }
+
+    @Benchmark
+    public int signalSession() {
+        ksession.signalEvent(ProcessGenerator.SIGNAL, null);
+        return processInstance.getState();
+    }
+}
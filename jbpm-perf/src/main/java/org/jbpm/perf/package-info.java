@@ -0,0 +1,11 @@
+/**
+ * JMH benchmarks of the engine, persistence and task service hot paths, run on synthetic processes
+ * generated by {@link org.jbpm.perf.ProcessGenerator}.
+ * </p>
+ * The module is only built with <code>-Dperf</code>. Build it with <code>mvn install -Dperf</code> and
+ * run <code>java -jar jbpm-perf/target/benchmarks.jar -rf json -rff jmh-result.json</code>, optionally
+ * followed by a regular expression selecting benchmarks and <code>-p name=value</code> to override parameters.
+ * The JSON result file holds the score and error of every benchmark and parameter combination, to be
+ * compared across versions.
+ */
+package org.jbpm.perf;
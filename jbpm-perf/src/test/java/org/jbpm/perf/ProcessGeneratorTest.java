@@ -0,0 +1,73 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jbpm.perf.PerfSessions.CompletingWorkItemHandler;
+import org.jbpm.perf.PerfSessions.DeferringWorkItemHandler;
+import org.jbpm.perf.ProcessGenerator.TaskType;
+import org.junit.Test;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+public class ProcessGeneratorTest {
+
+    @Test
+    public void testChainProcesses() {
+        for (TaskType taskType : TaskType.values()) {
+            StatefulKnowledgeSession ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                    ProcessGenerator.newChainProcess("chain", 10, taskType)));
+            ksession.getWorkItemManager().registerWorkItemHandler(ProcessGenerator.WORK_ITEM_NAME, new CompletingWorkItemHandler());
+            ProcessInstance processInstance = ksession.startProcess("chain", ProcessGenerator.newParameters(100));
+            assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+            ksession.dispose();
+        }
+    }
+
+    @Test
+    public void testFanOutProcesses() {
+        for (boolean inclusive : new boolean[] {true, false}) {
+            StatefulKnowledgeSession ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                    ProcessGenerator.newFanOutProcess("fanOut", 8, inclusive)));
+            DeferringWorkItemHandler handler = new DeferringWorkItemHandler();
+            ksession.getWorkItemManager().registerWorkItemHandler(ProcessGenerator.WORK_ITEM_NAME, handler);
+            ProcessInstance processInstance = ksession.startProcess("fanOut", ProcessGenerator.newParameters(0));
+            assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+            handler.completeAll(ksession.getWorkItemManager());
+            assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+            ksession.dispose();
+        }
+    }
+
+    @Test
+    public void testSignalLoopProcess() {
+        StatefulKnowledgeSession ksession = PerfSessions.newSession(ProcessGenerator.newKnowledgeBase(
+                ProcessGenerator.newSignalLoopProcess("loop")));
+        ProcessInstance processInstance = ksession.startProcess("loop", ProcessGenerator.newParameters(0));
+        for (int i = 0; i < 3; i++) {
+            processInstance.signalEvent(ProcessGenerator.SIGNAL, null);
+            assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+        }
+        ksession.dispose();
+    }
+
+    @Test
+    public void testUserTaskProcess() {
+        ProcessGenerator.newKnowledgeBase(ProcessGenerator.newUserTaskProcess("userTask", "john", "mary"));
+    }
+}
@@ -1,9 +1,13 @@
 package org.jbpm.persistence;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.FlushModeType;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
@@ -19,6 +23,19 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
     implements
     ProcessPersistenceContext {
 
+    /**
+     * Correlation keys are looked up by their hash; keys persisted before the hash column existed 
+     * are found by their property values as long as this property is not set to <code>false</code>.
+     * Whether there are such keys is checked once per entity manager factory, so the slower lookup 
+     * only runs while they exist. See {@link #migrateCorrelationKeys(int)}.
+     */
+    public static final String LEGACY_LOOKUP_PROPERTY = "jbpm.correlation.legacy.lookup";
+
+    private static final boolean LEGACY_LOOKUP = Boolean.parseBoolean(System.getProperty(LEGACY_LOOKUP_PROPERTY, "true"));
+
+    // whether correlation keys without hash exist, per entity manager factory
+    private static final Map<EntityManagerFactory, Boolean> KEYS_WITHOUT_HASH 
+        = Collections.synchronizedMap(new WeakHashMap<EntityManagerFactory, Boolean>());
     
     public JpaProcessPersistenceContext(EntityManager em) {
         super( em );
@@ -32,6 +49,18 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
         return getEntityManager().find( ProcessInstanceInfo.class, processId );
     }
 
+    @SuppressWarnings("unchecked")
+    public List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processIds) {
+        if ( processIds.isEmpty() ) {
+            return new ArrayList<ProcessInstanceInfo>();
+        }
+        Query processInstanceInfos = getEntityManager().createNamedQuery( "ProcessInstanceInfosByIds" );
+        processInstanceInfos.setFlushMode(FlushModeType.COMMIT);
+        processInstanceInfos.setParameter( "ids",
+                                           processIds );
+        return (List<ProcessInstanceInfo>) processInstanceInfos.getResultList();
+    }
+
     public void remove(ProcessInstanceInfo processInstanceInfo) {
         getEntityManager().remove( processInstanceInfo );
         List<CorrelationKeyInfo> correlations = getEntityManager().createNamedQuery("GetCorrelationKeysByProcessInstanceId")
@@ -43,6 +72,16 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
         }
     }
 
+    public void flushAndDetach(List<ProcessInstanceInfo> processInstanceInfos) {
+        EntityManager em = getEntityManager();
+        em.flush();
+        for ( ProcessInstanceInfo processInstanceInfo : processInstanceInfos ) {
+            if ( em.contains( processInstanceInfo ) ) {
+                em.detach( processInstanceInfo );
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public List<Long> getProcessInstancesWaitingForEvent(String type) {
         Query processInstancesForEvent = getEntityManager().createNamedQuery( "ProcessInstancesWaitingForEvent" );
@@ -52,19 +91,45 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
         return (List<Long>) processInstancesForEvent.getResultList();
     }
 
+    @SuppressWarnings("unchecked")
+    public List<Long> getProcessInstancesWaitingForEvent(String type, long afterProcessInstanceId, int maxResults) {
+        Query processInstancesForEvent = getEntityManager().createNamedQuery( "ProcessInstancesWaitingForEventAfterId" );
+        processInstancesForEvent.setFlushMode(FlushModeType.COMMIT);
+        processInstancesForEvent.setParameter( "type",
+                                               type );
+        processInstancesForEvent.setParameter( "afterId",
+                                               afterProcessInstanceId );
+        processInstancesForEvent.setMaxResults( maxResults );
+        return (List<Long>) processInstancesForEvent.getResultList();
+    }
+
     @Override
     public void persist(CorrelationKeyInfo correlationKeyInfo) {
         Long processInstanceId = getProcessInstanceByCorrelationKey(correlationKeyInfo);
         if (processInstanceId != null) {
             throw new RuntimeException(correlationKeyInfo + " already exists");
         }
+        if (correlationKeyInfo.getKeyHash() == null) {
+            correlationKeyInfo.updateKeyHash();
+        }
         getEntityManager().persist( correlationKeyInfo );
         
     }
 
     @Override
     public Long getProcessInstanceByCorrelationKey(CorrelationKey correlationKey) {
-        Query processInstancesForEvent = getEntityManager().createNamedQuery( "GetProcessInstanceIdByCorrelation" );
+        Query processInstanceForKey = getEntityManager().createNamedQuery( "GetProcessInstanceIdByCorrelationKeyHash" );
+        processInstanceForKey.setFlushMode(FlushModeType.COMMIT);
+        processInstanceForKey.setParameter( "keyHash", CorrelationKeyInfo.hash(correlationKey) );
+        try {
+            return (Long) processInstanceForKey.getSingleResult();
+        } catch (NoResultException e) {
+            // fall through to keys persisted before the hash was introduced
+        }
+        if (!LEGACY_LOOKUP || !hasCorrelationKeysWithoutHash()) {
+            return null;
+        }
+        Query processInstancesForEvent = getEntityManager().createNamedQuery( "GetProcessInstanceIdByCorrelationWithoutHash" );
         processInstancesForEvent.setFlushMode(FlushModeType.COMMIT);
         processInstancesForEvent.setParameter( "elem_count", correlationKey.getProperties().size() );
         List<Object> properties = new ArrayList<Object>();
@@ -80,5 +145,39 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
             return null;
         }
     }
+
+    private boolean hasCorrelationKeysWithoutHash() {
+        EntityManagerFactory emf = getEntityManager().getEntityManagerFactory();
+        Boolean keysWithoutHash = KEYS_WITHOUT_HASH.get(emf);
+        if (keysWithoutHash == null) {
+            Query countKeysWithoutHash = getEntityManager().createNamedQuery( "CountCorrelationKeysWithoutHash" );
+            countKeysWithoutHash.setFlushMode(FlushModeType.COMMIT);
+            keysWithoutHash = ((Number) countKeysWithoutHash.getSingleResult()).longValue() > 0;
+            KEYS_WITHOUT_HASH.put(emf, keysWithoutHash);
+        }
+        return keysWithoutHash;
+    }
+
+    /**
+     * Computes the hash of (at most <code>maxResults</code>) correlation keys that were persisted 
+     * without one. Meant to be called repeatedly, each time in its own transaction, until it returns 0; 
+     * after that the lookup by property values is no longer used.
+     * 
+     * @return number of keys that were migrated
+     */
+    @SuppressWarnings("unchecked")
+    public int migrateCorrelationKeys(int maxResults) {
+        Query keysWithoutHash = getEntityManager().createNamedQuery( "GetCorrelationKeysWithoutHash" );
+        keysWithoutHash.setMaxResults( maxResults );
+        List<CorrelationKeyInfo> keys = keysWithoutHash.getResultList();
+        for (CorrelationKeyInfo key : keys) {
+            key.updateKeyHash();
+        }
+        getEntityManager().flush();
+        if (keys.isEmpty()) {
+            KEYS_WITHOUT_HASH.put(getEntityManager().getEntityManagerFactory(), Boolean.FALSE);
+        }
+        return keys.size();
+    }
     
 }
@@ -42,6 +42,17 @@ public class MapBasedProcessPersistenceContext extends MapBasedPersistenceContex
         return processInstanceInfo;
     }
 
+    public List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processIds) {
+        List<ProcessInstanceInfo> result = new ArrayList<ProcessInstanceInfo>();
+        for ( Long processId : processIds ) {
+            ProcessInstanceInfo processInstanceInfo = findProcessInstanceInfo( processId );
+            if ( processInstanceInfo != null ) {
+                result.add( processInstanceInfo );
+            }
+        }
+        return result;
+    }
+
     public List<ProcessInstanceInfo> getStoredProcessInstances() {
         return Collections.unmodifiableList( new ArrayList<ProcessInstanceInfo>(processes.values()));
     }
@@ -57,10 +68,28 @@ public class MapBasedProcessPersistenceContext extends MapBasedPersistenceContex
         
     }
 
+    public void flushAndDetach(List<ProcessInstanceInfo> processInstanceInfos) {
+        // the process instance infos are only written to the storage at the end of the transaction
+    }
+
     public List<Long> getProcessInstancesWaitingForEvent(String type) {
         return storage.getProcessInstancesWaitingForEvent( type );
     }
 
+    public List<Long> getProcessInstancesWaitingForEvent(String type, long afterProcessInstanceId, int maxResults) {
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        for ( Long processInstanceId : storage.getProcessInstancesWaitingForEvent( type ) ) {
+            if ( processInstanceId > afterProcessInstanceId ) {
+                processInstanceIds.add( processInstanceId );
+            }
+        }
+        Collections.sort( processInstanceIds );
+        if ( processInstanceIds.size() > maxResults ) {
+            return new ArrayList<Long>( processInstanceIds.subList( 0, maxResults ) );
+        }
+        return processInstanceIds;
+    }
+
     public void clearStoredProcessInstances() {
         processes.clear();
     }
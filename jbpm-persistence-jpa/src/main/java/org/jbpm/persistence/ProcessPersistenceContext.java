@@ -17,9 +17,27 @@ public interface ProcessPersistenceContext
     
     ProcessInstanceInfo findProcessInstanceInfo(Long processId);
     
+    /**
+     * Loads the given process instance infos at once, so that subsequent calls to 
+     * {@link #findProcessInstanceInfo(Long)} for these ids do not need a round trip each. 
+     */
+    List<ProcessInstanceInfo> findProcessInstanceInfos(List<Long> processIds);
+    
     void remove(ProcessInstanceInfo processInstanceInfo);
+    
+    /**
+     * Writes all pending changes and then stops tracking the given process instance infos, 
+     * so that they no longer take up room in the persistence context.
+     */
+    void flushAndDetach(List<ProcessInstanceInfo> processInstanceInfos);
 
     List<Long> getProcessInstancesWaitingForEvent(String type);
     
+    /**
+     * Returns (at most <code>maxResults</code>) ids of process instances waiting for the given event 
+     * with an id greater than <code>afterProcessInstanceId</code>, ordered by id.
+     */
+    List<Long> getProcessInstancesWaitingForEvent(String type, long afterProcessInstanceId, int maxResults);
+    
     Long getProcessInstanceByCorrelationKey(CorrelationKey correlationKey);
 }
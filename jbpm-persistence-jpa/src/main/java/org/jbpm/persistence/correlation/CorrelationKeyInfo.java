@@ -15,7 +15,12 @@
  */
 package org.jbpm.persistence.correlation;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.persistence.CascadeType;
@@ -26,12 +31,15 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import javax.persistence.Version;
 
 import org.kie.internal.process.CorrelationKey;
 import org.kie.internal.process.CorrelationProperty;
 
 @Entity
+@Table(uniqueConstraints=@UniqueConstraint(name="UK_CorrelationKeyInfo_KeyHash", columnNames={"keyHash"}))
 @SequenceGenerator(name="correlationKeyInfoIdSeq", sequenceName="CORRELATION_KEY_INFO_ID_SEQ")
 public class CorrelationKeyInfo implements CorrelationKey {
 
@@ -48,6 +56,13 @@ public class CorrelationKeyInfo implements CorrelationKey {
     
     private String name;
     
+    /**
+     * Canonical hash of the property values, see {@link #hash(CorrelationKey)}. Keys persisted
+     * before this column was introduced have no hash until they are migrated.
+     */
+    @Column(length = 64)
+    private String keyHash;
+    
     @OneToMany(mappedBy="correlationKey", cascade=CascadeType.ALL)
     private List<CorrelationPropertyInfo> properties;
     
@@ -79,6 +94,62 @@ public class CorrelationKeyInfo implements CorrelationKey {
         }
         property.setCorrelationKey(this);
         this.properties.add(property);
+        updateKeyHash();
+    }
+
+    public String getKeyHash() {
+        return keyHash;
+    }
+
+    /**
+     * Recomputes the hash from the current properties, used to migrate keys that were
+     * persisted without one.
+     */
+    public void updateKeyHash() {
+        this.keyHash = hash(this);
+    }
+
+    /**
+     * Computes the canonical hash of the given correlation key: SHA-256 (hex encoded) of its
+     * property values, sorted so the order in which they were added does not matter. Property
+     * names are not part of the hash, same as they are not used when looking up keys.
+     */
+    public static String hash(CorrelationKey correlationKey) {
+        List<String> values = new ArrayList<String>();
+        for (CorrelationProperty<?> property : correlationKey.getProperties()) {
+            Object value = property.getValue();
+            values.add(value == null ? null : value.toString());
+        }
+        Collections.sort(values, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                if (o1 == null) {
+                    return o2 == null ? 0 : -1;
+                }
+                return o2 == null ? 1 : o1.compareTo(o2);
+            }
+        });
+        // length prefixed so that values containing the separator can not collide
+        StringBuilder canonical = new StringBuilder();
+        for (String value : values) {
+            if (value == null) {
+                canonical.append("-1:");
+            } else {
+                canonical.append(value.length()).append(':').append(value);
+            }
+            canonical.append(';');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to compute hash of " + correlationKey, e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Unable to compute hash of " + correlationKey, e);
+        }
     }
 
     @Override
@@ -40,7 +40,10 @@ public class JPAProcessInstanceManager
     //   lazy initialization is more costly than eager initialization
     // Added volatile so that if something happens, we can figure out what
     private volatile transient Map<Long, ProcessInstance> processInstances = new ConcurrentHashMap<Long, ProcessInstance>();
-
+    // optional cache across commands, see ProcessInstanceCache.CACHE_SIZE_PROPERTY
+    private final ProcessInstanceCache processInstanceCache = ProcessInstanceCache.newInstance();
+    // process instance infos used by the current command, only tracked when caching
+    private final Map<Long, ProcessInstanceInfo> processInstanceInfos = new ConcurrentHashMap<Long, ProcessInstanceInfo>();
     
     public void setKnowledgeRuntime(InternalKnowledgeRuntime kruntime) {
         this.kruntime = kruntime;
@@ -62,6 +65,9 @@ public class JPAProcessInstanceManager
             correlationKeyInfo.setProcessInstanceId(processInstanceInfo.getId());
             context.persist(correlationKeyInfo);
         }
+        if (processInstanceCache != null) {
+            processInstanceInfos.put(processInstanceInfo.getId(), processInstanceInfo);
+        }
         internalAddProcessInstance(processInstance);
     }
     
@@ -94,10 +100,24 @@ public class JPAProcessInstanceManager
         ProcessPersistenceContext context = ppcm.getProcessPersistenceContext();
         ProcessInstanceInfo processInstanceInfo = context.findProcessInstanceInfo( id );
         if ( processInstanceInfo == null ) {
+            if (processInstanceCache != null) {
+                processInstanceCache.remove(id);
+            }
             return null;
         }
+        boolean delta = ProcessInstanceInfo.isDeltaPersistenceEnabled();
         if (!readOnly) {
-        	processInstanceInfo.updateLastReadDate();
+        	if (!delta) {
+        	    // makes the entity dirty, so the process instance is marshalled again on flush
+        	    processInstanceInfo.updateLastReadDate();
+        	}
+        	if (processInstanceCache != null) {
+        	    ProcessInstance cached = processInstanceCache.take(id, processInstanceInfo.getVersion());
+        	    if (cached != null) {
+        	        processInstanceInfo.setProcessInstance(cached);
+        	    }
+        	    processInstanceInfos.put(id, processInstanceInfo);
+        	}
         }
         processInstance = (org.jbpm.process.instance.ProcessInstance)
         	processInstanceInfo.getProcessInstance(kruntime, this.kruntime.getEnvironment(), readOnly);
@@ -116,6 +136,13 @@ public class JPAProcessInstanceManager
             processInstance.setKnowledgeRuntime( kruntime );
             ((ProcessInstanceImpl) processInstance).reconnect();
         }
+        if (!readOnly && delta) {
+            // the row is only written once the process instance changes
+            ((ProcessInstanceImpl) processInstance).setModificationListener(processInstanceInfo);
+            if (((ProcessInstanceImpl) processInstance).isModified()) {
+                processInstanceInfo.processInstanceModified((ProcessInstanceImpl) processInstance);
+            }
+        }
         return processInstance;
     }
 
@@ -130,6 +157,10 @@ public class JPAProcessInstanceManager
         if ( processInstanceInfo != null ) {
             context.remove( processInstanceInfo );
         }
+        if (processInstanceCache != null) {
+            processInstanceInfos.remove(processInstance.getId());
+            processInstanceCache.remove(processInstance.getId());
+        }
         internalRemoveProcessInstance(processInstance);
     }
 
@@ -137,10 +168,62 @@ public class JPAProcessInstanceManager
         processInstances.remove( processInstance.getId() );
     }
     
+    /**
+     * @return whether the given process instance is already in use by the current command
+     */
+    public boolean isLoaded(long id) {
+        return processInstances.containsKey(id);
+    }
+
+    /**
+     * Disconnects the given process instance and forgets about it for the rest of the command, 
+     * so it is loaded again when it is needed. Its state must have been written before.
+     */
+    public void evictProcessInstance(long id) {
+        ProcessInstance processInstance = processInstances.remove(id);
+        if (processInstance != null) {
+            ((ProcessInstanceImpl) processInstance).disconnect();
+            ((ProcessInstanceImpl) processInstance).setModificationListener(null);
+        }
+        processInstanceInfos.remove(id);
+        if (processInstanceCache != null) {
+            processInstanceCache.remove(id);
+        }
+    }
+    
     public void clearProcessInstances() {
         for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
             ((ProcessInstanceImpl) processInstance).disconnect();
+            ((ProcessInstanceImpl) processInstance).setModificationListener(null);
+            if (processInstanceCache != null) {
+                cacheProcessInstance(processInstance);
+            }
+        }
+        processInstanceInfos.clear();
+    }
+
+    /**
+     * Only process instances whose state was stored (or that were not modified) are cached, 
+     * together with the version they were stored with. When the transaction was rolled back the
+     * database version differs (or {@link #clearProcessInstancesState()} already dropped them),
+     * so a stale instance is never handed out.
+     */
+    private void cacheProcessInstance(ProcessInstance processInstance) {
+        ProcessInstanceInfo processInstanceInfo = processInstanceInfos.get(processInstance.getId());
+        if (processInstanceInfo == null 
+                || processInstance.getState() != ProcessInstance.STATE_ACTIVE
+                || ((ProcessInstanceImpl) processInstance).isModified()) {
+            processInstanceCache.remove(processInstance.getId());
+            return;
         }
+        processInstanceCache.put(processInstance, processInstanceInfo.getVersion());
+    }
+
+    /**
+     * @return the cache used across commands or <code>null</code> when caching is disabled
+     */
+    public ProcessInstanceCache getProcessInstanceCache() {
+        return processInstanceCache;
     }
 
     public void clearProcessInstancesState() {
@@ -149,6 +232,11 @@ public class JPAProcessInstanceManager
         
         for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
             WorkflowProcessInstance pi = ((WorkflowProcessInstance) processInstance);
+            // state was rolled back, so the in memory instance must not be reused
+            processInstanceInfos.remove(processInstance.getId());
+            if (processInstanceCache != null) {
+                processInstanceCache.remove(processInstance.getId());
+            }
 
             
             for (org.kie.api.runtime.process.NodeInstance nodeInstance : pi.getNodeInstances()) {
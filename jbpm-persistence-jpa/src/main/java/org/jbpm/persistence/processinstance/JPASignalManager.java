@@ -1,39 +1,125 @@
 package org.jbpm.persistence.processinstance;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.drools.core.common.InternalKnowledgeRuntime;
 import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.process.EventListener;
+import org.kie.api.runtime.process.ProcessInstance;
 import org.jbpm.persistence.ProcessPersistenceContext;
 import org.jbpm.persistence.ProcessPersistenceContextManager;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.jbpm.process.instance.ProcessInstanceManager;
 import org.jbpm.process.instance.event.DefaultSignalManager;
 
+/**
+ * Makes sure all persisted process instances waiting for an event receive it, not only the ones
+ * that are already loaded (and thus registered as listeners).
+ * </p>
+ * The waiting process instances are read in batches (see {@link #BATCH_SIZE_PROPERTY}): every batch
+ * of ids is paged by id and the matching process instance infos are loaded with a single query.
+ * The process instances of a batch are signalled, written and then evicted before the next batch is
+ * read, so the persistence context never holds more than one batch of them. Process instances that
+ * were already loaded before the event are signalled as listeners and stay loaded.
+ */
 public class JPASignalManager extends DefaultSignalManager {
 
+    public static final String BATCH_SIZE_PROPERTY = "jbpm.signal.batch.size";
+
+    private final int batchSize = Integer.parseInt( System.getProperty( BATCH_SIZE_PROPERTY, "100" ) );
+
     public JPASignalManager(InternalKnowledgeRuntime kruntime) {
         super(kruntime);
     }
-    
-    public void signalEvent(String type,
-                            Object event) {
-        for ( long id : getProcessInstancesForEvent( type ) ) {
+
+    public void internalSignalEvent(String type,
+                                    Object event) {
+        ProcessInstanceManager processInstanceManager = ((InternalProcessRuntime) getKnowledgeRuntime().getProcessRuntime()).getProcessInstanceManager();
+        if ( !(processInstanceManager instanceof JPAProcessInstanceManager) ) {
+            loadProcessInstancesWaitingForEvent( type );
+            super.internalSignalEvent( type,
+                                       event );
+            return;
+        }
+        Set<Long> signalled = signalPersistedProcessInstances( (JPAProcessInstanceManager) processInstanceManager,
+                                                               type,
+                                                               event );
+        List<EventListener> eventListeners = getEventListeners( type );
+        if ( eventListeners != null ) {
+            for ( EventListener eventListener : eventListeners ) {
+                // a process instance signalled above may have been loaded again, e.g. as parent of another one
+                if ( eventListener instanceof ProcessInstance
+                        && signalled.contains( ((ProcessInstance) eventListener).getId() ) ) {
+                    continue;
+                }
+                eventListener.signalEvent( type,
+                                           event );
+            }
+        }
+    }
+
+    private Set<Long> signalPersistedProcessInstances(JPAProcessInstanceManager processInstanceManager,
+                                                      String type,
+                                                      Object event) {
+        ProcessPersistenceContext context = getProcessPersistenceContext();
+        Set<Long> signalled = new HashSet<Long>();
+        long lastProcessInstanceId = -1;
+        List<Long> processInstanceIds = context.getProcessInstancesWaitingForEvent( type, lastProcessInstanceId, batchSize );
+        while ( !processInstanceIds.isEmpty() ) {
+            // loaded process instances are left to the listeners, they might be in use by the caller
+            List<Long> notLoaded = new ArrayList<Long>();
+            for ( long id : processInstanceIds ) {
+                if ( !processInstanceManager.isLoaded( id ) ) {
+                    notLoaded.add( id );
+                }
+            }
+            context.findProcessInstanceInfos( notLoaded );
+            List<Long> batch = new ArrayList<Long>();
+            for ( long id : notLoaded ) {
+                if ( processInstanceManager.isLoaded( id ) ) {
+                    // loaded while signalling another process instance of this batch
+                    continue;
+                }
+                ProcessInstance processInstance = getKnowledgeRuntime().getProcessInstance( id );
+                if ( processInstance != null ) {
+                    batch.add( id );
+                    signalled.add( id );
+                    processInstance.signalEvent( type,
+                                                 event );
+                }
+            }
+            // the process instances have to be written while they are still connected
+            List<ProcessInstanceInfo> processInstanceInfos = new ArrayList<ProcessInstanceInfo>();
+            for ( long id : batch ) {
+                ProcessInstanceInfo processInstanceInfo = context.findProcessInstanceInfo( id );
+                if ( processInstanceInfo != null ) {
+                    processInstanceInfos.add( processInstanceInfo );
+                }
+            }
+            context.flushAndDetach( processInstanceInfos );
+            for ( long id : batch ) {
+                processInstanceManager.evictProcessInstance( id );
+            }
+            if ( processInstanceIds.size() < batchSize ) {
+                break;
+            }
+            lastProcessInstanceId = processInstanceIds.get( processInstanceIds.size() - 1 );
+            processInstanceIds = context.getProcessInstancesWaitingForEvent( type, lastProcessInstanceId, batchSize );
+        }
+        return signalled;
+    }
+
+    private void loadProcessInstancesWaitingForEvent(String type) {
+        for ( long id : getProcessPersistenceContext().getProcessInstancesWaitingForEvent( type ) ) {
             getKnowledgeRuntime().getProcessInstance( id );
         }
-        super.signalEvent( type,
-                           event );
     }
 
-    @SuppressWarnings("unchecked")
-    private List<Long> getProcessInstancesForEvent(String type) {
-//        EntityManager em = (EntityManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.CMD_SCOPED_ENTITY_MANAGER );
-//        Query processInstancesForEvent = em.createNamedQuery( "ProcessInstancesWaitingForEvent" );
-//        processInstancesForEvent.setFlushMode(FlushModeType.COMMIT);
-//        processInstancesForEvent.setParameter( "type",
-//                                               type );
-//        List<Long> list = (List<Long>) processInstancesForEvent.getResultList();
-//        return list;
-        ProcessPersistenceContext context = ((ProcessPersistenceContextManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.PERSISTENCE_CONTEXT_MANAGER )).getProcessPersistenceContext();
-        return context.getProcessInstancesWaitingForEvent(type);
+    private ProcessPersistenceContext getProcessPersistenceContext() {
+        return ((ProcessPersistenceContextManager) getKnowledgeRuntime().getEnvironment().get( EnvironmentName.PERSISTENCE_CONTEXT_MANAGER )).getProcessPersistenceContext();
     }
 
 }
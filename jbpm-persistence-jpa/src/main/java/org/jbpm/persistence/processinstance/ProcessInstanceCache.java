@@ -0,0 +1,135 @@
+package org.jbpm.persistence.processinstance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kie.api.runtime.process.ProcessInstance;
+
+/**
+ * Bounded, least-recently-used cache of unmarshalled process instances, used by the
+ * {@link JPAProcessInstanceManager} to avoid unmarshalling the same process instance
+ * again for every command.
+ * </p>
+ * Every entry remembers the OPTLOCK version of the {@link ProcessInstanceInfo} it was
+ * stored with: an entry is only returned when the version read from the database is
+ * still the same, otherwise it is dropped. Entries are handed out only once (a hit removes
+ * the entry) so that a process instance is never used by two commands at the same time.
+ */
+public class ProcessInstanceCache {
+
+    /**
+     * Maximum number of process instances kept in the cache, 0 (the default) disables it.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "jbpm.processinstance.cache.size";
+
+    private final int maxSize;
+    private final Map<Long, CacheEntry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ProcessInstanceCache(int maxSize) {
+        if ( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "Cache size must be greater than 0 but was " + maxSize );
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Long, CacheEntry>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
+                if ( size() > ProcessInstanceCache.this.maxSize ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return a new cache sized according to the {@link #CACHE_SIZE_PROPERTY} system property,
+     * or <code>null</code> when caching is disabled
+     */
+    public static ProcessInstanceCache newInstance() {
+        int size = Integer.parseInt( System.getProperty( CACHE_SIZE_PROPERTY, "0" ) );
+        if ( size <= 0 ) {
+            return null;
+        }
+        return new ProcessInstanceCache( size );
+    }
+
+    /**
+     * Takes the process instance out of the cache.
+     * @param processInstanceId id of the process instance
+     * @param version the current OPTLOCK version of the process instance
+     * @return the cached process instance or <code>null</code> if it was not cached or its version
+     * does not match
+     */
+    public synchronized ProcessInstance take(long processInstanceId, int version) {
+        CacheEntry entry = entries.remove( processInstanceId );
+        if ( entry == null ) {
+            misses++;
+            return null;
+        }
+        if ( entry.version != version ) {
+            invalidations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.processInstance;
+    }
+
+    public synchronized void put(ProcessInstance processInstance, int version) {
+        entries.put( processInstance.getId(), new CacheEntry( processInstance, version ) );
+    }
+
+    public synchronized void remove(long processInstanceId) {
+        entries.remove( processInstanceId );
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public String toString() {
+        return "ProcessInstanceCache [size=" + size() + "/" + maxSize + ", hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + "]";
+    }
+
+    private static class CacheEntry {
+        private final ProcessInstance processInstance;
+        private final int version;
+
+        private CacheEntry(ProcessInstance processInstance, int version) {
+            this.processInstance = processInstance;
+            this.version = version;
+        }
+    }
+}
@@ -45,7 +45,22 @@ import org.kie.api.runtime.process.ProcessInstance;
 
 @Entity
 @SequenceGenerator(name="processInstanceInfoIdSeq", sequenceName="PROCESS_INSTANCE_INFO_ID_SEQ")
-public class ProcessInstanceInfo{
+public class ProcessInstanceInfo implements ProcessInstanceImpl.ModificationListener {
+
+    /**
+     * When set to <code>true</code>, loading a process instance no longer updates its last read date,
+     * so a process instance that is only read leaves its row untouched and is not re-marshalled. The
+     * row is written again once the process instance reports a change (see {@link ProcessInstanceImpl#markModified()}),
+     * which includes handing out a variable value that could be changed in place. The last read date then
+     * records the last load that changed the process instance.
+     * </p>
+     * The process instance is still stored as a single byte array, so any change rewrites all of it.
+     */
+    public static final String DELTA_PERSISTENCE_PROPERTY = "jbpm.enable.delta.persistence";
+
+    public static boolean isDeltaPersistenceEnabled() {
+        return Boolean.parseBoolean( System.getProperty( DELTA_PERSISTENCE_PROPERTY ) );
+    }
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO, generator="processInstanceInfoIdSeq")
@@ -138,6 +153,13 @@ public class ProcessInstanceInfo{
         lastReadDate = new Date();
     }
 
+    /**
+     * Makes this entity dirty, so {@link #update()} stores the modified process instance on flush.
+     */
+    public void processInstanceModified(ProcessInstanceImpl processInstance) {
+        updateLastReadDate();
+    }
+
     public int getState() {
         return state;
     }
@@ -164,6 +186,8 @@ public class ProcessInstanceInfo{
                 ProcessInstanceMarshaller marshaller = getMarshallerFromContext( context );
             	context.wm = ((StatefulKnowledgeSessionImpl) kruntime).getInternalWorkingMemory();
                 processInstance = marshaller.readProcessInstance(context);
+                // rebuilding the instance is not a modification
+                ((ProcessInstanceImpl) processInstance).clearModified();
                 if (readOnly) {
                     ((WorkflowProcessInstanceImpl) processInstance).disconnect();
                 }
@@ -207,6 +231,13 @@ public class ProcessInstanceInfo{
      */
     @PreUpdate
     public void update() {
+        if ( processInstanceByteArray != null 
+                && isDeltaPersistenceEnabled()
+                && !((ProcessInstanceImpl) processInstance).isModified() ) {
+            // nothing changed since the instance was loaded or last stored, 
+            // so the stored byte array is still up to date
+            return;
+        }
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         boolean variablesChanged = false;
         try {
@@ -234,6 +265,7 @@ public class ProcessInstanceInfo{
             throw new IllegalArgumentException( "IOException while storing process instance " + processInstance.getId() + ": " + e.getMessage() );
         }
         byte[] newByteArray = baos.toByteArray();
+        ((ProcessInstanceImpl) processInstance).clearModified();
         if ( variablesChanged || !Arrays.equals( newByteArray,
                                                  processInstanceByteArray ) ) {
             this.state = processInstance.getState();
@@ -327,6 +359,14 @@ public class ProcessInstanceInfo{
         processInstance = null;
     }
     
+    /**
+     * Reuses an already unmarshalled process instance (of the same version) 
+     * instead of reading it from the byte array again.
+     */
+    void setProcessInstance(ProcessInstance processInstance) {
+        this.processInstance = processInstance;
+    }
+    
     public Environment getEnv() { 
         return env;
     }
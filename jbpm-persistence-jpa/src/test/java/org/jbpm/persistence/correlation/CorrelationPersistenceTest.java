@@ -4,7 +4,9 @@ import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NA
 import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
 import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -17,6 +19,7 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
 import javax.transaction.UserTransaction;
 
+import org.jbpm.persistence.JpaProcessPersistenceContext;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -109,4 +112,70 @@ public class CorrelationPersistenceTest {
         assertNotNull(processInstances);
         assertEquals(1, processInstances.size());
     }
+    
+    @Test
+    public void testGetProcessInstanceByCorrelationKeyHash() throws Exception {
+        EntityManagerFactory emf = (EntityManagerFactory) context.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        EntityManager em = emf.createEntityManager();
+        JpaProcessPersistenceContext persistenceContext = new JpaProcessPersistenceContext(em);
+        CorrelationKeyFactory factory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
+        
+        // order of the properties does not matter
+        assertNotNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey(Arrays.asList(new String[] {"123test", "test123"}))));
+        assertNotNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey("test123")));
+        assertNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey("123test")));
+        em.close();
+    }
+    
+    @Test
+    public void testGetProcessInstanceByCorrelationKeyWithoutHash() throws Exception {
+        EntityManagerFactory emf = (EntityManagerFactory) context.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        CorrelationKeyFactory factory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
+        UserTransaction ut = InitialContext.doLookup("java:comp/UserTransaction");
+        ut.begin();
+        EntityManager em = emf.createEntityManager();
+        // as if the keys were persisted before the hash column existed
+        em.createQuery("update CorrelationKeyInfo key set key.keyHash = null").executeUpdate();
+        ut.commit();
+        em.close();
+
+        // found by the property values while there are keys without hash
+        em = emf.createEntityManager();
+        JpaProcessPersistenceContext persistenceContext = new JpaProcessPersistenceContext(em);
+        assertNotNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey("test123")));
+        em.close();
+
+        ut.begin();
+        em = emf.createEntityManager();
+        persistenceContext = new JpaProcessPersistenceContext(em);
+        assertEquals(2, persistenceContext.migrateCorrelationKeys(10));
+        ut.commit();
+        em.close();
+
+        ut.begin();
+        em = emf.createEntityManager();
+        persistenceContext = new JpaProcessPersistenceContext(em);
+        assertEquals(0, persistenceContext.migrateCorrelationKeys(10));
+        ut.commit();
+        em.close();
+
+        // found by the hash once migrated
+        em = emf.createEntityManager();
+        persistenceContext = new JpaProcessPersistenceContext(em);
+        assertNotNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey(Arrays.asList(new String[] {"123test", "test123"}))));
+        assertNull(persistenceContext.getProcessInstanceByCorrelationKey(factory.newCorrelationKey("123test")));
+        em.close();
+    }
+    
+    @Test
+    public void testCorrelationKeyHash() {
+        CorrelationKeyFactory factory = KieInternalServices.Factory.get().newCorrelationKeyFactory();
+        
+        assertEquals(CorrelationKeyInfo.hash(factory.newCorrelationKey(Arrays.asList(new String[] {"a", "b"}))),
+                CorrelationKeyInfo.hash(factory.newCorrelationKey(Arrays.asList(new String[] {"b", "a"}))));
+        assertFalse(CorrelationKeyInfo.hash(factory.newCorrelationKey(Arrays.asList(new String[] {"a;", "b"}))).equals(
+                CorrelationKeyInfo.hash(factory.newCorrelationKey(Arrays.asList(new String[] {"a", ";b"})))));
+        assertFalse(CorrelationKeyInfo.hash(factory.newCorrelationKey("ab")).equals(
+                CorrelationKeyInfo.hash(factory.newCorrelationKey(Arrays.asList(new String[] {"a", "b"})))));
+    }
 }
@@ -0,0 +1,253 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.kie.api.runtime.EnvironmentName.ENTITY_MANAGER_FACTORY;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.drools.core.command.impl.CommandBasedStatefulKnowledgeSession;
+import org.drools.core.command.impl.GenericCommand;
+import org.drools.core.command.impl.KnowledgeCommandContext;
+import org.drools.core.marshalling.impl.ClassObjectMarshallingStrategyAcceptor;
+import org.drools.core.marshalling.impl.SerializablePlaceholderResolverStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+import org.kie.api.runtime.process.WorkflowProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.command.Context;
+import org.kie.internal.io.ResourceFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the default (full re-marshal) and the delta persistence mode of
+ * {@link ProcessInstanceInfo}: both must store the same state, the delta mode
+ * must neither marshal nor write process instances that were only read. The bytes
+ * marshalled for the variables are counted by a strategy registered in the environment,
+ * the row writes by the version of the process instance info.
+ */
+public class DeltaPersistenceTest {
+
+    private static Logger logger = LoggerFactory.getLogger(DeltaPersistenceTest.class);
+
+    private static final String PROCESS_ID = "org.jbpm.processinstance.helloworld";
+    private static final int LOAD_CYCLES = 200;
+
+    private HashMap<String, Object> context;
+    private Environment env;
+    private KnowledgeBase kbase;
+    private CountingMarshallingStrategy strategy;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+        strategy = new CountingMarshallingStrategy();
+        env.set(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES, new ObjectMarshallingStrategy[] { strategy });
+
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(ResourceFactory.newClassPathResource("processinstance/HelloWorld.rf"), ResourceType.DRF);
+        assertFalse(kbuilder.getErrors().toString(), kbuilder.hasErrors());
+        kbase = kbuilder.newKnowledgeBase();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(ProcessInstanceInfo.DELTA_PERSISTENCE_PROPERTY);
+        cleanUp(context);
+    }
+
+    @Test
+    public void fullPersistence() throws Exception {
+        System.clearProperty(ProcessInstanceInfo.DELTA_PERSISTENCE_PROPERTY);
+        long readOnlyWrites = runLoadAndUpdateCycles("full");
+        // every loaded instance is marshalled and written again, to find out that nothing changed
+        assertTrue(strategy.getReadOnlyBytes() > 0);
+        assertTrue(readOnlyWrites > 0);
+    }
+
+    @Test
+    public void deltaPersistence() throws Exception {
+        System.setProperty(ProcessInstanceInfo.DELTA_PERSISTENCE_PROPERTY, "true");
+        long readOnlyWrites = runLoadAndUpdateCycles("delta");
+        assertEquals(0, strategy.getReadOnlyBytes());
+        assertEquals(0, readOnlyWrites);
+    }
+
+    @Test
+    public void deltaPersistenceOfVariableChangedInPlace() throws Exception {
+        System.setProperty(ProcessInstanceInfo.DELTA_PERSISTENCE_PROPERTY, "true");
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, env);
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("list", new ArrayList<String>());
+        final long processInstanceId = ksession.createProcessInstance(PROCESS_ID, params).getId();
+        ((CommandBasedStatefulKnowledgeSession) ksession).getCommandService().execute(new GenericCommand<Void>() {
+            @SuppressWarnings("unchecked")
+            public Void execute(Context context) {
+                StatefulKnowledgeSession ksession = (StatefulKnowledgeSession) ((KnowledgeCommandContext) context).getKieSession();
+                ((List<String>) ((WorkflowProcessInstance) ksession.getProcessInstance(processInstanceId)).getVariable("list")).add("changed");
+                return null;
+            }
+        });
+        ksession.dispose();
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(ksession.getId(), kbase, null, env);
+        WorkflowProcessInstance processInstance = (WorkflowProcessInstance) ksession.getProcessInstance(processInstanceId);
+        assertEquals(Arrays.asList("changed"), processInstance.getVariable("list"));
+        ksession.dispose();
+    }
+
+    /**
+     * @return the number of times the process instance info was written while the process instance was only read
+     */
+    private long runLoadAndUpdateCycles(String mode) {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, env);
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("var", createLargeValue(256 * 1024));
+        final long processInstanceId = ksession.createProcessInstance(PROCESS_ID, params).getId();
+        ProcessInstanceInfo processInstanceInfo = findProcessInstanceInfo(processInstanceId);
+        byte[] stored = processInstanceInfo.getProcessInstanceByteArray();
+        Date modified = processInstanceInfo.getLastModificationDate();
+        long version = processInstanceInfo.getVersion();
+
+        // read only cycles: the stored state must not change
+        strategy.reset();
+        for (int i = 0; i < LOAD_CYCLES; i++) {
+            ksession.getProcessInstance(processInstanceId);
+        }
+        strategy.readOnlyCyclesDone();
+        processInstanceInfo = findProcessInstanceInfo(processInstanceId);
+        long readOnlyWrites = processInstanceInfo.getVersion() - version;
+        assertArrayEquals(stored, processInstanceInfo.getProcessInstanceByteArray());
+        assertEquals(modified, processInstanceInfo.getLastModificationDate());
+
+        // a real modification must still be stored
+        strategy.reset();
+        ((CommandBasedStatefulKnowledgeSession) ksession).getCommandService().execute(new GenericCommand<Void>() {
+            public Void execute(Context context) {
+                StatefulKnowledgeSession ksession = (StatefulKnowledgeSession) ((KnowledgeCommandContext) context).getKieSession();
+                ((WorkflowProcessInstance) ksession.getProcessInstance(processInstanceId)).setVariable("name", "delta");
+                return null;
+            }
+        });
+        long updateBytes = strategy.getMarshalledBytes();
+        assertTrue(updateBytes > 0);
+        processInstanceInfo = findProcessInstanceInfo(processInstanceId);
+        assertNotNull(processInstanceInfo.getLastModificationDate());
+        assertFalse(processInstanceInfo.getLastModificationDate().equals(modified));
+        ksession.dispose();
+
+        logger.info("[{}] {} read only cycles of a {} byte process instance wrote the row {} times and marshalled {} bytes, one update marshalled {} bytes",
+                new Object[] { mode, LOAD_CYCLES, stored.length, readOnlyWrites, strategy.getReadOnlyBytes(), updateBytes });
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(ksession.getId(), kbase, null, env);
+        WorkflowProcessInstance processInstance = (WorkflowProcessInstance) ksession.getProcessInstance(processInstanceId);
+        assertEquals("delta", processInstance.getVariable("name"));
+        assertEquals(((String) params.get("var")).length(), ((String) processInstance.getVariable("var")).length());
+        ksession.dispose();
+        return readOnlyWrites;
+    }
+
+    private ProcessInstanceInfo findProcessInstanceInfo(long processInstanceId) {
+        EntityManagerFactory emf = (EntityManagerFactory) context.get(ENTITY_MANAGER_FACTORY);
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.find(ProcessInstanceInfo.class, processInstanceId);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static String createLargeValue(int size) {
+        StringBuilder value = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            value.append((char) ('a' + (i % 26)));
+        }
+        return value.toString();
+    }
+
+    /**
+     * Serializes variables like the default strategy and counts the bytes it produces.
+     */
+    private static class CountingMarshallingStrategy implements ObjectMarshallingStrategy {
+
+        private final ObjectMarshallingStrategy delegate =
+                new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT);
+        private final AtomicLong marshalledBytes = new AtomicLong();
+        private long readOnlyBytes;
+
+        void reset() {
+            marshalledBytes.set(0);
+        }
+
+        long getMarshalledBytes() {
+            return marshalledBytes.get();
+        }
+
+        void readOnlyCyclesDone() {
+            readOnlyBytes = marshalledBytes.get();
+        }
+
+        long getReadOnlyBytes() {
+            return readOnlyBytes;
+        }
+
+        public boolean accept(Object object) {
+            return delegate.accept(object);
+        }
+
+        public void write(ObjectOutputStream os, Object object) throws IOException {
+            delegate.write(os, object);
+        }
+
+        public Object read(ObjectInputStream os) throws IOException, ClassNotFoundException {
+            return delegate.read(os);
+        }
+
+        public byte[] marshal(ObjectMarshallingStrategy.Context context, ObjectOutputStream os, Object object) throws IOException {
+            byte[] data = delegate.marshal(context, os, object);
+            marshalledBytes.addAndGet(data.length);
+            return data;
+        }
+
+        public Object unmarshal(ObjectMarshallingStrategy.Context context, ObjectInputStream is, byte[] object, ClassLoader classloader)
+                throws IOException, ClassNotFoundException {
+            return delegate.unmarshal(context, is, object, classloader);
+        }
+
+        public ObjectMarshallingStrategy.Context createContext() {
+            return delegate.createContext();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.jbpm.persistence.util.PersistenceUtil.JBPM_PERSISTENCE_UNIT_NAME;
+import static org.jbpm.persistence.util.PersistenceUtil.cleanUp;
+import static org.jbpm.persistence.util.PersistenceUtil.createEnvironment;
+import static org.jbpm.persistence.util.PersistenceUtil.setupWithPoolingDataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.drools.core.command.impl.CommandBasedStatefulKnowledgeSession;
+import org.drools.core.command.impl.GenericCommand;
+import org.drools.core.command.impl.KnowledgeCommandContext;
+import org.drools.core.common.InternalKnowledgeRuntime;
+import org.jbpm.process.instance.InternalProcessRuntime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.api.runtime.process.WorkItem;
+import org.kie.api.runtime.process.WorkItemHandler;
+import org.kie.api.runtime.process.WorkItemManager;
+import org.kie.api.runtime.process.WorkflowProcessInstance;
+import org.kie.internal.KnowledgeBase;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.command.Context;
+import org.kie.internal.io.ResourceFactory;
+import org.kie.internal.persistence.jpa.JPAKnowledgeService;
+import org.kie.internal.runtime.StatefulKnowledgeSession;
+
+/**
+ * Signals more persisted process instances than fit in one batch of {@link JPASignalManager},
+ * so the waiting instances have to be paged by id.
+ */
+public class JPASignalManagerTest {
+
+    private static final String PROCESS_ID = "org.jbpm.processinstance.waitforsignal";
+    private static final String WAITING_PROCESS_ID = "org.jbpm.processinstance.signalthenwait";
+    private static final int BATCH_SIZE = 3;
+
+    private HashMap<String, Object> context;
+    private Environment env;
+    private KnowledgeBase kbase;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(JPASignalManager.BATCH_SIZE_PROPERTY, String.valueOf(BATCH_SIZE));
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(ResourceFactory.newClassPathResource("processinstance/WaitForSignal.rf"), ResourceType.DRF);
+        kbuilder.add(ResourceFactory.newClassPathResource("processinstance/SignalThenWait.rf"), ResourceType.DRF);
+        assertFalse(kbuilder.getErrors().toString(), kbuilder.hasErrors());
+        kbase = kbuilder.newKnowledgeBase();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(JPASignalManager.BATCH_SIZE_PROPERTY);
+        cleanUp(context);
+    }
+
+    @Test
+    public void testSignalAcrossPages() {
+        // two full pages and a partial one
+        assertAllSignalled(2 * BATCH_SIZE + 1);
+    }
+
+    @Test
+    public void testSignalFullPages() {
+        // the last page is full, so an empty one is read after it
+        assertAllSignalled(2 * BATCH_SIZE);
+    }
+
+    @Test
+    public void testSignalledPagesAreNotKept() {
+        int count = 2 * BATCH_SIZE + 1;
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, env);
+        int sessionId = ksession.getId();
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            processInstanceIds.add(ksession.startProcess(WAITING_PROCESS_ID).getId());
+        }
+        ksession.dispose();
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(sessionId, kbase, null, env);
+        final List<WorkItem> workItems = new ArrayList<WorkItem>();
+        ksession.getWorkItemManager().registerWorkItemHandler("Wait", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+        int loaded = ((CommandBasedStatefulKnowledgeSession) ksession).getCommandService().execute(new GenericCommand<Integer>() {
+            public Integer execute(Context context) {
+                StatefulKnowledgeSession ksession = (StatefulKnowledgeSession) ((KnowledgeCommandContext) context).getKieSession();
+                ksession.signalEvent("go", null);
+                return ((InternalProcessRuntime) ((InternalKnowledgeRuntime) ksession).getProcessRuntime())
+                    .getProcessInstanceManager().getProcessInstances().size();
+            }
+        });
+        // every page was evicted once it was signalled and written
+        assertEquals(0, loaded);
+        assertEquals(count, workItems.size());
+        ksession.dispose();
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(sessionId, kbase, null, env);
+        for (long processInstanceId : processInstanceIds) {
+            ProcessInstance processInstance = ksession.getProcessInstance(processInstanceId);
+            assertNotNull(processInstance);
+            assertEquals("process instance " + processInstanceId + " was not signalled", 
+                         "Wait", ((WorkflowProcessInstance) processInstance).getNodeInstances().iterator().next().getNodeName());
+        }
+        ksession.dispose();
+    }
+
+    private void assertAllSignalled(int count) {
+        StatefulKnowledgeSession ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, env);
+        int sessionId = ksession.getId();
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            ProcessInstance processInstance = ksession.startProcess(PROCESS_ID);
+            assertEquals(ProcessInstance.STATE_ACTIVE, processInstance.getState());
+            processInstanceIds.add(processInstance.getId());
+        }
+        ksession.dispose();
+
+        // a new session, so that none of the instances is registered as listener yet
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(sessionId, kbase, null, env);
+        for (long processInstanceId : processInstanceIds) {
+            assertNotNull(ksession.getProcessInstance(processInstanceId));
+        }
+        ksession.dispose();
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(sessionId, kbase, null, env);
+        ksession.signalEvent("go", null);
+        ksession.dispose();
+
+        ksession = JPAKnowledgeService.loadStatefulKnowledgeSession(sessionId, kbase, null, env);
+        for (long processInstanceId : processInstanceIds) {
+            assertNull("process instance " + processInstanceId + " was not signalled", ksession.getProcessInstance(processInstanceId));
+        }
+        ksession.dispose();
+    }
+}
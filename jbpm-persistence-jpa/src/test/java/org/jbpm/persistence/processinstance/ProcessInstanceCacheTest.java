@@ -0,0 +1,53 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.junit.Test;
+
+public class ProcessInstanceCacheTest {
+
+    @Test
+    public void hitOnlyWithMatchingVersion() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(10);
+        RuleFlowProcessInstance processInstance = createProcessInstance(1);
+
+        cache.put(processInstance, 3);
+        assertNull(cache.take(1, 4));
+        assertEquals(1, cache.getInvalidations());
+        // invalidated entries are gone
+        assertNull(cache.take(1, 3));
+
+        cache.put(processInstance, 3);
+        assertSame(processInstance, cache.take(1, 3));
+        // an entry is only handed out once
+        assertNull(cache.take(1, 3));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        ProcessInstanceCache cache = new ProcessInstanceCache(2);
+        RuleFlowProcessInstance first = createProcessInstance(1);
+        RuleFlowProcessInstance second = createProcessInstance(2);
+
+        cache.put(first, 0);
+        cache.put(second, 0);
+        cache.put(createProcessInstance(3), 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.take(1, 0));
+        assertSame(second, cache.take(2, 0));
+    }
+
+    private RuleFlowProcessInstance createProcessInstance(long id) {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        processInstance.setId(id);
+        return processInstance;
+    }
+}
@@ -19,11 +19,18 @@ public abstract class AbstractRuntimeManager implements RuntimeManager {
 
     protected RuntimeEnvironment environment;
     
+    // looking up the transaction manager is expensive, it is only used to register synchronizations
+    private volatile JtaTransactionManager transactionManager;
+    
     public AbstractRuntimeManager(RuntimeEnvironment environment) {
         this.environment = environment;
     }
     
-    protected void registerItems(Runtime runtime) {
+    /**
+     * Registers the work item handlers and event listeners of the environment on the runtime's session.
+     * @return the registered work item handlers
+     */
+    protected Map<String, WorkItemHandler> registerItems(Runtime runtime) {
         RegisterableItemsFactory factory = environment.getRegisterableItemsFactory();
         // process handlers
         Map<String, WorkItemHandler> handlers = factory.getWorkItemHandlers(runtime);
@@ -46,12 +53,17 @@ public abstract class AbstractRuntimeManager implements RuntimeManager {
         for (WorkingMemoryEventListener listener : wmListeners) {
             runtime.getKieSession().addEventListener(listener);
         }
+        return handlers;
     }
     
     protected void registerDisposeCallback(Runtime runtime) {
         // register it if there is an active transaction as we assume then to be running in a managed environment e.g CMT
         // TODO is there better way to register transaction synchronization?
-        JtaTransactionManager tm = new JtaTransactionManager(null, null, null);
+        JtaTransactionManager tm = transactionManager;
+        if (tm == null) {
+            tm = new JtaTransactionManager(null, null, null);
+            transactionManager = tm;
+        }
         if (tm.getStatus() != JtaTransactionManager.STATUS_NO_TRANSACTION
                 && tm.getStatus() != JtaTransactionManager.STATUS_ROLLEDBACK
                 && tm.getStatus() != JtaTransactionManager.STATUS_COMMITTED) {
@@ -26,6 +26,8 @@ public class PerProcessInstanceRuntimeManager extends AbstractRuntimeManager {
     
     private Mapper mapper;
     
+    private RuntimePool pool;
+    
     public PerProcessInstanceRuntimeManager(RuntimeEnvironment environment, SessionFactory factory, TaskServiceFactory taskServiceFactory) {
         super(environment);
         this.factory = factory;
@@ -33,34 +35,64 @@ public class PerProcessInstanceRuntimeManager extends AbstractRuntimeManager {
         this.mapper = environment.getMapper();
     }
     
+    /**
+     * Creates and warms the runtime pool when enabled, see {@link RuntimePool}. Sessions for new 
+     * process instances are then taken from the pool and stay bound to the process instance 
+     * they start, they are never given back to it.
+     */
+    public void init() {
+        this.pool = RuntimePool.newConfiguredPool(new RuntimePool.RuntimeCreator() {
+            
+            @Override
+            public org.kie.internal.runtime.manager.Runtime newRuntime() {
+                return createRuntime(factory.newKieSession());
+            }
+            
+            @Override
+            public void destroyRuntime(org.kie.internal.runtime.manager.Runtime runtime) {
+                // never used by any process instance
+                runtime.getKieSession().destroy();
+            }
+        });
+        if (this.pool != null) {
+            this.pool.warm();
+        }
+    }
+    
     @Override
     public org.kie.internal.runtime.manager.Runtime getRuntime(Context context) {
   
 
         Object contextId = context.getContextId();
-        KieSession ksession = null;
-        Integer ksessionId = null;
+        org.kie.internal.runtime.manager.Runtime runtime = null;
         if (contextId == null) {            
-            ksession = factory.newKieSession();
-            ksessionId = ksession.getId();                 
+            if (pool != null) {
+                runtime = pool.acquire();
+                pool.detach(runtime);
+            } else {
+                runtime = createRuntime(factory.newKieSession());
+            }
         } else {
             Runtime localRuntime = findLocalRuntime(contextId);
             if (localRuntime != null) {
                 return localRuntime;
             }
-            ksessionId = mapper.findMapping(context);
+            Integer ksessionId = mapper.findMapping(context);
             if (ksessionId == null) {
                 throw new SessionNotFoundException("No session found for context " + context);
             }
-            ksession = factory.findKieSessionById(ksessionId);
+            runtime = createRuntime(factory.findKieSessionById(ksessionId));
         }
-        
+        registerDisposeCallback(runtime);
+        return runtime;
+    }
+    
+    protected org.kie.internal.runtime.manager.Runtime createRuntime(KieSession ksession) {
         org.kie.internal.runtime.manager.Runtime runtime = new RuntimeImpl(ksession, taskServiceFactory.newTaskService());
         ((RuntimeImpl) runtime).setManager(this);
-        registerDisposeCallback(runtime);
         registerItems(runtime);
         
-        ksession.addEventListener(new MaintainMappingListener(ksessionId, runtime));
+        ksession.addEventListener(new MaintainMappingListener(ksession.getId(), runtime));
         return runtime;
     }
 
@@ -74,6 +106,9 @@ public class PerProcessInstanceRuntimeManager extends AbstractRuntimeManager {
 
     @Override
     public void close() {
+        if (pool != null) {
+            pool.close();
+        }
         factory.close();
     }
 
@@ -128,6 +163,10 @@ public class PerProcessInstanceRuntimeManager extends AbstractRuntimeManager {
         this.taskServiceFactory = taskServiceFactory;
     }
 
+    public RuntimePool getPool() {
+        return pool;
+    }
+
     public Mapper getMapper() {
         return mapper;
     }
@@ -1,5 +1,17 @@
 package org.jbpm.runtime.manager.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Global;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.process.WorkItemHandler;
 import org.kie.internal.runtime.manager.Context;
 import org.kie.internal.runtime.manager.Disposable;
 import org.kie.internal.runtime.manager.Runtime;
@@ -14,21 +26,52 @@ public class PerRequestRuntimeManager extends AbstractRuntimeManager {
     
     private static ThreadLocal<org.kie.internal.runtime.manager.Runtime> local = new ThreadLocal<org.kie.internal.runtime.manager.Runtime>();
     
+    private RuntimePool pool;
+    private final Map<Runtime, Baseline> baselines = new ConcurrentHashMap<Runtime, Baseline>();
+    
     public PerRequestRuntimeManager(RuntimeEnvironment environment, SessionFactory factory, TaskServiceFactory taskServiceFactory) {
         super(environment);
         this.factory = factory;
         this.taskServiceFactory = taskServiceFactory;
     }
     
+    /**
+     * Creates and warms the runtime pool when enabled, see {@link RuntimePool}. Pooled sessions 
+     * are reused by subsequent requests as long as they are left without facts (and without 
+     * process instances when persistence is not used) and with the globals, event listeners and
+     * dispose listeners they were created with, otherwise they are destroyed as usual. Work item 
+     * handlers replaced by a request are registered again before the session is reused.
+     */
+    public void init() {
+        this.pool = RuntimePool.newConfiguredPool(new RuntimePool.RuntimeCreator() {
+            
+            @Override
+            public Runtime newRuntime() {
+                return createRuntime();
+            }
+            
+            @Override
+            public void destroyRuntime(Runtime runtime) {
+                destroy(runtime);
+            }
+        });
+        if (this.pool != null) {
+            this.pool.warm();
+        }
+    }
+    
     @Override
     public org.kie.internal.runtime.manager.Runtime getRuntime(Context context) {
         if (local.get() != null) {
             return local.get();
         }
-        Runtime runtime = new RuntimeImpl(factory.newKieSession(), taskServiceFactory.newTaskService());
-        ((RuntimeImpl) runtime).setManager(this);
+        Runtime runtime = null;
+        if (pool != null) {
+            runtime = pool.acquire();
+        } else {
+            runtime = createRuntime();
+        }
         registerDisposeCallback(runtime);
-        registerItems(runtime);
         local.set(runtime);
         return runtime;
     }
@@ -36,6 +79,50 @@ public class PerRequestRuntimeManager extends AbstractRuntimeManager {
     @Override
     public void disposeRuntime(Runtime runtime) {
         local.set(null);
+        if (pool != null) {
+            if (isClean(runtime)) {
+                pool.release(runtime);
+            } else {
+                pool.discard(runtime);
+            }
+            return;
+        }
+        destroy(runtime);
+    }
+    
+    protected Runtime createRuntime() {
+        Runtime runtime = new RuntimeImpl(factory.newKieSession(), taskServiceFactory.newTaskService());
+        ((RuntimeImpl) runtime).setManager(this);
+        Map<String, WorkItemHandler> handlers = registerItems(runtime);
+        if (pool != null) {
+            baselines.put(runtime, new Baseline(runtime, handlers));
+        }
+        return runtime;
+    }
+    
+    protected boolean isClean(Runtime runtime) {
+        try {
+            KieSession ksession = runtime.getKieSession();
+            if (ksession.getFactCount() > 0) {
+                return false;
+            }
+            // persistent process instances are only cached in memory
+            if (!environment.usePersistence() && !ksession.getProcessInstances().isEmpty()) {
+                return false;
+            }
+            Baseline baseline = baselines.get(runtime);
+            if (baseline == null || !baseline.matches(runtime)) {
+                return false;
+            }
+            baseline.resetWorkItemHandlers(ksession);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    protected void destroy(Runtime runtime) {
+        baselines.remove(runtime);
         try {
             runtime.getKieSession().destroy();
         } catch (Exception e) {
@@ -48,9 +135,79 @@ public class PerRequestRuntimeManager extends AbstractRuntimeManager {
 
     @Override
     public void close() {
+        if (pool != null) {
+            pool.close();
+        }
         factory.close();
     }
 
+    /**
+     * State of a pooled runtime right after it was created and its items were registered.
+     */
+    private static class Baseline {
+        
+        private final Map<String, Object> globals = new HashMap<String, Object>();
+        private final Map<String, WorkItemHandler> handlers;
+        private final List<Object> processListeners;
+        private final List<Object> agendaListeners;
+        private final List<Object> workingMemoryListeners;
+        private final int disposeListeners;
+        
+        private Baseline(Runtime runtime, Map<String, WorkItemHandler> handlers) {
+            KieSession ksession = runtime.getKieSession();
+            for (KiePackage kpackage : ksession.getKieBase().getKiePackages()) {
+                for (Global global : kpackage.getGlobalVariables()) {
+                    globals.put(global.getName(), ksession.getGlobal(global.getName()));
+                }
+            }
+            this.handlers = new HashMap<String, WorkItemHandler>(handlers);
+            this.processListeners = new ArrayList<Object>(ksession.getProcessEventListeners());
+            this.agendaListeners = new ArrayList<Object>(ksession.getAgendaEventListeners());
+            this.workingMemoryListeners = new ArrayList<Object>(ksession.getWorkingMemoryEventListeners());
+            this.disposeListeners = getDisposeListenerCount(runtime);
+        }
+        
+        private boolean matches(Runtime runtime) {
+            KieSession ksession = runtime.getKieSession();
+            for (Entry<String, Object> global : globals.entrySet()) {
+                if (ksession.getGlobal(global.getKey()) != global.getValue()) {
+                    return false;
+                }
+            }
+            return sameElements(processListeners, ksession.getProcessEventListeners())
+                    && sameElements(agendaListeners, ksession.getAgendaEventListeners())
+                    && sameElements(workingMemoryListeners, ksession.getWorkingMemoryEventListeners())
+                    && disposeListeners == getDisposeListenerCount(runtime);
+        }
+        
+        private void resetWorkItemHandlers(KieSession ksession) {
+            for (Entry<String, WorkItemHandler> entry : handlers.entrySet()) {
+                ksession.getWorkItemManager().registerWorkItemHandler(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        private static int getDisposeListenerCount(Runtime runtime) {
+            return runtime instanceof RuntimeImpl ? ((RuntimeImpl) runtime).getDisposeListenerCount() : 0;
+        }
+        
+        private static boolean sameElements(List<Object> expected, Collection<?> actual) {
+            if (expected.size() != actual.size()) {
+                return false;
+            }
+            int i = 0;
+            for (Object listener : actual) {
+                if (expected.get(i++) != listener) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public RuntimePool getPool() {
+        return pool;
+    }
+
     public SessionFactory getFactory() {
         return factory;
     }
@@ -66,6 +66,10 @@ public class RuntimeImpl implements Runtime, Disposable {
         this.listeners.add(listener);
     }
 
+    public int getDisposeListenerCount() {
+        return this.listeners.size();
+    }
+
     public RuntimeManager getManager() {
         return manager;
     }
@@ -38,6 +38,7 @@ public class RuntimeManagerFactoryImpl implements RuntimeManagerFactory {
         TaskServiceFactory taskServiceFactory = new LocalTaskServiceFactory(environment);
 
         RuntimeManager manager = new PerRequestRuntimeManager(environment, factory, taskServiceFactory);
+        ((PerRequestRuntimeManager) manager).init();
         return manager;
     }
 
@@ -49,6 +50,7 @@ public class RuntimeManagerFactoryImpl implements RuntimeManagerFactory {
         TaskServiceFactory taskServiceFactory = new LocalTaskServiceFactory(environment);
 
         RuntimeManager manager = new PerProcessInstanceRuntimeManager(environment, factory, taskServiceFactory);
+        ((PerProcessInstanceRuntimeManager) manager).init();
         return manager;
     }
     
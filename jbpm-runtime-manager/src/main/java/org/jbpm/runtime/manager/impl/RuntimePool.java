@@ -0,0 +1,245 @@
+package org.jbpm.runtime.manager.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kie.internal.runtime.manager.Runtime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of fully initialized runtimes (session created, work item handlers and listeners
+ * registered) so that runtime managers do not have to create a new session on every request.
+ * <br/>
+ * At most <code>maxIdle</code> runtimes are kept idle, returned runtimes above that limit are destroyed.
+ * The pool is warmed with <code>minIdle</code> runtimes when it is created and is refilled up to that
+ * number in the background whenever runtimes are taken from it and not given back (see {@link #detach(Runtime)}).
+ * <br/>
+ * Following system properties configure the pools of runtime managers:
+ * <ul>
+ *  <li>jbpm.runtime.pool.size - maximum number of idle runtimes, default 0 which disables pooling</li>
+ *  <li>jbpm.runtime.pool.warm - number of runtimes kept ready, defaults to pool size</li>
+ * </ul>
+ */
+public class RuntimePool {
+
+    public static final String SIZE_PROPERTY = "jbpm.runtime.pool.size";
+    public static final String WARM_PROPERTY = "jbpm.runtime.pool.warm";
+
+    private static final Logger logger = LoggerFactory.getLogger(RuntimePool.class);
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    /**
+     * Creates and destroys runtimes on behalf of the pool.
+     */
+    public interface RuntimeCreator {
+
+        Runtime newRuntime();
+
+        void destroyRuntime(Runtime runtime);
+    }
+
+    private final RuntimeCreator creator;
+    private final int maxIdle;
+    private final int minIdle;
+
+    private final LinkedBlockingQueue<Runtime> idle;
+    private final Set<Runtime> inUse = Collections.newSetFromMap(new ConcurrentHashMap<Runtime, Boolean>());
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final ExecutorService refiller;
+    private volatile boolean closed = false;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+
+    public RuntimePool(RuntimeCreator creator, int maxIdle, int minIdle) {
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException("Pool size must be greater than 0");
+        }
+        this.creator = creator;
+        this.maxIdle = maxIdle;
+        this.minIdle = Math.min(Math.max(minIdle, 0), maxIdle);
+        this.idle = new LinkedBlockingQueue<Runtime>(maxIdle);
+        final String name = "jbpm-runtime-pool-" + poolCounter.incrementAndGet();
+        this.refiller = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates a pool configured by the {@link #SIZE_PROPERTY} and {@link #WARM_PROPERTY} system properties,
+     * or returns <code>null</code> when pooling is not enabled.
+     */
+    public static RuntimePool newConfiguredPool(RuntimeCreator creator) {
+        int size = Integer.parseInt(System.getProperty(SIZE_PROPERTY, "0"));
+        if (size <= 0) {
+            return null;
+        }
+        int warm = Integer.parseInt(System.getProperty(WARM_PROPERTY, String.valueOf(size)));
+        return new RuntimePool(creator, size, warm);
+    }
+
+    /**
+     * Creates runtimes on the calling thread until <code>minIdle</code> of them are idle or 
+     * will come back to the pool.
+     */
+    public void warm() {
+        while (!closed && idle.size() + inUse.size() < minIdle) {
+            Runtime runtime = create();
+            if (!idle.offer(runtime)) {
+                destroy(runtime);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes an idle runtime or creates a new one when the pool is empty.
+     */
+    public Runtime acquire() {
+        if (closed) {
+            throw new IllegalStateException("Runtime pool is closed");
+        }
+        Runtime runtime = idle.poll();
+        if (runtime == null) {
+            misses.incrementAndGet();
+            runtime = create();
+        } else {
+            hits.incrementAndGet();
+        }
+        inUse.add(runtime);
+        refill();
+        return runtime;
+    }
+
+    /**
+     * Gives the runtime back so it can be reused, it is destroyed when the pool is full or closed.
+     * Runtimes that were already returned or destroyed are ignored.
+     */
+    public void release(Runtime runtime) {
+        if (!inUse.remove(runtime)) {
+            return;
+        }
+        if (closed || !idle.offer(runtime)) {
+            destroy(runtime);
+        } else {
+            returned.incrementAndGet();
+        }
+    }
+
+    /**
+     * Destroys the runtime instead of giving it back, e.g. when its session is not clean.
+     */
+    public void discard(Runtime runtime) {
+        if (inUse.remove(runtime)) {
+            destroy(runtime);
+            refill();
+        }
+    }
+
+    /**
+     * Forgets the runtime, it is owned by the caller from now on and will not be given back.
+     */
+    public void detach(Runtime runtime) {
+        if (inUse.remove(runtime)) {
+            refill();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        refiller.shutdownNow();
+        Runtime runtime;
+        while ((runtime = idle.poll()) != null) {
+            destroy(runtime);
+        }
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getInUseCount() {
+        return inUse.size();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getReturnedCount() {
+        return returned.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    private void refill() {
+        if (closed || idle.size() + inUse.size() >= minIdle || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refiller.execute(new Runnable() {
+                public void run() {
+                    try {
+                        warm();
+                    } catch (Throwable e) {
+                        logger.warn("Unable to refill runtime pool", e);
+                    } finally {
+                        refilling.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // rejected as the pool is being closed
+            refilling.set(false);
+        }
+    }
+
+    private Runtime create() {
+        Runtime runtime = creator.newRuntime();
+        created.incrementAndGet();
+        return runtime;
+    }
+
+    private void destroy(Runtime runtime) {
+        destroyed.incrementAndGet();
+        try {
+            creator.destroyRuntime(runtime);
+        } catch (Exception e) {
+            logger.debug("Unable to destroy pooled runtime", e);
+        }
+    }
+}
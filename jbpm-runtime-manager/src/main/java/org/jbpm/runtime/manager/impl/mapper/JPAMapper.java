@@ -1,17 +1,14 @@
 package org.jbpm.runtime.manager.impl.mapper;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.Query;
 
+import org.jbpm.persistence.JpaProcessPersistenceContext;
 import org.jbpm.runtime.manager.impl.jpa.ContextMappingInfo;
 import org.kie.internal.process.CorrelationKey;
-import org.kie.internal.process.CorrelationProperty;
 import org.kie.internal.runtime.manager.Context;
 import org.kie.internal.runtime.manager.Mapper;
 import org.kie.internal.runtime.manager.context.CorrelationKeyContext;
@@ -84,21 +81,11 @@ public class JPAMapper implements Mapper {
     }
     
     public Context getProcessInstanceByCorrelationKey(CorrelationKey correlationKey, EntityManager em) {
-        Query processInstancesForEvent = em.createNamedQuery( "GetProcessInstanceIdByCorrelation" );
-        
-        processInstancesForEvent.setParameter( "elem_count", correlationKey.getProperties().size() );
-        List<Object> properties = new ArrayList<Object>();
-        for (CorrelationProperty<?> property : correlationKey.getProperties()) {
-            properties.add(property.getValue());
-        }
-        processInstancesForEvent.setParameter( "properties", properties );
-        try {
-            return ProcessInstanceIdContext.get((Long) processInstancesForEvent.getSingleResult());
-        } catch (NonUniqueResultException e) {
-            return null;
-        } catch (NoResultException e) {
+        Long processInstanceId = new JpaProcessPersistenceContext(em).getProcessInstanceByCorrelationKey(correlationKey);
+        if (processInstanceId == null) {
             return null;
         }
+        return ProcessInstanceIdContext.get(processInstanceId);
     }
 
 }
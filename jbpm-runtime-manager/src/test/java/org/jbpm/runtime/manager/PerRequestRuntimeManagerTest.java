@@ -10,16 +10,23 @@ import java.util.Properties;
 import javax.naming.InitialContext;
 import javax.transaction.UserTransaction;
 
+import org.jbpm.process.instance.impl.demo.DoNothingWorkItemHandler;
 import org.jbpm.runtime.manager.impl.DefaultRuntimeEnvironment;
+import org.jbpm.runtime.manager.impl.PerRequestRuntimeManager;
+import org.jbpm.runtime.manager.impl.RuntimePool;
+import org.jbpm.runtime.manager.impl.SimpleRegisterableItemsFactory;
 import org.jbpm.runtime.manager.impl.SimpleRuntimeEnvironment;
 import org.jbpm.runtime.manager.util.TestUtil;
 import org.jbpm.task.identity.JBossUserGroupCallbackImpl;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.kie.api.event.process.DefaultProcessEventListener;
 import org.kie.api.io.ResourceType;
 import org.kie.api.runtime.KieSession;
 import org.kie.internal.io.ResourceFactory;
+import org.kie.internal.runtime.manager.Disposable;
+import org.kie.internal.runtime.manager.DisposeListener;
 import org.kie.internal.runtime.manager.Runtime;
 import org.kie.internal.runtime.manager.RuntimeManager;
 import org.kie.internal.runtime.manager.RuntimeManagerFactory;
@@ -156,4 +163,86 @@ public class PerRequestRuntimeManagerTest {
             
         }
     }
+    
+    @Test
+    public void testCreationOfSessionFromPool() {
+        System.setProperty(RuntimePool.SIZE_PROPERTY, "2");
+        try {
+            SimpleRuntimeEnvironment environment = new SimpleRuntimeEnvironment();
+            environment.setUserGroupCallback(userGroupCallback);
+            environment.addAsset(ResourceFactory.newClassPathResource("BPMN2-ScriptTask.bpmn2"), ResourceType.BPMN2);
+            
+            RuntimeManager manager = RuntimeManagerFactory.Factory.get().newPerRequestRuntimeManager(environment);        
+            assertNotNull(manager);
+            RuntimePool pool = ((PerRequestRuntimeManager) manager).getPool();
+            assertNotNull(pool);
+            // warmed when created
+            assertEquals(2, pool.getIdleCount());
+            
+            Runtime runtime = manager.getRuntime(EmptyContext.get());
+            KieSession ksession = runtime.getKieSession();
+            assertNotNull(ksession);
+            ksession.startProcess("ScriptTask");
+            manager.disposeRuntime(runtime);
+            // clean session is given back
+            assertEquals(2, pool.getIdleCount());
+            
+            runtime = manager.getRuntime(EmptyContext.get());
+            ksession = runtime.getKieSession();
+            ksession.insert("fact");
+            manager.disposeRuntime(runtime);
+            // session with facts is destroyed
+            assertEquals(1, pool.getDestroyedCount());
+            
+            assertEquals(2, pool.getHitCount());
+            assertEquals(0, pool.getMissCount());
+            manager.close();
+            assertEquals(0, pool.getIdleCount());
+        } finally {
+            System.clearProperty(RuntimePool.SIZE_PROPERTY);
+        }
+    }
+    
+    @Test
+    public void testChangedSessionIsNotReturnedToPool() {
+        System.setProperty(RuntimePool.SIZE_PROPERTY, "1");
+        try {
+            SimpleRuntimeEnvironment environment = new SimpleRuntimeEnvironment();
+            environment.setUserGroupCallback(userGroupCallback);
+            environment.addAsset(ResourceFactory.newClassPathResource("BPMN2-ScriptTask.bpmn2"), ResourceType.BPMN2);
+            ((SimpleRegisterableItemsFactory) environment.getRegisterableItemsFactory())
+                    .addWorkItemHandler("Test", DoNothingWorkItemHandler.class);
+            
+            RuntimeManager manager = RuntimeManagerFactory.Factory.get().newPerRequestRuntimeManager(environment);        
+            RuntimePool pool = ((PerRequestRuntimeManager) manager).getPool();
+            
+            Runtime runtime = manager.getRuntime(EmptyContext.get());
+            runtime.getKieSession().addEventListener(new DefaultProcessEventListener());
+            manager.disposeRuntime(runtime);
+            // session with an additional listener is destroyed
+            assertEquals(1, pool.getDestroyedCount());
+            
+            runtime = manager.getRuntime(EmptyContext.get());
+            ((Disposable) runtime).addDisposeListener(new DisposeListener() {
+                
+                @Override
+                public void onDispose(Runtime runtime) {
+                }
+            });
+            manager.disposeRuntime(runtime);
+            // session with an additional dispose listener is destroyed
+            assertEquals(2, pool.getDestroyedCount());
+            
+            runtime = manager.getRuntime(EmptyContext.get());
+            KieSession ksession = runtime.getKieSession();
+            ksession.getWorkItemManager().registerWorkItemHandler("Test", new DoNothingWorkItemHandler());
+            manager.disposeRuntime(runtime);
+            // replaced handlers are registered again and the session is reused
+            assertEquals(2, pool.getDestroyedCount());
+            assertEquals(1, pool.getReturnedCount());
+            manager.close();
+        } finally {
+            System.clearProperty(RuntimePool.SIZE_PROPERTY);
+        }
+    }
 }
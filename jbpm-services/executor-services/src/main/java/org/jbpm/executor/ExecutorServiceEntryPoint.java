@@ -59,6 +59,10 @@ public interface ExecutorServiceEntryPoint {
     public int getThreadPoolSize();
 
     public void setThreadPoolSize(int nroOfThreads);
+
+    public int getLeaseTime();
+
+    public void setLeaseTime(int leaseTime);
     
     public List<RequestInfo> getPendingRequests();
 
@@ -25,6 +25,10 @@ public interface Executor extends Service {
     public int getThreadPoolSize();
 
     public void setThreadPoolSize(int nroOfThreads);
+
+    public int getLeaseTime();
+
+    public void setLeaseTime(int leaseTime);
     
     
 }
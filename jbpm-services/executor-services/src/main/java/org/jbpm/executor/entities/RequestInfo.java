@@ -32,6 +32,10 @@ public class RequestInfo {
     private int retries = 0;
     //Number of times that this request has been executed
     private int executions = 0;
+    //Executor that claimed this request and until when it holds the claim
+    private String owner;
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date leaseExpiration;
     
     @Lob
     private byte[] requestData;
@@ -75,7 +79,22 @@ public class RequestInfo {
         this.executions = executions;
     }
 
-    
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Date getLeaseExpiration() {
+        return leaseExpiration;
+    }
+
+    public void setLeaseExpiration(Date leaseExpiration) {
+        this.leaseExpiration = leaseExpiration;
+    }
+
     public String getCommandName() {
         return commandName;
     }
@@ -13,6 +13,7 @@ import java.util.List;
 
 import org.jbpm.executor.entities.RequestInfo;
 import org.jbpm.executor.entities.STATUS;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -50,11 +51,16 @@ public class ExecutorImpl implements Executor {
     @Inject
     private ExecutorQueryService queryService;
     
-    private ScheduledFuture<?> handle;
+    private static final long MIN_POLL_DELAY = 100;
+    
+    private volatile ScheduledFuture<?> handle;
     private int threadPoolSize = 1;
     private int retries = 3;
     private int interval = 3;
+    private int leaseTime = 300;
     private ScheduledExecutorService scheduler;
+    private ExecutorService workerPool;
+    private volatile boolean active;
 
     public ExecutorImpl() {
     }
@@ -105,14 +111,63 @@ public class ExecutorImpl implements Executor {
         this.threadPoolSize = threadPoolSize;
     }
 
+    public int getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * @param leaseTime number of seconds a claimed request stays reserved for this executor without
+     * being renewed, the lease of a running request is renewed while its command executes
+     */
+    public void setLeaseTime(int leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+
     public void init() {
 
         logger.log(Level.INFO, " >>> Starting Executor Component ...\n" + " \t - Thread Pool Size: {0}" + "\n"
-                + " \t - Interval: {1}" + " Seconds\n" + " \t - Retries per Request: {2}\n",
-                new Object[]{threadPoolSize, interval, retries});
+                + " \t - Interval: {1}" + " Seconds\n" + " \t - Retries per Request: {2}\n"
+                + " \t - Lease Time: {3}" + " Seconds\n",
+                new Object[]{threadPoolSize, interval, retries, leaseTime});
 
-        scheduler = Executors.newScheduledThreadPool(threadPoolSize);
-        handle = scheduler.scheduleAtFixedRate(runnableTask, 2, interval, TimeUnit.SECONDS);
+        // one thread claims requests and stores their outcome, the worker pool executes them
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        workerPool = Executors.newFixedThreadPool(threadPoolSize);
+        runnableTask.setWorkerPool(workerPool, threadPoolSize);
+        runnableTask.setLeaseTime(leaseTime);
+        active = true;
+        handle = scheduler.schedule(new PollingTask(), 2, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Polls again right away while requests are being claimed, regularly while requests are
+     * executing and backs off up to the configured interval while there is nothing to do.
+     */
+    private class PollingTask implements Runnable {
+
+        private long idleDelay = MIN_POLL_DELAY;
+
+        public void run() {
+            long delay;
+            try {
+                if (runnableTask.poll() > 0) {
+                    idleDelay = MIN_POLL_DELAY;
+                    delay = 0;
+                } else if (runnableTask.getActiveRequests() > 0) {
+                    idleDelay = MIN_POLL_DELAY;
+                    delay = MIN_POLL_DELAY;
+                } else {
+                    delay = idleDelay;
+                    idleDelay = Math.min(idleDelay * 2, interval * 1000L);
+                }
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, " >>> Error while polling for requests", t);
+                delay = interval * 1000L;
+            }
+            if (active) {
+                handle = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
     @Override
@@ -178,9 +233,15 @@ public class ExecutorImpl implements Executor {
 
     public void destroy() {
         logger.info(" >>>>> Destroying Executor !!!");
-        handle.cancel(true);
+        active = false;
+        if (handle != null) {
+            handle.cancel(true);
+        }
         if (scheduler != null) {
             scheduler.shutdownNow();
         }
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
     }
 }
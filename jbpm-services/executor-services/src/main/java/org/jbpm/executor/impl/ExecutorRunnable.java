@@ -9,11 +9,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,7 +32,6 @@ import javax.enterprise.inject.spi.BeanManager;
 import javax.inject.Inject;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.jboss.seam.transaction.Transactional;
 import org.jbpm.executor.api.Command;
 import org.jbpm.executor.api.CommandCallback;
 import org.jbpm.executor.api.CommandContext;
@@ -32,6 +41,7 @@ import org.jbpm.executor.entities.ErrorInfo;
 import org.jbpm.executor.entities.RequestInfo;
 import org.jbpm.executor.entities.STATUS;
 import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.shared.services.impl.JbpmServicesPersistenceManagerImpl;
 
 /**
  *
@@ -50,8 +60,13 @@ public class ExecutorRunnable implements Runnable {
     //private Event<ErrorInfo> errorEvents;
     @Inject
     private ExecutorQueryService queryService;
-    private final Map<String, Command> commandCache = new HashMap<String, Command>();
-    private final Map<String, CommandCallback> callbackCache = new HashMap<String, CommandCallback>();
+    private final Map<String, Class<?>> commandClasses = new HashMap<String, Class<?>>();
+    private final Map<String, Class<?>> callbackClasses = new HashMap<String, Class<?>>();
+    private final List<RequestExecution> inFlight = new ArrayList<RequestExecution>();
+    private final String owner = UUID.randomUUID().toString();
+    private ExecutorService workerPool;
+    private int capacity = 1;
+    private int leaseTime = 300;
 
     public void setLogger(Logger logger) {
         this.logger = logger;
@@ -65,106 +80,255 @@ public class ExecutorRunnable implements Runnable {
         this.queryService = queryService;
     }
 
-    @Transactional
+    /**
+     * @param workerPool pool the claimed requests are executed on, when <code>null</code> they are
+     * executed by the polling thread
+     * @param capacity maximum number of requests claimed and executed at the same time
+     */
+    public void setWorkerPool(ExecutorService workerPool, int capacity) {
+        this.workerPool = workerPool;
+        this.capacity = capacity;
+    }
+
+    public int getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * @param leaseTime number of seconds a claimed request is reserved for this executor, the lease is
+     * renewed by every poll while the command executes on the worker pool
+     */
+    public void setLeaseTime(int leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Single poll, kept for callers that schedule this runnable themselves.
+     */
     public void run() {
-        logger.log(Level.INFO, " >>> Executor Thread {0} Waking Up!!!", this.toString());
-        List<?> resultList = queryService.getPendingRequests();
-        logger.log(Level.INFO, " >>> Pending Requests = {0}", resultList.size());
+        poll();
+    }
 
-        if (resultList.size() > 0) {
-            RequestInfo r = null;
-            Throwable exception = null;
-            try {
-                r = (RequestInfo) resultList.get(0);
-                r.setStatus(STATUS.RUNNING);
-                pm.merge(r);
-                // CDI Contexts are not propagated to new threads
-                //requestEvents.select(new AnnotationLiteral<Running>(){}).fire(r); 
-                logger.log(Level.INFO, " >> Processing Request Id: {0}", r.getId());
-                logger.log(Level.INFO, " >> Request Status ={0}", r.getStatus());
-                logger.log(Level.INFO, " >> Command Name to execute = {0}", r.getCommandName());
-
-
-                Command cmd = this.findCommand(r.getCommandName());
-
-                CommandContext ctx = null;
-                byte[] reqData = r.getRequestData();
-                if (reqData != null) {
-                    try {
-                        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(reqData));
-                        ctx = (CommandContext) in.readObject();
-                    } catch (IOException e) {
-                        ctx = null;
-                        e.printStackTrace();
-                    }
-                }
-                ExecutionResults results = cmd.execute(ctx);
-                if (ctx != null && ctx.getData("callbacks") != null) {
-                    logger.log(Level.INFO, " ### Callback: {0}", ctx.getData("callbacks"));
-                    String[] callbacksArray = ((String) ctx.getData("callbacks")).split(",");;
-                    List<String> callbacks = (List<String>) Arrays.asList(callbacksArray);
-                    for (String callbackName : callbacks) {
-                        CommandCallback handler = this.findCommandCallback(callbackName);
-                        handler.onCommandDone(ctx, results);
-                    }
-                } else {
-                    logger.info(" ### Callbacks: NULL");
-                }
-                if (results != null) {
-                    try {
-                        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                        ObjectOutputStream out = new ObjectOutputStream(bout);
-                        out.writeObject(results);
-                        byte[] respData = bout.toByteArray();
-                        r.setResponseData(respData);
-                    } catch (IOException e) {
-                        r.setResponseData(null);
-                    }
+    /**
+     * Collects the results of the requests that finished executing and claims as many pending
+     * requests as there are free workers. A request is claimed with a conditional update that
+     * only succeeds for one executor, so several executors (e.g. on different cluster nodes)
+     * can share the same request table without executing a request twice. The claim is a lease
+     * that is renewed while the command executes: if the executor dies, the request can be claimed
+     * again once the lease has expired.
+     * </p>
+     * A poll is not one transaction: every claim, lease renewal and outcome is a single conditional
+     * update committed on its own, so a request is only handed to a worker once its claim is committed.
+     *
+     * @return the number of requests claimed by this poll
+     */
+    public int poll() {
+        completeFinishedRequests();
+        renewLeases();
+        int free = capacity - inFlight.size();
+        if (free <= 0) {
+            return 0;
+        }
+        List<RequestInfo> claimed = claimRequests(free);
+        logger.log(Level.FINE, " >>> Claimed Requests = {0}", claimed.size());
+        for (final RequestInfo r : claimed) {
+            logger.log(Level.INFO, " >> Processing Request Id: {0}", r.getId());
+            logger.log(Level.INFO, " >> Request Status ={0}", r.getStatus());
+            logger.log(Level.INFO, " >> Command Name to execute = {0}", r.getCommandName());
+            Callable<ExecutionResults> execution = new Callable<ExecutionResults>() {
+                public ExecutionResults call() throws Exception {
+                    return execute(r);
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } catch (Throwable e) {
-                e.printStackTrace();
-                exception = e;
+            };
+            if (workerPool == null) {
+                FutureTask<ExecutionResults> task = new FutureTask<ExecutionResults>(execution);
+                task.run();
+                complete(r, task);
+            } else {
+                inFlight.add(new RequestExecution(r, workerPool.submit(execution), r.getLeaseExpiration()));
             }
+        }
+        return claimed.size();
+    }
 
-            if (exception != null) {
-                logger.log(Level.SEVERE, "{0} >>> Before - Error Handling!!!{1}", new Object[]{System.currentTimeMillis(), exception.getMessage()});
-
-
-
-                ErrorInfo errorInfo = new ErrorInfo(exception.getMessage(), ExceptionUtils.getFullStackTrace(exception.fillInStackTrace()));
-                errorInfo.setRequestInfo(r);
-                // CDI Contexts are not propagated to new threads
-                //requestEvents.select(new AnnotationLiteral<OnError>(){}).fire(r);
-                //errorEvents.select(new AnnotationLiteral<OnError>(){}).fire(errorInfo);
-                r.getErrorInfo().add(errorInfo);
-                logger.log(Level.SEVERE, " >>> Error Number: {0}", r.getErrorInfo().size());
-                if (r.getRetries() > 0) {
-                    r.setStatus(STATUS.RETRYING);
-                    r.setRetries(r.getRetries() - 1);
-                    r.setExecutions(r.getExecutions() + 1);
-                    logger.log(Level.SEVERE, " >>> Retrying ({0}) still available!", r.getRetries());
-                } else {
-                    logger.severe(" >>> Error no retries left!");
-                    r.setStatus(STATUS.ERROR);
-                    r.setExecutions(r.getExecutions() + 1);
-                }
+    /**
+     * @return the number of claimed requests that are still being executed by the worker pool
+     */
+    public int getActiveRequests() {
+        return inFlight.size();
+    }
 
-                pm.merge(r);
+    private List<RequestInfo> claimRequests(int max) {
+        Date now = new Date();
+        List<RequestInfo> candidates = (List<RequestInfo>) pm.queryWithParametersInTransaction("ClaimableRequests",
+                pm.addParametersToMap("now", now, JbpmServicesPersistenceManagerImpl.MAX_RESULTS, max));
+        List<RequestInfo> claimed = new ArrayList<RequestInfo>(candidates.size());
+        Date leaseExpiration = new Date(now.getTime() + leaseTime * 1000L);
+        for (RequestInfo r : candidates) {
+            int updated = pm.executeUpdate("ClaimRequest", pm.addParametersToMap("id", r.getId(), "running", STATUS.RUNNING,
+                    "owner", owner, "leaseExpiration", leaseExpiration, "now", now));
+            if (updated == 1) {
+                // keep the loaded entity in line with the claimed row
+                r.setStatus(STATUS.RUNNING);
+                r.setOwner(owner);
+                r.setLeaseExpiration(leaseExpiration);
+                claimed.add(r);
+            } else {
+                logger.log(Level.FINE, " >> Request Id: {0} claimed by another executor", r.getId());
+            }
+        }
+        return claimed;
+    }
 
+    /**
+     * Extends the leases of the executing requests once half of the lease time has passed. A request
+     * whose lease could not be renewed has expired and been claimed by another executor, so its
+     * execution is cancelled and its outcome is never stored.
+     */
+    private void renewLeases() {
+        long now = System.currentTimeMillis();
+        for (Iterator<RequestExecution> iterator = inFlight.iterator(); iterator.hasNext(); ) {
+            RequestExecution execution = iterator.next();
+            if (execution.leaseExpiration.getTime() - now > leaseTime * 500L) {
+                continue;
+            }
+            Date leaseExpiration = new Date(now + leaseTime * 1000L);
+            int updated = pm.executeUpdate("RenewRequestLease", pm.addParametersToMap("id", execution.request.getId(),
+                    "owner", owner, "running", STATUS.RUNNING, "leaseExpiration", leaseExpiration));
+            if (updated == 1) {
+                execution.leaseExpiration = leaseExpiration;
+                execution.request.setLeaseExpiration(leaseExpiration);
+            } else {
+                logger.log(Level.WARNING, " >> Lease of Request Id: {0} lost, cancelling its execution", execution.request.getId());
+                iterator.remove();
+                execution.future.cancel(true);
+            }
+        }
+    }
 
-                logger.severe(" >>> After - Error Handling!!!");
+    private ExecutionResults execute(RequestInfo r) throws Exception {
+        // CDI Contexts are not propagated to new threads
+        //requestEvents.select(new AnnotationLiteral<Running>(){}).fire(r); 
+        Command cmd = this.findCommand(r.getCommandName());
 
+        CommandContext ctx = null;
+        byte[] reqData = r.getRequestData();
+        if (reqData != null) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(reqData));
+                ctx = (CommandContext) in.readObject();
+            } catch (IOException e) {
+                ctx = null;
+                e.printStackTrace();
+            }
+        }
+        ExecutionResults results = cmd.execute(ctx);
+        if (ctx != null && ctx.getData("callbacks") != null) {
+            logger.log(Level.INFO, " ### Callback: {0}", ctx.getData("callbacks"));
+            String[] callbacksArray = ((String) ctx.getData("callbacks")).split(",");;
+            List<String> callbacks = (List<String>) Arrays.asList(callbacksArray);
+            for (String callbackName : callbacks) {
+                CommandCallback handler = this.findCommandCallback(callbackName);
+                handler.onCommandDone(ctx, results);
+            }
+        } else {
+            logger.info(" ### Callbacks: NULL");
+        }
+        return results;
+    }
 
-            } else {
+    private void completeFinishedRequests() {
+        for (Iterator<RequestExecution> iterator = inFlight.iterator(); iterator.hasNext(); ) {
+            RequestExecution execution = iterator.next();
+            if (execution.future.isDone()) {
+                iterator.remove();
+                complete(execution.request, execution.future);
+            }
+        }
+    }
+
+    /**
+     * Stores the outcome of an execution with a single update that also releases the request. The
+     * update is conditional on this executor still owning the request, so an executor that lost its
+     * lease cannot overwrite the state written by the new owner. Interrupted or cancelled executions
+     * are queued again instead of being completed.
+     */
+    private void complete(RequestInfo r, Future<ExecutionResults> execution) {
+        ExecutionResults results = null;
+        Throwable exception = null;
+        try {
+            results = execution.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requeue(r);
+            return;
+        } catch (CancellationException e) {
+            requeue(r);
+            return;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                requeue(r);
+                return;
+            }
+            e.getCause().printStackTrace();
+            exception = e.getCause();
+        }
+        byte[] respData = null;
+        if (results != null) {
+            try {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bout);
+                out.writeObject(results);
+                respData = bout.toByteArray();
+            } catch (IOException e) {
+                respData = null;
+            }
+        }
 
-                r.setStatus(STATUS.DONE);
-                pm.merge(r);
-                // CDI Contexts are not propagated to new threads
-                //requestEvents.select(new AnnotationLiteral<Completed>(){}).fire(r);
+        STATUS status = STATUS.DONE;
+        int retries = r.getRetries();
+        int executions = r.getExecutions();
+        if (exception != null) {
+            logger.log(Level.SEVERE, "{0} >>> Before - Error Handling!!!{1}", new Object[]{System.currentTimeMillis(), exception.getMessage()});
+            executions++;
+            if (retries > 0) {
+                status = STATUS.RETRYING;
+                retries--;
+                logger.log(Level.SEVERE, " >>> Retrying ({0}) still available!", retries);
+            } else {
+                status = STATUS.ERROR;
+                logger.severe(" >>> Error no retries left!");
             }
         }
+        int updated = pm.executeUpdate("CompleteRequest", pm.addParametersToMap("id", r.getId(), "owner", owner,
+                "running", STATUS.RUNNING, "status", status, "responseData", respData, "retries", retries,
+                "executions", executions));
+        if (updated != 1) {
+            logger.log(Level.WARNING, " >> Request Id: {0} is no longer owned by this executor, its outcome is discarded", r.getId());
+            return;
+        }
+        if (exception != null) {
+            // the request loaded by the claim is detached, the error refers to a freshly loaded one
+            ErrorInfo errorInfo = new ErrorInfo(exception.getMessage(), ExceptionUtils.getFullStackTrace(exception.fillInStackTrace()));
+            errorInfo.setRequestInfo(pm.find(RequestInfo.class, r.getId()));
+            // CDI Contexts are not propagated to new threads
+            //requestEvents.select(new AnnotationLiteral<OnError>(){}).fire(r);
+            //errorEvents.select(new AnnotationLiteral<OnError>(){}).fire(errorInfo);
+            pm.persist(errorInfo);
+            logger.severe(" >>> After - Error Handling!!!");
+        }
+        // CDI Contexts are not propagated to new threads
+        //requestEvents.select(new AnnotationLiteral<Completed>(){}).fire(r);
+    }
+
+    private void requeue(RequestInfo r) {
+        logger.log(Level.WARNING, " >> Execution of Request Id: {0} was interrupted, queuing it again", r.getId());
+        pm.executeUpdate("RequeueRequest", pm.addParametersToMap("id", r.getId(), "owner", owner,
+                "running", STATUS.RUNNING, "queued", STATUS.QUEUED));
     }
 
 //    /*
@@ -181,40 +345,51 @@ public class ExecutorRunnable implements Runnable {
 //            return em;
 //        }
 //    }
+    /**
+     * Commands are not required to be thread safe, so every request gets its own instance. Only the
+     * class lookup is cached.
+     */
     private Command findCommand(String name) {
-        synchronized (commandCache) {
-            
-                if (!commandCache.containsKey(name)) {
-                    try {
-                        Command commandInstance = (Command) Class.forName(name).newInstance();
-                        commandCache.put(name, commandInstance);
-                    } catch (Exception ex) {
-                        logger.severe(" EEE: Unknown Command implemenation with name '" + name + "'");
-                        throw new IllegalArgumentException("Unknown Command implemenation with name '" + name + "'");
-                    }
-
-                }
-
-       
+        try {
+            return (Command) findClass(commandClasses, name).newInstance();
+        } catch (Exception ex) {
+            logger.severe(" EEE: Unknown Command implemenation with name '" + name + "'");
+            throw new IllegalArgumentException("Unknown Command implemenation with name '" + name + "'");
         }
-        return commandCache.get(name);
     }
 
+    /**
+     * Like commands, callbacks are instantiated for every request.
+     */
     private CommandCallback findCommandCallback(String name) {
-        synchronized (callbackCache) {
-            
-                    if (!callbackCache.containsKey(name)) {
-                        try {
-                            CommandCallback commandCallbackInstance = (CommandCallback) Class.forName(name).newInstance();
-                            callbackCache.put(name, commandCallbackInstance);
-                        } catch (Exception ex) {
-                            logger.severe(" EEE: Unknown CommandCallback implemenation with name '" + name + "'");
-                            throw new IllegalArgumentException("Unknown Command implemenation with name '" + name + "'");
-                        }
+        try {
+            return (CommandCallback) findClass(callbackClasses, name).newInstance();
+        } catch (Exception ex) {
+            logger.severe(" EEE: Unknown CommandCallback implemenation with name '" + name + "'");
+            throw new IllegalArgumentException("Unknown Command implemenation with name '" + name + "'");
+        }
+    }
+
+    private Class<?> findClass(Map<String, Class<?>> classes, String name) throws ClassNotFoundException {
+        synchronized (classes) {
+            Class<?> clazz = classes.get(name);
+            if (clazz == null) {
+                clazz = Class.forName(name);
+                classes.put(name, clazz);
+            }
+            return clazz;
+        }
+    }
 
-                    }
+    private static class RequestExecution {
+        private final RequestInfo request;
+        private final Future<ExecutionResults> future;
+        private Date leaseExpiration;
 
+        private RequestExecution(RequestInfo request, Future<ExecutionResults> future, Date leaseExpiration) {
+            this.request = request;
+            this.future = future;
+            this.leaseExpiration = leaseExpiration;
         }
-        return callbackCache.get(name);
     }
 }
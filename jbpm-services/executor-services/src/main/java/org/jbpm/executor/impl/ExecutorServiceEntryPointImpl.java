@@ -148,6 +148,14 @@ public class ExecutorServiceEntryPointImpl implements ExecutorServiceEntryPoint
         executor.setThreadPoolSize(nroOfThreads);
     }
 
+    public int getLeaseTime() {
+        return executor.getLeaseTime();
+    }
+
+    public void setLeaseTime(int leaseTime) {
+        executor.setLeaseTime(leaseTime);
+    }
+
     public List<RequestInfo> getPendingRequests() {
         return queryService.getPendingRequests();
     }
@@ -45,6 +45,25 @@ public abstract class BasicExecutorBaseTest {
         executorService.destroy();
     }
 
+    @Test
+    public void multipleRequestsExecutionTest() throws InterruptedException {
+        // more requests than polls within the interval, pending work is claimed without waiting
+        for (int i = 0; i < 10; i++) {
+            CommandContext ctxCMD = new CommandContext();
+            ctxCMD.setData("businessKey", UUID.randomUUID().toString());
+            executorService.scheduleRequest("org.jbpm.executor.commands.PrintOutCommand", ctxCMD);
+        }
+
+        waitForFinishedRequests(10, 10000);
+
+        List<RequestInfo> inErrorRequests = executorService.getInErrorRequests();
+        assertEquals(0, inErrorRequests.size());
+        List<RequestInfo> runningRequests = executorService.getRunningRequests();
+        assertEquals(0, runningRequests.size());
+        List<RequestInfo> executedRequests = executorService.getCompletedRequests();
+        assertEquals(10, executedRequests.size());
+    }
+
     @Test
     public void simpleExcecutionTest() throws InterruptedException {
         CommandContext ctxCMD = new CommandContext();
@@ -134,6 +153,43 @@ public abstract class BasicExecutorBaseTest {
 
     }
 
+    @Test
+    public void leaseRenewedWhileCommandRunsTest() throws InterruptedException {
+        // a free worker would claim the request again if its lease was not renewed
+        executorService.destroy();
+        executorService.setThreadPoolSize(2);
+        executorService.setLeaseTime(1);
+        executorService.init();
+
+        CommandContext ctxCMD = new CommandContext();
+        ctxCMD.setData("businessKey", UUID.randomUUID().toString());
+        ctxCMD.setData("duration", 4000);
+        cachedEntities.put((String) ctxCMD.getData("businessKey"), new AtomicLong(0));
+        executorService.scheduleRequest("org.jbpm.executor.LongRunningCommand", ctxCMD);
+
+        waitForFinishedRequests(1, 10000);
+
+        assertEquals(1, ((AtomicLong) cachedEntities.get((String) ctxCMD.getData("businessKey"))).longValue());
+        List<RequestInfo> executedRequests = executorService.getCompletedRequests();
+        assertEquals(1, executedRequests.size());
+        assertNull(executedRequests.get(0).getOwner());
+    }
+
+    @Test
+    public void commandInstancePerRequestTest() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            CommandContext ctxCMD = new CommandContext();
+            ctxCMD.setData("businessKey", UUID.randomUUID().toString());
+            ctxCMD.setData("retries", 0);
+            executorService.scheduleRequest("org.jbpm.executor.SingleUseCommand", ctxCMD);
+        }
+
+        waitForFinishedRequests(3, 10000);
+
+        assertEquals(0, executorService.getInErrorRequests().size());
+        assertEquals(3, executorService.getCompletedRequests().size());
+    }
+
     @Test
     public void cancelRequestTest() throws InterruptedException {
 
@@ -152,6 +208,17 @@ public abstract class BasicExecutorBaseTest {
 
     }
     
+    /**
+     * Waits until the given number of requests are completed or in error.
+     */
+    protected void waitForFinishedRequests(int expected, long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (executorService.getCompletedRequests().size() + executorService.getInErrorRequests().size() < expected
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+    }
+
     public void FIXMEfutureRequestTest() throws InterruptedException {
         CommandContext ctxCMD = new CommandContext();
         ctxCMD.setData("businessKey", UUID.randomUUID().toString());
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Named;
+import org.jbpm.executor.api.Command;
+import org.jbpm.executor.api.CommandContext;
+import org.jbpm.executor.api.ExecutionResults;
+
+/**
+ * Counts its executions for the business key of the request and runs for the number of
+ * milliseconds given as "duration".
+ */
+@Named(value = "LongRunningCmd")
+public class LongRunningCommand implements Command {
+
+    public ExecutionResults execute(CommandContext ctx) throws Exception {
+        String businessKey = (String) ctx.getData("businessKey");
+        ((AtomicLong) BasicExecutorBaseTest.cachedEntities.get(businessKey)).incrementAndGet();
+        Thread.sleep(Long.parseLong(String.valueOf(ctx.getData("duration"))));
+        return new ExecutionResults();
+    }
+}
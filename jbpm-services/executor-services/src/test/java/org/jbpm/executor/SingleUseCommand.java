@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.executor;
+
+import javax.inject.Named;
+import org.jbpm.executor.api.Command;
+import org.jbpm.executor.api.CommandContext;
+import org.jbpm.executor.api.ExecutionResults;
+
+/**
+ * Fails when the same instance is executed twice, as a command keeping state between its
+ * executions would misbehave.
+ */
+@Named(value = "SingleUseCmd")
+public class SingleUseCommand implements Command {
+
+    private boolean executed;
+
+    public ExecutionResults execute(CommandContext ctx) {
+        if (executed) {
+            throw new IllegalStateException("Command instance executed twice");
+        }
+        executed = true;
+        return new ExecutionResults();
+    }
+}
@@ -25,6 +25,7 @@ import org.jbpm.task.impl.TaskQueryServiceImpl;
 import org.jbpm.task.impl.TaskServiceEntryPointImpl;
 import org.jbpm.task.internals.lifecycle.LifeCycleManager;
 import org.jbpm.task.internals.lifecycle.MVELLifeCycleManager;
+import org.jbpm.task.lifecycle.listeners.TaskAssignmentIndexListener;
 import org.jbpm.task.subtask.SubTaskDecorator;
 import org.kie.internal.task.api.TaskAdminService;
 import org.kie.internal.task.api.TaskContentService;
@@ -154,6 +155,11 @@ public class HumanTaskConfigurator {
             configureTaskContentService(pm);
             ((TaskServiceEntryPointImpl)service).setTaskContentService(contentService);
             
+            // Task Assignment Index
+            if (TaskAssignmentIndexListener.isEnabled()) {
+                ((TaskServiceEntryPointImpl)service).registerTaskLifecycleEventListener(new TaskAssignmentIndexListener(pm));
+            }
+            
             // Task Deadlines
             configureTaskDeadlinesService(pm);
     
@@ -1,9 +1,12 @@
 package org.jbpm.task.identity;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -32,6 +35,11 @@ public class AbstractUserGroupCallbackDecorator {
     @Inject
     private UserGroupCallback userGroupCallback;
     private Map<String, Boolean> userGroupsMap = new HashMap<String, Boolean>();
+    
+    // users and groups known to be stored in the task data base, so they are looked up only once
+    private static final int MAX_PROVISIONED = Integer.parseInt(System.getProperty("jbpm.usergroup.provisioned.size", "10000"));
+    private Set<String> provisionedUsers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private Set<String> provisionedGroups = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public void setPm(JbpmServicesPersistenceManager pm) {
         this.pm = pm;
@@ -73,11 +81,17 @@ public class AbstractUserGroupCallbackDecorator {
     }
 
     protected void addUserFromCallbackOperation(String userId) {
+        if (provisionedUsers.contains(userId)) {
+            return;
+        }
         try {
             boolean userExists = pm.find(UserImpl.class, userId) != null;
             if (!StringUtils.isEmpty(userId) && !userExists) {
                 UserImpl user = new UserImpl(userId);
                 pm.persist(user);
+            } else if (userExists) {
+                // only remember users that were found, a persisted one might still be rolled back
+                provisioned(provisionedUsers, userId);
             }
         } catch (Throwable t) {
             //logger.log(Level.SEVERE, "Unable to add user " + userId);
@@ -119,17 +133,29 @@ public class AbstractUserGroupCallbackDecorator {
     }
 
     protected void addGroupFromCallbackOperation(String groupId) {
+        if (provisionedGroups.contains(groupId)) {
+            return;
+        }
         try {
             boolean groupExists = pm.find(GroupImpl.class, groupId) != null;
             if (!StringUtils.isEmpty(groupId) && !groupExists) {
                 GroupImpl group = new GroupImpl(groupId);
                 pm.persist(group);
+            } else if (groupExists) {
+                provisioned(provisionedGroups, groupId);
             }
         } catch (Throwable t) {
             //logger.log(Level.WARNING, "UserGroupCallback has not been registered.");
         }
     }
 
+    private static void provisioned(Set<String> provisioned, String id) {
+        if (provisioned.size() >= MAX_PROVISIONED) {
+            provisioned.clear();
+        }
+        provisioned.add(id);
+    }
+
     protected void doCallbackOperationForTaskData(TaskData data) {
 
         if (data.getActualOwner() != null) {
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.identity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.inject.Alternative;
+
+import org.kie.internal.task.api.UserGroupCallback;
+
+/**
+ * User group callback that caches the answers of another callback, so the identity store
+ * (LDAP, data base, ...) is not asked again for every task operation.
+ * <br/>
+ * Every answer is kept for a limited time: positive answers for <code>ttl</code> milliseconds
+ * and negative ones (unknown users or groups, users without groups) for <code>negativeTtl</code>
+ * milliseconds. At most <code>maxSize</code> answers are kept, the least recently used ones are
+ * evicted first.
+ * <br/>
+ * Following system properties can be used to change the defaults:
+ * <ul>
+ *  <li>jbpm.usergroup.cache.ttl - time to live of positive answers in milliseconds, default 60000</li>
+ *  <li>jbpm.usergroup.cache.negative.ttl - time to live of negative answers in milliseconds, default 10000</li>
+ *  <li>jbpm.usergroup.cache.size - maximum number of cached answers, default 10000</li>
+ * </ul>
+ * Number of cache hits and misses is available via {@link #getHitCount()} and {@link #getMissCount()}.
+ */
+@Alternative
+public class CachingUserGroupCallback implements UserGroupCallback {
+
+    public static final String TTL = "jbpm.usergroup.cache.ttl";
+    public static final String NEGATIVE_TTL = "jbpm.usergroup.cache.negative.ttl";
+    public static final String MAX_SIZE = "jbpm.usergroup.cache.size";
+
+    private static final Object NO_GROUPS = new Object();
+
+    private UserGroupCallback delegate;
+
+    private long ttl = Long.parseLong(System.getProperty(TTL, "60000"));
+    private long negativeTtl = Long.parseLong(System.getProperty(NEGATIVE_TTL, "10000"));
+    private int maxSize = Integer.parseInt(System.getProperty(MAX_SIZE, "10000"));
+
+    private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingUserGroupCallback() {
+    }
+
+    public CachingUserGroupCallback(UserGroupCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    public CachingUserGroupCallback(UserGroupCallback delegate, long ttl, long negativeTtl, int maxSize) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+    }
+
+    public boolean existsUser(String userId) {
+        String key = "u:" + userId;
+        Object value = get(key);
+        if (value == null) {
+            value = delegate.existsUser(userId);
+            put(key, value, (Boolean) value);
+        }
+        return (Boolean) value;
+    }
+
+    public boolean existsGroup(String groupId) {
+        String key = "g:" + groupId;
+        Object value = get(key);
+        if (value == null) {
+            value = delegate.existsGroup(groupId);
+            put(key, value, (Boolean) value);
+        }
+        return (Boolean) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<String> getGroupsForUser(String userId, List<String> groupIds, List<String> allExistingGroupIds) {
+        String key = "m:" + userId + ":" + groupIds + ":" + allExistingGroupIds;
+        Object value = get(key);
+        if (value == null) {
+            List<String> groups = delegate.getGroupsForUser(userId, groupIds, allExistingGroupIds);
+            value = groups == null ? NO_GROUPS : Collections.unmodifiableList(new ArrayList<String>(groups));
+            put(key, value, groups != null && !groups.isEmpty());
+        }
+        // callers may modify the returned list
+        return value == NO_GROUPS ? null : new ArrayList<String>((List<String>) value);
+    }
+
+    /**
+     * Removes all cached answers about the given user.
+     */
+    public void invalidateUser(String userId) {
+        synchronized (cache) {
+            cache.remove("u:" + userId);
+            String prefix = "m:" + userId + ":";
+            for (Iterator<String> it = cache.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached answer about the given group.
+     */
+    public void invalidateGroup(String groupId) {
+        synchronized (cache) {
+            cache.remove("g:" + groupId);
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public UserGroupCallback getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(UserGroupCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    private Object get(String key) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry != null && entry.expiration < System.currentTimeMillis()) {
+                cache.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    private void put(String key, Object value, boolean positive) {
+        long expiration = System.currentTimeMillis() + (positive ? ttl : negativeTtl);
+        synchronized (cache) {
+            cache.put(key, new Entry(value, expiration));
+        }
+    }
+
+    private static class Entry {
+
+        private final Object value;
+        private final long expiration;
+
+        Entry(Object value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
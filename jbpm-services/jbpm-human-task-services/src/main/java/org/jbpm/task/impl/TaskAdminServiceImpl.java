@@ -16,6 +16,7 @@ import org.jboss.seam.transaction.Transactional;
 import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
 import org.jbpm.task.impl.model.ContentImpl;
 import org.jbpm.task.impl.model.TaskImpl;
+import org.jbpm.task.lifecycle.listeners.TaskAssignmentIndexListener;
 import org.kie.internal.task.api.TaskAdminService;
 import org.kie.internal.task.api.model.Status;
 import org.kie.internal.task.api.model.TaskSummary;
@@ -128,6 +129,14 @@ public class TaskAdminServiceImpl implements TaskAdminService {
             pm.remove(t);
             count++;
         }
+        pm.executeUpdateString("delete from TaskAssignmentImpl");
         return count;
     }
+
+    /**
+     * Indexes all open tasks, see {@link TaskAssignmentIndexListener#rebuildIndex(JbpmServicesPersistenceManager, int)}.
+     */
+    public int rebuildTaskAssignmentIndex(int batchSize) {
+        return TaskAssignmentIndexListener.rebuildIndex(pm, batchSize);
+    }
 }
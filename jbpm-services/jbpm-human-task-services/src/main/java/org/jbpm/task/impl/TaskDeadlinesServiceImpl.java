@@ -18,6 +18,7 @@ package org.jbpm.task.impl;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -38,10 +39,12 @@ import javax.inject.Inject;
 
 import org.jboss.seam.transaction.Transactional;
 import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.shared.services.impl.JbpmServicesPersistenceManagerImpl;
 import org.jbpm.shared.services.cdi.Startup;
 import org.jbpm.task.impl.model.ContentImpl;
 import org.jbpm.task.impl.model.DeadlineImpl;
 import org.jbpm.task.impl.model.TaskImpl;
+import org.jbpm.task.lifecycle.listeners.TaskAssignmentIndexListener;
 import org.jbpm.task.query.DeadlineSummaryImpl;
 import org.jbpm.task.utils.ContentMarshallerHelper;
 import org.kie.api.runtime.Environment;
@@ -57,17 +60,32 @@ import org.kie.internal.task.api.model.TaskData;
 
 
 /**
- *
- *
+ * Schedules the escalation of task deadlines.
+ * </p>
+ * Only the deadlines that are due within the next {@link #WINDOW_PROPERTY} milliseconds are kept
+ * in memory. The window is refilled periodically from the unescalated deadlines ordered by due date,
+ * which are read in pages of {@link #BATCH_SIZE_PROPERTY}; deadlines that are already due are escalated
+ * right away, page by page. Every deadline is claimed by marking it as escalated with a conditional
+ * update before it is escalated, so several nodes sharing the same database do not escalate it twice.
  */
 @Transactional
 @ApplicationScoped
 @Startup
 public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
 
+    public static final String WINDOW_PROPERTY = "jbpm.task.deadlines.window";
+    public static final String BATCH_SIZE_PROPERTY = "jbpm.task.deadlines.batch.size";
+
+    private final long window = Long.parseLong(System.getProperty(WINDOW_PROPERTY, "600000"));
+    private final int batchSize = Integer.parseInt(System.getProperty(BATCH_SIZE_PROPERTY, "100"));
+
     private ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(3);
     private Map<Long, List<ScheduledFuture<ScheduledTaskDeadline>>> startScheduledTaskDeadlines = new ConcurrentHashMap<Long, List<ScheduledFuture<ScheduledTaskDeadline>>>();
     private Map<Long, List<ScheduledFuture<ScheduledTaskDeadline>>> endScheduledTaskDeadlines = new ConcurrentHashMap<Long, List<ScheduledFuture<ScheduledTaskDeadline>>>();
+    private Map<Long, ScheduledFuture<ScheduledTaskDeadline>> scheduledDeadlines = new ConcurrentHashMap<Long, ScheduledFuture<ScheduledTaskDeadline>>();
+
+    private volatile long windowEnd;
+    private ScheduledFuture<?> refillTask;
 
     @Inject 
     private JbpmServicesPersistenceManager pm;
@@ -96,30 +114,134 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
     
 
     @PostConstruct
-    public void init() {
+    public synchronized void init() {
 
        // UserTransaction ut = setupEnvironment();
         
+        refill();
+        if (refillTask != null) {
+            refillTask.cancel(false);
+        }
+        // refill twice per window so deadlines are scheduled well before they are due
+        long period = Math.max(window / 2, 1);
+        refillTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    refill();
+                } catch (Throwable e) {
+                    logger.log(Level.SEVERE, "Error while loading task deadlines", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        //completeOperation(ut,((JbpmServicesPersistenceManagerImpl)pm).getEm());
+    }
+
+    /**
+     * Schedules all unescalated deadlines due within the next window and escalates the ones that
+     * are already due.
+     */
+    protected void refill() {
         long now = System.currentTimeMillis();
-        List<DeadlineSummaryImpl> resultList = (List<DeadlineSummaryImpl>)pm.queryInTransaction("UnescalatedStartDeadlines");
-        for (DeadlineSummaryImpl summary : resultList) {
-            long delay = summary.getDate().getTime() - now;
-            schedule(summary.getTaskId(), summary.getDeadlineId(), delay, DeadlineType.START);
+        // move the window first, deadlines created from now on are scheduled directly
+        windowEnd = now + window;
+        refill("UnescalatedStartDeadlinesDueBefore", DeadlineType.START, now);
+        refill("UnescalatedEndDeadlinesDueBefore", DeadlineType.END, now);
+        purge(startScheduledTaskDeadlines);
+        purge(endScheduledTaskDeadlines);
+    }
 
+    private void refill(String queryName, DeadlineType type, long now) {
+        Date until = new Date(windowEnd);
+        Date lastDate = new Date(0);
+        long lastDeadlineId = -1;
+        while (true) {
+            Map<String, Object> params = pm.addParametersToMap("until", until, "lastDate", lastDate, "lastDeadlineId", lastDeadlineId,
+                    JbpmServicesPersistenceManagerImpl.MAX_RESULTS, batchSize);
+            List<DeadlineSummaryImpl> resultList = (List<DeadlineSummaryImpl>) pm.queryWithParametersInTransaction(queryName, params);
+            for (DeadlineSummaryImpl summary : resultList) {
+                long delay = summary.getDate().getTime() - now;
+                if (delay > 0) {
+                    schedule(summary.getTaskId(), summary.getDeadlineId(), delay, type);
+                } else if (!scheduledDeadlines.containsKey(summary.getDeadlineId())) {
+                    try {
+                        executeEscalatedDeadline(summary.getTaskId(), summary.getDeadlineId(), type);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "Error while escalating deadline " + summary.getDeadlineId() + " of task " + summary.getTaskId(), e);
+                    }
+                }
+            }
+            if (resultList.size() < batchSize) {
+                break;
+            }
+            DeadlineSummaryImpl last = resultList.get(resultList.size() - 1);
+            lastDate = last.getDate();
+            lastDeadlineId = last.getDeadlineId();
         }
-        
-        resultList = (List<DeadlineSummaryImpl>)pm.queryInTransaction("UnescalatedEndDeadlines");
-        for (DeadlineSummaryImpl summary : resultList) {
-            long delay = summary.getDate().getTime() - now;
-            schedule(summary.getTaskId(), summary.getDeadlineId(), delay, DeadlineType.END);
+    }
+
+    private void purge(Map<Long, List<ScheduledFuture<ScheduledTaskDeadline>>> scheduledTaskDeadlines) {
+        Iterator<List<ScheduledFuture<ScheduledTaskDeadline>>> it = scheduledTaskDeadlines.values().iterator();
+        while (it.hasNext()) {
+            List<ScheduledFuture<ScheduledTaskDeadline>> knownFutures = it.next();
+            for (ScheduledFuture<ScheduledTaskDeadline> scheduled : knownFutures) {
+                if (scheduled.isDone()) {
+                    knownFutures.remove(scheduled);
+                }
+            }
+            if (knownFutures.isEmpty()) {
+                it.remove();
+            }
         }
-        //completeOperation(ut,((JbpmServicesPersistenceManagerImpl)pm).getEm());
     }
 
-    private void executeEscalatedDeadline(long taskId, long deadlineId, DeadlineType type) {
-       // UserTransaction ut = setupEnvironment();
-       // EntityManager entityManager = getEntityManager();
-        
+    /**
+     * Claims and escalates the deadline in one transaction, so a failed escalation leaves the
+     * deadline unescalated. When the transaction is not owned here (it was started by the caller or
+     * there is no transaction manager) the claim is released explicitly instead.
+     */
+    protected void executeEscalatedDeadline(long taskId, long deadlineId, DeadlineType type) {
+        boolean txOwner = beginTransaction();
+        boolean claimed = false;
+        try {
+            // claim the deadline, it might have been escalated by another node already
+            claimed = pm.executeUpdate("ClaimDeadline", pm.addParametersToMap("deadlineId", deadlineId)) > 0;
+            if (claimed) {
+                escalate(taskId, deadlineId, type);
+            }
+            endTransaction(txOwner);
+        } catch (RuntimeException e) {
+            rollBackTransaction(txOwner);
+            if (claimed && !txOwner) {
+                try {
+                    pm.executeUpdate("UnclaimDeadline", pm.addParametersToMap("deadlineId", deadlineId));
+                } catch (RuntimeException ue) {
+                    logger.log(Level.SEVERE, "Unable to release the claim of deadline " + deadlineId + ", it will not be escalated", ue);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private boolean beginTransaction() {
+        if (pm instanceof JbpmServicesPersistenceManagerImpl) {
+            return ((JbpmServicesPersistenceManagerImpl) pm).beginTransaction();
+        }
+        return false;
+    }
+
+    private void endTransaction(boolean txOwner) {
+        if (pm instanceof JbpmServicesPersistenceManagerImpl) {
+            ((JbpmServicesPersistenceManagerImpl) pm).endTransaction(txOwner);
+        }
+    }
+
+    private void rollBackTransaction(boolean txOwner) {
+        if (pm instanceof JbpmServicesPersistenceManagerImpl) {
+            ((JbpmServicesPersistenceManagerImpl) pm).rollBackTransaction(txOwner);
+        }
+    }
+
+    private void escalate(long taskId, long deadlineId, DeadlineType type) {
         TaskImpl task = (TaskImpl) pm.find(TaskImpl.class, taskId);
         Deadline deadline = (DeadlineImpl) pm.find(DeadlineImpl.class, deadlineId);
 
@@ -167,6 +289,7 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
                         List potentialOwners = new ArrayList(reassignment.getPotentialOwners());
                         task.getPeopleAssignments().setPotentialOwners(potentialOwners);
                         task.getTaskData().setActualOwner(null);
+                        TaskAssignmentIndexListener.updateIndex(pm, task);
 
                     }
                     for (Notification notification : escalation.getNotifications()) {
@@ -178,12 +301,22 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
                 }
             }
         }
-       // completeOperation(ut, entityManager);
         deadline.setEscalated(true);
     }
 
     public void schedule(long taskId, long deadlineId, long delay, DeadlineType type) {
+        if (refillTask != null && System.currentTimeMillis() + delay >= windowEnd) {
+            // outside of the current window, it will be scheduled when the window is refilled
+            return;
+        }
+        if (scheduledDeadlines.containsKey(deadlineId)) {
+            return;
+        }
         ScheduledFuture<ScheduledTaskDeadline> scheduled = scheduler.schedule(new ScheduledTaskDeadline(taskId, deadlineId, type), delay, TimeUnit.MILLISECONDS);
+        if (scheduledDeadlines.put(deadlineId, scheduled) != null) {
+            // scheduled concurrently by a refill, the claim makes sure it is escalated only once
+            logger.log(Level.FINE, "Deadline " + deadlineId + " scheduled twice");
+        }
         
         List<ScheduledFuture<ScheduledTaskDeadline>> knownFutures = null;
         if (type == DeadlineType.START) {
@@ -205,9 +338,9 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
     public void unschedule(long taskId, DeadlineType type) {
         List<ScheduledFuture<ScheduledTaskDeadline>> knownFutures = null;
         if (type == DeadlineType.START) {
-            knownFutures = this.startScheduledTaskDeadlines.get(taskId);
+            knownFutures = this.startScheduledTaskDeadlines.remove(taskId);
         } else if (type == DeadlineType.END) {
-            knownFutures = this.endScheduledTaskDeadlines.get(taskId);
+            knownFutures = this.endScheduledTaskDeadlines.remove(taskId);
         }
         if (knownFutures == null) {
             return;
@@ -219,6 +352,7 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
                 if (!scheduled.isDone() && !scheduled.isCancelled()) {
                     scheduled.cancel(true);
                 }
+                scheduledDeadlines.values().remove(scheduled);
 
             } catch (Exception e) {
                 logger.log(Level.SEVERE," XXX :Error while cancelling scheduled deadline task for Task with id " + taskId + " -> " + e);
@@ -263,9 +397,11 @@ public class TaskDeadlinesServiceImpl implements TaskDeadlinesService {
         }
 
         public Object call() throws Exception {
-
-            executeEscalatedDeadline(taskId, deadlineId, type);
-
+            try {
+                executeEscalatedDeadline(taskId, deadlineId, type);
+            } finally {
+                scheduledDeadlines.remove(deadlineId);
+            }
             return null;
         }
 
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,10 +32,15 @@ import javax.inject.Named;
 
 import org.jboss.seam.transaction.Transactional;
 import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.shared.services.impl.JbpmServicesPersistenceManagerImpl;
 import org.jbpm.task.impl.model.TaskImpl;
+import org.jbpm.task.lifecycle.listeners.TaskAssignmentIndexListener;
+import org.jbpm.task.query.TaskSummaryImpl;
 import org.kie.internal.task.api.TaskQueryService;
 import org.kie.internal.task.api.model.Status;
+import org.kie.internal.task.api.model.SubTasksStrategy;
 import org.kie.internal.task.api.model.TaskSummary;
+import org.kie.internal.task.api.model.User;
 
 /**
  *
@@ -151,6 +157,62 @@ public class TaskQueryServiceImpl implements TaskQueryService {
                                                     "firstResult", firstResult, "maxResults", maxResults));
     }
 
+    /**
+     * Returns one page of the open tasks the given user or one of the given groups is potential owner of,
+     * newest first, read from the task assignment index (see {@link TaskAssignmentIndexListener}) with a
+     * single query. Instead of an offset, the creation date and id of the last task of the previous page
+     * are given, both <code>null</code> for the first page, so every page costs the same.
+     * The potential owners of the returned summaries are the given user and groups the task is assigned to.
+     */
+    public List<TaskSummary> getTasksAssignedAsPotentialOwner(String userId, List<String> groupIds, String language,
+            Date lastCreatedOn, Long lastTaskId, int maxResults) {
+        if (!TaskAssignmentIndexListener.isEnabled()) {
+            throw new IllegalStateException("Task assignment index is not enabled, set " + TaskAssignmentIndexListener.ENABLED_PROPERTY + " to true");
+        }
+        List<String> entityIds = new ArrayList<String>();
+        if (userId != null) {
+            entityIds.add(userId);
+        }
+        if (groupIds != null) {
+            entityIds.addAll(groupIds);
+        }
+        if (entityIds.isEmpty()) {
+            return new ArrayList<TaskSummary>();
+        }
+        // a task has at most one row per entity, so this many rows always contain maxResults complete tasks
+        int maxRows = maxResults * entityIds.size();
+        Map<String, Object> params = pm.addParametersToMap("entityIds", entityIds, "status", new ArrayList<Status>(TaskAssignmentIndexListener.OPEN_STATUSES),
+                "language", language, JbpmServicesPersistenceManagerImpl.MAX_RESULTS, maxRows);
+        String queryName = "TaskAssignmentsForEntities";
+        if (lastCreatedOn != null && lastTaskId != null) {
+            queryName = "TaskAssignmentsForEntitiesAfter";
+            params.put("lastCreatedOn", lastCreatedOn);
+            params.put("lastTaskId", lastTaskId);
+        }
+        List<Object[]> rows = (List<Object[]>) pm.queryWithParametersInTransaction(queryName, params);
+        
+        Map<Long, TaskSummary> tasks = new LinkedHashMap<Long, TaskSummary>();
+        for (Object[] row : rows) {
+            Long taskId = (Long) row[1];
+            TaskSummary summary = tasks.get(taskId);
+            if (summary == null) {
+                if (tasks.size() == maxResults) {
+                    break;
+                }
+                summary = new TaskSummaryImpl(taskId, (Long) row[2], (String) row[3], (String) row[4], (String) row[5],
+                        (Status) row[6], (Integer) row[7], (Boolean) row[8], (User) row[9], (User) row[10],
+                        (Date) row[11], (Date) row[12], (Date) row[13], (String) row[14], (Integer) row[15],
+                        (SubTasksStrategy) row[16], (Long) row[17]);
+                summary.setPotentialOwners(new ArrayList<String>());
+                tasks.put(taskId, summary);
+            }
+            if (!summary.getPotentialOwners().contains((String) row[0])) {
+                summary.getPotentialOwners().add((String) row[0]);
+            }
+        }
+        return new ArrayList<TaskSummary>(tasks.values());
+    }
+
     public List<TaskSummary> getTasksAssignedAsRecipient(String userId, String language) {
         return (List<TaskSummary>) pm.queryWithParametersInTransaction("TasksAssignedAsRecipient", 
                 pm.addParametersToMap("userId", userId, "language", language));
@@ -34,12 +34,15 @@ import javax.persistence.OneToMany;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Index;
 import org.jbpm.task.utils.CollectionUtils;
 import org.kie.internal.task.api.model.Escalation;
 import org.kie.internal.task.api.model.I18NText;
 
 @Entity
 @Table(name="Deadline")
+@org.hibernate.annotations.Table(appliesTo="Deadline", indexes={
+    @Index(name="IDX_Deadline_Escalated_Date", columnNames={"escalated", "deadline_date"})})
 @SequenceGenerator(name="deadlineIdSeq", sequenceName="DEADLINE_ID_SEQ", allocationSize=1)
 public class DeadlineImpl implements org.kie.internal.task.api.model.Deadline {
 
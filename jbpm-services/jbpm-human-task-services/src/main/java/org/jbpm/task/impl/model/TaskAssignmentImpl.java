@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.impl.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.annotations.Index;
+import org.kie.internal.task.api.model.Status;
+
+/**
+ * Denormalized row of the task assignment index: one row per potential owner (user or group)
+ * of every task that is still open, so inbox queries do not have to go through the people
+ * assignments of all tasks.
+ */
+@Entity
+@Table(name="TaskAssignment")
+@org.hibernate.annotations.Table(appliesTo="TaskAssignment", indexes={
+    @Index(name="IDX_TaskAssignment_Entity", columnNames={"entityId", "status", "createdOn", "taskId"}),
+    @Index(name="IDX_TaskAssignment_Task", columnNames={"taskId"})})
+@SequenceGenerator(name="taskAssignmentIdSeq", sequenceName="TASK_ASSIGNMENT_ID_SEQ", allocationSize=1)
+public class TaskAssignmentImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO, generator="taskAssignmentIdSeq")
+    private Long id;
+
+    private String entityId;
+
+    private long taskId;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private int priority;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdOn;
+
+    public TaskAssignmentImpl() {
+    }
+
+    public TaskAssignmentImpl(String entityId, long taskId, Status status, int priority, Date createdOn) {
+        this.entityId = entityId;
+        this.taskId = taskId;
+        this.status = status;
+        this.priority = priority;
+        this.createdOn = createdOn;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(long taskId) {
+        this.taskId = taskId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public Date getCreatedOn() {
+        return createdOn;
+    }
+
+    public void setCreatedOn(Date createdOn) {
+        this.createdOn = createdOn;
+    }
+}
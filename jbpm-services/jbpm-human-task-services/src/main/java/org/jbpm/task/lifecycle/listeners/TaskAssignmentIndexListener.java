@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.lifecycle.listeners;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
+import javax.inject.Inject;
+
+import org.jboss.seam.transaction.Transactional;
+import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.shared.services.impl.JbpmServicesPersistenceManagerImpl;
+import org.jbpm.shared.services.impl.events.JbpmServicesEventListener;
+import org.jbpm.task.events.AfterTaskActivatedEvent;
+import org.jbpm.task.events.AfterTaskAddedEvent;
+import org.jbpm.task.events.AfterTaskClaimedEvent;
+import org.jbpm.task.events.AfterTaskCompletedEvent;
+import org.jbpm.task.events.AfterTaskDelegatedEvent;
+import org.jbpm.task.events.AfterTaskExitedEvent;
+import org.jbpm.task.events.AfterTaskFailedEvent;
+import org.jbpm.task.events.AfterTaskForwardedEvent;
+import org.jbpm.task.events.AfterTaskNominatedEvent;
+import org.jbpm.task.events.AfterTaskReleasedEvent;
+import org.jbpm.task.events.AfterTaskResumedEvent;
+import org.jbpm.task.events.AfterTaskSkippedEvent;
+import org.jbpm.task.events.AfterTaskStartedEvent;
+import org.jbpm.task.events.AfterTaskStoppedEvent;
+import org.jbpm.task.events.AfterTaskSuspendedEvent;
+import org.jbpm.task.impl.model.TaskAssignmentImpl;
+import org.jbpm.task.impl.model.TaskImpl;
+import org.kie.internal.task.api.model.OrganizationalEntity;
+import org.kie.internal.task.api.model.Status;
+import org.kie.internal.task.api.model.Task;
+
+/**
+ * Keeps the task assignment index (see {@link TaskAssignmentImpl}) up to date: after every
+ * lifecycle operation the rows of the task are replaced by one row per potential owner, or removed
+ * once the task is no longer open.
+ * <br/>
+ * The index is only maintained when the {@link #ENABLED_PROPERTY} system property is set to
+ * <code>true</code>. Tasks that were not changed since it was enabled are only part of it once
+ * {@link #rebuildIndex(JbpmServicesPersistenceManager, int)} has been run.
+ */
+@ApplicationScoped
+@Transactional
+public class TaskAssignmentIndexListener extends JbpmServicesEventListener<Task> {
+
+    public static final String ENABLED_PROPERTY = "jbpm.task.assignment.index";
+
+    public static final Set<Status> OPEN_STATUSES = EnumSet.of(Status.Created, Status.Ready, Status.Reserved, Status.InProgress, Status.Suspended);
+
+    @Inject
+    private JbpmServicesPersistenceManager pm;
+
+    public TaskAssignmentIndexListener() {
+    }
+
+    public TaskAssignmentIndexListener(JbpmServicesPersistenceManager pm) {
+        this.pm = pm;
+    }
+
+    public void setPm(JbpmServicesPersistenceManager pm) {
+        this.pm = pm;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Replaces the index rows of the given task with the current potential owners.
+     */
+    public static void updateIndex(JbpmServicesPersistenceManager pm, Task task) {
+        if (!isEnabled()) {
+            return;
+        }
+        pm.executeUpdate("DeleteTaskAssignments", pm.addParametersToMap("taskId", task.getId()));
+        Status status = task.getTaskData().getStatus();
+        if (!OPEN_STATUSES.contains(status) || task.getPeopleAssignments() == null
+                || task.getPeopleAssignments().getPotentialOwners() == null) {
+            return;
+        }
+        Date createdOn = task.getTaskData().getCreatedOn();
+        if (createdOn == null) {
+            createdOn = new Date();
+        }
+        Set<String> entityIds = new HashSet<String>();
+        for (OrganizationalEntity entity : task.getPeopleAssignments().getPotentialOwners()) {
+            if (entityIds.add(entity.getId())) {
+                pm.persist(new TaskAssignmentImpl(entity.getId(), task.getId(), status, task.getPriority(), createdOn));
+            }
+        }
+    }
+
+    /**
+     * Indexes every open task, to be run once when the index is enabled on a database that already holds
+     * tasks. Tasks are read by increasing id in batches of the given size.
+     *
+     * @return the number of tasks indexed
+     */
+    public static int rebuildIndex(JbpmServicesPersistenceManager pm, int batchSize) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Task assignment index is not enabled, set " + ENABLED_PROPERTY + " to true");
+        }
+        int count = 0;
+        long lastTaskId = -1;
+        while (true) {
+            List<Long> taskIds = (List<Long>) pm.queryWithParametersInTransaction("OpenTaskIdsAfter",
+                    pm.addParametersToMap("status", new ArrayList<Status>(OPEN_STATUSES), "lastTaskId", lastTaskId,
+                            JbpmServicesPersistenceManagerImpl.MAX_RESULTS, batchSize));
+            for (Long taskId : taskIds) {
+                updateIndex(pm, pm.find(TaskImpl.class, taskId));
+                lastTaskId = taskId;
+            }
+            count += taskIds.size();
+            if (taskIds.size() < batchSize) {
+                return count;
+            }
+        }
+    }
+
+    public void afterTaskAddedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskAddedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskActivatedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskActivatedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskClaimedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskClaimedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskReleasedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskReleasedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskStartedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskStartedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskStoppedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskStoppedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskSuspendedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskSuspendedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskResumedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskResumedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskDelegatedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskDelegatedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskForwardedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskForwardedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskNominatedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskNominatedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskCompletedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskCompletedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskFailedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskFailedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskSkippedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskSkippedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+
+    public void afterTaskExitedEvent(@Observes(notifyObserver = Reception.ALWAYS) @AfterTaskExitedEvent Task ti) {
+        updateIndex(pm, ti);
+    }
+}
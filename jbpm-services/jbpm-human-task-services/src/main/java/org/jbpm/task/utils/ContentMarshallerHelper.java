@@ -18,8 +18,13 @@ package org.jbpm.task.utils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.drools.core.marshalling.impl.ClassObjectMarshallingStrategyAcceptor;
 import org.drools.core.marshalling.impl.MarshallerReaderContext;
@@ -47,6 +52,16 @@ public class ContentMarshallerHelper {
 
     private static final Logger logger = LoggerFactory.getLogger(ContentMarshallerHelper.class);
 
+    private static final ObjectMarshallingStrategyStore DEFAULT_STRATEGY_STORE = new MarshallingConfigurationImpl(
+            new ObjectMarshallingStrategy[]{new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)}, false, false)
+            .getObjectMarshallingStrategyStore();
+
+    // stores refer to their strategies, so they are only softly reachable to let the keys go
+    private static final Map<ObjectMarshallingStrategy[], SoftReference<ObjectMarshallingStrategyStore>> strategyStores =
+            Collections.synchronizedMap(new WeakHashMap<ObjectMarshallingStrategy[], SoftReference<ObjectMarshallingStrategyStore>>());
+
+    private static volatile ExtensionRegistry extensionRegistry;
+
     public static ContentDataImpl marshal(Object o, Environment env) {
         MarshallerWriteContext context = null;
         ContentDataImpl content = null;
@@ -79,23 +94,24 @@ public class ContentMarshallerHelper {
     }
 
     public static Object unmarshall(byte[] content, Environment env, ClassLoader classloader) {
+        return unmarshall(new ByteArrayInputStream(content), env, classloader);
+    }
+
+    /**
+     * Reads content written by {@link #marshallContent(Object, Environment, OutputStream)} from the
+     * stream without copying it into an array first.
+     */
+    public static Object unmarshall(InputStream stream, Environment env, ClassLoader classloader) {
         MarshallerReaderContext context = null;
         try {
-            ByteArrayInputStream stream = new ByteArrayInputStream(content);
-            MarshallingConfigurationImpl marshallingConfigurationImpl = null;
-            if (env != null) {
-                marshallingConfigurationImpl = new MarshallingConfigurationImpl((ObjectMarshallingStrategy[]) env.get(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES), false, false);
-            } else {
-                marshallingConfigurationImpl = new MarshallingConfigurationImpl(new ObjectMarshallingStrategy[]{new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)}, false, false);
-            }
-            ObjectMarshallingStrategyStore objectMarshallingStrategyStore = marshallingConfigurationImpl.getObjectMarshallingStrategyStore();
+            ObjectMarshallingStrategyStore objectMarshallingStrategyStore = getStrategyStore(env);
             context = new MarshallerReaderContext(stream, null, null, objectMarshallingStrategyStore, null, env);
             if (classloader != null) {
                 context.classLoader = classloader;
             } else {
                 context.classLoader = ContentMarshallerHelper.class.getClassLoader();
             }
-            ExtensionRegistry registry = PersisterHelper.buildRegistry(context, null);
+            ExtensionRegistry registry = getRegistry(context);
             Header _header = PersisterHelper.readFromStreamWithHeaderPreloaded(context, registry);
             Variable parseFrom = JBPMMessages.Variable.parseFrom(_header.getPayload(), registry);
             Object value = ProtobufProcessMarshaller.unmarshallVariableValue(context, parseFrom);
@@ -115,42 +131,71 @@ public class ContentMarshallerHelper {
         return null;
     }
 
-    private static byte[] marshallContent(Environment env, Object o) {
-        MarshallerWriteContext context;
-        try {
-            MarshallingConfigurationImpl marshallingConfigurationImpl = null;
-            if (env != null) {
-                marshallingConfigurationImpl = new MarshallingConfigurationImpl((ObjectMarshallingStrategy[]) env.get(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES), false, false);
-            } else {
-                marshallingConfigurationImpl = new MarshallingConfigurationImpl(new ObjectMarshallingStrategy[]{new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)}, false, false);
-            }
-            ObjectMarshallingStrategyStore objectMarshallingStrategyStore = marshallingConfigurationImpl.getObjectMarshallingStrategyStore();
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-
-            context = new MarshallerWriteContext(stream, null, null, null, objectMarshallingStrategyStore, env);
-            Variable marshallVariable = null;
-            if (o instanceof Map) {
-                marshallVariable = ProtobufProcessMarshaller.marshallVariablesMap(
-                        context,
-                        (Map<String, Object>) o);
-            } else {
-                marshallVariable = ProtobufProcessMarshaller.marshallVariable(
-                        context,
-                        "results",
-                        o);
-            }
-            PersisterHelper.writeToStreamWithHeader(
+    /**
+     * Writes the content to the given stream instead of returning it as an array, the stream is
+     * flushed but not closed. Contents are still held in memory while they are written, large documents
+     * should be kept out of them with a {@link FileSystemContentStoreStrategy}.
+     */
+    public static void marshallContent(Object o, Environment env, OutputStream stream) throws IOException {
+        ObjectMarshallingStrategyStore objectMarshallingStrategyStore = getStrategyStore(env);
+        MarshallerWriteContext context = new MarshallerWriteContext(stream, null, null, null, objectMarshallingStrategyStore, env);
+        Variable marshallVariable = null;
+        if (o instanceof Map) {
+            marshallVariable = ProtobufProcessMarshaller.marshallVariablesMap(
                     context,
-                    marshallVariable);
-
-            context.close();
-
+                    (Map<String, Object>) o);
+        } else {
+            marshallVariable = ProtobufProcessMarshaller.marshallVariable(
+                    context,
+                    "results",
+                    o);
+        }
+        PersisterHelper.writeToStreamWithHeader(
+                context,
+                marshallVariable);
 
+        context.flush();
+    }
 
+    private static byte[] marshallContent(Environment env, Object o) {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            marshallContent(o, env, stream);
             return stream.toByteArray();
         } catch (IOException ex) {
             ex.printStackTrace();
         }
         return null;
     }
+
+    /**
+     * Returns the strategy store for the strategies of the environment, stores are created once
+     * per strategies array and kept as long as the environment holds on to it.
+     */
+    private static ObjectMarshallingStrategyStore getStrategyStore(Environment env) {
+        if (env == null) {
+            return DEFAULT_STRATEGY_STORE;
+        }
+        ObjectMarshallingStrategy[] strategies = (ObjectMarshallingStrategy[]) env.get(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES);
+        if (strategies == null) {
+            return new MarshallingConfigurationImpl(strategies, false, false).getObjectMarshallingStrategyStore();
+        }
+        SoftReference<ObjectMarshallingStrategyStore> reference = strategyStores.get(strategies);
+        ObjectMarshallingStrategyStore store = reference == null ? null : reference.get();
+        if (store == null) {
+            store = new MarshallingConfigurationImpl(strategies, false, false).getObjectMarshallingStrategyStore();
+            strategyStores.put(strategies, new SoftReference<ObjectMarshallingStrategyStore>(store));
+        }
+        return store;
+    }
+
+    private static ExtensionRegistry getRegistry(MarshallerReaderContext context) {
+        // no process marshaller registers extensions, so the registry is the same for every content
+        ExtensionRegistry registry = extensionRegistry;
+        if (registry == null) {
+            registry = PersisterHelper.buildRegistry(context, null);
+            extensionRegistry = registry;
+        }
+        return registry;
+    }
 }
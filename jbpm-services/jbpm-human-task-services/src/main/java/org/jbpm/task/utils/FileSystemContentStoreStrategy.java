@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.UUID;
+
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.marshalling.ObjectMarshallingStrategyAcceptor;
+
+/**
+ * Marshalling strategy that keeps the objects it accepts out of the task content: they are serialized
+ * directly to a file of the store directory and only the name of that file is marshalled, so the
+ * <code>Content</code> row holds a reference of a few bytes whatever the size of the object.
+ * </p>
+ * Register it in the {@link org.kie.api.runtime.EnvironmentName#OBJECT_MARSHALLING_STRATEGIES} of the
+ * environment given to {@link ContentMarshallerHelper}, before the strategy handling the remaining
+ * values, with an acceptor selecting the large documents:
+ * <pre>
+ * env.set(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES, new ObjectMarshallingStrategy[] {
+ *     new FileSystemContentStoreStrategy(new File("/var/jbpm/contents"), new ClassObjectMarshallingStrategyAcceptor(new String[] {"com.acme.Document"})),
+ *     new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)
+ * });
+ * </pre>
+ * Every node reading the contents needs the same directory (e.g. a shared file system). Stored objects are
+ * never deleted by the strategy, as the same content may still be read after the task is completed.
+ */
+public class FileSystemContentStoreStrategy implements ObjectMarshallingStrategy {
+
+    private final File directory;
+    private final ObjectMarshallingStrategyAcceptor acceptor;
+
+    public FileSystemContentStoreStrategy(File directory, ObjectMarshallingStrategyAcceptor acceptor) {
+        this.directory = directory;
+        this.acceptor = acceptor;
+    }
+
+    public boolean accept(Object object) {
+        return acceptor.accept(object);
+    }
+
+    public void write(ObjectOutputStream os, Object object) throws IOException {
+        os.writeUTF(store(object));
+    }
+
+    public Object read(ObjectInputStream is) throws IOException, ClassNotFoundException {
+        return load(is.readUTF(), null);
+    }
+
+    public byte[] marshal(Context context, ObjectOutputStream os, Object object) throws IOException {
+        return store(object).getBytes("UTF-8");
+    }
+
+    public Object unmarshal(Context context, ObjectInputStream is, byte[] object, ClassLoader classloader)
+            throws IOException, ClassNotFoundException {
+        return load(new String(object, "UTF-8"), classloader);
+    }
+
+    public Context createContext() {
+        // no context needed
+        return null;
+    }
+
+    /**
+     * Serializes the object to a new file of the store and returns its name.
+     */
+    protected String store(Object object) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create content store directory " + directory);
+        }
+        String name = UUID.randomUUID().toString();
+        File file = new File(directory, name);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        try {
+            out.writeObject(object);
+        } catch (IOException e) {
+            out.close();
+            file.delete();
+            throw e;
+        }
+        out.close();
+        return name;
+    }
+
+    protected Object load(String name, final ClassLoader classloader) throws IOException, ClassNotFoundException {
+        if (name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) {
+            throw new IOException("Invalid content reference " + name);
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(new File(directory, name)), 64 * 1024);
+        try {
+            ObjectInputStream ois = new ObjectInputStream(in) {
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    if (classloader != null) {
+                        try {
+                            return Class.forName(desc.getName(), false, classloader);
+                        } catch (ClassNotFoundException e) {
+                            // fall back to the default resolution
+                        }
+                    }
+                    return super.resolveClass(desc);
+                }
+            };
+            return ois.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.jbpm.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.task.impl.TaskAdminServiceImpl;
+import org.jbpm.task.impl.TaskQueryServiceImpl;
+import org.jbpm.task.impl.TaskServiceEntryPointImpl;
+import org.jbpm.task.impl.factories.TaskFactory;
+import org.jbpm.task.impl.model.TaskAssignmentImpl;
+import org.jbpm.task.impl.model.TaskImpl;
+import org.jbpm.task.lifecycle.listeners.TaskAssignmentIndexListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kie.internal.task.api.model.Status;
+import org.kie.internal.task.api.model.Task;
+import org.kie.internal.task.api.model.TaskSummary;
+
+public abstract class TaskAssignmentIndexBaseTest extends BaseTest {
+
+    @Inject
+    protected JbpmServicesPersistenceManager pm;
+
+    @Before
+    public void setUp() {
+        System.setProperty(TaskAssignmentIndexListener.ENABLED_PROPERTY, "true");
+        super.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+        System.clearProperty(TaskAssignmentIndexListener.ENABLED_PROPERTY);
+    }
+
+    @Test
+    public void testIndexFollowsClaimReleaseAndDelegate() {
+        long taskId = addTask("[new User('Bobba Fet'), new User('Darth Vader')]", new Date());
+        Map<String, Status> assignments = getAssignments(taskId);
+        assertEquals(2, assignments.size());
+        assertEquals(Status.Ready, assignments.get("Darth Vader"));
+
+        taskService.claim(taskId, "Darth Vader");
+        assignments = getAssignments(taskId);
+        assertEquals(2, assignments.size());
+        assertEquals(Status.Reserved, assignments.get("Bobba Fet"));
+
+        taskService.release(taskId, "Darth Vader");
+        assertEquals(Status.Ready, getAssignments(taskId).get("Bobba Fet"));
+
+        // the delegate becomes potential owner
+        taskService.delegate(taskId, "Darth Vader", "Tony Stark");
+        assignments = getAssignments(taskId);
+        assertEquals(3, assignments.size());
+        assertEquals(Status.Reserved, assignments.get("Tony Stark"));
+        assertEquals(1, getTasksAssignedAsPotentialOwner("Tony Stark", null, null, 10).size());
+
+        // closed tasks are removed
+        taskService.start(taskId, "Tony Stark");
+        taskService.complete(taskId, "Tony Stark", null);
+        assertEquals(0, getAssignments(taskId).size());
+        assertEquals(0, getTasksAssignedAsPotentialOwner("Tony Stark", null, null, 10).size());
+    }
+
+    @Test
+    public void testIndexFollowsEscalation() throws Exception {
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("now", new Date());
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream(MvelFilePath.DeadlineWithReassignment));
+        Task task = (TaskImpl) TaskFactory.evalTask(reader, vars);
+        taskService.addTask(task, new HashMap<String, Object>());
+        long taskId = task.getId();
+        Map<String, Status> assignments = getAssignments(taskId);
+        assertEquals(2, assignments.size());
+        assertTrue(assignments.containsKey("Luke Cage"));
+
+        // reassigned by the start deadline
+        long time = 0;
+        while (!getAssignments(taskId).containsKey("Bobba Fet") && time < 5000) {
+            Thread.sleep(500);
+            time += 500;
+        }
+        assignments = getAssignments(taskId);
+        assertEquals(2, assignments.size());
+        assertEquals(Status.Ready, assignments.get("Bobba Fet"));
+        assertEquals(Status.Ready, assignments.get("Jabba Hutt"));
+        assertEquals(0, getTasksAssignedAsPotentialOwner("Luke Cage", null, null, 10).size());
+    }
+
+    @Test
+    public void testPagesAcrossTasksWithSameCreationDate() {
+        Date createdOn = new Date();
+        List<Long> taskIds = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            // every other task is also assigned to the group, so it has two index rows
+            String potentialOwners = i % 2 == 0 ? "[new User('Bobba Fet'), new Group('Crusaders')]" : "[new User('Bobba Fet')]";
+            taskIds.add(addTask(potentialOwners, createdOn));
+        }
+        List<String> groupIds = Arrays.asList("Crusaders");
+
+        // two tasks per page read at most four rows, which always holds two complete tasks
+        List<TaskSummary> page = getTasksAssignedAsPotentialOwner("Bobba Fet", groupIds, null, 2);
+        assertEquals(Arrays.asList(taskIds.get(4), taskIds.get(3)), getIds(page));
+        assertEquals(2, page.get(0).getPotentialOwners().size());
+        assertEquals(1, page.get(1).getPotentialOwners().size());
+
+        TaskSummary last = page.get(1);
+        page = getTasksAssignedAsPotentialOwner("Bobba Fet", groupIds, last, 2);
+        assertEquals(Arrays.asList(taskIds.get(2), taskIds.get(1)), getIds(page));
+
+        last = page.get(1);
+        page = getTasksAssignedAsPotentialOwner("Bobba Fet", groupIds, last, 2);
+        assertEquals(Arrays.asList(taskIds.get(0)), getIds(page));
+
+        page = getTasksAssignedAsPotentialOwner("Bobba Fet", groupIds, page.get(0), 2);
+        assertEquals(0, page.size());
+    }
+
+    @Test
+    public void testMaxRowsKeepsCompleteTasks() {
+        Date createdOn = new Date();
+        long first = addTask("[new User('Bobba Fet'), new Group('Crusaders')]", createdOn);
+        long second = addTask("[new User('Bobba Fet'), new Group('Crusaders')]", createdOn);
+
+        // one task reads both of its rows, the rows of the other task are not returned
+        List<TaskSummary> page = getTasksAssignedAsPotentialOwner("Bobba Fet", Arrays.asList("Crusaders"), null, 1);
+        assertEquals(Arrays.asList(second), getIds(page));
+        assertEquals(2, page.get(0).getPotentialOwners().size());
+
+        page = getTasksAssignedAsPotentialOwner("Bobba Fet", Arrays.asList("Crusaders"), page.get(0), 1);
+        assertEquals(Arrays.asList(first), getIds(page));
+        assertEquals(2, page.get(0).getPotentialOwners().size());
+    }
+
+    @Test
+    public void testRebuildIndexesExistingTasks() {
+        System.clearProperty(TaskAssignmentIndexListener.ENABLED_PROPERTY);
+        for (int i = 0; i < 3; i++) {
+            addTask("[new User('Bobba Fet'), new User('Darth Vader')]", new Date());
+        }
+        addTask("[new User('Darth Vader')]", new Date());
+        System.setProperty(TaskAssignmentIndexListener.ENABLED_PROPERTY, "true");
+        assertEquals(0, getTasksAssignedAsPotentialOwner("Bobba Fet", null, null, 10).size());
+
+        TaskAdminServiceImpl adminService = (TaskAdminServiceImpl) ((TaskServiceEntryPointImpl) taskService).getTaskAdminService();
+        assertEquals(4, adminService.rebuildTaskAssignmentIndex(3));
+        assertEquals(3, getTasksAssignedAsPotentialOwner("Bobba Fet", null, null, 10).size());
+        assertEquals(4, getTasksAssignedAsPotentialOwner("Darth Vader", null, null, 10).size());
+    }
+
+    private long addTask(String potentialOwners, Date createdOn) {
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { createdOn = now } ), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = " + potentialOwners + ", }),";
+        str += "names = [ new I18NText( 'en-UK', 'This is my task name')] })";
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("now", createdOn);
+        TaskImpl task = TaskFactory.evalTask(new StringReader(str), vars);
+        taskService.addTask(task, new HashMap<String, Object>());
+        return task.getId();
+    }
+
+    private List<TaskSummary> getTasksAssignedAsPotentialOwner(String userId, List<String> groupIds, TaskSummary last, int maxResults) {
+        TaskQueryServiceImpl queryService = (TaskQueryServiceImpl) ((TaskServiceEntryPointImpl) taskService).getTaskQueryService();
+        return queryService.getTasksAssignedAsPotentialOwner(userId, groupIds, "en-UK",
+                last == null ? null : last.getCreatedOn(), last == null ? null : last.getId(), maxResults);
+    }
+
+    private Map<String, Status> getAssignments(long taskId) {
+        List<TaskAssignmentImpl> rows = (List<TaskAssignmentImpl>) pm.queryStringInTransaction(
+                "select a from TaskAssignmentImpl a where a.taskId = " + taskId);
+        Map<String, Status> assignments = new HashMap<String, Status>();
+        for (TaskAssignmentImpl row : rows) {
+            assignments.put(row.getEntityId(), row.getStatus());
+        }
+        return assignments;
+    }
+
+    private static List<Long> getIds(List<TaskSummary> tasks) {
+        List<Long> ids = new ArrayList<Long>();
+        for (TaskSummary task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package org.jbpm.task.identity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.kie.internal.task.api.UserGroupCallback;
+
+public class CachingUserGroupCallbackTest {
+
+    @Test
+    public void testPositiveAndNegativeAnswersAreCached() {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 60000, 100);
+
+        assertTrue(callback.existsUser("john"));
+        assertTrue(callback.existsUser("john"));
+        assertFalse(callback.existsUser("unknown"));
+        assertFalse(callback.existsUser("unknown"));
+        assertEquals(2, delegate.calls);
+        assertEquals(2, callback.getHitCount());
+        assertEquals(2, callback.getMissCount());
+
+        List<String> groups = callback.getGroupsForUser("john", null, null);
+        assertEquals(Arrays.asList("HR"), groups);
+        // the returned list can be modified without affecting the cache
+        groups.add("PM");
+        assertEquals(Arrays.asList("HR"), callback.getGroupsForUser("john", null, null));
+        assertNull(callback.getGroupsForUser("unknown", null, null));
+        assertNull(callback.getGroupsForUser("unknown", null, null));
+        assertEquals(4, delegate.calls);
+    }
+
+    @Test
+    public void testExpirationAndSizeBound() throws Exception {
+        CountingCallback delegate = new CountingCallback();
+        CachingUserGroupCallback callback = new CachingUserGroupCallback(delegate, 60000, 1, 2);
+
+        callback.existsGroup("unknown");
+        Thread.sleep(10);
+        // negative answer expired
+        callback.existsGroup("unknown");
+        assertEquals(2, delegate.calls);
+
+        callback.existsGroup("HR");
+        callback.existsGroup("IT");
+        callback.existsGroup("PM");
+        assertEquals(2, callback.getSize());
+
+        callback.invalidateGroup("PM");
+        callback.existsGroup("PM");
+        assertEquals(6, delegate.calls);
+    }
+
+    private static class CountingCallback implements UserGroupCallback {
+
+        private int calls;
+
+        public boolean existsUser(String userId) {
+            calls++;
+            return "john".equals(userId);
+        }
+
+        public boolean existsGroup(String groupId) {
+            calls++;
+            return !"unknown".equals(groupId);
+        }
+
+        public List<String> getGroupsForUser(String userId, List<String> groupIds, List<String> allExistingGroupIds) {
+            calls++;
+            if (!"john".equals(userId)) {
+                return null;
+            }
+            List<String> groups = new ArrayList<String>();
+            groups.add("HR");
+            return groups;
+        }
+    }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.jbpm.shared.services.api.JbpmServicesPersistenceManager;
+import org.jbpm.shared.services.impl.JbpmServicesPersistenceManagerImpl;
+import org.jbpm.task.impl.model.DeadlineImpl;
+import org.jbpm.task.impl.model.TaskImpl;
+import org.jbpm.task.query.DeadlineSummaryImpl;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the deadline window of {@link TaskDeadlinesServiceImpl} against an in memory
+ * persistence manager that evaluates the deadline queries and the claim updates.
+ */
+public class TaskDeadlinesServiceImplTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(TaskDeadlinesServiceImpl.WINDOW_PROPERTY);
+        System.clearProperty(TaskDeadlinesServiceImpl.BATCH_SIZE_PROPERTY);
+    }
+
+    @Test
+    public void testOnlyDeadlinesWithinWindowAreScheduled() throws Exception {
+        InMemoryDeadlines deadlines = new InMemoryDeadlines();
+        long now = System.currentTimeMillis();
+        deadlines.add(1, 1, now + 200);
+        deadlines.add(2, 2, now + 3600000);
+        TaskDeadlinesServiceImpl service = newService(deadlines, 60000, 100);
+
+        service.refill();
+
+        Date until = (Date) deadlines.queries.get(0).get("until");
+        assertTrue(until.getTime() >= now + 60000 && until.getTime() < now + 3600000);
+        assertEquals(1, deadlines.returned.size());
+        waitForEscalation(deadlines, 1);
+        assertFalse(deadlines.isEscalated(2));
+    }
+
+    @Test
+    public void testDueDeadlinesArePagedByDateAndId() throws Exception {
+        InMemoryDeadlines deadlines = new InMemoryDeadlines();
+        long due = System.currentTimeMillis() - 1000;
+        for (int i = 1; i <= 10; i++) {
+            // pairs of deadlines share their due date, so pages have to be continued by id
+            deadlines.add(i, i, due + (i / 2));
+        }
+        TaskDeadlinesServiceImpl service = newService(deadlines, 60000, 3);
+
+        service.refill();
+
+        // three full pages and a last one, for start deadlines only
+        assertEquals(4, deadlines.startQueries);
+        assertEquals(10, deadlines.returned.size());
+        assertEquals(10, deadlines.escalations);
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(deadlines.isEscalated(i));
+        }
+        Map<String, Object> second = deadlines.queries.get(1);
+        assertEquals(3L, second.get("lastDeadlineId"));
+        assertEquals(3, second.get(JbpmServicesPersistenceManagerImpl.MAX_RESULTS));
+    }
+
+    @Test
+    public void testConcurrentRefillsEscalateEveryDeadlineOnce() throws Exception {
+        final InMemoryDeadlines deadlines = new InMemoryDeadlines();
+        long due = System.currentTimeMillis() - 1000;
+        for (int i = 1; i <= 50; i++) {
+            deadlines.add(i, i, due + i);
+        }
+        // two nodes sharing the same database
+        final TaskDeadlinesServiceImpl first = newService(deadlines, 60000, 7);
+        final TaskDeadlinesServiceImpl second = newService(deadlines, 60000, 7);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread other = new Thread() {
+            public void run() {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                second.refill();
+            }
+        };
+        other.start();
+        start.countDown();
+        first.refill();
+        other.join();
+
+        assertEquals(50, deadlines.escalations);
+        for (int i = 1; i <= 50; i++) {
+            assertTrue(deadlines.isEscalated(i));
+        }
+    }
+
+    @Test
+    public void testClaimIsReleasedWhenEscalationFails() throws Exception {
+        InMemoryDeadlines deadlines = new InMemoryDeadlines();
+        deadlines.add(1, 1, System.currentTimeMillis() - 1000);
+        deadlines.failEscalation = true;
+        TaskDeadlinesServiceImpl service = newService(deadlines, 60000, 100);
+
+        service.refill();
+        assertFalse(deadlines.isEscalated(1));
+
+        // escalated by the next refill
+        deadlines.failEscalation = false;
+        service.refill();
+        assertTrue(deadlines.isEscalated(1));
+        assertEquals(1, deadlines.escalations);
+    }
+
+    private TaskDeadlinesServiceImpl newService(InMemoryDeadlines deadlines, long window, int batchSize) {
+        System.setProperty(TaskDeadlinesServiceImpl.WINDOW_PROPERTY, String.valueOf(window));
+        System.setProperty(TaskDeadlinesServiceImpl.BATCH_SIZE_PROPERTY, String.valueOf(batchSize));
+        TaskDeadlinesServiceImpl service = new TaskDeadlinesServiceImpl();
+        service.setPm(deadlines);
+        return service;
+    }
+
+    private void waitForEscalation(InMemoryDeadlines deadlines, long deadlineId) throws InterruptedException {
+        long time = 0;
+        while (!deadlines.isEscalated(deadlineId) && time < 5000) {
+            Thread.sleep(100);
+            time += 100;
+        }
+        assertTrue(deadlines.isEscalated(deadlineId));
+    }
+
+    private static class StoredDeadline {
+
+        private final long taskId;
+        private final long deadlineId;
+        private final Date date;
+        private boolean escalated;
+
+        StoredDeadline(long taskId, long deadlineId, Date date) {
+            this.taskId = taskId;
+            this.deadlineId = deadlineId;
+            this.date = date;
+        }
+    }
+
+    /**
+     * Start deadlines of tasks without task data, so escalating them only marks them as escalated.
+     */
+    private static class InMemoryDeadlines implements JbpmServicesPersistenceManager {
+
+        private final Map<Long, StoredDeadline> deadlines = new HashMap<Long, StoredDeadline>();
+        private final List<Map<String, Object>> queries = new ArrayList<Map<String, Object>>();
+        private final List<Long> returned = new ArrayList<Long>();
+        private int startQueries;
+        private int escalations;
+        private volatile boolean failEscalation;
+
+        synchronized void add(long taskId, long deadlineId, long date) {
+            deadlines.put(deadlineId, new StoredDeadline(taskId, deadlineId, new Date(date)));
+        }
+
+        synchronized boolean isEscalated(long deadlineId) {
+            return deadlines.get(deadlineId).escalated;
+        }
+
+        public synchronized Object queryWithParametersInTransaction(String queryName, Map<String, Object> params) {
+            if (!"UnescalatedStartDeadlinesDueBefore".equals(queryName)) {
+                return new ArrayList<DeadlineSummaryImpl>();
+            }
+            startQueries++;
+            queries.add(params);
+            Date until = (Date) params.get("until");
+            Date lastDate = (Date) params.get("lastDate");
+            long lastDeadlineId = (Long) params.get("lastDeadlineId");
+            int maxResults = (Integer) params.get(JbpmServicesPersistenceManagerImpl.MAX_RESULTS);
+            List<StoredDeadline> matching = new ArrayList<StoredDeadline>();
+            for (StoredDeadline deadline : deadlines.values()) {
+                if (!deadline.escalated && deadline.date.before(until)
+                        && (deadline.date.after(lastDate)
+                            || (deadline.date.equals(lastDate) && deadline.deadlineId > lastDeadlineId))) {
+                    matching.add(deadline);
+                }
+            }
+            Collections.sort(matching, new Comparator<StoredDeadline>() {
+                public int compare(StoredDeadline o1, StoredDeadline o2) {
+                    int result = o1.date.compareTo(o2.date);
+                    return result != 0 ? result : (o1.deadlineId < o2.deadlineId ? -1 : (o1.deadlineId == o2.deadlineId ? 0 : 1));
+                }
+            });
+            List<DeadlineSummaryImpl> result = new ArrayList<DeadlineSummaryImpl>();
+            for (StoredDeadline deadline : matching.subList(0, Math.min(maxResults, matching.size()))) {
+                result.add(new DeadlineSummaryImpl(deadline.taskId, deadline.deadlineId, deadline.date));
+                returned.add(deadline.deadlineId);
+            }
+            return result;
+        }
+
+        public synchronized int executeUpdate(String queryName, Map<String, Object> params) {
+            StoredDeadline deadline = deadlines.get((Long) params.get("deadlineId"));
+            if ("ClaimDeadline".equals(queryName) && !deadline.escalated) {
+                deadline.escalated = true;
+                return 1;
+            }
+            if ("UnclaimDeadline".equals(queryName) && deadline.escalated) {
+                deadline.escalated = false;
+                return 1;
+            }
+            return 0;
+        }
+
+        public synchronized <T> T find(Class<T> entityClass, Object primaryKey) {
+            if (entityClass == TaskImpl.class) {
+                if (failEscalation) {
+                    throw new IllegalStateException("task could not be loaded");
+                }
+                return entityClass.cast(new TaskImpl());
+            }
+            escalations++;
+            return entityClass.cast(new DeadlineImpl());
+        }
+
+        public HashMap<String, Object> addParametersToMap(Object... parameterValues) {
+            HashMap<String, Object> parameters = new HashMap<String, Object>();
+            for (int i = 0; i < parameterValues.length; i += 2) {
+                parameters.put((String) parameterValues[i], parameterValues[i + 1]);
+            }
+            return parameters;
+        }
+
+        public Object queryInTransaction(String queryName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object queryStringInTransaction(String queryString) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object queryStringWithParametersInTransaction(String queryString, Map<String, Object> params) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int executeUpdateString(String updateString) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void remove(Object entity) {
+            throw new UnsupportedOperationException();
+        }
+
+        public <T> T merge(T entity) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void dispose() {
+        }
+
+        public void persist(Object entity) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 JBoss by Red Hat.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.drools.core.impl.EnvironmentFactory;
+import org.drools.core.marshalling.impl.ClassObjectMarshallingStrategyAcceptor;
+import org.drools.core.marshalling.impl.SerializablePlaceholderResolverStrategy;
+import org.jbpm.task.impl.model.ContentDataImpl;
+import org.junit.Test;
+import org.kie.api.marshalling.ObjectMarshallingStrategy;
+import org.kie.api.marshalling.ObjectMarshallingStrategyAcceptor;
+import org.kie.api.runtime.Environment;
+import org.kie.api.runtime.EnvironmentName;
+
+public class ContentMarshallerHelperTest {
+
+    @Test
+    public void testStreamRoundTrip() throws Exception {
+        Map<String, Object> results = new HashMap<String, Object>();
+        results.put("name", "john");
+        results.put("document", new byte[64 * 1024]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentMarshallerHelper.marshallContent(results, null, out);
+        Map<?, ?> read = (Map<?, ?>) ContentMarshallerHelper.unmarshall(new ByteArrayInputStream(out.toByteArray()), null, null);
+        assertEquals("john", read.get("name"));
+        assertArrayEquals(new byte[64 * 1024], (byte[]) read.get("document"));
+
+        // same format as the array based methods
+        ContentDataImpl content = ContentMarshallerHelper.marshal(results, null);
+        assertArrayEquals(out.toByteArray(), content.getContent());
+    }
+
+    @Test
+    public void testEnvironmentStrategiesReused() throws Exception {
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES, new ObjectMarshallingStrategy[] {
+            new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)
+        });
+        for (int i = 0; i < 10; i++) {
+            ContentDataImpl content = ContentMarshallerHelper.marshal("value " + i, env);
+            assertEquals("value " + i, ContentMarshallerHelper.unmarshall(content.getContent(), env));
+        }
+    }
+
+    @Test
+    public void testLargeDocumentKeptOutOfContent() throws Exception {
+        File directory = File.createTempFile("content-store", "");
+        directory.delete();
+        try {
+            Environment env = EnvironmentFactory.newEnvironment();
+            env.set(EnvironmentName.OBJECT_MARSHALLING_STRATEGIES, new ObjectMarshallingStrategy[] {
+                new FileSystemContentStoreStrategy(directory, new ObjectMarshallingStrategyAcceptor() {
+                    public boolean accept(Object object) {
+                        return object instanceof byte[];
+                    }
+                }),
+                new SerializablePlaceholderResolverStrategy(ClassObjectMarshallingStrategyAcceptor.DEFAULT)
+            });
+            byte[] document = new byte[1024 * 1024];
+            document[document.length - 1] = 1;
+            Map<String, Object> results = new HashMap<String, Object>();
+            results.put("name", "john");
+            results.put("document", document);
+
+            ContentDataImpl content = ContentMarshallerHelper.marshal(results, env);
+            assertTrue(content.getContent().length < 1024);
+            File[] stored = directory.listFiles();
+            assertEquals(1, stored.length);
+            assertTrue(stored[0].length() > document.length);
+
+            Map<?, ?> read = (Map<?, ?>) ContentMarshallerHelper.unmarshall(content.getContent(), env);
+            assertEquals("john", read.get("name"));
+            assertArrayEquals(document, (byte[]) read.get("document"));
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+}
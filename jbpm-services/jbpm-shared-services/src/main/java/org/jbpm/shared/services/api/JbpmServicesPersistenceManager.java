@@ -43,6 +43,13 @@ public interface JbpmServicesPersistenceManager {
     
     int executeUpdateString(String updateString);
     
+    /**
+     * Executes the named update (or delete) query with the given parameters.
+     *
+     * @return the number of entities updated or deleted
+     */
+    int executeUpdate(String queryName, Map<String, Object> params);
+    
     HashMap<String, Object> addParametersToMap(Object ... parameterValues);
 
     void remove(Object entity);
@@ -138,6 +138,38 @@ public class JbpmServicesPersistenceManagerImpl implements JbpmServicesPersisten
         return result;
     }
      
+    @Override
+    public int executeUpdate(String queryName, Map<String, Object> params) {
+        boolean txOwner = false;
+        boolean operationSuccessful = false;
+        boolean txStarted = false;
+        int result = 0;
+        try {
+            txOwner = beginTransaction();
+            txStarted = true;
+            Query query = getEm().createNamedQuery(queryName);
+            if( params != null ) {
+                for( Map.Entry<String, Object> param : params.entrySet() ) {
+                    query.setParameter(param.getKey(), param.getValue());
+                }
+            }
+            result = query.executeUpdate();
+            operationSuccessful = true;
+            
+            endTransaction(txOwner);
+        } catch(Exception e) {
+            rollBackTransaction(txOwner);
+            
+            String message; 
+            if( !txStarted ) { message = "Could not start transaction."; }
+            else if( !operationSuccessful ) { message = "Operation failed"; }
+            else { message = "Could not commit transaction"; }
+            
+            throw new RuntimeException(message, e);
+        }
+        return result;
+    }
+    
     @Override
     public <T> T find(Class<T> entityClass, Object primaryKey) { 
         boolean txOwner = false;
@@ -17,11 +17,11 @@
 package org.jbpm.process.workitem.bpmn2;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.xml.namespace.QName;
@@ -31,6 +31,7 @@ import org.apache.cxf.endpoint.ClientCallback;
 import org.apache.cxf.jaxws.endpoint.dynamic.JaxWsDynamicClientFactory;
 import org.drools.core.process.instance.impl.WorkItemImpl;
 import org.jbpm.bpmn2.core.Bpmn2Import;
+import org.jbpm.bpmn2.handler.ServiceInvocationCache;
 import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
 import org.kie.internal.runtime.StatefulKnowledgeSession;
 import org.kie.api.runtime.process.WorkItem;
@@ -50,6 +51,8 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
     private StatefulKnowledgeSession ksession;
     private int asyncTimeout = 10;
     private ClassLoader classLoader;
+    private ServiceInvocationCache invocationCache = new ServiceInvocationCache();
+    private ExecutorService executor = ServiceInvocationCache.getSharedExecutor();
 
 	enum WSMode {
         SYNC,
@@ -184,29 +187,43 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
 
     }
 
-    public void executeJavaWorkItem(WorkItem workItem, WorkItemManager manager) {
+    public void executeJavaWorkItem(final WorkItem workItem, final WorkItemManager manager) {
+        if (executor == null || ksession == null) {
+            invokeJavaService(workItem, manager);
+        } else {
+            executor.execute(new Runnable() {
+                public void run() {
+                    // completed as a command of the session, failed calls abort the work item
+                    WorkItemManager sessionManager = ksession.getWorkItemManager();
+                    boolean completed = false;
+                    try {
+                        completed = invokeJavaService(workItem, sessionManager);
+                    } catch (RuntimeException e) {
+                        logger.error("Error when executing work item " + workItem.getId(), e);
+                    }
+                    if (!completed) {
+                        try {
+                            sessionManager.abortWorkItem(workItem.getId());
+                        } catch (RuntimeException e) {
+                            logger.error("Unable to abort work item " + workItem.getId(), e);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean invokeJavaService(WorkItem workItem, WorkItemManager manager) {
         String i = (String) workItem.getParameter("Interface");
         String operation = (String) workItem.getParameter("Operation");
         String parameterType = (String) workItem.getParameter("ParameterType");
         Object parameter = workItem.getParameter("Parameter");
         try {
-            Class<?> c = Class.forName(i, true, classLoader);
-            Object instance = c.newInstance();
-            Class<?>[] classes = null;
-            Object[] params = null;
-            if (parameterType != null) {
-                classes = new Class<?>[] {
-                    Class.forName(parameterType, true, classLoader)
-                };
-                params = new Object[] {
-                    parameter
-                };
-            }
-            Method method = c.getMethod(operation, classes);
-            Object result = method.invoke(instance, params);
+            Object result = invocationCache.invoke(classLoader, i, operation, parameterType, parameter);
             Map<String, Object> results = new HashMap<String, Object>();
             results.put("Result", result);
             manager.completeWorkItem(workItem.getId(), results);
+            return true;
         } catch (ClassNotFoundException e) {
             System.err.println(e);
         } catch (InstantiationException e) {
@@ -218,6 +235,7 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
         } catch (InvocationTargetException e) {
             System.err.println(e);
         }
+        return false;
     }
 
     public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
@@ -230,5 +248,20 @@ public static final String WSDL_IMPORT_TYPE = "http://schemas.xmlsoap.org/wsdl/"
 
 	public void setClassLoader(ClassLoader classLoader) {
 		this.classLoader = classLoader;
+		this.invocationCache.clear();
 	}
+
+    public void setInvocationCache(ServiceInvocationCache invocationCache) {
+        this.invocationCache = invocationCache;
+    }
+
+    /**
+     * Sets the executor java services are called on, <code>null</code> calls them on the engine thread.
+     * Asynchronous calls need the session given to the constructor, work items are completed through its
+     * work item manager. Without a session java services are always called on the engine thread.
+     * The executor is not shut down by the handler.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
 }